@@ -3,14 +3,16 @@ package com.alexgiounan.springbootexample;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 @RestController
 public class PingPongController {
 
-    private static int COUNTER = 0;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
     record PingPong(String result){}
 
     @GetMapping("/ping")
     public PingPong getPingPong(){
-        return new PingPong("Pong: %s".formatted(++COUNTER) );
+        return new PingPong("Pong: %s".formatted(COUNTER.incrementAndGet()));
     }
 }
@@ -8,20 +8,37 @@ import com.github.javafaker.Name;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.Random;
 import java.util.UUID;
 
-@SpringBootApplication
+// R2DBC is wired by R2dbcConfig for the reactive profile only
+@SpringBootApplication(exclude = {
+		R2dbcAutoConfiguration.class,
+		R2dbcTransactionManagerAutoConfiguration.class
+})
 public class SpringBootExampleApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(SpringBootExampleApplication.class, args);
 	}
 
+	// Tomcat is on the classpath as well and Boot would prefer it; the reactive
+	// profile is meant to run on the Netty event loop
 	@Bean
+	@Profile("reactive")
+	NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	@Profile("!reactive")
 	CommandLineRunner runner(CustomerRepository customerRepository, PasswordEncoder passwordEncoder){
 		return  args -> {
 			var faker = new Faker();
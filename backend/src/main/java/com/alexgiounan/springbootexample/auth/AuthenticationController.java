@@ -1,5 +1,6 @@
 package com.alexgiounan.springbootexample.auth;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -7,8 +8,11 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("api/v1/auth")
+@Profile("!reactive")
 public class AuthenticationController {
 
     private final AuthenticationService authenticationService;
@@ -18,11 +22,10 @@ public class AuthenticationController {
     }
 
     @PostMapping("login")
-    public ResponseEntity<?> login(@RequestBody AuthenticationRequest request) {
-        AuthenticationResponse response = authenticationService.login(request);
-        return ResponseEntity.ok()
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody AuthenticationRequest request) {
+        return authenticationService.loginAsync(request).thenApply(response -> ResponseEntity.ok()
                 .header(HttpHeaders.AUTHORIZATION, response.token())
-                .body(response);
+                .body(response));
     }
 
 }
\ No newline at end of file
@@ -4,37 +4,98 @@ import com.alexgiounan.springbootexample.customer.Customer;
 import com.alexgiounan.springbootexample.dto.CustomerDTO;
 import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
 import com.alexgiounan.springbootexample.jwt.JWTUtil;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.userdetails.UserDetailsChecker;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// does what DaoAuthenticationProvider does, except that only the bcrypt calls
+// run on the hashing lane: the lookup stays on the request thread, and the
+// rehash update and token issuing run on the task executor
 @Service
+@Profile("!reactive")
 public class AuthenticationService {
 
-    private final AuthenticationManager authenticationManager;
+    private final UserDetailsService userDetailsService;
+    private final UserDetailsPasswordService userDetailsPasswordService;
+    private final UserDetailsChecker userDetailsChecker = new AccountStatusUserDetailsChecker();
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final Executor taskExecutor;
     private final CustomerDTOMapper customerDTOMapper;
     private final JWTUtil jwtUtil;
 
-    public AuthenticationService(AuthenticationManager authenticationManager,
+    // unknown users are checked against this too, so they take as long as known ones
+    private volatile String userNotFoundPassword;
+
+    public AuthenticationService(UserDetailsService userDetailsService,
+                                 UserDetailsPasswordService userDetailsPasswordService,
+                                 PasswordEncoder passwordEncoder,
+                                 PasswordHashingExecutor passwordHashingExecutor,
+                                 @Qualifier("applicationTaskExecutor") Executor taskExecutor,
                                  CustomerDTOMapper customerDTOMapper,
                                  JWTUtil jwtUtil) {
-        this.authenticationManager = authenticationManager;
+        this.userDetailsService = userDetailsService;
+        this.userDetailsPasswordService = userDetailsPasswordService;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.taskExecutor = taskExecutor;
         this.customerDTOMapper = customerDTOMapper;
         this.jwtUtil = jwtUtil;
     }
 
-    public AuthenticationResponse login(AuthenticationRequest request) {
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        request.username(),
-                        request.password()
-                )
-        );
-        Customer principal = (Customer) authentication.getPrincipal();
-        CustomerDTO customerDTO = customerDTOMapper.apply(principal);
-        String token = jwtUtil.issueToken(customerDTO.username(), customerDTO.roles());
-        return new AuthenticationResponse(token, customerDTO);
+    public CompletableFuture<AuthenticationResponse> loginAsync(AuthenticationRequest request) {
+        Customer customer;
+        try {
+            customer = (Customer) userDetailsService.loadUserByUsername(request.username());
+        } catch (UsernameNotFoundException e) {
+            return passwordHashingExecutor.submit(() -> {
+                passwordEncoder.matches(request.password(), userNotFoundPassword());
+                throw new BadCredentialsException("Bad credentials");
+            });
+        }
+        userDetailsChecker.check(customer);
+
+        return passwordHashingExecutor.submit(() -> checkPassword(customer, request.password()))
+                .thenApplyAsync(upgradedPassword -> {
+                    upgradedPassword.ifPresent(hash -> userDetailsPasswordService.updatePassword(customer, hash));
+                    CustomerDTO customerDTO = customerDTOMapper.apply(customer);
+                    String token = jwtUtil.issueToken(
+                            customerDTO.username(), customerDTO.id(), customerDTO.roles());
+                    return new AuthenticationResponse(token, customerDTO);
+                }, taskExecutor);
+    }
+
+    // runs on the lane; hashes below the calibrated cost come back replaced
+    private Optional<String> checkPassword(Customer customer, String rawPassword) {
+        if (!passwordEncoder.matches(rawPassword, customer.getPassword())) {
+            throw new BadCredentialsException("Bad credentials");
+        }
+        if (!passwordEncoder.upgradeEncoding(customer.getPassword())) {
+            return Optional.empty();
+        }
+        return Optional.of(passwordEncoder.encode(rawPassword));
+    }
+
+    private String userNotFoundPassword() {
+        String hash = userNotFoundPassword;
+        if (hash == null) {
+            hash = passwordEncoder.encode(UUID.randomUUID().toString());
+            userNotFoundPassword = hash;
+        }
+        return hash;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package com.alexgiounan.springbootexample.auth;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.dao.ReactiveCustomerDao;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// does what DaoAuthenticationProvider does for the servlet login, without blocking:
+// the user comes from R2DBC and every bcrypt call runs on the hashing lane
+@Service
+@Profile("reactive")
+public class ReactiveAuthenticationService {
+
+    private final ReactiveCustomerDao customerDao;
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final CustomerDTOMapper customerDTOMapper;
+    private final JWTUtil jwtUtil;
+
+    // unknown users are checked against this too, so they take as long as known ones
+    private final Mono<String> userNotFoundPassword;
+
+    public ReactiveAuthenticationService(ReactiveCustomerDao customerDao,
+                                         PasswordEncoder passwordEncoder,
+                                         PasswordHashingExecutor passwordHashingExecutor,
+                                         CustomerDTOMapper customerDTOMapper,
+                                         JWTUtil jwtUtil) {
+        this.customerDao = customerDao;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.customerDTOMapper = customerDTOMapper;
+        this.jwtUtil = jwtUtil;
+        this.userNotFoundPassword = onLane(() -> passwordEncoder.encode(UUID.randomUUID().toString()))
+                .cache(hash -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    public Mono<AuthenticationResponse> login(AuthenticationRequest request) {
+        return customerDao.selectUserByEmail(request.username())
+                .filterWhen(customer -> onLane(() -> passwordEncoder.matches(request.password(), customer.getPassword())))
+                .switchIfEmpty(userNotFoundPassword
+                        .flatMap(hash -> onLane(() -> passwordEncoder.matches(request.password(), hash)))
+                        .then(Mono.error(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Bad credentials"))))
+                .flatMap(customer -> rehashIfOutdated(customer, request.password()))
+                .map(customer -> {
+                    CustomerDTO customerDTO = customerDTOMapper.apply(customer);
+                    String token = jwtUtil.issueToken(
+                            customerDTO.username(), customerDTO.id(), customerDTO.roles());
+                    return new AuthenticationResponse(token, customerDTO);
+                });
+    }
+
+    private Mono<Customer> rehashIfOutdated(Customer customer, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(customer.getPassword())) {
+            return Mono.just(customer);
+        }
+        return onLane(() -> passwordEncoder.encode(rawPassword))
+                .flatMap(hash -> customerDao.updateCustomerPassword(customer.getId(), hash)
+                        .then(Mono.fromSupplier(() -> {
+                            customer.setPassword(hash);
+                            return customer;
+                        })));
+    }
+
+    // the rest of the login continues off the lane, which is kept for bcrypt alone
+    private <T> Mono<T> onLane(Supplier<T> task) {
+        return Mono.fromFuture(() -> passwordHashingExecutor.submit(task))
+                .publishOn(Schedulers.parallel());
+    }
+}
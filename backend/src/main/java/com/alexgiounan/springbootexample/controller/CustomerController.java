@@ -2,41 +2,155 @@ package com.alexgiounan.springbootexample.controller;
 
 import com.alexgiounan.springbootexample.customer.Customer;
 import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
+import com.alexgiounan.springbootexample.customer.CustomerSearchRequest;
 import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dto.CustomerBatch;
 import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchPage;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult;
+import com.alexgiounan.springbootexample.dto.CustomerSearchPage;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
 import com.alexgiounan.springbootexample.jwt.JWTUtil;
 import com.alexgiounan.springbootexample.service.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/v1/customers")
 @RequiredArgsConstructor
+@Profile("!reactive")
 public class CustomerController {
 
     private final CustomerService customerService;
 
     private final JWTUtil jwtUtil;
 
+    private final ObjectMapper objectMapper;
+
+    private final CustomerResponseCache responseCache;
+
+    // ?fields= on the reads below returns only the fields listed, the id always
+    @GetMapping(params = {"!after", "!limit", "!ids"})
+    public void getCustomers(@RequestParam(value = "fields", required = false) String fields,
+                             HttpServletResponse response) throws IOException {
+        CustomerFields selected = CustomerFields.parse(fields);
+        responseCache.writeAll(selected, response, () -> customerService.getAllCustomers(selected));
+    }
+
     @GetMapping()
-    public List<CustomerDTO> getCustomers(){
-        return customerService.getAllCustomers();
+    public void getCustomersPage(@RequestParam(value = "after", required = false) Integer after,
+                                 @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                 @RequestParam(value = "fields", required = false) String fields,
+                                 HttpServletResponse response) throws IOException {
+        CustomerFields selected = CustomerFields.parse(fields);
+        responseCache.writePage(after, limit, selected, response,
+                () -> customerService.getCustomersPage(after, limit, selected));
+    }
+
+    // not cached: each combination of ids would be an entry of its own
+    @GetMapping(params = "ids")
+    public CustomerBatch getCustomersByIds(@RequestParam("ids") List<Integer> ids) {
+        return customerService.getCustomers(ids);
+    }
+
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void streamCustomers(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                HttpServletResponse response) throws IOException {
+        boolean ndjson = accept != null && MediaType.parseMediaTypes(accept)
+                .stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+
+        response.setContentType(ndjson ? MediaType.APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+
+        ObjectWriter writer = objectMapper.writerFor(CustomerDTO.class);
+        OutputStream out = response.getOutputStream();
+
+        // rows are written as they come off the cursor; a client disconnect fails the
+        // write, which closes the stream and with it the database query
+        SequenceWriter sequenceWriter = ndjson
+                ? writer.withRootValueSeparator("\n").writeValues(out)
+                : writer.writeValuesAsArray(out);
+        try {
+            customerService.streamAllCustomers(customer -> {
+                try {
+                    sequenceWriter.write(customer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // only a complete stream is closed: closing writes the closing ], and a
+        // list cut short by a failure must not reach the client as a valid array
+        sequenceWriter.close();
+    }
+
+    // not cached: the combinations of filters are too many to be worth it
+    @GetMapping("/search")
+    public CustomerSearchPage searchCustomers(@RequestParam(value = "minAge", required = false) Integer minAge,
+                                              @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                              @RequestParam(value = "gender", required = false) String gender,
+                                              @RequestParam(value = "name", required = false) String name,
+                                              @RequestParam(value = "email", required = false) String email,
+                                              @RequestParam(value = "sort", required = false) String sort,
+                                              @RequestParam(value = "direction", required = false) String direction,
+                                              @RequestParam(value = "offset", required = false) Integer offset,
+                                              @RequestParam(value = "limit", required = false) Integer limit,
+                                              @RequestParam(value = "fields", required = false) String fields) {
+        return customerService.searchCustomers(new CustomerSearchRequest(
+                minAge, maxAge, gender, name, email, sort, direction, offset, limit),
+                CustomerFields.parse(fields));
+    }
+
+    @GetMapping("/search/name")
+    public CustomerNameMatchPage searchCustomersByName(@RequestParam("q") String name,
+                                                       @RequestParam(value = "cursor", required = false) String cursor,
+                                                       @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerService.searchCustomersByName(name, cursor, limit);
+    }
+
+    @GetMapping("/typeahead")
+    public List<CustomerSuggestion> suggestCustomers(@RequestParam("q") String prefix,
+                                                     @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerService.suggestCustomers(prefix, limit);
     }
 
     @GetMapping("/{id}")
-    public CustomerDTO getCustomer(@PathVariable("id") Integer customerId){
-        return customerService.getCustomer(customerId);
+    public void getCustomer(@PathVariable("id") Integer customerId,
+                            @RequestParam(value = "fields", required = false) String fields,
+                            HttpServletResponse response) throws IOException {
+        CustomerFields selected = CustomerFields.parse(fields);
+        responseCache.writeCustomer(customerId, selected, response,
+                () -> customerService.getCustomer(customerId, selected));
     }
 
     @PostMapping
-    public ResponseEntity<?> registerCustomer(@RequestBody CustomerRegistrationRequest request){
-        customerService.addCustomer(request);
-        String jwtToken = jwtUtil.issueToken(request.email(), "ROLE_USER");
-        return ResponseEntity.ok().header(HttpHeaders.AUTHORIZATION, jwtToken).build();
+    public CompletableFuture<ResponseEntity<?>> registerCustomer(@RequestBody CustomerRegistrationRequest request){
+        return customerService.addCustomer(request).thenApply(customerId -> {
+            String jwtToken = jwtUtil.issueToken(request.email(), customerId, List.of("ROLE_USER"));
+            return ResponseEntity.ok().header(HttpHeaders.AUTHORIZATION, jwtToken).build();
+        });
+    }
+
+    @PostMapping("/batch")
+    public List<CustomerRegistrationResult> registerCustomers(@RequestBody List<CustomerRegistrationRequest> requests){
+        return customerService.addCustomers(requests);
     }
 
     @DeleteMapping("{id}")
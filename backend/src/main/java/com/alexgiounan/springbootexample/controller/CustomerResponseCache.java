@@ -0,0 +1,300 @@
+package com.alexgiounan.springbootexample.controller;
+
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateQueuedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Serialised JSON of customer reads, kept in direct buffers outside the heap.
+// Every entry covers a range of customer ids, so a write drops exactly the
+// entries that could contain the customer. Eviction is second chance (CLOCK)
+// once customer.response-cache.max-size is reached. Sparse reads (?fields=) are
+// entries of their own, covering the same ids as the full ones.
+@Component
+@Profile("!reactive")
+public class CustomerResponseCache {
+
+    private static final int COPY_CHUNK = 8 * 1024;
+
+    private static final class Entry {
+        final Object key;
+        final ByteBuffer body;
+        // ids in (from, to]; open entries also cover every id above from, i.e. new customers
+        final int from;
+        final int to;
+        final boolean open;
+        volatile boolean referenced;
+
+        Entry(Object key, ByteBuffer body, int from, int to, boolean open) {
+            this.key = key;
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.open = open;
+        }
+
+        boolean covers(int id) {
+            return (id > from && id <= to) || (open && id > from);
+        }
+    }
+
+    private record PageKey(int after, int limit, CustomerFields fields) {
+    }
+
+    private record AllKey(CustomerFields fields) {
+    }
+
+    private record SparseCustomerKey(int id, CustomerFields fields) {
+    }
+
+    // whole customers, by id
+    private final Map<Integer, Entry> customers = new ConcurrentHashMap<>();
+    // the full list, keyset pages and sparse customers
+    private final Map<Object, Entry> lists = new ConcurrentHashMap<>();
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+    // bumped before entries are dropped; a load that saw it move must not be cached
+    private final AtomicLong invalidations = new AtomicLong();
+    // dropped entries still in the clock queue
+    private final AtomicInteger unlinked = new AtomicInteger();
+
+    private final ObjectMapper objectMapper;
+    private final long maxSize;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Autowired
+    public CustomerResponseCache(ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${customer.response-cache.max-size:64MB}") DataSize maxSize) {
+        this(objectMapper, meterRegistry, maxSize.toBytes());
+    }
+
+    CustomerResponseCache(ObjectMapper objectMapper, MeterRegistry meterRegistry, long maxSize) {
+        this.objectMapper = objectMapper;
+        this.maxSize = maxSize;
+        this.hits = meterRegistry.counter("customer.response.cache", "result", "hit");
+        this.misses = meterRegistry.counter("customer.response.cache", "result", "miss");
+        this.evictions = meterRegistry.counter("customer.response.cache.evictions");
+        Gauge.builder("customer.response.cache.size", size, AtomicLong::get)
+                .description("off-heap bytes held by cached customer responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public void writeCustomer(Integer id, CustomerFields fields, HttpServletResponse response,
+                              Supplier<CustomerDTO> loader) throws IOException {
+        if (fields.isAll()) {
+            write(customers, id, id - 1, response, loader);
+        } else {
+            write(lists, new SparseCustomerKey(id, fields), id - 1, response, loader);
+        }
+    }
+
+    public void writeAll(CustomerFields fields, HttpServletResponse response,
+                         Supplier<List<CustomerDTO>> loader) throws IOException {
+        AllKey key = new AllKey(fields);
+        Entry entry = lists.get(key);
+        if (entry != null) {
+            hit(entry, response);
+            return;
+        }
+        long stamp = invalidations.get();
+        byte[] body = miss(loader.get(), response);
+        store(lists, key, body, Integer.MIN_VALUE, Integer.MAX_VALUE, true, stamp);
+    }
+
+    public void writePage(Integer after, int limit, CustomerFields fields, HttpServletResponse response,
+                          Supplier<CustomerPage> loader) throws IOException {
+        int from = after == null ? 0 : after;
+        PageKey key = new PageKey(from, limit, fields);
+        Entry entry = lists.get(key);
+        if (entry != null) {
+            hit(entry, response);
+            return;
+        }
+        long stamp = invalidations.get();
+        CustomerPage page = loader.get();
+        byte[] body = miss(page, response);
+        int to = page.customers().isEmpty()
+                ? from
+                : page.customers().get(page.customers().size() - 1).id();
+        // the last page grows when customers are added
+        store(lists, key, body, from, to, page.nextCursor() == null, stamp);
+    }
+
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        invalidations.incrementAndGet();
+        Entry entry = customers.remove(event.customerId());
+        if (entry != null) {
+            released(entry);
+        }
+        removeIf(lists, list -> list.covers(event.customerId()));
+    }
+
+    // the response would miss the edit until it is written
+    @EventListener
+    public void onCustomerUpdateQueued(CustomerUpdateQueuedEvent event) {
+        onCustomerChanged(new CustomerChangedEvent(event.customerId(), null));
+    }
+
+    @EventListener
+    public void onCustomerAdded(CustomerAddedEvent event) {
+        invalidations.incrementAndGet();
+        removeIf(lists, list -> list.open);
+    }
+
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        invalidations.incrementAndGet();
+        removeIf(customers, entry -> true);
+        removeIf(lists, entry -> true);
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    // a single customer: the ids in (from, from + 1]
+    private <K> void write(Map<K, Entry> map, K key, int from, HttpServletResponse response,
+                           Supplier<CustomerDTO> loader) throws IOException {
+        Entry entry = map.get(key);
+        if (entry != null) {
+            hit(entry, response);
+            return;
+        }
+        long stamp = invalidations.get();
+        byte[] body = miss(loader.get(), response);
+        store(map, key, body, from, from + 1, false, stamp);
+    }
+
+    private void hit(Entry entry, HttpServletResponse response) throws IOException {
+        hits.increment();
+        entry.referenced = true;
+        ByteBuffer body = entry.body.duplicate();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.remaining());
+        OutputStream out = response.getOutputStream();
+        if (out instanceof CoyoteOutputStream tomcat) {
+            // straight into Tomcat's output buffer
+            tomcat.write(body);
+        } else {
+            byte[] chunk = new byte[Math.min(COPY_CHUNK, body.remaining())];
+            while (body.hasRemaining()) {
+                int length = Math.min(chunk.length, body.remaining());
+                body.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    private byte[] miss(Object value, HttpServletResponse response) throws IOException {
+        misses.increment();
+        byte[] body = objectMapper.writeValueAsBytes(value);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return body;
+    }
+
+    private <K> void store(Map<K, Entry> map, K key, byte[] body, int from, int to, boolean open, long stamp) {
+        // a single response may take at most an eighth of the cache
+        if (body.length > maxSize / 8 || invalidations.get() != stamp) {
+            return;
+        }
+        Entry entry = new Entry(key, direct(body), from, to, open);
+        Entry previous = map.put(key, entry);
+        if (previous != null) {
+            released(previous);
+        }
+        size.addAndGet(body.length);
+        clock.offer(entry);
+        // a write that raced the load may have missed this entry
+        if (invalidations.get() != stamp && map.remove(key, entry)) {
+            released(entry);
+        }
+        evict();
+        purge();
+    }
+
+    private void evict() {
+        while (size.get() > maxSize) {
+            Entry candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            Map<?, Entry> map = candidate.key instanceof Integer ? customers : lists;
+            if (map.get(candidate.key) != candidate) {
+                // already replaced or invalidated
+                unlinked.decrementAndGet();
+                continue;
+            }
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                clock.offer(candidate);
+            } else if (map.remove(candidate.key, candidate)) {
+                size.addAndGet(-candidate.body.capacity());
+                evictions.increment();
+            }
+        }
+    }
+
+    // entries dropped by a write stay queued, and keep their buffers alive, until
+    // the clock reaches them; sweep them out once they outnumber the live ones
+    private void purge() {
+        if (unlinked.get() > customers.size() + lists.size() + 64) {
+            unlinked.set(0);
+            clock.removeIf(entry -> (entry.key instanceof Integer ? customers : lists).get(entry.key) != entry);
+        }
+    }
+
+    // released only by the call whose remove took it out, as in store(), so an
+    // evict() racing for the same entry cannot subtract its size a second time
+    private <K> void removeIf(Map<K, Entry> map, Predicate<Entry> stale) {
+        map.forEach((key, entry) -> {
+            if (stale.test(entry) && map.remove(key, entry)) {
+                released(entry);
+            }
+        });
+    }
+
+    private void released(Entry entry) {
+        size.addAndGet(-entry.body.capacity());
+        unlinked.incrementAndGet();
+    }
+
+    private static ByteBuffer direct(byte[] body) {
+        return ByteBuffer.allocateDirect(body.length).put(body).flip().asReadOnlyBuffer();
+    }
+}
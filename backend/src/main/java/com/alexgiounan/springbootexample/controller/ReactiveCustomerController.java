@@ -0,0 +1,70 @@
+package com.alexgiounan.springbootexample.controller;
+
+import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import com.alexgiounan.springbootexample.service.ReactiveCustomerService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/customers")
+@RequiredArgsConstructor
+@Profile("reactive")
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerService customerService;
+
+    private final JWTUtil jwtUtil;
+
+    @GetMapping(params = {"!after", "!limit"})
+    public Flux<CustomerDTO> getCustomers(){
+        return customerService.getAllCustomers();
+    }
+
+    @GetMapping()
+    public Mono<CustomerPage> getCustomersPage(@RequestParam(value = "after", required = false) Integer after,
+                                               @RequestParam(value = "limit", defaultValue = "20") int limit){
+        return customerService.getCustomersPage(after, limit);
+    }
+
+    // NDJSON is written row by row with backpressure down to the database
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<CustomerDTO> streamCustomers(){
+        return customerService.getAllCustomers();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<CustomerDTO> getCustomer(@PathVariable("id") Integer customerId){
+        return customerService.getCustomer(customerId);
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Void>> registerCustomer(@RequestBody CustomerRegistrationRequest request){
+        return customerService.addCustomer(request).map(customerId -> {
+            String jwtToken = jwtUtil.issueToken(request.email(), customerId, List.of("ROLE_USER"));
+            return ResponseEntity.ok().header(HttpHeaders.AUTHORIZATION, jwtToken).build();
+        });
+    }
+
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteCustomer(@PathVariable("id") Integer customerId){
+        return customerService.deleteCustomerById(customerId);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<Void> updateCustomer(@PathVariable("id") Integer customerId,
+                                     @RequestBody CustomerUpdateRequest updateRequest){
+        return customerService.updateCustomer(customerId, updateRequest);
+    }
+}
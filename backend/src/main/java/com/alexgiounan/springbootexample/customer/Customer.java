@@ -2,6 +2,11 @@ package com.alexgiounan.springbootexample.customer;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -15,6 +20,10 @@ import java.util.Objects;
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Customer.CACHE_REGION)
+// updates write the changed columns only, so a password change cannot undo a concurrent profile edit
+@DynamicUpdate
 @ToString
 @Table(
         name = "customer",
@@ -25,15 +34,20 @@ import java.util.Objects;
                 )
         })
 public class Customer implements UserDetails {
+
+    public static final String CACHE_REGION = "customer";
+
     @Id
     @SequenceGenerator(
             name = "customer_id_seq",
             sequenceName = "customer_id_seq",
-            allocationSize = 1
+            allocationSize = 50
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE,
             generator = "customer_id_seq")
+    // the column is a bigserial; Hibernate 6.4 validates the type strictly
+    @JdbcTypeCode(SqlTypes.BIGINT)
     private Integer id;
 
     @Column(nullable = false)
@@ -0,0 +1,7 @@
+package com.alexgiounan.springbootexample.customer;
+
+// published after a customer was stored; new customers always get an id above every existing one
+public record CustomerAddedEvent(
+        String email
+) {
+}
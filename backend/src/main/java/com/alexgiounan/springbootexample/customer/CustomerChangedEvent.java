@@ -0,0 +1,8 @@
+package com.alexgiounan.springbootexample.customer;
+
+// published after a customer was updated or deleted; email is the address the customer had before the change
+public record CustomerChangedEvent(
+        Integer customerId,
+        String email
+) {
+}
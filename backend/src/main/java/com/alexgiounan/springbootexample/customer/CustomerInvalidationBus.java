@@ -0,0 +1,275 @@
+package com.alexgiounan.springbootexample.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Carries customer invalidations between API instances over Postgres LISTEN/NOTIFY.
+// Local CustomerChangedEvent and CustomerAddedEvent are sent to the other
+// instances, which publish them again so their caches evict as if the change
+// had happened there. Every instance numbers its messages and announces the
+// latest number in a heartbeat; a receiver that sees a gap, or had to reconnect,
+// publishes CustomersInvalidatedEvent and its caches start over.
+@Slf4j
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "customer.invalidation.enabled", havingValue = "true")
+public class CustomerInvalidationBus implements DisposableBean {
+
+    static final String CHANNEL = "customer_invalidation";
+    // NOTIFY payloads must stay below 8000 bytes, a char takes up to three in UTF-8
+    private static final int MAX_PAYLOAD_CHARS = 2_600;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 100;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 5_000;
+
+    private record Peer(long sequence, long heardAt) {
+    }
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BlockingQueue<String> outbox = new LinkedBlockingQueue<>();
+    // only touched by the listener thread
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final String url;
+    private final Properties connectionProperties;
+    private final long heartbeatMillis;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter sent;
+    private final Counter received;
+    private final Counter sendFailures;
+    private final MeterRegistry meterRegistry;
+    private final Thread listener;
+    private final Thread sender;
+    private volatile boolean running = true;
+    private volatile Connection listening;
+    private long sequence;
+
+    public CustomerInvalidationBus(@Value("${spring.datasource.url}") String url,
+                                   @Value("${spring.datasource.username}") String username,
+                                   @Value("${spring.datasource.password}") String password,
+                                   @Value("${customer.invalidation.heartbeat-interval:5s}") Duration heartbeatInterval,
+                                   ApplicationEventPublisher eventPublisher,
+                                   MeterRegistry meterRegistry) {
+        this.url = url;
+        this.connectionProperties = new Properties();
+        connectionProperties.setProperty("user", username);
+        connectionProperties.setProperty("password", password);
+        this.heartbeatMillis = heartbeatInterval.toMillis();
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.sent = meterRegistry.counter("customer.invalidation.sent");
+        this.received = meterRegistry.counter("customer.invalidation.received");
+        this.sendFailures = meterRegistry.counter("customer.invalidation.send.failures");
+
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("customer-invalidation-");
+        threads.setDaemon(true);
+        this.listener = threads.newThread(this::listen);
+        this.sender = threads.newThread(this::send);
+        listener.start();
+        sender.start();
+    }
+
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        // events the listener republishes came from another instance already
+        if (Thread.currentThread() != listener) {
+            outbox.offer("C " + event.customerId() + " " + (event.email() == null ? "" : event.email()));
+        }
+    }
+
+    @EventListener
+    public void onCustomerAdded(CustomerAddedEvent event) {
+        if (Thread.currentThread() != listener) {
+            outbox.offer("A " + event.email());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        sender.interrupt();
+        closeQuietly(listening);
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+            listener.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    // a pooled connection would be recycled by the pool and, while listening,
+    // hold a slot forever; both threads keep a connection of their own instead
+    private Connection connect(String role) throws SQLException {
+        Properties properties = new Properties();
+        properties.putAll(connectionProperties);
+        properties.setProperty("ApplicationName", "customer-invalidation-" + role + "-" + nodeId.substring(0, 8));
+        return DriverManager.getConnection(url, properties);
+    }
+
+    private void listen() {
+        long delay = MIN_RECONNECT_DELAY_MILLIS;
+        while (running) {
+            try (Connection connection = connect("listener")) {
+                listening = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // whatever was sent while this instance was not listening is lost
+                flush("connected");
+                delay = MIN_RECONNECT_DELAY_MILLIS;
+                receive(connection);
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("customer invalidation listener disconnected, reconnecting in {} ms: {}",
+                            delay, e.getMessage());
+                }
+            } finally {
+                listening = null;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void receive(Connection connection) throws SQLException {
+        long heardAt = System.currentTimeMillis();
+        while (running) {
+            List<String> payloads = PostgresNotifications.await(connection, (int) heartbeatMillis);
+            long now = System.currentTimeMillis();
+            if (!payloads.isEmpty()) {
+                heardAt = now;
+                for (String payload : payloads) {
+                    handle(payload, now);
+                }
+            }
+            // this instance's own heartbeats stop arriving on a half open connection
+            if (now - heardAt > 3 * heartbeatMillis) {
+                throw new SQLException("no notification within " + 3 * heartbeatMillis + " ms");
+            }
+            peers.values().removeIf(peer -> now - peer.heardAt() > 10 * heartbeatMillis);
+        }
+    }
+
+    // "M <node> <sequence>" followed by one line per change, or "H <node> <sequence>"
+    private void handle(String payload, long now) {
+        String[] lines = payload.split("\n");
+        String[] header = lines[0].split(" ");
+        if (header.length != 3 || header[1].equals(nodeId)) {
+            return;
+        }
+        boolean message = header[0].equals("M");
+        long number = Long.parseLong(header[2]);
+        Peer peer = peers.get(header[1]);
+        peers.put(header[1], new Peer(peer == null ? number : Math.max(number, peer.sequence()), now));
+
+        // a peer seen for the first time has sent nothing this instance could have missed
+        if (peer != null && number > peer.sequence() + (message ? 1 : 0)) {
+            flush("gap");
+            return;
+        }
+        if (!message) {
+            return;
+        }
+        received.increment();
+        for (int i = 1; i < lines.length; i++) {
+            String[] change = lines[i].split(" ", 3);
+            if (change[0].equals("C")) {
+                String email = change.length < 3 || change[2].isEmpty() ? null : change[2];
+                eventPublisher.publishEvent(new CustomerChangedEvent(Integer.valueOf(change[1]), email));
+            } else if (change[0].equals("A")) {
+                eventPublisher.publishEvent(new CustomerAddedEvent(change[1]));
+            }
+        }
+    }
+
+    private void flush(String reason) {
+        meterRegistry.counter("customer.invalidation.flushes", "reason", reason).increment();
+        eventPublisher.publishEvent(new CustomersInvalidatedEvent(reason));
+    }
+
+    private void send() {
+        Connection connection = null;
+        while (running) {
+            String payload;
+            try {
+                String first = outbox.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                payload = first == null ? "H " + nodeId + " " + sequence : batch(first);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                if (connection == null) {
+                    connection = connect("sender");
+                }
+                try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+                    statement.setString(1, CHANNEL);
+                    statement.setString(2, payload);
+                    statement.execute();
+                }
+                if (payload.startsWith("M")) {
+                    sent.increment();
+                }
+            } catch (SQLException e) {
+                // the sequence number is used up, receivers see the gap and flush
+                sendFailures.increment();
+                log.warn("could not send customer invalidation: {}", e.getMessage());
+                closeQuietly(connection);
+                connection = null;
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    private String batch(String first) {
+        StringBuilder payload = new StringBuilder("M ").append(nodeId).append(' ').append(++sequence)
+                .append('\n').append(first);
+        String next;
+        while ((next = outbox.peek()) != null && payload.length() + next.length() < MAX_PAYLOAD_CHARS) {
+            payload.append('\n').append(outbox.poll());
+        }
+        return payload.toString();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // already broken
+        }
+    }
+}
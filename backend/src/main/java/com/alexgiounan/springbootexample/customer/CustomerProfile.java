@@ -0,0 +1,20 @@
+package com.alexgiounan.springbootexample.customer;
+
+// what API reads return about a customer: everything but the password hash,
+// which only authentication loads
+public record CustomerProfile(
+        Integer id,
+        String name,
+        String email,
+        Integer age,
+        Gender gender
+) {
+    public static CustomerProfile of(Customer customer) {
+        return new CustomerProfile(
+                customer.getId(),
+                customer.getName(),
+                customer.getEmail(),
+                customer.getAge(),
+                customer.getGender());
+    }
+}
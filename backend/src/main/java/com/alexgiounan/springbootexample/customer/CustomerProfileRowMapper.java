@@ -0,0 +1,21 @@
+package com.alexgiounan.springbootexample.customer;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@Component
+public class CustomerProfileRowMapper implements RowMapper<CustomerProfile> {
+    @Override
+    public CustomerProfile mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new CustomerProfile(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("email"),
+                rs.getInt("age"),
+                Gender.valueOf(rs.getString("gender")));
+
+    }
+}
@@ -0,0 +1,13 @@
+package com.alexgiounan.springbootexample.customer;
+
+// the search filters as the client sent them; every one may be null
+public record CustomerSearchRequest(Integer minAge,
+                                    Integer maxAge,
+                                    String gender,
+                                    String name,
+                                    String email,
+                                    String sort,
+                                    String direction,
+                                    Integer offset,
+                                    Integer limit) {
+}
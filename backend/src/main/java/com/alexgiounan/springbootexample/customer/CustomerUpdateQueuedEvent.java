@@ -0,0 +1,7 @@
+package com.alexgiounan.springbootexample.customer;
+
+// published when an update was queued for a later write; local only, the database has not changed yet
+public record CustomerUpdateQueuedEvent(
+        Integer customerId
+) {
+}
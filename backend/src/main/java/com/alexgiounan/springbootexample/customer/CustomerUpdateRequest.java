@@ -1,4 +1,29 @@
 package com.alexgiounan.springbootexample.customer;
 
 public record CustomerUpdateRequest(String name, String email, Integer age){
+
+    // copies the given fields that differ onto customer; false when nothing changed
+    public boolean applyTo(Customer customer) {
+        boolean changes = false;
+        if(name != null && !name.equals(customer.getName())){
+            customer.setName(name);
+            changes = true;
+        }
+        if(age != null && !age.equals(customer.getAge())){
+            customer.setAge(age);
+            changes = true;
+        }
+        if(email != null && !email.equals(customer.getEmail())){
+            customer.setEmail(email);
+            changes = true;
+        }
+        return changes;
+    }
+
+    // whether applying this would change the profile, by the same rules as applyTo
+    public boolean changes(CustomerProfile profile) {
+        return (name != null && !name.equals(profile.name()))
+                || (age != null && !age.equals(profile.age()))
+                || (email != null && !email.equals(profile.email()));
+    }
 }
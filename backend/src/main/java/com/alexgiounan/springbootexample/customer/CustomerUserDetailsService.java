@@ -3,17 +3,20 @@ package com.alexgiounan.springbootexample.customer;
 import com.alexgiounan.springbootexample.dao.CustomerDao;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-public class CustomerUserDetailsService implements UserDetailsService {
+@Profile("!reactive")
+public class CustomerUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final CustomerDao customerDao;
 
-    public CustomerUserDetailsService(@Qualifier("jpa") CustomerDao customerDao) {
+    public CustomerUserDetailsService(@Qualifier("coalescing") CustomerDao customerDao) {
         this.customerDao = customerDao;
     }
 
@@ -22,4 +25,12 @@ public class CustomerUserDetailsService implements UserDetailsService {
         return customerDao.selectUserByEmail(username).orElseThrow(
                 () -> new UsernameNotFoundException("Username " + username + " not found"));
     }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Customer customer = (Customer) user;
+        customerDao.updateCustomerPassword(customer.getId(), newPassword);
+        customer.setPassword(newPassword);
+        return customer;
+    }
 }
@@ -0,0 +1,7 @@
+package com.alexgiounan.springbootexample.customer;
+
+// published when changes made on another instance may have been missed; every cached customer is suspect
+public record CustomersInvalidatedEvent(
+        String reason
+) {
+}
@@ -0,0 +1,55 @@
+package com.alexgiounan.springbootexample.customer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// JDBC has no API for LISTEN notifications and the Postgres driver is only a
+// runtime dependency, so its own is looked up here once and reached through unwrap
+final class PostgresNotifications {
+
+    private static final Class<?> PG_CONNECTION;
+    private static final MethodHandle GET_NOTIFICATIONS;
+    private static final MethodHandle GET_PARAMETER;
+
+    static {
+        try {
+            PG_CONNECTION = Class.forName("org.postgresql.PGConnection");
+            Class<?> notification = Class.forName("org.postgresql.PGNotification");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            GET_NOTIFICATIONS = lookup.findVirtual(PG_CONNECTION, "getNotifications",
+                    MethodType.methodType(notification.arrayType(), int.class));
+            GET_PARAMETER = lookup.findVirtual(notification, "getParameter",
+                    MethodType.methodType(String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private PostgresNotifications() {
+    }
+
+    // the payloads of the notifications received within the timeout, none when nothing came
+    static List<String> await(Connection connection, int timeoutMillis) throws SQLException {
+        Object pgConnection = connection.unwrap(PG_CONNECTION);
+        try {
+            Object[] notifications = (Object[]) GET_NOTIFICATIONS.invoke(pgConnection, timeoutMillis);
+            if (notifications == null) {
+                return List.of();
+            }
+            List<String> payloads = new ArrayList<>(notifications.length);
+            for (Object notification : notifications) {
+                payloads.add((String) GET_PARAMETER.invoke(notification));
+            }
+            return payloads;
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException(e);
+        }
+    }
+}
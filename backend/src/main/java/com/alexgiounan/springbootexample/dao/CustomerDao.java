@@ -1,24 +1,81 @@
 package com.alexgiounan.springbootexample.dao;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface CustomerDao {
     List<Customer> selectAllCustomers();
 
+    List<Customer> selectCustomersAfter(Integer afterId, int limit);
+
+    Stream<Customer> streamAllCustomers();
+
     Optional<Customer> selectCustomerById(Integer id);
 
+    // the same reads without the password hash, for the API; the projection
+    // narrows them down to the columns a sparse read asks for
+    default List<CustomerProfile> selectAllCustomerProfiles() {
+        return selectAllCustomerProfiles(CustomerProjection.ALL);
+    }
+
+    List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection);
+
+    default List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit) {
+        return selectCustomerProfilesAfter(afterId, limit, CustomerProjection.ALL);
+    }
+
+    List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection);
+
+    Stream<CustomerProfile> streamAllCustomerProfiles();
+
+    default Optional<CustomerProfile> selectCustomerProfileById(Integer id) {
+        return selectCustomerProfileById(id, CustomerProjection.ALL);
+    }
+
+    Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection);
+
+    // the customers among ids, in no particular order; ids with no customer are left out
+    List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids);
+
+    default List<CustomerProfile> searchCustomerProfiles(CustomerSearch search) {
+        return searchCustomerProfiles(search, CustomerProjection.ALL);
+    }
+
+    List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection);
+
+    // names with a trigram similarity of at least 0.3, nearest first, after the cursor when given
+    List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit);
+
+    // throws DuplicateResourceException when the email is taken, ignoring case
     void insertCustomer(Customer customer);
 
+    // stores the customers whose email is free, all of them or, on a failure, none;
+    // returns the lower-cased emails of those left out because theirs was taken.
+    // The emails of the batch are distinct, ignoring case
+    Set<String> insertCustomers(List<Customer> customers);
+
     boolean existsCustomerWithEmail(String email);
 
-    void deleteCustomerById(Integer id);
+    // matches ignore case; the returned emails are lower-cased
+    Set<String> selectExistingEmails(Collection<String> emails);
+
+    // the deleted customer, empty when there was none
+    Optional<Customer> deleteCustomerById(Integer id);
 
     boolean existsPersonWithId(Integer customerId);
 
-    void updateCustomer(Customer update);
+    // applies the non-null fields of update; empty when there is no such customer,
+    // throws DuplicateResourceException when the new email is taken
+    Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update);
+
+    void updateCustomerPassword(Integer customerId, String passwordHash);
 
     Optional<Customer> selectUserByEmail(String email);
 
@@ -0,0 +1,31 @@
+package com.alexgiounan.springbootexample.dao;
+
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+
+import java.util.Comparator;
+
+// a customer whose name is similar to a searched one; distance is pg_trgm's
+// name <-> query, one minus the trigram similarity. Matches come nearest first,
+// id breaking ties
+public record CustomerNameMatch(
+        CustomerProfile profile,
+        float distance
+) {
+
+    public static final Comparator<CustomerNameMatch> ORDER = Comparator
+            .comparingDouble(CustomerNameMatch::distance)
+            .thenComparing(match -> match.profile().id());
+
+    public Cursor cursor() {
+        return new Cursor(distance, profile.id());
+    }
+
+    public boolean isAfter(Cursor cursor) {
+        int byDistance = Float.compare(distance, cursor.distance());
+        return byDistance > 0 || byDistance == 0 && profile.id() > cursor.id();
+    }
+
+    // where the previous page ended
+    public record Cursor(float distance, int id) {
+    }
+}
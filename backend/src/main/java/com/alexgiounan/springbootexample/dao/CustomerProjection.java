@@ -0,0 +1,53 @@
+package com.alexgiounan.springbootexample.dao;
+
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the profile columns a read selects; the id always is, and a profile read
+// without a column has null in its place
+public record CustomerProjection(
+        boolean name,
+        boolean email,
+        boolean age,
+        boolean gender
+) {
+
+    public static final CustomerProjection ALL = new CustomerProjection(true, true, true, true);
+
+    public boolean isAll() {
+        return equals(ALL);
+    }
+
+    // column and entity attribute names alike, id first
+    public List<String> columns() {
+        List<String> columns = new ArrayList<>(List.of("id"));
+        if (name) {
+            columns.add("name");
+        }
+        if (email) {
+            columns.add("email");
+        }
+        if (age) {
+            columns.add("age");
+        }
+        if (gender) {
+            columns.add("gender");
+        }
+        return columns;
+    }
+
+    // the profile a read with this projection returns, for stores that hold whole rows
+    public CustomerProfile apply(CustomerProfile profile) {
+        if (isAll()) {
+            return profile;
+        }
+        return new CustomerProfile(
+                profile.id(),
+                name ? profile.name() : null,
+                email ? profile.email() : null,
+                age ? profile.age() : null,
+                gender ? profile.gender() : null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.alexgiounan.springbootexample.dao;
+
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+// filters a customer search applies, all optional and combined with AND; prefixes
+// ignore case. Results are ordered by sort, then by id, and paged by offset
+public record CustomerSearch(
+        Integer minAge,
+        Integer maxAge,
+        Gender gender,
+        String namePrefix,
+        String emailPrefix,
+        Sort sort,
+        boolean descending,
+        int offset,
+        int limit
+) {
+
+    public enum Sort {
+        ID("id", Comparator.comparing(CustomerProfile::id)),
+        NAME("name", Comparator.comparing(CustomerProfile::name)),
+        EMAIL("email", Comparator.comparing(CustomerProfile::email)),
+        AGE("age", Comparator.comparing(CustomerProfile::age, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        // column and entity attribute alike
+        private final String column;
+        private final Comparator<CustomerProfile> comparator;
+
+        Sort(String column, Comparator<CustomerProfile> comparator) {
+            this.column = column;
+            this.comparator = comparator;
+        }
+
+        public String column() {
+            return column;
+        }
+
+        public Comparator<CustomerProfile> comparator() {
+            return comparator;
+        }
+    }
+
+    // the order the results come in, id breaking ties
+    public Comparator<CustomerProfile> order() {
+        Comparator<CustomerProfile> order = sort.comparator().thenComparing(CustomerProfile::id);
+        return descending ? order.reversed() : order;
+    }
+
+    public boolean matches(CustomerProfile profile) {
+        return (minAge == null || profile.age() != null && profile.age() >= minAge)
+                && (maxAge == null || profile.age() != null && profile.age() <= maxAge)
+                && (gender == null || gender == profile.gender())
+                && (namePrefix == null || lower(profile.name()).startsWith(lower(namePrefix)))
+                && (emailPrefix == null || lower(profile.email()).startsWith(lower(emailPrefix)));
+    }
+
+    // a LIKE pattern for the lower-cased prefix, escaped with a backslash so
+    // wildcards in the prefix match themselves
+    public static String likePrefix(String prefix) {
+        return lower(prefix)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,9 @@
+package com.alexgiounan.springbootexample.dao;
+
+// the outcome of a partial update of an existing customer; previousEmail is the
+// address before the update, changed is false when every given field already matched
+public record CustomerUpdate(
+        String previousEmail,
+        boolean changed
+) {
+}
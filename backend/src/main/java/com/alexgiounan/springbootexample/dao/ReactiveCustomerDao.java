@@ -0,0 +1,26 @@
+package com.alexgiounan.springbootexample.dao;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveCustomerDao {
+    Flux<Customer> selectAllCustomers();
+
+    Flux<Customer> selectCustomersAfter(Integer afterId, int limit);
+
+    Mono<Customer> selectCustomerById(Integer id);
+
+    // emits the new customer's id
+    Mono<Integer> insertCustomer(Customer customer);
+
+    Mono<Boolean> existsCustomerWithEmail(String email);
+
+    Mono<Void> deleteCustomerById(Integer customerId);
+
+    Mono<Void> updateCustomer(Customer update);
+
+    Mono<Void> updateCustomerPassword(Integer customerId, String passwordHash);
+
+    Mono<Customer> selectUserByEmail(String email);
+}
@@ -1,9 +1,12 @@
 package com.alexgiounan.springbootexample.dto;
 
 import com.alexgiounan.springbootexample.customer.Gender;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
 
+// every column is NOT NULL, so only the fields a sparse read leaves out are null
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record CustomerDTO (
         Integer id,
         String name,
@@ -1,9 +1,11 @@
 package com.alexgiounan.springbootexample.dto;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -24,4 +26,16 @@ public class CustomerDTOMapper implements Function<Customer, CustomerDTO> {
                         .collect(Collectors.toList()),
                 customer.getUsername());
     }
+
+    // the roles and username a Customer would report, without loading one
+    public CustomerDTO apply(CustomerProfile profile) {
+        return new CustomerDTO(
+                profile.id(),
+                profile.name(),
+                profile.email(),
+                profile.gender(),
+                profile.age(),
+                List.of("ROLE_USER"),
+                profile.email());
+    }
 }
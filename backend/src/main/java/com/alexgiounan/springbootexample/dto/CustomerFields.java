@@ -0,0 +1,73 @@
+package com.alexgiounan.springbootexample.dto;
+
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.exception.RequestValidationException;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+// the fields of a customer a read returns, as asked for with ?fields=; the id
+// always is, pages and links are built on it
+public record CustomerFields(Set<Field> fields) {
+
+    public enum Field { ID, NAME, EMAIL, GENDER, AGE, ROLES, USERNAME }
+
+    public static final CustomerFields ALL = new CustomerFields(EnumSet.allOf(Field.class));
+
+    public CustomerFields {
+        EnumSet<Field> withId = EnumSet.of(Field.ID);
+        withId.addAll(fields);
+        fields = Collections.unmodifiableSet(withId);
+    }
+
+    // comma separated field names in any case; every field when there are none
+    public static CustomerFields parse(String fields) {
+        if (fields == null) {
+            return ALL;
+        }
+        Set<Field> parsed = EnumSet.noneOf(Field.class);
+        for (String name : fields.split(",", -1)) {
+            if (name.isBlank()) {
+                throw new RequestValidationException("fields must not have empty entries");
+            }
+            try {
+                parsed.add(Field.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new RequestValidationException("unknown field [%s]".formatted(name));
+            }
+        }
+        return new CustomerFields(parsed);
+    }
+
+    public boolean isAll() {
+        return fields.size() == Field.values().length;
+    }
+
+    // the columns the fields are read from: the username is the email, the roles
+    // are not stored
+    public CustomerProjection projection() {
+        return new CustomerProjection(
+                fields.contains(Field.NAME),
+                fields.contains(Field.EMAIL) || fields.contains(Field.USERNAME),
+                fields.contains(Field.AGE),
+                fields.contains(Field.GENDER));
+    }
+
+    // the customer with null in place of the fields not asked for, which the
+    // serialiser leaves out
+    public CustomerDTO apply(CustomerDTO customer) {
+        if (isAll()) {
+            return customer;
+        }
+        return new CustomerDTO(
+                customer.id(),
+                fields.contains(Field.NAME) ? customer.name() : null,
+                fields.contains(Field.EMAIL) ? customer.email() : null,
+                fields.contains(Field.GENDER) ? customer.gender() : null,
+                fields.contains(Field.AGE) ? customer.age() : null,
+                fields.contains(Field.ROLES) ? customer.roles() : null,
+                fields.contains(Field.USERNAME) ? customer.username() : null);
+    }
+}
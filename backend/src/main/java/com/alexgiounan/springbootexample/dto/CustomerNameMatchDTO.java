@@ -0,0 +1,7 @@
+package com.alexgiounan.springbootexample.dto;
+
+public record CustomerNameMatchDTO(
+        CustomerDTO customer,
+        float similarity
+) {
+}
@@ -0,0 +1,16 @@
+package com.alexgiounan.springbootexample.dto;
+
+public record CustomerRegistrationResult(
+        int index,
+        String email,
+        Status status,
+        String message
+) {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID,
+        FAILED
+    }
+}
@@ -0,0 +1,9 @@
+package com.alexgiounan.springbootexample.dto;
+
+import java.util.List;
+
+public record CustomerSearchPage(
+        List<CustomerDTO> customers,
+        Integer nextOffset
+) {
+}
@@ -0,0 +1,8 @@
+package com.alexgiounan.springbootexample.dto;
+
+public record CustomerSuggestion(
+        Integer id,
+        String name,
+        String email
+) {
+}
@@ -0,0 +1,92 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// remembers when an account was last seen in the database, so stateless
+// requests only hit the database once per revalidation window and subject
+@Component
+@Profile("!reactive")
+public class ActiveAccountCache {
+
+    private final Map<String, Long> confirmedAt = new ConcurrentHashMap<>();
+    private final CustomerDao customerDao;
+    private final long revalidateAfterMillis;
+    private final int maxSize;
+    private final Clock clock;
+
+    @Autowired
+    public ActiveAccountCache(@Qualifier("coalescing") CustomerDao customerDao,
+                              @Value("${jwt.stateless.revalidate-after:5m}") Duration revalidateAfter,
+                              @Value("${jwt.stateless.max-accounts:10000}") int maxSize) {
+        this(customerDao, revalidateAfter, maxSize, Clock.systemUTC());
+    }
+
+    ActiveAccountCache(CustomerDao customerDao, Duration revalidateAfter, int maxSize, Clock clock) {
+        this.customerDao = customerDao;
+        this.revalidateAfterMillis = revalidateAfter.toMillis();
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    public boolean isActive(String subject) {
+        String key = subject.toLowerCase(Locale.ROOT);
+        long now = clock.millis();
+        Long at = confirmedAt.get(key);
+        if (at != null && now - at < revalidateAfterMillis) {
+            return true;
+        }
+
+        boolean active = customerDao.existsCustomerWithEmail(subject);
+        if (!active) {
+            confirmedAt.remove(key);
+        } else if (maxSize > 0) {
+            if (confirmedAt.size() >= maxSize) {
+                trim(now);
+            }
+            confirmedAt.put(key, now);
+        }
+        return active;
+    }
+
+    public void evict(String subject) {
+        confirmedAt.remove(subject.toLowerCase(Locale.ROOT));
+    }
+
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        if (event.email() != null) {
+            evict(event.email());
+        }
+    }
+
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        confirmedAt.clear();
+    }
+
+    int size() {
+        return confirmedAt.size();
+    }
+
+    private void trim(long now) {
+        confirmedAt.values().removeIf(at -> now - at >= revalidateAfterMillis);
+        if (confirmedAt.size() >= maxSize) {
+            // every account is fresh: start over, each one costs a single lookup again
+            confirmedAt.clear();
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.alexgiounan.springbootexample.jwt;
 
-import com.alexgiounan.springbootexample.customer.CustomerUserDetailsService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -16,16 +19,25 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
+@Profile("!reactive")
 public class JWTAuthenticationFilter extends OncePerRequestFilter {
     
     private final JWTUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final ActiveAccountCache activeAccounts;
+    private final boolean stateless;
 
-    public JWTAuthenticationFilter(JWTUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JWTAuthenticationFilter(JWTUtil jwtUtil,
+                                   UserDetailsService userDetailsService,
+                                   ActiveAccountCache activeAccounts,
+                                   @Value("${jwt.stateless.enabled:false}") boolean stateless) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.activeAccounts = activeAccounts;
+        this.stateless = stateless;
     }
 
     @Override
@@ -42,16 +54,16 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String jwt = authHeader.substring(7);
-        String subject = jwtUtil.getSubject(jwt);
+        // signature and expiry are checked once here; the claims are trusted from now on
+        Claims claims = jwtUtil.verify(jwt);
+        String subject = claims.getSubject();
 
         if (subject != null &&
                 SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(subject);
-            if (jwtUtil.isTokenValid(jwt, userDetails.getUsername())) {
-                UsernamePasswordAuthenticationToken authenticationToken =
-                        new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities()
-                        );
+            UsernamePasswordAuthenticationToken authenticationToken = stateless
+                    ? fromClaims(claims)
+                    : fromUserDetails(subject);
+            if (authenticationToken != null) {
                 authenticationToken.setDetails(
                         new WebAuthenticationDetailsSource().buildDetails(request)
                 );
@@ -60,4 +72,36 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    private UsernamePasswordAuthenticationToken fromUserDetails(String subject) {
+        UserDetails userDetails = userDetailsService.loadUserByUsername(subject);
+        if (!subject.equals(userDetails.getUsername())) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities()
+        );
+    }
+
+    // principal comes from the verified claims; deleted accounts are caught by the active account check
+    private UsernamePasswordAuthenticationToken fromClaims(Claims claims) {
+        if (!activeAccounts.isActive(claims.getSubject())) {
+            return null;
+        }
+        List<String> roles = scopes(claims);
+        JWTPrincipal principal = new JWTPrincipal(
+                claims.get("customerId", Integer.class), claims.getSubject(), roles);
+        return new UsernamePasswordAuthenticationToken(
+                principal,
+                null,
+                roles.stream().map(SimpleGrantedAuthority::new).toList()
+        );
+    }
+
+    private static List<String> scopes(Claims claims) {
+        if (claims.get("scopes") instanceof List<?> scopes) {
+            return scopes.stream().map(String::valueOf).toList();
+        }
+        return List.of();
+    }
 }
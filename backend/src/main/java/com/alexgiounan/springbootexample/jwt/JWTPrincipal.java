@@ -0,0 +1,10 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import java.util.List;
+
+public record JWTPrincipal(
+        Integer customerId,
+        String username,
+        List<String> roles
+) {
+}
@@ -1,12 +1,15 @@
 package com.alexgiounan.springbootexample.jwt;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
@@ -18,6 +21,18 @@ public class JWTUtil {
 
     private static final String SECRET_KEY = "foobar_123456789_foobar_123456789_foobar_123456789";
 
+    private final Key signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(signingKey)
+            .build();
+
+    private final VerifiedTokenCache verifiedTokens;
+
+    public JWTUtil(@Value("${jwt.verified-token-cache.max-size:10000}") int verifiedTokenCacheSize) {
+        this.verifiedTokens = new VerifiedTokenCache(verifiedTokenCacheSize, Clock.systemUTC());
+    }
+
     public String issueToken(String subject){
         return issueToken(subject, Map.of());
 
@@ -31,6 +46,10 @@ public class JWTUtil {
         return issueToken(subject, Map.of("scopes", scopes));
     }
 
+    public String issueToken(String subject, Integer customerId, List<String> scopes) {
+        return issueToken(subject, Map.of("customerId", customerId, "scopes", scopes));
+    }
+
 
 
     public String issueToken(String subject, Map<String, Object> claims){
@@ -40,36 +59,32 @@ public class JWTUtil {
                 .setSubject(subject)
                 .setIssuedAt(Date.from(Instant.now()))
                 .setExpiration(Date.from(Instant.now().plus(15, DAYS)))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
 
         return token;
     }
 
     public String getSubject(String token){
-        return getClaims(token).getSubject();
+        return verify(token).getSubject();
     }
 
-    private Claims getClaims(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    public Claims verify(String token) {
+        Claims claims = verifiedTokens.get(token);
+        if (claims == null) {
+            claims = parser.parseClaimsJws(token).getBody();
+            verifiedTokens.put(token, claims);
+        }
         return claims;
     }
 
-    private Key getSigningKey(){
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
-    }
-
     public boolean isTokenValid(String jwt, String username) {
-        String subject = getSubject(jwt);
-        return subject.equals(username) && !isTokenExpired(jwt);
+        Claims claims = verify(jwt);
+        return claims.getSubject().equals(username) && !isTokenExpired(claims);
     }
 
-    private boolean isTokenExpired(String jwt) {
+    private boolean isTokenExpired(Claims claims) {
         Date today = Date.from(Instant.now());
-        return getClaims(jwt).getExpiration().before(today);
+        return claims.getExpiration().before(today);
     }
 }
@@ -0,0 +1,54 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import io.jsonwebtoken.JwtException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+// not a bean: a WebFilter bean would also be applied outside the security chain
+public class ReactiveJWTAuthenticationFilter implements WebFilter {
+
+    private final JWTUtil jwtUtil;
+    private final ReactiveUserDetailsService userDetailsService;
+
+    public ReactiveJWTAuthenticationFilter(JWTUtil jwtUtil, ReactiveUserDetailsService userDetailsService) {
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        String authHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return chain.filter(exchange);
+        }
+
+        String subject;
+        try {
+            subject = jwtUtil.verify(authHeader.substring(7)).getSubject();
+        } catch (JwtException | IllegalArgumentException e) {
+            // an invalid token leaves the exchange unauthenticated, the entry point answers 401
+            return chain.filter(exchange);
+        }
+        if (subject == null) {
+            return chain.filter(exchange);
+        }
+
+        return userDetailsService.findByUsername(subject)
+                .filter(userDetails -> subject.equals(userDetails.getUsername()))
+                .map(userDetails -> ReactiveSecurityContextHolder.withAuthentication(
+                        new UsernamePasswordAuthenticationToken(
+                                userDetails, null, userDetails.getAuthorities())))
+                .defaultIfEmpty(Context.empty())
+                .flatMap(context -> chain.filter(exchange).contextWrite(context));
+    }
+}
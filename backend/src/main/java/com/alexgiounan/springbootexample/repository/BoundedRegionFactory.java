@@ -0,0 +1,167 @@
+package com.alexgiounan.springbootexample.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hibernate's second level cache in bounded maps, like the other caches of this
+// application. Entries expire after customer.second-level-cache.time-to-live, so
+// rows changed behind Hibernate's back are picked up eventually. Timestamps never
+// expire: Hibernate needs them to tell which cached query results are stale.
+// Regions Hibernate does not know about can be had from storage(region).
+public class BoundedRegionFactory extends RegionFactoryTemplate {
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    public BoundedRegionFactory(int maxEntries, Duration timeToLive, MeterRegistry meterRegistry, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    public Storage storage(String region) {
+        return new Storage(region, maxEntries, timeToLiveMillis);
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return storage(regionConfig.getRegionName());
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+                                                                  SessionFactoryImplementor sessionFactory) {
+        return storage(regionName);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+                                                                SessionFactoryImplementor sessionFactory) {
+        // one entry per table
+        return new Storage(regionName, Integer.MAX_VALUE, 0);
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+    }
+
+    @Override
+    protected void releaseFromUse() {
+    }
+
+    public final class Storage implements DomainDataStorageAccess {
+
+        private record Entry(Object value, long expiresAtMillis) {
+        }
+
+        private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+        private final int maxEntries;
+        private final long timeToLiveMillis;
+        private final Counter expirations;
+        private final Counter evictions;
+
+        Storage(String region, int maxEntries, long timeToLiveMillis) {
+            this.maxEntries = maxEntries;
+            this.timeToLiveMillis = timeToLiveMillis;
+            this.expirations = meterRegistry.counter("hibernate.second.level.cache.evictions",
+                    "region", region, "cause", "expired");
+            this.evictions = meterRegistry.counter("hibernate.second.level.cache.evictions",
+                    "region", region, "cause", "size");
+            Gauge.builder("hibernate.second.level.cache.size", entries, Map::size)
+                    .tag("region", region)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (expired(entry, clock.millis())) {
+                if (entries.remove(key, entry)) {
+                    expirations.increment();
+                }
+                return null;
+            }
+            return entry.value();
+        }
+
+        @Override
+        public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+                evict();
+            }
+            long expiresAt = timeToLiveMillis > 0 ? clock.millis() + timeToLiveMillis : Long.MAX_VALUE;
+            entries.put(key, new Entry(value, expiresAt));
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            Entry entry = entries.get(key);
+            return entry != null && !expired(entry, clock.millis());
+        }
+
+        @Override
+        public void evictData() {
+            entries.clear();
+        }
+
+        @Override
+        public void evictData(Object key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public void release() {
+            entries.clear();
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        // a lock is released by the transaction that took it, not by age
+        private static boolean expired(Entry entry, long now) {
+            return entry.expiresAtMillis() <= now && !(entry.value() instanceof SoftLock);
+        }
+
+        private void evict() {
+            long now = clock.millis();
+            entries.values().removeIf(entry -> expired(entry, now) && count(expirations));
+
+            // still full of live entries: drop an arbitrary tenth, they are simply loaded again
+            Iterator<Entry> values = entries.values().iterator();
+            for (int i = entries.size() - maxEntries + Math.max(1, maxEntries / 10); i > 0 && values.hasNext(); i--) {
+                values.next();
+                values.remove();
+                evictions.increment();
+            }
+        }
+
+        private static boolean count(Counter counter) {
+            counter.increment();
+            return true;
+        }
+    }
+}
@@ -1,18 +1,60 @@
 package com.alexgiounan.springbootexample.repository;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface CustomerRepository extends JpaRepository<Customer,Integer> {
 
+    // read-only rows without the password hash; not entities, so neither managed nor cached
+    String PROFILE = """
+            SELECT new com.alexgiounan.springbootexample.customer.CustomerProfile(
+                c.id, c.name, c.email, c.age, c.gender)
+            FROM Customer c""";
 
-    boolean existsCustomerByEmail(String email);
+    @Query("SELECT count(c) > 0 FROM Customer c WHERE lower(c.email) = lower(:email)")
+    boolean existsCustomerByEmail(@Param("email") String email);
+
+    @Query("SELECT lower(c.email) FROM Customer c WHERE lower(c.email) IN :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
 
     boolean existsCustomerById(Integer id);
 
-    Optional<Customer> findCustomerByEmail(String email);
+    @Query("SELECT c FROM Customer c WHERE lower(c.email) = lower(:email)")
+    Optional<Customer> findCustomerByEmail(@Param("email") String email);
+
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT c FROM Customer c")
+    Stream<Customer> streamAllBy();
+
+    @Query(PROFILE)
+    List<CustomerProfile> findAllProfiles();
+
+    @Query(PROFILE + " WHERE c.id > :id ORDER BY c.id")
+    List<CustomerProfile> findProfilesAfter(@Param("id") Integer id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(PROFILE)
+    Stream<CustomerProfile> streamAllProfiles();
+
+    @Query(PROFILE + " WHERE c.id = :id")
+    Optional<CustomerProfile> findProfileById(@Param("id") Integer id);
+
+    @Query(PROFILE + " WHERE c.id IN :ids")
+    List<CustomerProfile> findProfilesByIds(@Param("ids") Collection<Integer> ids);
 
 }
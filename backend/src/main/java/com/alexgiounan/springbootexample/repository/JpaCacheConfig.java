@@ -0,0 +1,33 @@
+package com.alexgiounan.springbootexample.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+// hands Hibernate a region factory instance instead of a class name, so the
+// cache can be sized from the configuration and report to the meter registry;
+// contexts without this configuration, such as JPA slice tests, run uncached
+@Configuration
+public class JpaCacheConfig {
+
+    @Bean
+    public BoundedRegionFactory regionFactory(@Value("${customer.second-level-cache.max-entries:10000}") int maxEntries,
+                                              @Value("${customer.second-level-cache.time-to-live:10m}") Duration timeToLive,
+                                              MeterRegistry meterRegistry) {
+        return new BoundedRegionFactory(maxEntries, timeToLive, meterRegistry, Clock.systemUTC());
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer regionFactoryCustomizer(BoundedRegionFactory regionFactory) {
+        return properties -> {
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, regionFactory);
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package com.alexgiounan.springbootexample.repository;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+// configured by hand rather than by Boot's R2DBC auto-configuration: a ConnectionFactory
+// bean makes Boot skip the JDBC DataSource, so it must only exist in the reactive profile
+@Configuration
+@Profile("reactive")
+public class R2dbcConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(@Value("${spring.datasource.url}") String jdbcUrl,
+                                            @Value("${spring.datasource.username}") String username,
+                                            @Value("${spring.datasource.password}") String password,
+                                            @Value("${spring.r2dbc.pool.max-size:20}") int maxSize) {
+        // same database as the JDBC side, which still runs the Flyway migrations
+        ConnectionFactoryOptions options = ConnectionFactoryOptions
+                .parse("r2dbc:" + jdbcUrl.substring("jdbc:".length()))
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        return new ConnectionPool(ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(options))
+                .maxSize(maxSize)
+                .build());
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionPool connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+}
@@ -0,0 +1,51 @@
+package com.alexgiounan.springbootexample.security;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.time.Duration;
+
+final class BCryptCalibration {
+
+    // cheap enough to time at startup, slow enough to measure reliably
+    private static final int PROBE_STRENGTH = 8;
+    private static final int PROBE_ROUNDS = 3;
+
+    private BCryptCalibration() {
+    }
+
+    static int calibrate(Duration targetVerificationTime, int minStrength, int maxStrength) {
+        String salt = BCrypt.gensalt(PROBE_STRENGTH);
+        BCrypt.hashpw("calibration", salt);
+
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration", salt);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return strengthFor(targetVerificationTime.toNanos(), fastest, PROBE_STRENGTH, minStrength, maxStrength);
+    }
+
+    // every extra point of strength doubles the work
+    static int strengthFor(long targetNanos, long probeNanos, int probeStrength, int minStrength, int maxStrength) {
+        int strength = probeStrength;
+        long expected = Math.max(1, probeNanos);
+        while (expected * 2 <= targetNanos && strength < maxStrength) {
+            expected *= 2;
+            strength++;
+        }
+        return Math.max(minStrength, Math.min(maxStrength, strength));
+    }
+
+    // "$2a$10$..." -> 10, or -1 when the value is not a bcrypt hash
+    static int costOf(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.alexgiounan.springbootexample.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+// records the cost of every stored hash that is verified, so the metrics
+// show how much of the customer base is still on an older work factor
+class MeteredPasswordEncoder implements PasswordEncoder {
+
+    private final BCryptPasswordEncoder delegate;
+    private final MeterRegistry meterRegistry;
+    private final Counter rehashes;
+
+    MeteredPasswordEncoder(int strength, MeterRegistry meterRegistry) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.meterRegistry = meterRegistry;
+        this.rehashes = Counter.builder("security.password.rehashes")
+                .description("stored hashes moved to the current bcrypt cost after login")
+                .register(meterRegistry);
+        Gauge.builder("security.password.bcrypt.strength", () -> strength)
+                .description("bcrypt cost used for new hashes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches) {
+            meterRegistry.counter("security.password.verifications",
+                    "cost", String.valueOf(BCryptCalibration.costOf(encodedPassword))).increment();
+        }
+        return matches;
+    }
+
+    // the authentication provider asks this after a successful match and rehashes on true
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        boolean upgrade = delegate.upgradeEncoding(encodedPassword);
+        if (upgrade) {
+            rehashes.increment();
+        }
+        return upgrade;
+    }
+}
@@ -0,0 +1,51 @@
+package com.alexgiounan.springbootexample.security;
+
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import com.alexgiounan.springbootexample.jwt.ReactiveJWTAuthenticationFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+// mirrors SecurityFilterChainConfig for the reactive profile
+@Configuration
+@EnableWebFluxSecurity
+@Profile("reactive")
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         JWTUtil jwtUtil,
+                                                         ReactiveUserDetailsService userDetailsService) {
+        return http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .cors(Customizer.withDefaults())
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers(HttpMethod.POST, "/api/v1/customers", "/api/v1/auth/login")
+                        .permitAll()
+                        // metrics expose the load and internals of the instance, only health and info are public
+                        .pathMatchers("/actuator/metrics/**")
+                        .authenticated()
+                        .pathMatchers(HttpMethod.GET, "/actuator/**")
+                        .permitAll()
+                        .anyExchange()
+                        .authenticated())
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .addFilterAt(new ReactiveJWTAuthenticationFilter(jwtUtil, userDetailsService),
+                        SecurityWebFiltersOrder.AUTHENTICATION)
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.UNAUTHORIZED)))
+                .build();
+    }
+}
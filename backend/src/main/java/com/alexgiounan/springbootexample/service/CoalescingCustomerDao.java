@@ -0,0 +1,293 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+// Concurrent identical lookups share one call to the DAO behind, so a burst of
+// requests for the same customer (a token refresh wave, a dashboard reload after
+// the caches were flushed) costs a single query. Nothing is kept once the call
+// returns: this is not a cache, the caches sit behind it.
+@Repository("coalescing")
+@Profile("!reactive")
+public class CoalescingCustomerDao implements CustomerDao {
+
+    private record Key(Operation operation, Object argument) {
+    }
+
+    // sparse reads select other columns, they only share lookups among themselves
+    private record ProfileArgument(Integer id, CustomerProjection projection) {
+    }
+
+    private enum Operation {
+        BY_ID("by-id"),
+        PROFILE_BY_ID("profile-by-id"),
+        BY_EMAIL("by-email"),
+        EXISTS_BY_ID("exists-by-id"),
+        EXISTS_BY_EMAIL("exists-by-email");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final Map<Key, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final CustomerDao customerDao;
+    private final Map<Operation, Counter> executed;
+    private final Map<Operation, Counter> coalesced;
+
+    public CoalescingCustomerDao(@Qualifier("jpa") CustomerDao customerDao, MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.executed = counters(meterRegistry, "executed");
+        this.coalesced = counters(meterRegistry, "coalesced");
+        Gauge.builder("customer.lookups.in.flight", inFlight, Map::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return customerDao.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return customerDao.streamAllCustomers();
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return coalesce(new Key(Operation.BY_ID, id),
+                () -> customerDao.selectCustomerById(id),
+                CoalescingCustomerDao::copy);
+    }
+
+    @Override
+    public List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection) {
+        return customerDao.selectAllCustomerProfiles(projection);
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection) {
+        return customerDao.selectCustomerProfilesAfter(afterId, limit, projection);
+    }
+
+    @Override
+    public List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection) {
+        return customerDao.searchCustomerProfiles(search, projection);
+    }
+
+    @Override
+    public List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit) {
+        return customerDao.searchCustomerProfilesByName(name, after, limit);
+    }
+
+    @Override
+    public Stream<CustomerProfile> streamAllCustomerProfiles() {
+        return customerDao.streamAllCustomerProfiles();
+    }
+
+    @Override
+    public Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection) {
+        // profiles are immutable, followers can share the leader's
+        return coalesce(new Key(Operation.PROFILE_BY_ID, new ProfileArgument(id, projection)),
+                () -> customerDao.selectCustomerProfileById(id, projection),
+                UnaryOperator.identity());
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids) {
+        return customerDao.selectCustomerProfilesByIds(ids);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        customerDao.insertCustomer(customer);
+        forgetEmail(customer.getEmail());
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        Set<String> taken = customerDao.insertCustomers(customers);
+        customers.forEach(customer -> forgetEmail(customer.getEmail()));
+        return taken;
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return coalesce(new Key(Operation.EXISTS_BY_EMAIL, email.toLowerCase(Locale.ROOT)),
+                () -> customerDao.existsCustomerWithEmail(email),
+                UnaryOperator.identity());
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return customerDao.selectExistingEmails(emails);
+    }
+
+    @Override
+    public Optional<Customer> deleteCustomerById(Integer customerId) {
+        Optional<Customer> deleted = customerDao.deleteCustomerById(customerId);
+        forgetId(customerId);
+        deleted.ifPresent(customer -> forgetEmail(customer.getEmail()));
+        return deleted;
+    }
+
+    @Override
+    public boolean existsPersonWithId(Integer customerId) {
+        return coalesce(new Key(Operation.EXISTS_BY_ID, customerId),
+                () -> customerDao.existsPersonWithId(customerId),
+                UnaryOperator.identity());
+    }
+
+    @Override
+    public Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update) {
+        Optional<CustomerUpdate> result = customerDao.updateCustomer(customerId, update);
+        forgetId(customerId);
+        if (update.email() != null) {
+            forgetEmail(update.email());
+        }
+        result.ifPresent(updated -> forgetEmail(updated.previousEmail()));
+        return result;
+    }
+
+    @Override
+    public void updateCustomerPassword(Integer customerId, String passwordHash) {
+        customerDao.updateCustomerPassword(customerId, passwordHash);
+        forgetId(customerId);
+    }
+
+    @Override
+    public Optional<Customer> selectUserByEmail(String email) {
+        return coalesce(new Key(Operation.BY_EMAIL, email.toLowerCase(Locale.ROOT)),
+                () -> customerDao.selectUserByEmail(email),
+                CoalescingCustomerDao::copy);
+    }
+
+    // a lookup started before a change may still be running: later callers start their own.
+    // Local writes are covered above, this covers the previous email of an update and
+    // writes on other instances
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        forgetId(event.customerId());
+        if (event.email() != null) {
+            forgetEmail(event.email());
+        }
+    }
+
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        inFlight.clear();
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(Key key, Supplier<T> lookup, UnaryOperator<T> copy) {
+        // inside a transaction the lookup has to see that transaction's own writes
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            executed.get(key.operation()).increment();
+            return lookup.get();
+        }
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> leader = (CompletableFuture<T>) inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalesced.get(key.operation()).increment();
+            // customers are mutable entities, every caller gets its own
+            return copy.apply(join(leader));
+        }
+
+        executed.get(key.operation()).increment();
+        try {
+            T result = lookup.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private void forgetId(Integer id) {
+        inFlight.remove(new Key(Operation.BY_ID, id));
+        // a profile lookup per projection; the map holds only what is in flight
+        inFlight.keySet().removeIf(key -> key.argument() instanceof ProfileArgument profile
+                && profile.id().equals(id));
+        inFlight.remove(new Key(Operation.EXISTS_BY_ID, id));
+    }
+
+    private void forgetEmail(String email) {
+        String key = email.toLowerCase(Locale.ROOT);
+        inFlight.remove(new Key(Operation.BY_EMAIL, key));
+        inFlight.remove(new Key(Operation.EXISTS_BY_EMAIL, key));
+    }
+
+    private static <T> T join(CompletableFuture<T> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            // the followers fail with what the leader failed with
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Optional<Customer> copy(Optional<Customer> customer) {
+        return customer.map(c -> new Customer(
+                c.getId(), c.getName(), c.getEmail(), c.getPassword(), c.getAge(), c.getGender()));
+    }
+
+    private static Map<Operation, Counter> counters(MeterRegistry meterRegistry, String result) {
+        Map<Operation, Counter> counters = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            counters.put(operation, meterRegistry.counter("customer.lookups",
+                    "operation", operation.tag, "result", result));
+        }
+        return counters;
+    }
+}
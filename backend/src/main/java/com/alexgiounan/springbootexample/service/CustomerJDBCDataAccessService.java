@@ -1,25 +1,51 @@
 package com.alexgiounan.springbootexample.service;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
 import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
 import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository("jdbc")
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class CustomerJDBCDataAccessService implements CustomerDao {
 
-
+    private static final int STREAM_FETCH_SIZE = 500;
 
     private final JdbcTemplate jdbcTemplate;
 
     private final CustomerRowMapper customerRowMapper;
 
+    private final CustomerProfileRowMapper customerProfileRowMapper;
+
     @Override
     public List<Customer> selectAllCustomers() {
         var sql = """
@@ -31,6 +57,34 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
 
     }
 
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        var sql = """
+                SELECT id, name, email,password, age, gender
+                FROM customer
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, customerRowMapper, afterId, limit);
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        var sql = """
+                SELECT id, name, email,password, age, gender
+                FROM customer
+                """;
+
+        // the driver only honours the fetch size inside a transaction
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, customerRowMapper);
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
         var sql = """
@@ -45,20 +99,200 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
                 .findFirst();
     }
 
+    // the profile reads leave the password column out, it never crosses the wire,
+    // and a sparse read every column it was not asked for
+
+    @Override
+    public List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection) {
+        var sql = """
+                SELECT %s
+                FROM customer
+                """.formatted(String.join(", ", projection.columns()));
+
+        return jdbcTemplate.query(sql, profileRowMapper(projection));
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection) {
+        var sql = """
+                SELECT %s
+                FROM customer
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?
+                """.formatted(String.join(", ", projection.columns()));
+
+        return jdbcTemplate.query(sql, profileRowMapper(projection), afterId, limit);
+    }
+
+    @Override
+    public Stream<CustomerProfile> streamAllCustomerProfiles() {
+        var sql = """
+                SELECT id, name, email, age, gender
+                FROM customer
+                """;
+
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, customerProfileRowMapper);
+    }
+
+    @Override
+    public Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection) {
+        var sql = """
+                SELECT %s
+                FROM customer
+                WHERE id = ?
+                """.formatted(String.join(", ", projection.columns()));
+
+        return jdbcTemplate
+                .query(sql, profileRowMapper(projection), id)
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids) {
+        // one statement and one plan for any number of ids, unlike an IN list
+        var sql = """
+                SELECT id, name, email, age, gender
+                FROM customer
+                WHERE id = ANY(?)
+                """;
+
+        return jdbcTemplate.query(
+                sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("int4", ids.toArray())),
+                customerProfileRowMapper);
+    }
+
+    @Override
+    public List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (search.gender() != null) {
+            conditions.add("gender = ?");
+            args.add(search.gender().name());
+        }
+        if (search.minAge() != null) {
+            conditions.add("age >= ?");
+            args.add(search.minAge());
+        }
+        if (search.maxAge() != null) {
+            conditions.add("age <= ?");
+            args.add(search.maxAge());
+        }
+        // written as the prefix indexes are defined, see V4__Customer_search_indexes.sql
+        if (search.namePrefix() != null) {
+            conditions.add("lower(name) LIKE ?");
+            args.add(CustomerSearch.likePrefix(search.namePrefix()));
+        }
+        if (search.emailPrefix() != null) {
+            conditions.add("lower(email) LIKE ?");
+            args.add(CustomerSearch.likePrefix(search.emailPrefix()));
+        }
+        args.add(search.limit());
+        args.add(search.offset());
+
+        String direction = search.descending() ? "DESC" : "ASC";
+        var sql = """
+                SELECT %s
+                FROM customer
+                %s
+                ORDER BY %s %s, id %s
+                LIMIT ? OFFSET ?
+                """.formatted(
+                String.join(", ", projection.columns()),
+                conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions),
+                search.sort().column(), direction, direction);
+
+        return jdbcTemplate.query(sql, profileRowMapper(projection), args.toArray());
+    }
+
+    @Override
+    public List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit) {
+        // name % ? filters at pg_trgm.similarity_threshold, through the trigram
+        // index of V5__Customer_name_trigram_index.sql, and name <-> ? orders the
+        // matches nearest first
+        var sql = """
+                SELECT id, name, email, age, gender, name <-> ? AS distance
+                FROM customer
+                WHERE name %% ?
+                %s
+                ORDER BY name <-> ?, id
+                LIMIT ?
+                """.formatted(after == null ? "" : "AND (name <-> ?, id) > (?, ?)");
+
+        List<Object> args = new ArrayList<>(List.of(name, name));
+        if (after != null) {
+            args.addAll(List.of(name, after.distance(), after.id()));
+        }
+        args.add(name);
+        args.add(limit);
+
+        return jdbcTemplate.query(sql,
+                (rs, rowNum) -> new CustomerNameMatch(
+                        customerProfileRowMapper.mapRow(rs, rowNum), rs.getFloat("distance")),
+                args.toArray());
+    }
+
     @Override
     public void insertCustomer(Customer customer) {
+        // any conflict is on the email: ids come from the sequence
         var sql = """
                 INSERT INTO customer(name, email,password, age,gender)
                 values(?, ?, ?, ?, ?)
+                ON CONFLICT DO NOTHING
+                RETURNING id
                 """;
-        int result = jdbcTemplate.update(sql,
+        List<Integer> ids = jdbcTemplate.queryForList(sql, Integer.class,
                 customer.getName(),
                 customer.getEmail(),
                 customer.getPassword(),
                 customer.getAge(),
                 customer.getGender().name());
 
-        System.out.println("jdbcTemplate.update = " + result);
+        if (ids.isEmpty()) {
+            throw new DuplicateResourceException("email already taken");
+        }
+        customer.setId(ids.get(0));
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        // a single statement over arrays: the batch commits whole or not at all, and a
+        // taken email, even one claimed concurrently, leaves out only its customer
+        var sql = """
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::int[], ?::text[])
+                ON CONFLICT DO NOTHING
+                RETURNING id, email
+                """;
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(sql, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setArray(1, connection.createArrayOf("text", customers.stream().map(Customer::getName).toArray()));
+            ps.setArray(2, connection.createArrayOf("text", customers.stream().map(Customer::getEmail).toArray()));
+            ps.setArray(3, connection.createArrayOf("text", customers.stream().map(Customer::getPassword).toArray()));
+            ps.setArray(4, connection.createArrayOf("int4", customers.stream().map(Customer::getAge).toArray()));
+            ps.setArray(5, connection.createArrayOf("text",
+                    customers.stream().map(customer -> customer.getGender().name()).toArray()));
+        }, rs -> {
+            ids.put(rs.getString("email"), rs.getInt("id"));
+        });
+
+        Set<String> taken = new HashSet<>();
+        for (Customer customer : customers) {
+            Integer id = ids.get(customer.getEmail());
+            if (id == null) {
+                taken.add(customer.getEmail().toLowerCase(Locale.ROOT));
+            } else {
+                customer.setId(id);
+            }
+        }
+        return taken;
     }
 
     @Override
@@ -66,7 +300,7 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
         var sql = """
                 SELECT count(id)
                 FROM customer
-                WHERE email = ?
+                WHERE lower(email) = lower(?)
                 """;
 
         Integer count = jdbcTemplate.queryForObject(sql, Integer.class, email);
@@ -74,14 +308,35 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
     }
 
     @Override
-    public void deleteCustomerById(Integer id) {
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        var sql = """
+                SELECT lower(email) AS email
+                FROM customer
+                WHERE lower(email) = ANY(?)
+                """;
+
+        Object[] normalized = emails.stream()
+                .map(email -> email.toLowerCase(Locale.ROOT))
+                .toArray();
+
+        return new HashSet<>(jdbcTemplate.query(
+                sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", normalized)),
+                (rs, rowNum) -> rs.getString("email")));
+    }
+
+    @Override
+    public Optional<Customer> deleteCustomerById(Integer id) {
         var sql = """
                 DELETE
                 FROM customer
                 WHERE id = ?
+                RETURNING id, name, email,password, age, gender
                 """;
-        int result = jdbcTemplate.update(sql,id);
-        System.out.println("deleteCustomerById result = " +  result);
+        return jdbcTemplate
+                .query(sql, customerRowMapper, id)
+                .stream()
+                .findFirst();
     }
 
     @Override
@@ -96,38 +351,66 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
     }
 
     @Override
-    public void updateCustomer(Customer update) {
-        if(update.getName() != null){
-            String sql = "UPDATE customer SET name = ? WHERE id = ?";
-            int result = jdbcTemplate.update(
-                    sql,
-                    update.getName(),
-                    update.getId()
-            );
-
-            System.out.println("update customer name result = " + result);
+    public Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update) {
+        List<String> columns = new ArrayList<>(3);
+        List<Object> values = new ArrayList<>(3);
+        if (update.name() != null) {
+            columns.add("name");
+            values.add(update.name());
         }
-        if(update.getAge() != null){
-            String sql = "UPDATE customer SET age = ? WHERE id = ?";
-            int result = jdbcTemplate.update(
-                    sql,
-                    update.getAge(),
-                    update.getId()
-            );
-
-            System.out.println("update customer age result = " + result);
+        if (update.email() != null) {
+            columns.add("email");
+            values.add(update.email());
         }
-        if(update.getEmail() != null){
-            String sql = "UPDATE customer SET email = ? WHERE id = ?";
-            int result = jdbcTemplate.update(
-                    sql,
-                    update.getEmail(),
-                    update.getId()
-            );
-
-            System.out.println("update customer email result = " + result);
+        if (update.age() != null) {
+            columns.add("age");
+            values.add(update.age());
         }
 
+        if (columns.isEmpty()) {
+            return selectCustomerById(customerId)
+                    .map(customer -> new CustomerUpdate(customer.getEmail(), false));
+        }
+
+        // one statement: the locked row before the update, joined with the update
+        // itself, which only writes when a given field differs
+        var sql = """
+                WITH previous AS (
+                    SELECT id, email FROM customer WHERE id = ? FOR UPDATE
+                ), updated AS (
+                    UPDATE customer c SET %s
+                    FROM previous
+                    WHERE c.id = previous.id AND (%s)
+                    RETURNING c.id
+                )
+                SELECT previous.email, updated.id IS NOT NULL AS changed
+                FROM previous LEFT JOIN updated ON true
+                """.formatted(
+                columns.stream().map(column -> column + " = ?").collect(Collectors.joining(", ")),
+                columns.stream().map(column -> "c." + column + " IS DISTINCT FROM ?").collect(Collectors.joining(" OR ")));
+
+        List<Object> args = new ArrayList<>(1 + 2 * values.size());
+        args.add(customerId);
+        args.addAll(values);
+        args.addAll(values);
+
+        try {
+            return jdbcTemplate.query(sql,
+                            (rs, rowNum) -> new CustomerUpdate(rs.getString("email"), rs.getBoolean("changed")),
+                            args.toArray())
+                    .stream()
+                    .findFirst();
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    @Override
+    public void updateCustomerPassword(Integer customerId, String passwordHash) {
+        var sql = """
+                UPDATE customer SET password = ? WHERE id = ?
+                """;
+        jdbcTemplate.update(sql, passwordHash, customerId);
     }
 
     @Override
@@ -135,7 +418,7 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
         var sql = """
                 SELECT id, name, email,password, age, gender
                 FROM customer
-                WHERE email = ?
+                WHERE lower(email) = lower(?)
                 """;
 
         return jdbcTemplate
@@ -143,4 +426,17 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
                 .stream()
                 .findFirst();
     }
+
+    // maps the columns the projection selected; the statement has no others
+    private RowMapper<CustomerProfile> profileRowMapper(CustomerProjection projection) {
+        if (projection.isAll()) {
+            return customerProfileRowMapper;
+        }
+        return (rs, rowNum) -> new CustomerProfile(
+                rs.getInt("id"),
+                projection.name() ? rs.getString("name") : null,
+                projection.email() ? rs.getString("email") : null,
+                projection.age() ? Integer.valueOf(rs.getInt("age")) : null,
+                projection.gender() ? Gender.valueOf(rs.getString("gender")) : null);
+    }
 }
@@ -1,33 +1,285 @@
 package com.alexgiounan.springbootexample.service;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
 import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.repository.BoundedRegionFactory;
 import com.alexgiounan.springbootexample.repository.CustomerRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CompoundSelection;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.Cache;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 @Repository("jpa")
-@RequiredArgsConstructor
+@Profile("!reactive")
 public class CustomerJPADataAccessService implements CustomerDao {
 
+    static final String BY_EMAIL_CACHE_REGION = "customer-by-email";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private final CustomerRepository customerRepository;
+
+    private final EntityManager entityManager;
+
+    // lower-cased email -> id, checked against the cached customer on every use; unlike
+    // Hibernate's query cache it survives writes to other customers
+    private final BoundedRegionFactory.Storage idsByEmail;
+    private final Counter emailHits;
+    private final Counter emailMisses;
+
+    public CustomerJPADataAccessService(CustomerRepository customerRepository,
+                                        EntityManager entityManager,
+                                        BoundedRegionFactory regionFactory,
+                                        MeterRegistry meterRegistry) {
+        this.customerRepository = customerRepository;
+        this.entityManager = entityManager;
+        this.idsByEmail = regionFactory.storage(BY_EMAIL_CACHE_REGION);
+        this.emailHits = meterRegistry.counter("customer.email.lookups", "result", "hit");
+        this.emailMisses = meterRegistry.counter("customer.email.lookups", "result", "miss");
+    }
+
     @Override
     public List<Customer> selectAllCustomers() {
         return customerRepository.findAll();
     }
 
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(limit));
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        // detach as we go so the persistence context does not grow with the table
+        return customerRepository.streamAllBy()
+                .peek(entityManager::detach);
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
         return customerRepository.findById(id);
     }
 
+    // the repository's queries read whole profiles; a sparse read builds its own,
+    // selecting only what the projection asks for
+
+    @Override
+    public List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection) {
+        if (projection.isAll()) {
+            return customerRepository.findAllProfiles();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerProfile> query = cb.createQuery(CustomerProfile.class);
+        Root<Customer> c = query.from(Customer.class);
+        query.select(profile(cb, c, projection));
+
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection) {
+        if (projection.isAll()) {
+            return customerRepository.findProfilesAfter(afterId, PageRequest.ofSize(limit));
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerProfile> query = cb.createQuery(CustomerProfile.class);
+        Root<Customer> c = query.from(Customer.class);
+        query.select(profile(cb, c, projection))
+                .where(cb.greaterThan(c.get("id"), afterId))
+                .orderBy(cb.asc(c.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public Stream<CustomerProfile> streamAllCustomerProfiles() {
+        // projections are not managed, there is nothing to detach
+        return customerRepository.streamAllProfiles();
+    }
+
+    @Override
+    public Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection) {
+        // a cached customer costs no query at all; otherwise read the columns the
+        // profile needs, leaving the cache to the lookups that load the hash anyway
+        if (secondLevelCache().containsEntity(Customer.class, id)) {
+            return customerRepository.findById(id).map(CustomerProfile::of).map(projection::apply);
+        }
+        if (projection.isAll()) {
+            return customerRepository.findProfileById(id);
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerProfile> query = cb.createQuery(CustomerProfile.class);
+        Root<Customer> c = query.from(Customer.class);
+        query.select(profile(cb, c, projection))
+                .where(cb.equal(c.get("id"), id));
+
+        return entityManager.createQuery(query)
+                .getResultList()
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids) {
+        // as for a single id: the cached customers cost no query, the rest are read in one
+        Cache cache = secondLevelCache();
+        Map<Boolean, List<Integer>> byCached = ids.stream()
+                .collect(Collectors.partitioningBy(id -> cache.containsEntity(Customer.class, id)));
+
+        List<CustomerProfile> profiles = new ArrayList<>(ids.size());
+        byCached.get(true).forEach(id -> customerRepository.findById(id)
+                .map(CustomerProfile::of)
+                .ifPresent(profiles::add));
+        if (!byCached.get(false).isEmpty()) {
+            profiles.addAll(customerRepository.findProfilesByIds(byCached.get(false)));
+        }
+        return profiles;
+    }
+
+    @Override
+    public List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection) {
+        // a Criteria query: the filters decide the WHERE clause, and the
+        // constructor projection keeps the password hash out
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerProfile> query = cb.createQuery(CustomerProfile.class);
+        Root<Customer> c = query.from(Customer.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (search.gender() != null) {
+            predicates.add(cb.equal(c.get("gender"), search.gender()));
+        }
+        if (search.minAge() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(c.get("age"), search.minAge()));
+        }
+        if (search.maxAge() != null) {
+            predicates.add(cb.lessThanOrEqualTo(c.get("age"), search.maxAge()));
+        }
+        if (search.namePrefix() != null) {
+            predicates.add(cb.like(cb.lower(c.get("name")), CustomerSearch.likePrefix(search.namePrefix()), '\\'));
+        }
+        if (search.emailPrefix() != null) {
+            predicates.add(cb.like(cb.lower(c.get("email")), CustomerSearch.likePrefix(search.emailPrefix()), '\\'));
+        }
+
+        Expression<?> sortKey = c.get(search.sort().column());
+        Expression<?> id = c.get("id");
+        query.select(profile(cb, c, projection))
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(search.descending()
+                        ? List.of(cb.desc(sortKey), cb.desc(id))
+                        : List.of(cb.asc(sortKey), cb.asc(id)));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(search.offset())
+                .setMaxResults(search.limit())
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit) {
+        // the trigram operators have no JPQL form; the statement is the JDBC one
+        var sql = """
+                SELECT id, name, email, age, gender, name <-> ?1 AS distance
+                FROM customer
+                WHERE name %% ?1
+                %s
+                ORDER BY name <-> ?1, id
+                LIMIT ?2
+                """.formatted(after == null ? "" : "AND (name <-> ?1, id) > (?3, ?4)");
+
+        var query = entityManager.createNativeQuery(sql)
+                .setParameter(1, name)
+                .setParameter(2, limit);
+        if (after != null) {
+            query.setParameter(3, after.distance())
+                    .setParameter(4, after.id());
+        }
+
+        return ((List<Object[]>) query.getResultList())
+                .stream()
+                .map(row -> new CustomerNameMatch(
+                        new CustomerProfile(
+                                ((Number) row[0]).intValue(),
+                                (String) row[1],
+                                (String) row[2],
+                                (Integer) row[3],
+                                Gender.valueOf((String) row[4])),
+                        ((Number) row[5]).floatValue()))
+                .toList();
+    }
+
     @Override
     public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+        try {
+            customerRepository.saveAndFlush(customer);
+        } catch (DataIntegrityViolationException e) {
+            if (isUniqueViolation(e)) {
+                throw new DuplicateResourceException("email already taken");
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        // saveAll is one transaction, so the batch commits whole or not at all. An email
+        // taken since the caller checked fails it; the batch then goes again once,
+        // without the addresses taken by now
+        try {
+            customerRepository.saveAll(customers);
+            return Set.of();
+        } catch (DataIntegrityViolationException e) {
+            if (!isUniqueViolation(e)) {
+                throw e;
+            }
+        }
+        Set<String> taken = selectExistingEmails(customers.stream().map(Customer::getEmail).toList());
+        // the rolled back attempt left its generated ids behind
+        customers.forEach(customer -> customer.setId(null));
+        customerRepository.saveAll(customers.stream()
+                .filter(customer -> !taken.contains(customer.getEmail().toLowerCase(Locale.ROOT)))
+                .toList());
+        return taken;
     }
 
     @Override
@@ -36,22 +288,173 @@ public class CustomerJPADataAccessService implements CustomerDao {
     }
 
     @Override
-    public void deleteCustomerById(Integer customerId) {
-        customerRepository.deleteById(customerId);
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return customerRepository.findExistingEmails(emails.stream()
+                .map(email -> email.toLowerCase(Locale.ROOT))
+                .toList());
+    }
+
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Optional<Customer> deleteCustomerById(Integer customerId) {
+        // one statement that hands back the row it removed, instead of a load and a delete;
+        // rows rather than an entity, so the deleted customer is neither managed nor cached
+        var sql = """
+                DELETE
+                FROM customer
+                WHERE id = ?1
+                RETURNING id, name, email, password, age, gender
+                """;
+        Optional<Customer> deleted = ((List<Object[]>) entityManager.createNativeQuery(sql)
+                .setParameter(1, customerId)
+                .getResultList())
+                .stream()
+                .findFirst()
+                .map(row -> new Customer(
+                        ((Number) row[0]).intValue(),
+                        (String) row[1],
+                        (String) row[2],
+                        (String) row[3],
+                        (Integer) row[4],
+                        Gender.valueOf((String) row[5])));
+        // Hibernate does not see native writes; the CustomerChangedEvent evicts again after commit
+        deleted.ifPresent(customer -> secondLevelCache().evictEntityData(Customer.class, customerId));
+        return deleted;
     }
 
     @Override
     public boolean existsPersonWithId(Integer id) {
-        return customerRepository.existsCustomerById(id);
+        // answered from the second level cache for customers read recently
+        return customerRepository.findById(id).isPresent();
     }
 
     @Override
-    public void updateCustomer(Customer update) {
-        customerRepository.save(update);
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update) {
+        List<String> columns = new ArrayList<>(3);
+        List<Object> values = new ArrayList<>(3);
+        if (update.name() != null) {
+            columns.add("name");
+            values.add(update.name());
+        }
+        if (update.email() != null) {
+            columns.add("email");
+            values.add(update.email());
+        }
+        if (update.age() != null) {
+            columns.add("age");
+            values.add(update.age());
+        }
+
+        if (columns.isEmpty()) {
+            return customerRepository.findById(customerId)
+                    .map(customer -> new CustomerUpdate(customer.getEmail(), false));
+        }
+
+        // the JDBC statement: the locked row before the update, joined with the update
+        // itself, which only writes when a given field differs
+        var sql = """
+                WITH previous AS (
+                    SELECT id, email FROM customer WHERE id = ?1 FOR UPDATE
+                ), updated AS (
+                    UPDATE customer c SET %s
+                    FROM previous
+                    WHERE c.id = previous.id AND (%s)
+                    RETURNING c.id
+                )
+                SELECT previous.email, updated.id IS NOT NULL AS changed
+                FROM previous LEFT JOIN updated ON true
+                """.formatted(
+                IntStream.range(0, columns.size())
+                        .mapToObj(i -> "%s = ?%d".formatted(columns.get(i), i + 2))
+                        .collect(Collectors.joining(", ")),
+                IntStream.range(0, columns.size())
+                        .mapToObj(i -> "c.%s IS DISTINCT FROM ?%d".formatted(columns.get(i), i + 2))
+                        .collect(Collectors.joining(" OR ")));
+
+        var query = entityManager.createNativeQuery(sql).setParameter(1, customerId);
+        for (int i = 0; i < values.size(); i++) {
+            query.setParameter(i + 2, values.get(i));
+        }
+
+        Optional<CustomerUpdate> result;
+        try {
+            result = ((List<Object[]>) query.getResultList())
+                    .stream()
+                    .findFirst()
+                    .map(row -> new CustomerUpdate((String) row[0], (Boolean) row[1]));
+        } catch (PersistenceException e) {
+            if (isUniqueViolation(e)) {
+                throw new DuplicateResourceException("email already taken");
+            }
+            throw e;
+        }
+        if (result.isPresent() && result.get().changed()) {
+            secondLevelCache().evictEntityData(Customer.class, customerId);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public void updateCustomerPassword(Integer customerId, String passwordHash) {
+        // an entity update rather than a bulk one, which would empty the whole customer region
+        customerRepository.findById(customerId)
+                .ifPresent(customer -> customer.setPassword(passwordHash));
     }
 
     @Override
     public Optional<Customer> selectUserByEmail(String email) {
-        return customerRepository.findCustomerByEmail(email);
+        String key = email.toLowerCase(Locale.ROOT);
+        Integer id = (Integer) idsByEmail.getFromCache(key, null);
+        if (id != null) {
+            Optional<Customer> customer = customerRepository.findById(id);
+            if (customer.isPresent() && customer.get().getEmail().equalsIgnoreCase(email)) {
+                emailHits.increment();
+                return customer;
+            }
+            // changed its address or was deleted since
+            idsByEmail.evictData(key);
+        }
+        emailMisses.increment();
+        Optional<Customer> customer = customerRepository.findCustomerByEmail(email);
+        customer.ifPresent(c -> idsByEmail.putIntoCache(key, c.getId(), null));
+        return customer;
+    }
+
+    // Hibernate keeps the second level cache in step with writes made through it;
+    // this covers writes on other instances, see CustomerInvalidationBus
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        secondLevelCache().evictEntityData(Customer.class, event.customerId());
+    }
+
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        secondLevelCache().evictAllRegions();
+        idsByEmail.evictData();
+    }
+
+    private static boolean isUniqueViolation(RuntimeException e) {
+        return NestedExceptionUtils.getMostSpecificCause(e) instanceof SQLException sqlException
+                && UNIQUE_VIOLATION.equals(sqlException.getSQLState());
+    }
+
+    private Cache secondLevelCache() {
+        return entityManager.getEntityManagerFactory().getCache().unwrap(Cache.class);
+    }
+
+    // the constructor projection with typed nulls in place of the columns left out,
+    // so the statement does not select them
+    private static CompoundSelection<CustomerProfile> profile(CriteriaBuilder cb, Root<Customer> c,
+                                                              CustomerProjection projection) {
+        return cb.construct(CustomerProfile.class,
+                c.get("id"),
+                projection.name() ? c.get("name") : cb.nullLiteral(String.class),
+                projection.email() ? c.get("email") : cb.nullLiteral(String.class),
+                projection.age() ? c.get("age") : cb.nullLiteral(Integer.class),
+                projection.gender() ? c.get("gender") : cb.nullLiteral(Gender.class));
     }
 }
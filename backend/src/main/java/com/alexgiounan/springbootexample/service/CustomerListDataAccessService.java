@@ -1,85 +1,398 @@
 package com.alexgiounan.springbootexample.service;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
 import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
 import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-
+// Reads never lock: they go through the indexes and get a copy of the stored
+// customer, which is never mutated in place. Writes to the same id are
+// serialised on a lock stripe; email uniqueness is claimed with putIfAbsent.
+// Indexes may briefly point at a customer mid-update, so every read through one
+// checks the customer it finds.
 @Repository("list")
 public class CustomerListDataAccessService implements CustomerDao {
 
-    //db
-    private static final List<Customer> customers;
+    private static final int LOCK_STRIPES = 64;
 
-    static {
-        customers = new ArrayList<>();
+    private final Map<Integer, Customer> customersById = new ConcurrentHashMap<>();
+    // lower-cased email -> id, ordered for prefix searches
+    private final NavigableMap<String, Integer> idsByEmail = new ConcurrentSkipListMap<>();
+    // ordered ids for keyset paging
+    private final NavigableSet<Integer> ids = new ConcurrentSkipListSet<>();
+    // age in the high half, id in the low half, for age range searches
+    private final NavigableSet<Long> idsByAge = new ConcurrentSkipListSet<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
 
-        Customer alex = new Customer(
-                1,
-                "Alex",
-                "alex@gmail.com",
-                "password", 26,
-                Gender.MALE);
-        customers.add(alex);
+    public CustomerListDataAccessService() {
+        this(List.of(
+                new Customer(
+                        1,
+                        "Alex",
+                        "alex@gmail.com",
+                        "password", 26,
+                        Gender.MALE),
+                new Customer(2,
+                        "Mike",
+                        "mike@gmail.com",
+                        "password", 24,
+                        Gender.MALE)));
+    }
 
-        Customer mike = new Customer(2,
-                "Mike",
-                "mike@gmail.com",
-                "password", 24,
-                Gender.MALE);
-        customers.add(mike);
+    CustomerListDataAccessService(List<Customer> seed) {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        seed.forEach(this::insertCustomer);
     }
+
     @Override
     public List<Customer> selectAllCustomers() {
-        return customers;
+        return streamAllCustomers().toList();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return ids.tailSet(afterId, false)
+                .stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(CustomerListDataAccessService::copyOf)
+                .toList();
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return ids.stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .map(CustomerListDataAccessService::copyOf);
     }
 
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
-        return customers.stream()
-                .filter(c -> c.getId().equals(id))
-                .findFirst();
+        return Optional.ofNullable(customersById.get(id))
+                .map(CustomerListDataAccessService::copyOf);
+    }
+
+    // profiles are immutable, no copy needed
+
+    @Override
+    public List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection) {
+        return streamAllCustomerProfiles().map(projection::apply).toList();
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection) {
+        return ids.tailSet(afterId, false)
+                .stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(CustomerProfile::of)
+                .map(projection::apply)
+                .toList();
+    }
+
+    @Override
+    public Stream<CustomerProfile> streamAllCustomerProfiles() {
+        return ids.stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .map(CustomerProfile::of);
+    }
+
+    @Override
+    public Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection) {
+        return Optional.ofNullable(customersById.get(id))
+                .map(CustomerProfile::of)
+                .map(projection::apply);
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .map(CustomerProfile::of)
+                .toList();
+    }
+
+    @Override
+    public List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection) {
+        return candidates(search)
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .map(CustomerProfile::of)
+                .filter(search::matches)
+                .sorted(search.order())
+                .skip(search.offset())
+                .limit(search.limit())
+                .map(projection::apply)
+                .toList();
+    }
+
+    // a scan with pg_trgm's similarity computed in Java, good enough for a store that
+    // fits in memory
+    @Override
+    public List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit) {
+        Set<String> query = TrigramSimilarity.trigrams(name);
+        return customersById.values()
+                .stream()
+                .flatMap(customer -> {
+                    float similarity = TrigramSimilarity.similarity(
+                            query, TrigramSimilarity.trigrams(customer.getName()));
+                    return similarity < TrigramSimilarity.THRESHOLD
+                            ? Stream.empty()
+                            : Stream.of(new CustomerNameMatch(CustomerProfile.of(customer), 1 - similarity));
+                })
+                .filter(match -> after == null || match.isAfter(after))
+                .sorted(CustomerNameMatch.ORDER)
+                .limit(limit)
+                .toList();
     }
 
     @Override
     public void insertCustomer(Customer customer) {
-        customers.add(customer);
+        Integer id = customer.getId();
+        if (id == null) {
+            id = lastId.incrementAndGet();
+        } else {
+            lastId.accumulateAndGet(id, Math::max);
+        }
+
+        claimEmail(customer.getEmail(), id);
+        customer.setId(id);
+        customersById.put(id, copyOf(customer));
+        ids.add(id);
+        indexAge(customer.getAge(), id);
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        Set<String> taken = new HashSet<>();
+        for (Customer customer : customers) {
+            try {
+                insertCustomer(customer);
+            } catch (DuplicateResourceException e) {
+                taken.add(normalize(customer.getEmail()));
+            }
+        }
+        return taken;
     }
 
     @Override
     public boolean existsCustomerWithEmail(String email) {
-        return customers.stream()
-                .anyMatch(c -> c.getEmail().equals(email));
+        return idsByEmail.containsKey(normalize(email));
     }
 
     @Override
-    public void deleteCustomerById(Integer customerId) {
-        customers.stream()
-                .filter(c -> c.getId().equals(customerId))
-                .findFirst()
-                .ifPresent(customers::remove);
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return emails.stream()
+                .map(CustomerListDataAccessService::normalize)
+                .filter(idsByEmail::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Optional<Customer> deleteCustomerById(Integer customerId) {
+        ReentrantLock lock = lockFor(customerId);
+        lock.lock();
+        try {
+            Customer removed = customersById.remove(customerId);
+            if (removed != null) {
+                ids.remove(customerId);
+                idsByEmail.remove(normalize(removed.getEmail()), customerId);
+                unindexAge(removed.getAge(), customerId);
+            }
+            return Optional.ofNullable(removed);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean existsPersonWithId(Integer id) {
-        return customers.stream()
-                .anyMatch(c -> c.getId().equals(id));
+        return customersById.containsKey(id);
     }
 
     @Override
-    public void updateCustomer(Customer customer) {
-        customers.add(customer);
+    public Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update) {
+        ReentrantLock lock = lockFor(customerId);
+        lock.lock();
+        try {
+            Customer current = customersById.get(customerId);
+            if (current == null) {
+                return Optional.empty();
+            }
+            Customer updated = copyOf(current);
+            boolean changed = update.applyTo(updated);
+            if (changed) {
+                replace(current, updated);
+            }
+            return Optional.of(new CustomerUpdate(current.getEmail(), changed));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateCustomerPassword(Integer customerId, String passwordHash) {
+        ReentrantLock lock = lockFor(customerId);
+        lock.lock();
+        try {
+            customersById.computeIfPresent(customerId, (id, current) -> {
+                Customer updated = copyOf(current);
+                updated.setPassword(passwordHash);
+                return updated;
+            });
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public Optional<Customer> selectUserByEmail(String email) {
-        return customers.stream()
-                .filter(c -> c.getUsername().equals(email))
-                .findFirst();
+        String key = normalize(email);
+        Integer id = idsByEmail.get(key);
+        if (id == null) {
+            return Optional.empty();
+        }
+        // the index can briefly point at a customer whose email is being changed
+        return Optional.ofNullable(customersById.get(id))
+                .filter(c -> normalize(c.getEmail()).equals(key))
+                .map(CustomerListDataAccessService::copyOf);
+    }
+
+    // stores customer as it is, password included; for replaying a log
+    void replaceCustomer(Customer customer) {
+        Integer id = customer.getId();
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Customer current = customersById.get(id);
+            if (current != null) {
+                replace(current, copyOf(customer));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the highest id handed out, deleted or not
+    int lastId() {
+        return lastId.get();
+    }
+
+    // ids up to lastId are never handed out again; for replaying a log
+    void reserveIdsUpTo(int lastId) {
+        this.lastId.accumulateAndGet(lastId, Math::max);
+    }
+
+    int size() {
+        return customersById.size();
+    }
+
+    // under the id's lock
+    private void replace(Customer current, Customer updated) {
+        Integer id = current.getId();
+        String previousEmail = normalize(current.getEmail());
+        String email = normalize(updated.getEmail());
+        if (!email.equals(previousEmail)) {
+            claimEmail(updated.getEmail(), id);
+        }
+        if (!Objects.equals(current.getAge(), updated.getAge())) {
+            indexAge(updated.getAge(), id);
+        }
+        customersById.put(id, updated);
+        if (!email.equals(previousEmail)) {
+            idsByEmail.remove(previousEmail, id);
+        }
+        if (!Objects.equals(current.getAge(), updated.getAge())) {
+            unindexAge(current.getAge(), id);
+        }
+    }
+
+    // the ids worth looking at: the narrowest index range the filters allow
+    private Stream<Integer> candidates(CustomerSearch search) {
+        if (search.emailPrefix() != null) {
+            String prefix = normalize(search.emailPrefix());
+            return idsByEmail.subMap(prefix, prefix + Character.MAX_VALUE).values().stream();
+        }
+        if (search.minAge() != null || search.maxAge() != null) {
+            long from = ageKey(search.minAge() == null ? Integer.MIN_VALUE : search.minAge(), 0);
+            long to = ageKey(search.maxAge() == null ? Integer.MAX_VALUE : search.maxAge(), -1);
+            return idsByAge.subSet(from, true, to, true).stream()
+                    .map(key -> (int) key.longValue());
+        }
+        return ids.stream();
+    }
+
+    private void indexAge(Integer age, Integer id) {
+        if (age != null) {
+            idsByAge.add(ageKey(age, id));
+        }
+    }
+
+    private void unindexAge(Integer age, Integer id) {
+        if (age != null) {
+            idsByAge.remove(ageKey(age, id));
+        }
+    }
+
+    private static long ageKey(int age, int id) {
+        return ((long) age << 32) | (id & 0xFFFF_FFFFL);
+    }
+
+    private void claimEmail(String email, Integer id) {
+        Integer owner = idsByEmail.putIfAbsent(normalize(email), id);
+        if (owner != null && !owner.equals(id)) {
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    private ReentrantLock lockFor(Integer id) {
+        return locks[Math.floorMod(id.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static Customer copyOf(Customer customer) {
+        return new Customer(
+                customer.getId(),
+                customer.getName(),
+                customer.getEmail(),
+                customer.getPassword(),
+                customer.getAge(),
+                customer.getGender());
     }
 }
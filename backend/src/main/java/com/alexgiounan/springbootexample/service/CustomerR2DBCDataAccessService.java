@@ -0,0 +1,149 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dao.ReactiveCustomerDao;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository("r2dbc")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class CustomerR2DBCDataAccessService implements ReactiveCustomerDao {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        var sql = """
+                SELECT id, name, email, password, age, gender
+                FROM customer
+                """;
+        // demand-driven: rows are pulled from a portal as the subscriber requests them
+        return databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(CustomerR2DBCDataAccessService::toCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        var sql = """
+                SELECT id, name, email, password, age, gender
+                FROM customer
+                WHERE id > :afterId
+                ORDER BY id
+                LIMIT :limit
+                """;
+        return databaseClient.sql(sql)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(CustomerR2DBCDataAccessService::toCustomer)
+                .all();
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Integer id) {
+        var sql = """
+                SELECT id, name, email, password, age, gender
+                FROM customer
+                WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .map(CustomerR2DBCDataAccessService::toCustomer)
+                .one();
+    }
+
+    @Override
+    public Mono<Integer> insertCustomer(Customer customer) {
+        var sql = """
+                INSERT INTO customer(name, email, password, age, gender)
+                VALUES (:name, :email, :password, :age, :gender)
+                RETURNING id
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("password", customer.getPassword())
+                .bind("age", customer.getAge())
+                .bind("gender", customer.getGender().name())
+                .map(row -> row.get("id", Integer.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> existsCustomerWithEmail(String email) {
+        var sql = """
+                SELECT EXISTS(SELECT 1 FROM customer WHERE lower(email) = lower(:email))
+                """;
+        return databaseClient.sql(sql)
+                .bind("email", email)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Void> deleteCustomerById(Integer customerId) {
+        var sql = """
+                DELETE FROM customer WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> updateCustomer(Customer update) {
+        var sql = """
+                UPDATE customer SET name = :name, email = :email, age = :age WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", update.getName())
+                .bind("email", update.getEmail())
+                .bind("age", update.getAge())
+                .bind("id", update.getId())
+                .then();
+    }
+
+    @Override
+    public Mono<Void> updateCustomerPassword(Integer customerId, String passwordHash) {
+        var sql = """
+                UPDATE customer SET password = :password WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("password", passwordHash)
+                .bind("id", customerId)
+                .then();
+    }
+
+    @Override
+    public Mono<Customer> selectUserByEmail(String email) {
+        var sql = """
+                SELECT id, name, email, password, age, gender
+                FROM customer
+                WHERE lower(email) = lower(:email)
+                """;
+        return databaseClient.sql(sql)
+                .bind("email", email)
+                .map(CustomerR2DBCDataAccessService::toCustomer)
+                .one();
+    }
+
+    private static Customer toCustomer(Readable row) {
+        return new Customer(
+                row.get("id", Long.class).intValue(),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("password", String.class),
+                row.get("age", Integer.class),
+                Gender.valueOf(row.get("gender", String.class)));
+    }
+}
@@ -1,113 +1,497 @@
 package com.alexgiounan.springbootexample.service;
 
 import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerSearchRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
 import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
 import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
 import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dto.CustomerBatch;
 import com.alexgiounan.springbootexample.dto.CustomerDTO;
 import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchDTO;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchPage;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult;
+import com.alexgiounan.springbootexample.dto.CustomerSearchPage;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult.Status;
 import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
 import com.alexgiounan.springbootexample.exception.RequestValidationException;
 import com.alexgiounan.springbootexample.exception.ResourceNotFoundException;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Profile("!reactive")
 public class CustomerService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final int MAX_BATCH_SIZE = 5_000;
+
+    // deeper pages read and discard every row before them
+    private static final int MAX_SEARCH_OFFSET = 10_000;
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    private static final int MAX_NAME_QUERY_LENGTH = 100;
+
+    private static final int DEFAULT_SUGGESTIONS = 10;
+
+    private static final int MAX_SUGGESTIONS = 20;
+
+    // a registration batch hashes this many passwords per task, with at most this
+    // many tasks on the password lane at once, so logins queue behind a slice
+    // rather than behind the whole batch
+    private static final int HASHING_SLICE_SIZE = 16;
+
+    private static final int HASHING_SLICES_IN_FLIGHT = 2;
+
     private final CustomerDao customerDao;
 
     private final PasswordEncoder passwordEncoder;
 
     private final CustomerDTOMapper customerDTOMapper;
 
-    public CustomerService(@Qualifier("jpa")CustomerDao customerDao, PasswordEncoder passwordEncoder, CustomerDTOMapper customerDTOMapper) {
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    private final Executor taskExecutor;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ExistingEmailFilter existingEmails;
+
+    private final CustomerWriteBehindQueue writeBehind;
+
+    private final CustomerTypeahead typeahead;
+
+    private final int maxBatchGetSize;
+
+    public CustomerService(@Qualifier("coalescing") CustomerDao customerDao,
+                           PasswordEncoder passwordEncoder,
+                           CustomerDTOMapper customerDTOMapper,
+                           PasswordHashingExecutor passwordHashingExecutor,
+                           @Qualifier("applicationTaskExecutor") Executor taskExecutor,
+                           ApplicationEventPublisher eventPublisher,
+                           ExistingEmailFilter existingEmails,
+                           CustomerWriteBehindQueue writeBehind,
+                           CustomerTypeahead typeahead,
+                           @Value("${customer.batch-get.max-size:100}") int maxBatchGetSize) {
         this.customerDao = customerDao;
         this.passwordEncoder = passwordEncoder;
         this.customerDTOMapper = customerDTOMapper;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.taskExecutor = taskExecutor;
+        this.eventPublisher = eventPublisher;
+        this.existingEmails = existingEmails;
+        this.writeBehind = writeBehind;
+        this.typeahead = typeahead;
+        this.maxBatchGetSize = maxBatchGetSize;
     }
 
-    public List<CustomerDTO> getAllCustomers(){
-        return customerDao.selectAllCustomers()
+    // API reads go through the profile queries and never load password hashes;
+    // edits still queued on this instance are applied on top. A sparse read selects
+    // the columns its fields need and returns nothing else
+    public List<CustomerDTO> getAllCustomers(CustomerFields fields){
+        return customerDao.selectAllCustomerProfiles(fields.projection())
                 .stream()
-                .map(customerDTOMapper)
+                .map(writeBehind::overlay)
+                .map(customerDTOMapper::apply)
+                .map(fields::apply)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public void streamAllCustomers(Consumer<CustomerDTO> consumer){
+        try (Stream<CustomerProfile> customers = customerDao.streamAllCustomerProfiles()) {
+            customers.map(writeBehind::overlay).map(customerDTOMapper::apply).forEach(consumer);
+        }
+    }
+
+    public CustomerPage getCustomersPage(Integer after, int limit, CustomerFields fields){
+        if(limit < 1){
+            throw new RequestValidationException("limit must be greater than 0");
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        // fetch one extra row to know whether another page follows
+        List<CustomerProfile> rows = customerDao.selectCustomerProfilesAfter(
+                after == null ? 0 : after, pageSize + 1, fields.projection());
+
+        List<CustomerDTO> customers = rows.stream()
+                .limit(pageSize)
+                .map(writeBehind::overlay)
+                .map(customerDTOMapper::apply)
+                .map(fields::apply)
                 .collect(Collectors.toList());
+
+        Integer nextCursor = rows.size() > pageSize
+                ? customers.get(customers.size() - 1).id()
+                : null;
+
+        return new CustomerPage(customers, nextCursor);
     }
 
-    public CustomerDTO getCustomer(Integer id){
-        return customerDao.selectCustomerById(id)
-                .map(customerDTOMapper)
+    public CustomerDTO getCustomer(Integer id, CustomerFields fields){
+        return customerDao.selectCustomerProfileById(id, fields.projection())
+                .map(writeBehind::overlay)
+                .map(customerDTOMapper::apply)
+                .map(fields::apply)
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "customer with id [%s] not found".formatted(id)));
     }
 
-    public void addCustomer(CustomerRegistrationRequest customerRegistrationRequest){
-        //check if email exists
+    // one query for every id: the customers in the order asked for, each once,
+    // and the ids with no customer apart
+    public CustomerBatch getCustomers(List<Integer> ids){
+        if(ids.isEmpty() || ids.size() > maxBatchGetSize){
+            throw new RequestValidationException(
+                    "ids must have between 1 and %s entries".formatted(maxBatchGetSize));
+        }
+        if(ids.stream().anyMatch(Objects::isNull)){
+            throw new RequestValidationException("ids must not have empty entries");
+        }
+        Set<Integer> requested = new LinkedHashSet<>(ids);
+
+        Map<Integer, CustomerProfile> found = customerDao.selectCustomerProfilesByIds(requested)
+                .stream()
+                .collect(Collectors.toMap(CustomerProfile::id, Function.identity()));
+
+        List<CustomerDTO> customers = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : requested) {
+            CustomerProfile profile = found.get(id);
+            if(profile == null){
+                missing.add(id);
+            } else {
+                customers.add(customerDTOMapper.apply(writeBehind.overlay(profile)));
+            }
+        }
+        return new CustomerBatch(customers, missing);
+    }
+
+    public CustomerSearchPage searchCustomers(CustomerSearchRequest request, CustomerFields fields){
+        int offset = request.offset() == null ? 0 : request.offset();
+        int limit = request.limit() == null ? DEFAULT_SEARCH_LIMIT : request.limit();
+        if(limit < 1){
+            throw new RequestValidationException("limit must be greater than 0");
+        }
+        if(offset < 0 || offset > MAX_SEARCH_OFFSET){
+            throw new RequestValidationException(
+                    "offset must be between 0 and %s".formatted(MAX_SEARCH_OFFSET));
+        }
+        if(request.minAge() != null && request.maxAge() != null && request.minAge() > request.maxAge()){
+            throw new RequestValidationException("minAge must not be greater than maxAge");
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        // fetch one extra row to know whether another page follows
+        List<CustomerProfile> rows = customerDao.searchCustomerProfiles(new CustomerSearch(
+                request.minAge(),
+                request.maxAge(),
+                request.gender() == null ? null : parse(Gender.class, "gender", request.gender()),
+                blankToNull(request.name()),
+                blankToNull(request.email()),
+                request.sort() == null ? CustomerSearch.Sort.ID : parse(CustomerSearch.Sort.class, "sort", request.sort()),
+                isDescending(request.direction()),
+                offset,
+                pageSize + 1), fields.projection());
+
+        List<CustomerDTO> customers = rows.stream()
+                .limit(pageSize)
+                .map(writeBehind::overlay)
+                .map(customerDTOMapper::apply)
+                .map(fields::apply)
+                .collect(Collectors.toList());
+
+        Integer nextOffset = rows.size() > pageSize ? offset + pageSize : null;
+        return new CustomerSearchPage(customers, nextOffset);
+    }
+
+    // ranked by trigram similarity, so misspelled names still find the customer;
+    // the cursor is where the previous page ended
+    public CustomerNameMatchPage searchCustomersByName(String name, String cursor, Integer limit){
+        if(name == null || name.isBlank() || name.length() > MAX_NAME_QUERY_LENGTH){
+            throw new RequestValidationException(
+                    "name must have between 1 and %s characters".formatted(MAX_NAME_QUERY_LENGTH));
+        }
+        int pageSize = limit == null ? DEFAULT_SEARCH_LIMIT : limit;
+        if(pageSize < 1){
+            throw new RequestValidationException("limit must be greater than 0");
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        // fetch one extra row to know whether another page follows
+        List<CustomerNameMatch> rows = customerDao.searchCustomerProfilesByName(
+                name.trim(), cursor == null ? null : parseCursor(cursor), pageSize + 1);
+
+        List<CustomerNameMatchDTO> matches = rows.stream()
+                .limit(pageSize)
+                .map(match -> new CustomerNameMatchDTO(
+                        customerDTOMapper.apply(writeBehind.overlay(match.profile())),
+                        1 - match.distance()))
+                .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if(rows.size() > pageSize){
+            CustomerNameMatch.Cursor last = rows.get(pageSize - 1).cursor();
+            nextCursor = last.distance() + ":" + last.id();
+        }
+        return new CustomerNameMatchPage(matches, nextCursor);
+    }
+
+    // names and emails starting with the prefix, from memory; the prefix queries
+    // of the search answer while the typeahead index is not built
+    public List<CustomerSuggestion> suggestCustomers(String prefix, Integer limit){
+        if(prefix == null || prefix.isBlank() || prefix.length() > MAX_NAME_QUERY_LENGTH){
+            throw new RequestValidationException(
+                    "prefix must have between 1 and %s characters".formatted(MAX_NAME_QUERY_LENGTH));
+        }
+        int size = limit == null ? DEFAULT_SUGGESTIONS : limit;
+        if(size < 1){
+            throw new RequestValidationException("limit must be greater than 0");
+        }
+        int count = Math.min(size, MAX_SUGGESTIONS);
+        // a trailing space is typed on the way to the next word
+        String typed = prefix.stripLeading();
+
+        return typeahead.suggest(typed, count, () -> CustomerTypeahead.top(typed,
+                Stream.of(
+                                new CustomerSearch(null, null, null, typed, null, CustomerSearch.Sort.NAME, false, 0, count),
+                                new CustomerSearch(null, null, null, null, typed, CustomerSearch.Sort.EMAIL, false, 0, count))
+                        .flatMap(search -> customerDao.searchCustomerProfiles(search).stream())
+                        .map(profile -> new CustomerSuggestion(profile.id(), profile.name(), profile.email()))
+                        .toList(),
+                count));
+    }
+
+    // completes with the new customer's id
+    public CompletableFuture<Integer> addCustomer(CustomerRegistrationRequest customerRegistrationRequest){
+        // the insert detects a taken email itself; this only spares hashing a password for nothing,
+        // and costs no query unless the filter knows the address
         String email = customerRegistrationRequest.email();
-        if(customerDao.existsCustomerWithEmail(email)){
+        if(existingEmails.exists(email, customerDao::existsCustomerWithEmail)){
             throw new DuplicateResourceException(
                     "email already taken"
             );
         }
-        // add
-        Customer customer = new Customer(
-                customerRegistrationRequest.name(),
-                customerRegistrationRequest.email(),
-                passwordEncoder.encode(customerRegistrationRequest.password()),
-                customerRegistrationRequest.age(),
-                customerRegistrationRequest.gender()
-        );
+        // hash on the password lane, then add and notify the listeners off it
+        return passwordHashingExecutor.submit(() -> passwordEncoder.encode(customerRegistrationRequest.password()))
+                .thenApplyAsync(passwordHash -> {
+                    Customer customer = new Customer(
+                            customerRegistrationRequest.name(),
+                            customerRegistrationRequest.email(),
+                            passwordHash,
+                            customerRegistrationRequest.age(),
+                            customerRegistrationRequest.gender()
+                    );
+                    customerDao.insertCustomer(customer);
+                    eventPublisher.publishEvent(new CustomerAddedEvent(email));
+                    return customer.getId();
+                }, taskExecutor);
+    }
+
+    public List<CustomerRegistrationResult> addCustomers(List<CustomerRegistrationRequest> requests){
+        if(requests.size() > MAX_BATCH_SIZE){
+            throw new RequestValidationException(
+                    "batch size must not exceed %s".formatted(MAX_BATCH_SIZE));
+        }
+
+        CustomerRegistrationResult[] results = new CustomerRegistrationResult[requests.size()];
+        List<Integer> accepted = new ArrayList<>();
+        Set<String> batchEmails = new HashSet<>();
 
-        customerDao.insertCustomer(customer);
+        for (int i = 0; i < requests.size(); i++) {
+            CustomerRegistrationRequest request = requests.get(i);
+            if(request.name() == null || request.email() == null || request.password() == null
+                    || request.age() == null || request.gender() == null){
+                results[i] = new CustomerRegistrationResult(i, request.email(), Status.INVALID,
+                        "name, email, password, age and gender are required");
+            } else if(!batchEmails.add(request.email().toLowerCase(Locale.ROOT))){
+                results[i] = new CustomerRegistrationResult(i, request.email(), Status.DUPLICATE,
+                        "email repeated in batch");
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        // one set based lookup instead of an exists query per customer
+        Set<String> taken = accepted.isEmpty()
+                ? Set.of()
+                : existingEmails.existing(batchEmails, customerDao::selectExistingEmails);
+
+        List<Integer> fresh = new ArrayList<>(accepted.size());
+        for (Integer i : accepted) {
+            if(taken.contains(requests.get(i).email().toLowerCase(Locale.ROOT))){
+                results[i] = new CustomerRegistrationResult(i, requests.get(i).email(), Status.DUPLICATE,
+                        "email already taken");
+            } else {
+                fresh.add(i);
+            }
+        }
+
+        List<String> passwordHashes = encodePasswords(fresh.stream()
+                .map(i -> requests.get(i).password())
+                .toList());
+
+        List<Customer> customers = new ArrayList<>(fresh.size());
+        for (int j = 0; j < fresh.size(); j++) {
+            CustomerRegistrationRequest request = requests.get(fresh.get(j));
+            customers.add(new Customer(
+                    request.name(),
+                    request.email(),
+                    passwordHashes.get(j),
+                    request.age(),
+                    request.gender()
+            ));
+        }
+
+        // the insert is all or nothing; emails taken since the lookup leave out
+        // only their own customers
+        Set<String> takenSince;
+        try {
+            takenSince = customers.isEmpty() ? Set.of() : customerDao.insertCustomers(customers);
+        } catch (DataAccessException e) {
+            for (Integer i : fresh) {
+                results[i] = new CustomerRegistrationResult(i, requests.get(i).email(), Status.FAILED,
+                        "could not store customer");
+            }
+            return List.of(results);
+        }
+        for (Integer i : fresh) {
+            String email = requests.get(i).email();
+            if(takenSince.contains(email.toLowerCase(Locale.ROOT))){
+                results[i] = new CustomerRegistrationResult(i, email, Status.DUPLICATE, "email already taken");
+            } else {
+                eventPublisher.publishEvent(new CustomerAddedEvent(email));
+                results[i] = new CustomerRegistrationResult(i, email, Status.CREATED, null);
+            }
+        }
+
+        return List.of(results);
     }
 
-    public void deleteCustomerById(Integer customerId){
-        if(!customerDao.existsPersonWithId(customerId)){
-            throw  new ResourceNotFoundException(
-                    "customer with id [%s] not found".formatted(customerId)
-            );
+    private List<String> encodePasswords(List<String> passwords){
+        List<String> passwordHashes = new ArrayList<>(passwords.size());
+        Deque<CompletableFuture<List<String>>> inFlight = new ArrayDeque<>();
+        for (int from = 0; from < passwords.size(); from += HASHING_SLICE_SIZE) {
+            // the next slice goes in only once the oldest is done, which keeps the hashes in order
+            if (inFlight.size() == HASHING_SLICES_IN_FLIGHT) {
+                passwordHashes.addAll(inFlight.removeFirst().join());
+            }
+            List<String> slice = passwords.subList(from, Math.min(from + HASHING_SLICE_SIZE, passwords.size()));
+            inFlight.addLast(passwordHashingExecutor.submit(() -> slice.stream()
+                    .map(passwordEncoder::encode)
+                    .toList()));
         }
+        while (!inFlight.isEmpty()) {
+            passwordHashes.addAll(inFlight.removeFirst().join());
+        }
+        return passwordHashes;
+    }
+
+    public void deleteCustomerById(Integer customerId){
+        Customer deleted = customerDao.deleteCustomerById(customerId)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(customerId)));
 
-        customerDao.deleteCustomerById(customerId);
+        eventPublisher.publishEvent(new CustomerChangedEvent(customerId, deleted.getEmail()));
     }
 
 
     public void updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest) {
+        if(writeBehind.isEnabled()){
+            CustomerProfile current = customerDao.selectCustomerProfileById(customerId)
+                    .map(writeBehind::overlay)
+                    .orElseThrow(() -> new ResourceNotFoundException(
+                            "customer with id [%s] not found".formatted(customerId)));
+            // an edit keeping the email cannot collide with another customer and can wait
+            if(updateRequest.email() == null || updateRequest.email().equals(current.email())){
+                if(!updateRequest.changes(current)){
+                    throw  new RequestValidationException("no data changes found");
+                }
+                if(writeBehind.enqueue(customerId, updateRequest)){
+                    return;
+                }
+            }
+            writeBehind.flush(customerId);
+        }
 
-        Customer customer = customerDao.selectCustomerById(customerId)
+        // a taken email is reported by the update itself; a change of case only
+        // does not collide with the customer's own address
+        CustomerUpdate update = customerDao.updateCustomer(customerId, updateRequest)
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "customer with id [%s] not found".formatted(customerId)));
 
-        boolean changes = false;
-
-        if(updateRequest.name() != null && !updateRequest.name().equals(customer.getName())){
-            customer.setName(updateRequest.name());
-            changes = true;
+        if(!update.changed()){
+            throw  new RequestValidationException("no data changes found");
         }
 
-        if(updateRequest.age() != null && !updateRequest.age().equals(customer.getAge())){
-            customer.setAge(updateRequest.age());
-            changes = true;
+        eventPublisher.publishEvent(new CustomerChangedEvent(customerId, update.previousEmail()));
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String parameter, String value){
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestValidationException("unknown %s [%s]".formatted(parameter, value));
         }
+    }
 
-        if(updateRequest.email() != null && !updateRequest.email().equals(customer.getEmail())){
-            if(customerDao.existsCustomerWithEmail(updateRequest.email())){
-                throw new DuplicateResourceException(
-                        "email already taken"
-                );
-            }
-            customer.setEmail(updateRequest.email());
-            changes = true;
+    private static CustomerNameMatch.Cursor parseCursor(String cursor){
+        int separator = cursor.lastIndexOf(':');
+        try {
+            return new CustomerNameMatch.Cursor(
+                    Float.parseFloat(cursor.substring(0, separator)),
+                    Integer.parseInt(cursor.substring(separator + 1)));
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new RequestValidationException("invalid cursor [%s]".formatted(cursor));
         }
+    }
 
-        if(!changes){
-            throw  new RequestValidationException("no data changes found");
+    private static boolean isDescending(String direction){
+        if(direction == null || direction.equalsIgnoreCase("asc")){
+            return false;
+        }
+        if(direction.equalsIgnoreCase("desc")){
+            return true;
         }
+        throw new RequestValidationException("direction must be asc or desc");
+    }
 
-        customerDao.updateCustomer(customer);
+    private static String blankToNull(String value){
+        return value == null || value.isBlank() ? null : value;
     }
 }
@@ -0,0 +1,316 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// As-you-type suggestions over customer names and emails, answered from memory:
+// a TypeaheadIndex built by streaming the customer table at startup, and beside
+// it the customers changed since, read back from the table on the index's own
+// thread after CustomerAddedEvent and CustomerChangedEvent, local or from other
+// instances. Once there are compact-after changes they are folded into a new
+// index off the request path.
+// Until the index is built, and again after changes may have been missed,
+// suggestions come from the database.
+@Slf4j
+@Component
+@Profile("!reactive")
+public class CustomerTypeahead implements DisposableBean {
+
+    private static final long RETRY_AFTER_SECONDS = 30;
+
+    private static final RowMapper<TypeaheadIndex.Entry> ENTRY = (rs, rowNum) ->
+            new TypeaheadIndex.Entry(rs.getInt("id"), rs.getString("name"), rs.getString("email"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final int compactAfter;
+    private final ScheduledExecutorService builder;
+
+    // null until built and while a rebuild after missed changes runs
+    private volatile TypeaheadIndex index;
+    private volatile boolean building;
+    // customers changed since the index was built, by id; empty once deleted
+    private final Map<Integer, Optional<TypeaheadIndex.Entry>> changes = new ConcurrentHashMap<>();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private long invalidations;
+
+    private final Counter indexLookups;
+    private final Counter databaseLookups;
+    private final Counter rebuilds;
+    private final Counter rebuildFailures;
+
+    @Autowired
+    public CustomerTypeahead(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${customer.typeahead.compact-after:1000}") int compactAfter,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        this.compactAfter = compactAfter;
+
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("typeahead-");
+        threads.setDaemon(true);
+        this.builder = Executors.newSingleThreadScheduledExecutor(threads);
+
+        this.indexLookups = meterRegistry.counter("customer.typeahead.lookups", "result", "index");
+        this.databaseLookups = meterRegistry.counter("customer.typeahead.lookups", "result", "database");
+        this.rebuilds = meterRegistry.counter("customer.typeahead.rebuilds", "result", "success");
+        this.rebuildFailures = meterRegistry.counter("customer.typeahead.rebuilds", "result", "failure");
+        Gauge.builder("customer.typeahead.ready", this, t -> t.index == null ? 0 : 1)
+                .register(meterRegistry);
+        Gauge.builder("customer.typeahead.entries", this, t -> t.index == null ? 0 : t.index.size())
+                .register(meterRegistry);
+        Gauge.builder("customer.typeahead.changes", this, t -> t.changes.size())
+                .register(meterRegistry);
+        Gauge.builder("customer.typeahead.index.size", this, t -> t.index == null ? 0 : t.index.bytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // the database answers while there is no index
+    public List<CustomerSuggestion> suggest(String prefix, int limit, Supplier<List<CustomerSuggestion>> database) {
+        TypeaheadIndex current = index;
+        if (current == null) {
+            databaseLookups.increment();
+            return database.get();
+        }
+        indexLookups.increment();
+        List<CustomerSuggestion> candidates = new ArrayList<>();
+        for (TypeaheadIndex.Field field : TypeaheadIndex.Field.values()) {
+            int[] found = {0};
+            current.prefixed(field, prefix, position -> {
+                // a changed customer is suggested as it is now, from the changes
+                if (!changes.containsKey(current.id(position))) {
+                    candidates.add(suggestion(current.entry(position)));
+                    found[0]++;
+                }
+                return found[0] < limit;
+            });
+        }
+        changes.values().forEach(change -> change.map(CustomerTypeahead::suggestion).ifPresent(candidates::add));
+        return top(prefix, candidates, limit);
+    }
+
+    // ranked by the name or email starting with the prefix, case folded, then by id;
+    // a customer matching by both is suggested once
+    public static List<CustomerSuggestion> top(String prefix, Collection<CustomerSuggestion> candidates, int limit) {
+        String folded = TypeaheadIndex.fold(prefix);
+        record Ranked(String key, CustomerSuggestion suggestion) {
+        }
+        List<Ranked> ranked = new ArrayList<>(candidates.size());
+        for (CustomerSuggestion candidate : candidates) {
+            String name = TypeaheadIndex.fold(candidate.name());
+            String email = TypeaheadIndex.fold(candidate.email());
+            if (name.startsWith(folded) && (!email.startsWith(folded) || name.compareTo(email) <= 0)) {
+                ranked.add(new Ranked(name, candidate));
+            } else if (email.startsWith(folded)) {
+                ranked.add(new Ranked(email, candidate));
+            }
+        }
+        ranked.sort(Comparator.comparing(Ranked::key).thenComparing(r -> r.suggestion().id()));
+
+        Set<Integer> suggested = new HashSet<>();
+        List<CustomerSuggestion> top = new ArrayList<>(limit);
+        for (Ranked r : ranked) {
+            if (top.size() == limit) {
+                break;
+            }
+            if (suggested.add(r.suggestion().id())) {
+                top.add(r.suggestion());
+            }
+        }
+        return top;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestRebuild();
+    }
+
+    // the customer is read back on the builder, not on the thread that made the change
+    @EventListener
+    public void onCustomerAdded(CustomerAddedEvent event) {
+        if (index != null || building) {
+            builder.execute(() -> refresh(() -> jdbcTemplate.query(
+                            "SELECT id, name, email FROM customer WHERE lower(email) = lower(?)",
+                            ENTRY, event.email())
+                    .forEach(entry -> changes.put(entry.id(), Optional.of(entry)))));
+        }
+    }
+
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        if (index != null || building) {
+            builder.execute(() -> refresh(() -> changes.put(event.customerId(), jdbcTemplate.query(
+                    "SELECT id, name, email FROM customer WHERE id = ?", ENTRY, event.customerId())
+                    .stream()
+                    .findFirst())));
+        }
+    }
+
+    // changes may have been missed: the index could suggest what is gone or miss what is new
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        invalidate();
+    }
+
+    @Override
+    public void destroy() {
+        builder.shutdownNow();
+    }
+
+    boolean isReady() {
+        return index != null;
+    }
+
+    void rebuild() {
+        long start = System.nanoTime();
+        long seen;
+        synchronized (this) {
+            seen = invalidations;
+        }
+        // set before reading the table: a customer changed after the read started
+        // is announced by an event that arrives after this point
+        building = true;
+        try {
+            List<TypeaheadIndex.Entry> entries = new ArrayList<>();
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("SELECT id, name, email FROM customer");
+                statement.setFetchSize(1_000);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> entries.add(ENTRY.mapRow(resultSet, 0))));
+            TypeaheadIndex next = TypeaheadIndex.of(entries);
+            synchronized (this) {
+                // changes were missed while reading, the rebuild queued since takes over
+                if (seen != invalidations) {
+                    return;
+                }
+                index = next;
+            }
+            rebuilds.increment();
+            log.info("Typeahead index built: {} customers, {} KiB in {} ms",
+                    next.size(), next.bytes() / 1024,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            requestCompaction();
+        } catch (RuntimeException e) {
+            rebuildFailures.increment();
+            log.warn("Could not build the typeahead index, suggestions come from the database; retrying in {}s",
+                    RETRY_AFTER_SECONDS, e);
+            builder.schedule(this::requestRebuild, RETRY_AFTER_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            building = false;
+        }
+    }
+
+    // the index with the changes folded in; no query
+    void compact() {
+        TypeaheadIndex current = index;
+        if (current == null) {
+            return;
+        }
+        Map<Integer, Optional<TypeaheadIndex.Entry>> folded = new HashMap<>(changes);
+        List<TypeaheadIndex.Entry> entries = new ArrayList<>(current.size() + folded.size());
+        for (int position = 0; position < current.size(); position++) {
+            if (!folded.containsKey(current.id(position))) {
+                entries.add(current.entry(position));
+            }
+        }
+        folded.values().forEach(change -> change.ifPresent(entries::add));
+        TypeaheadIndex next = TypeaheadIndex.of(entries);
+        synchronized (this) {
+            // invalidated meanwhile: the changes are gone and a rebuild is on its way
+            if (index != current) {
+                return;
+            }
+            index = next;
+        }
+        // a customer changed again while folding keeps its newer change
+        folded.forEach(changes::remove);
+    }
+
+    // runs after the rebuild that was under way when the change was announced
+    private void refresh(Runnable read) {
+        // invalidated meanwhile: the rebuild on its way reads the customer
+        if (index == null) {
+            return;
+        }
+        try {
+            read.run();
+        } catch (RuntimeException e) {
+            log.warn("Could not read a changed customer, rebuilding the typeahead index", e);
+            invalidate();
+            return;
+        }
+        requestCompaction();
+    }
+
+    private void invalidate() {
+        synchronized (this) {
+            invalidations++;
+            index = null;
+            changes.clear();
+        }
+        requestRebuild();
+    }
+
+    private void requestRebuild() {
+        // a rebuild that has not started yet will see everything this one would
+        if (rebuildQueued.compareAndSet(false, true)) {
+            builder.execute(() -> {
+                rebuildQueued.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    private void requestCompaction() {
+        if (index != null && changes.size() >= compactAfter && compactionQueued.compareAndSet(false, true)) {
+            builder.execute(() -> {
+                compactionQueued.set(false);
+                compact();
+            });
+        }
+    }
+
+    private static CustomerSuggestion suggestion(TypeaheadIndex.Entry entry) {
+        return new CustomerSuggestion(entry.id(), entry.name(), entry.email());
+    }
+}
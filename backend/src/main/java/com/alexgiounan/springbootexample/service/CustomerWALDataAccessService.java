@@ -0,0 +1,343 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.service.WriteAheadLog.FsyncPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// The list store made durable: reads are served from memory, every mutation
+// is appended to a write-ahead log before the call returns, and the log is
+// compacted into a snapshot once it grows past customer.wal.snapshot-after.
+// A mutation the log fails to take is undone in memory before the error is thrown.
+@Slf4j
+@Repository("wal")
+@ConditionalOnProperty(name = "customer.wal.enabled", havingValue = "true")
+public class CustomerWALDataAccessService implements CustomerDao, DisposableBean {
+
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    private final CustomerListDataAccessService memory = new CustomerListDataAccessService(List.of());
+    // keeps the log in the order the mutations were applied to memory
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final ScheduledExecutorService background =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("customer-wal-"));
+    private final long snapshotAfterBytes;
+    private final WriteAheadLog writeAheadLog;
+
+    @Autowired
+    public CustomerWALDataAccessService(@Value("${customer.wal.directory:data/wal}") Path directory,
+                                        @Value("${customer.wal.fsync:grouped}") String fsync,
+                                        @Value("${customer.wal.fsync-interval:1s}") Duration fsyncInterval,
+                                        @Value("${customer.wal.snapshot-after:64MB}") DataSize snapshotAfter) {
+        this(directory,
+                FsyncPolicy.valueOf(fsync.toUpperCase(Locale.ROOT).replace('-', '_')),
+                fsyncInterval,
+                snapshotAfter.toBytes(),
+                REGION_SIZE);
+    }
+
+    CustomerWALDataAccessService(Path directory, FsyncPolicy fsyncPolicy, Duration fsyncInterval,
+                                 long snapshotAfterBytes, int regionSize) {
+        this.snapshotAfterBytes = snapshotAfterBytes;
+        long start = System.nanoTime();
+        try {
+            this.writeAheadLog = WriteAheadLog.open(directory, fsyncPolicy, regionSize, new WriteAheadLog.Replay() {
+                @Override
+                public void put(Customer customer) {
+                    upsert(customer);
+                }
+
+                @Override
+                public void delete(int customerId) {
+                    memory.deleteCustomerById(customerId);
+                }
+
+                @Override
+                public void lastId(int lastId) {
+                    memory.reserveIdsUpTo(lastId);
+                }
+            });
+        } catch (IOException e) {
+            background.shutdown();
+            throw new UncheckedIOException(e);
+        }
+        log.info("recovered {} customers from {} in {} ms",
+                memory.size(), directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            long millis = fsyncInterval.toMillis();
+            background.scheduleWithFixedDelay(writeAheadLog::flush, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        // compact what was just replayed, so the next start reads a single snapshot
+        if (writeAheadLog.replayedRecords() > 0) {
+            snapshot();
+        }
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return memory.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return memory.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return memory.streamAllCustomers();
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return memory.selectCustomerById(id);
+    }
+
+    @Override
+    public List<CustomerProfile> selectAllCustomerProfiles(CustomerProjection projection) {
+        return memory.selectAllCustomerProfiles(projection);
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesAfter(Integer afterId, int limit, CustomerProjection projection) {
+        return memory.selectCustomerProfilesAfter(afterId, limit, projection);
+    }
+
+    @Override
+    public List<CustomerProfile> searchCustomerProfiles(CustomerSearch search, CustomerProjection projection) {
+        return memory.searchCustomerProfiles(search, projection);
+    }
+
+    @Override
+    public List<CustomerNameMatch> searchCustomerProfilesByName(String name, CustomerNameMatch.Cursor after, int limit) {
+        return memory.searchCustomerProfilesByName(name, after, limit);
+    }
+
+    @Override
+    public Stream<CustomerProfile> streamAllCustomerProfiles() {
+        return memory.streamAllCustomerProfiles();
+    }
+
+    @Override
+    public Optional<CustomerProfile> selectCustomerProfileById(Integer id, CustomerProjection projection) {
+        return memory.selectCustomerProfileById(id, projection);
+    }
+
+    @Override
+    public List<CustomerProfile> selectCustomerProfilesByIds(Collection<Integer> ids) {
+        return memory.selectCustomerProfilesByIds(ids);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        if (!insertCustomers(List.of(customer)).isEmpty()) {
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    @Override
+    public Set<String> insertCustomers(List<Customer> customers) {
+        Set<String> taken = new HashSet<>();
+        long sequence = 0;
+        writeLock.lock();
+        try {
+            for (Customer customer : customers) {
+                try {
+                    memory.insertCustomer(customer);
+                } catch (DuplicateResourceException e) {
+                    taken.add(customer.getEmail().toLowerCase(Locale.ROOT));
+                    continue;
+                }
+                try {
+                    sequence = writeAheadLog.append(WriteAheadLog.put(customer, memory.lastId()));
+                } catch (RuntimeException e) {
+                    memory.deleteCustomerById(customer.getId());
+                    throw e;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        afterAppend(sequence);
+        return taken;
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return memory.existsCustomerWithEmail(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return memory.selectExistingEmails(emails);
+    }
+
+    @Override
+    public Optional<Customer> deleteCustomerById(Integer customerId) {
+        long sequence = 0;
+        Optional<Customer> deleted;
+        writeLock.lock();
+        try {
+            deleted = memory.deleteCustomerById(customerId);
+            if (deleted.isPresent()) {
+                try {
+                    sequence = writeAheadLog.append(WriteAheadLog.delete(customerId, memory.lastId()));
+                } catch (RuntimeException e) {
+                    memory.insertCustomer(deleted.get());
+                    throw e;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        afterAppend(sequence);
+        return deleted;
+    }
+
+    @Override
+    public boolean existsPersonWithId(Integer customerId) {
+        return memory.existsPersonWithId(customerId);
+    }
+
+    @Override
+    public Optional<CustomerUpdate> updateCustomer(Integer customerId, CustomerUpdateRequest update) {
+        long sequence = 0;
+        Optional<CustomerUpdate> result;
+        writeLock.lock();
+        try {
+            Optional<Customer> previous = memory.selectCustomerById(customerId);
+            result = memory.updateCustomer(customerId, update);
+            if (result.isPresent() && result.get().changed()) {
+                sequence = appendOrRestore(memory.selectCustomerById(customerId).orElseThrow(), previous.orElseThrow());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        afterAppend(sequence);
+        return result;
+    }
+
+    @Override
+    public void updateCustomerPassword(Integer customerId, String passwordHash) {
+        long sequence = 0;
+        writeLock.lock();
+        try {
+            Optional<Customer> previous = memory.selectCustomerById(customerId);
+            memory.updateCustomerPassword(customerId, passwordHash);
+            Optional<Customer> updated = memory.selectCustomerById(customerId);
+            if (updated.isPresent()) {
+                sequence = appendOrRestore(updated.get(), previous.orElseThrow());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        afterAppend(sequence);
+    }
+
+    @Override
+    public Optional<Customer> selectUserByEmail(String email) {
+        return memory.selectUserByEmail(email);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeAheadLog.close();
+    }
+
+    // writes the current state and drops the log generations it replaces
+    void snapshot() {
+        long generation;
+        List<Customer> customers;
+        int lastId;
+        writeLock.lock();
+        try {
+            generation = writeAheadLog.roll();
+            customers = memory.selectAllCustomers();
+            lastId = memory.lastId();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            writeAheadLog.writeSnapshot(generation, customers, lastId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // memory already holds updated; a change the log could not take is taken back
+    private long appendOrRestore(Customer updated, Customer previous) {
+        try {
+            return writeAheadLog.append(WriteAheadLog.put(updated, memory.lastId()));
+        } catch (RuntimeException e) {
+            memory.replaceCustomer(previous);
+            throw e;
+        }
+    }
+
+    private void afterAppend(long sequence) {
+        if (sequence == 0) {
+            return;
+        }
+        // outside the write lock, so concurrent writers can share a force
+        writeAheadLog.awaitDurable(sequence);
+        if (writeAheadLog.size() > snapshotAfterBytes && snapshotting.compareAndSet(false, true)) {
+            background.execute(() -> {
+                try {
+                    snapshot();
+                } catch (RuntimeException e) {
+                    log.error("customer snapshot failed, the log keeps growing until the next attempt", e);
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        }
+    }
+
+    private void upsert(Customer customer) {
+        if (memory.existsPersonWithId(customer.getId())) {
+            memory.replaceCustomer(customer);
+        } else {
+            memory.insertCustomer(customer);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateQueuedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Opt-in write-behind for profile edits. Autosaving forms send a PUT every few
+// seconds of typing, each a synchronous UPDATE of its own. With
+// customer.write-behind.enabled an edit that keeps the email is merged with the
+// customer's other pending edits and written once the window since the first has
+// passed, together with other customers' edits in one transaction. Reads on this
+// instance see pending edits through overlay(); other instances see them once
+// written. Email changes stay synchronous: their uniqueness check is the caller's answer.
+// A failed batch is written again one edit at a time, so only an edit that fails
+// on its own is retried a window later, and dropped once it failed max-attempts times.
+@Slf4j
+@Component
+@Profile("!reactive")
+public class CustomerWriteBehindQueue implements DisposableBean {
+
+    private static final long MIN_TICK_MILLIS = 10;
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    // the fields a queued edit can change; null keeps the current value
+    private record Pending(String name, Integer age, long queuedAt, int failures) {
+
+        // later edits win, the window and the failures run from the first one
+        Pending mergedWith(Pending later) {
+            return new Pending(
+                    later.name != null ? later.name : name,
+                    later.age != null ? later.age : age,
+                    queuedAt,
+                    failures);
+        }
+
+        Pending failed() {
+            return new Pending(name, age, queuedAt, failures + 1);
+        }
+
+        // each failure puts the next attempt one more window away
+        boolean isDue(long now, long windowNanos) {
+            return now - queuedAt >= windowNanos * (failures + 1);
+        }
+
+        CustomerProfile applyTo(CustomerProfile profile) {
+            return new CustomerProfile(
+                    profile.id(),
+                    name != null ? name : profile.name(),
+                    profile.email(),
+                    age != null ? age : profile.age(),
+                    profile.gender());
+        }
+    }
+
+    private final boolean enabled;
+    private final CustomerDao customerDao;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long windowNanos;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final int maxAttempts;
+    // null when write-behind is off
+    private final ScheduledExecutorService flusher;
+
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    // taken from pending and not yet announced as written; still overlaid so reads never go back in time
+    private final Map<Integer, Pending> writing = new ConcurrentHashMap<>();
+    // one batch at a time, so a customer's edits reach the database in order
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // requests waiting for room in a full queue; apart from writeLock, which is held
+    // for the whole write of a batch
+    private final ReentrantLock roomLock = new ReentrantLock();
+    private final Condition roomFreed = roomLock.newCondition();
+    private final AtomicBoolean flushAllQueued = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final Counter queued;
+    private final Counter merged;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Timer flushes;
+    private final Timer lag;
+
+    public CustomerWriteBehindQueue(@Qualifier("coalescing") CustomerDao customerDao,
+                                    PlatformTransactionManager transactionManager,
+                                    ApplicationEventPublisher eventPublisher,
+                                    @Value("${customer.write-behind.enabled:false}") boolean enabled,
+                                    @Value("${customer.write-behind.window:500ms}") Duration window,
+                                    @Value("${customer.write-behind.capacity:10000}") int capacity,
+                                    @Value("${customer.write-behind.batch-size:200}") int batchSize,
+                                    @Value("${customer.write-behind.max-wait:1s}") Duration maxWait,
+                                    @Value("${customer.write-behind.max-attempts:10}") int maxAttempts,
+                                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.customerDao = customerDao;
+        this.transactionTemplate = enabled ? new TransactionTemplate(transactionManager) : null;
+        this.eventPublisher = eventPublisher;
+        this.windowNanos = window.toNanos();
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxAttempts = maxAttempts;
+
+        this.queued = meterRegistry.counter("customer.write.behind.updates", "result", "queued");
+        this.merged = meterRegistry.counter("customer.write.behind.updates", "result", "merged");
+        this.rejected = meterRegistry.counter("customer.write.behind.updates", "result", "rejected");
+        this.written = meterRegistry.counter("customer.write.behind.writes", "result", "success");
+        this.failed = meterRegistry.counter("customer.write.behind.writes", "result", "failure");
+        this.dropped = meterRegistry.counter("customer.write.behind.writes", "result", "dropped");
+        this.flushes = Timer.builder("customer.write.behind.flush")
+                .description("time to write one batch of queued updates")
+                .register(meterRegistry);
+        this.lag = Timer.builder("customer.write.behind.lag")
+                .description("time from the first queued edit of a customer to its write")
+                .register(meterRegistry);
+        Gauge.builder("customer.write.behind.depth", pending, Map::size)
+                .description("customers with edits waiting to be written")
+                .register(meterRegistry);
+
+        if (enabled) {
+            CustomizableThreadFactory threads = new CustomizableThreadFactory("customer-write-behind-");
+            threads.setDaemon(true);
+            this.flusher = Executors.newSingleThreadScheduledExecutor(threads);
+            long tick = Math.max(window.toMillis() / 4, MIN_TICK_MILLIS);
+            flusher.scheduleWithFixedDelay(() -> flush(false), tick, tick, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && !closed;
+    }
+
+    // the profile with this instance's unwritten edits applied
+    public CustomerProfile overlay(CustomerProfile profile) {
+        if (pending.isEmpty() && writing.isEmpty()) {
+            return profile;
+        }
+        Pending inFlight = writing.get(profile.id());
+        Pending queuedEdit = pending.get(profile.id());
+        CustomerProfile overlaid = inFlight == null ? profile : inFlight.applyTo(profile);
+        return queuedEdit == null ? overlaid : queuedEdit.applyTo(overlaid);
+    }
+
+    // queues the name and age of update; false when it has to be written now instead.
+    // Waits for room up to max-wait when the queue is full, then gives up with a 503
+    public boolean enqueue(Integer customerId, CustomerUpdateRequest update) {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (!hasRoomFor(customerId)) {
+            awaitRoom(customerId);
+        }
+        Pending edit = new Pending(update.name(), update.age(), System.nanoTime(), 0);
+        if (pending.merge(customerId, edit, Pending::mergedWith) == edit) {
+            queued.increment();
+        } else {
+            merged.increment();
+        }
+        eventPublisher.publishEvent(new CustomerUpdateQueuedEvent(customerId));
+        // shutdown began after the check above and may have drained already
+        if (closed) {
+            flush(customerId);
+        }
+        return true;
+    }
+
+    // writes what is queued for the customer now, ahead of a write that must not overtake it
+    public void flush(Integer customerId) {
+        if (pending.containsKey(customerId) || writing.containsKey(customerId)) {
+            write(List.of(customerId));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (!enabled) {
+            return;
+        }
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int attempt = 0; attempt < SHUTDOWN_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            flush(true);
+        }
+        if (!pending.isEmpty()) {
+            log.error("{} queued customer updates could not be written before shutdown", pending.size());
+        }
+    }
+
+    int depth() {
+        return pending.size();
+    }
+
+    // writes the edits whose window has passed, or all of them
+    void flush(boolean all) {
+        try {
+            long now = System.nanoTime();
+            List<Integer> due = pending.entrySet().stream()
+                    .filter(entry -> all || entry.getValue().isDue(now, windowNanos))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            for (int from = 0; from < due.size(); from += batchSize) {
+                write(due.subList(from, Math.min(from + batchSize, due.size())));
+            }
+        } catch (RuntimeException e) {
+            // an exception would end the schedule
+            log.warn("Could not flush queued customer updates", e);
+        }
+    }
+
+    private void write(List<Integer> customerIds) {
+        writeLock.lock();
+        Map<Integer, Pending> batch = new LinkedHashMap<>();
+        try {
+            for (Integer customerId : customerIds) {
+                Pending edit = pending.get(customerId);
+                if (edit != null) {
+                    writing.put(customerId, edit);
+                    pending.remove(customerId, edit);
+                    batch.put(customerId, edit);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Map<Integer, CustomerUpdate> changed = new LinkedHashMap<>();
+            Map<Integer, Pending> failedEdits = new LinkedHashMap<>();
+            long start = System.nanoTime();
+            try {
+                changed.putAll(writeTogether(batch));
+            } catch (RuntimeException e) {
+                if (batch.size() == 1) {
+                    log.warn("Could not write a queued update of customer {}, retrying: {}",
+                            batch.keySet().iterator().next(), e.getMessage());
+                    failedEdits.putAll(batch);
+                } else {
+                    // one bad edit must not hold back the others: write them one at a time to find it
+                    log.warn("Could not write {} queued customer updates together, writing them one by one: {}",
+                            batch.size(), e.getMessage());
+                    batch.forEach((customerId, edit) -> {
+                        try {
+                            changed.putAll(writeTogether(Map.of(customerId, edit)));
+                        } catch (RuntimeException single) {
+                            log.warn("Could not write a queued update of customer {}, retrying: {}",
+                                    customerId, single.getMessage());
+                            failedEdits.put(customerId, edit);
+                        }
+                    });
+                }
+            } finally {
+                flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            failed.increment(failedEdits.size());
+            failedEdits.forEach((customerId, edit) -> {
+                Pending retry = edit.failed();
+                if (retry.failures() >= maxAttempts) {
+                    // edits queued meanwhile stay, with attempts of their own
+                    dropped.increment();
+                    log.error("Dropped a queued update of customer {} after {} failed writes",
+                            customerId, retry.failures());
+                } else {
+                    // edits queued meanwhile are later and win
+                    pending.merge(customerId, retry, (later, earlier) -> earlier.mergedWith(later));
+                }
+            });
+
+            long now = System.nanoTime();
+            batch.forEach((customerId, edit) -> {
+                if (!failedEdits.containsKey(customerId)) {
+                    written.increment();
+                    lag.record(now - edit.queuedAt(), TimeUnit.NANOSECONDS);
+                }
+            });
+            changed.forEach((customerId, update) ->
+                    eventPublisher.publishEvent(new CustomerChangedEvent(customerId, update.previousEmail())));
+        } finally {
+            writing.keySet().removeAll(batch.keySet());
+            writeLock.unlock();
+            roomLock.lock();
+            try {
+                roomFreed.signalAll();
+            } finally {
+                roomLock.unlock();
+            }
+        }
+    }
+
+    // the changes the edits made, all committed or none
+    private Map<Integer, CustomerUpdate> writeTogether(Map<Integer, Pending> edits) {
+        Map<Integer, CustomerUpdate> changed = new LinkedHashMap<>();
+        transactionTemplate.executeWithoutResult(status -> edits.forEach((customerId, edit) ->
+                customerDao.updateCustomer(customerId, new CustomerUpdateRequest(edit.name(), null, edit.age()))
+                        .filter(CustomerUpdate::changed)
+                        .ifPresent(update -> changed.put(customerId, update))));
+        return changed;
+    }
+
+    // edits being written count too: a failed write puts them back
+    private boolean hasRoomFor(Integer customerId) {
+        return pending.size() + writing.size() < capacity
+                || pending.containsKey(customerId) || writing.containsKey(customerId);
+    }
+
+    private void awaitRoom(Integer customerId) {
+        // write everything without waiting for the window
+        if (flushAllQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushAllQueued.set(false);
+                flush(true);
+            });
+        }
+        // a Condition rather than a monitor: a virtual thread waiting here leaves its carrier
+        long remaining = maxWaitNanos;
+        roomLock.lock();
+        try {
+            while (!hasRoomFor(customerId)) {
+                if (remaining <= 0) {
+                    rejected.increment();
+                    throw new ServiceUnavailableException("too many queued customer updates, retry later");
+                }
+                remaining = roomFreed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new ServiceUnavailableException("too many queued customer updates, retry later");
+        } finally {
+            roomLock.unlock();
+        }
+    }
+}
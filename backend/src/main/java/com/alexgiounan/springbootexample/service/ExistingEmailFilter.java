@@ -0,0 +1,276 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// Every email in the customer table, in a Bloom filter: most registrations and
+// email changes ask for an address nobody has, and a definite "absent" needs no
+// query. The filter is built from the table at startup and kept up with
+// CustomerAddedEvent and CustomerChangedEvent, local or from other instances;
+// a changed customer's address is read back on the filter's own thread.
+// Until it is built, and again after changes may have been missed, every check
+// goes to the database.
+@Slf4j
+@Component
+@Profile("!reactive")
+public class ExistingEmailFilter implements DisposableBean {
+
+    private static final long RETRY_AFTER_SECONDS = 30;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final long initialCapacity;
+    private final double falsePositiveRate;
+    private final double rebuildStaleRatio;
+    private final ScheduledExecutorService rebuilder;
+
+    // null until built and while a rebuild after missed changes runs
+    private volatile ScalableBloomFilter filter;
+    // the next filter, receiving additions while the table is read
+    private volatile ScalableBloomFilter building;
+    // addresses in the filter that may no longer exist: deleted or changed customers
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private long invalidations;
+
+    private final Counter absent;
+    private final Counter maybePresent;
+    private final Counter unavailable;
+    private final Counter falsePositives;
+    private final Counter rebuilds;
+    private final Counter rebuildFailures;
+
+    @Autowired
+    public ExistingEmailFilter(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${customer.email-filter.initial-capacity:100000}") long initialCapacity,
+                               @Value("${customer.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                               @Value("${customer.email-filter.rebuild-stale-ratio:0.2}") double rebuildStaleRatio,
+                               MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildStaleRatio = rebuildStaleRatio;
+
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("email-filter-");
+        threads.setDaemon(true);
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(threads);
+
+        this.absent = meterRegistry.counter("customer.email.filter.checks", "result", "absent");
+        this.maybePresent = meterRegistry.counter("customer.email.filter.checks", "result", "maybe-present");
+        this.unavailable = meterRegistry.counter("customer.email.filter.checks", "result", "unavailable");
+        this.falsePositives = meterRegistry.counter("customer.email.filter.false.positives");
+        this.rebuilds = meterRegistry.counter("customer.email.filter.rebuilds", "result", "success");
+        this.rebuildFailures = meterRegistry.counter("customer.email.filter.rebuilds", "result", "failure");
+        Gauge.builder("customer.email.filter.ready", this, f -> f.filter == null ? 0 : 1)
+                .register(meterRegistry);
+        Gauge.builder("customer.email.filter.rebuilding", this, f -> f.building == null ? 0 : 1)
+                .register(meterRegistry);
+        Gauge.builder("customer.email.filter.entries", this, f -> f.filter == null ? 0 : f.filter.count())
+                .register(meterRegistry);
+        Gauge.builder("customer.email.filter.false.positive.rate", this,
+                        f -> f.filter == null ? Double.NaN : f.filter.expectedFalsePositiveRate())
+                .register(meterRegistry);
+    }
+
+    // the database answers whenever the filter cannot rule the address out
+    public boolean exists(String email, Predicate<String> database) {
+        ScalableBloomFilter current = filter;
+        if (current == null) {
+            unavailable.increment();
+            return database.test(email);
+        }
+        if (!current.mightContain(key(email))) {
+            absent.increment();
+            return false;
+        }
+        maybePresent.increment();
+        boolean exists = database.test(email);
+        if (!exists) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    // the lower-cased addresses among emails that exist, asking the database about the uncertain ones only
+    public Set<String> existing(Collection<String> emails, Function<Collection<String>, Set<String>> database) {
+        ScalableBloomFilter current = filter;
+        if (current == null) {
+            unavailable.increment(emails.size());
+            return database.apply(emails);
+        }
+        Set<String> candidates = emails.stream()
+                .filter(email -> current.mightContain(key(email)))
+                .collect(Collectors.toSet());
+        absent.increment(emails.size() - candidates.size());
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        maybePresent.increment(candidates.size());
+        Set<String> existing = database.apply(candidates);
+        falsePositives.increment(candidates.size() - existing.size());
+        return existing;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestRebuild();
+    }
+
+    @EventListener
+    public void onCustomerAdded(CustomerAddedEvent event) {
+        add(event.email());
+    }
+
+    // the event names the address the customer had before; a changed customer's
+    // new address is only known to the database, and is read on the rebuilder
+    // rather than on the thread that made the change
+    @EventListener
+    public void onCustomerChanged(CustomerChangedEvent event) {
+        rebuilder.execute(() -> refresh(event));
+    }
+
+    // additions may have been missed: the filter could deny an address that exists
+    @EventListener
+    public void onCustomersInvalidated(CustomersInvalidatedEvent event) {
+        invalidate();
+    }
+
+    @Override
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    boolean isReady() {
+        return filter != null;
+    }
+
+    void rebuild() {
+        long start = System.nanoTime();
+        ScalableBloomFilter next = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+        long seen;
+        synchronized (this) {
+            seen = invalidations;
+        }
+        // set before reading the table: an address committed after the read
+        // started is announced by an event that arrives after this point
+        building = next;
+        stale.set(0);
+        try {
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("SELECT email FROM customer");
+                statement.setFetchSize(1_000);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> next.add(key(resultSet.getString(1)))));
+            synchronized (this) {
+                // changes were missed while reading, the rebuild queued since takes over
+                if (seen != invalidations) {
+                    return;
+                }
+                filter = next;
+            }
+            rebuilds.increment();
+            log.info("Email filter built: {} addresses, {} slices, {} KiB in {} ms",
+                    next.count(), next.slices(), next.bytes() / 1024,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            rebuildFailures.increment();
+            log.warn("Could not build the email filter, checks go to the database; retrying in {}s",
+                    RETRY_AFTER_SECONDS, e);
+            rebuilder.schedule(this::requestRebuild, RETRY_AFTER_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            building = null;
+        }
+    }
+
+    private void refresh(CustomerChangedEvent event) {
+        List<String> current;
+        try {
+            current = jdbcTemplate.queryForList(
+                    "SELECT email FROM customer WHERE id = ?", String.class, event.customerId());
+        } catch (RuntimeException e) {
+            log.warn("Could not read the address of changed customer {}, rebuilding the email filter",
+                    event.customerId(), e);
+            invalidate();
+            return;
+        }
+        current.forEach(this::add);
+        if (event.email() == null || current.stream().anyMatch(event.email()::equalsIgnoreCase)) {
+            return;
+        }
+        // deleted, or moved to another address: the old one stays in the filter until the next rebuild
+        ScalableBloomFilter built = filter;
+        if (built != null && stale.incrementAndGet() > rebuildStaleRatio * built.count()) {
+            requestRebuild();
+        }
+    }
+
+    private void invalidate() {
+        synchronized (this) {
+            invalidations++;
+            filter = null;
+        }
+        requestRebuild();
+    }
+
+    private void requestRebuild() {
+        // a rebuild that has not started yet will see everything this one would
+        if (rebuildQueued.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                rebuildQueued.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    // building before filter: a rebuild publishes its filter before it stops building,
+    // so one of the two reads sees it
+    private void add(String email) {
+        String key = key(email);
+        ScalableBloomFilter next = building;
+        if (next != null) {
+            next.add(key);
+        }
+        ScalableBloomFilter current = filter;
+        if (current != null && current != next) {
+            current.add(key);
+        }
+    }
+
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
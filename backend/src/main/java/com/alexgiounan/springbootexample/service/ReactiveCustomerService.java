@@ -0,0 +1,154 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.dao.ReactiveCustomerDao;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.exception.RequestValidationException;
+import com.alexgiounan.springbootexample.exception.ResourceNotFoundException;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// event-loop counterpart of CustomerService; nothing in here may block, so
+// bcrypt goes to the hashing lane and the database is reached through R2DBC
+@Service
+@Profile("reactive")
+public class ReactiveCustomerService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final ReactiveCustomerDao customerDao;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final CustomerDTOMapper customerDTOMapper;
+
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ReactiveCustomerService(ReactiveCustomerDao customerDao,
+                                   PasswordEncoder passwordEncoder,
+                                   CustomerDTOMapper customerDTOMapper,
+                                   PasswordHashingExecutor passwordHashingExecutor,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.customerDao = customerDao;
+        this.passwordEncoder = passwordEncoder;
+        this.customerDTOMapper = customerDTOMapper;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public Flux<CustomerDTO> getAllCustomers(){
+        return customerDao.selectAllCustomers().map(customerDTOMapper);
+    }
+
+    public Mono<CustomerPage> getCustomersPage(Integer after, int limit){
+        if(limit < 1){
+            return Mono.error(new RequestValidationException("limit must be greater than 0"));
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        // fetch one extra row to know whether another page follows
+        return customerDao.selectCustomersAfter(after == null ? 0 : after, pageSize + 1)
+                .map(customerDTOMapper)
+                .collectList()
+                .map(rows -> {
+                    List<CustomerDTO> customers = rows.subList(0, Math.min(rows.size(), pageSize));
+                    Integer nextCursor = rows.size() > pageSize
+                            ? customers.get(customers.size() - 1).id()
+                            : null;
+                    return new CustomerPage(List.copyOf(customers), nextCursor);
+                });
+    }
+
+    public Mono<CustomerDTO> getCustomer(Integer id){
+        return findCustomer(id).map(customerDTOMapper);
+    }
+
+    // emits the new customer's id
+    public Mono<Integer> addCustomer(CustomerRegistrationRequest customerRegistrationRequest){
+        return customerDao.existsCustomerWithEmail(customerRegistrationRequest.email())
+                .flatMap(exists -> {
+                    if(exists){
+                        return Mono.error(new DuplicateResourceException("email already taken"));
+                    }
+                    return Mono.fromFuture(() -> passwordHashingExecutor.submit(
+                            () -> passwordEncoder.encode(customerRegistrationRequest.password())));
+                })
+                .flatMap(passwordHash -> customerDao.insertCustomer(new Customer(
+                        customerRegistrationRequest.name(),
+                        customerRegistrationRequest.email(),
+                        passwordHash,
+                        customerRegistrationRequest.age(),
+                        customerRegistrationRequest.gender()
+                )))
+                .doOnNext(customerId -> eventPublisher.publishEvent(
+                        new CustomerAddedEvent(customerRegistrationRequest.email())));
+    }
+
+    public Mono<Void> deleteCustomerById(Integer customerId){
+        return findCustomer(customerId)
+                .flatMap(customer -> customerDao.deleteCustomerById(customerId)
+                        .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(
+                                new CustomerChangedEvent(customerId, customer.getEmail())))));
+    }
+
+    public Mono<Void> updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest){
+        return findCustomer(customerId).flatMap(customer -> {
+            String previousEmail = customer.getEmail();
+            boolean changes = false;
+
+            if(updateRequest.name() != null && !updateRequest.name().equals(customer.getName())){
+                customer.setName(updateRequest.name());
+                changes = true;
+            }
+
+            if(updateRequest.age() != null && !updateRequest.age().equals(customer.getAge())){
+                customer.setAge(updateRequest.age());
+                changes = true;
+            }
+
+            boolean emailChanged = updateRequest.email() != null
+                    && !updateRequest.email().equals(previousEmail);
+            if(emailChanged){
+                customer.setEmail(updateRequest.email());
+                changes = true;
+            }
+
+            if(!changes){
+                return Mono.error(new RequestValidationException("no data changes found"));
+            }
+
+            // a change of case only must not collide with the customer's own address
+            Mono<Boolean> emailTaken = emailChanged && !updateRequest.email().equalsIgnoreCase(previousEmail)
+                    ? customerDao.existsCustomerWithEmail(updateRequest.email())
+                    : Mono.just(false);
+
+            return emailTaken.flatMap(taken -> taken
+                    ? Mono.error(new DuplicateResourceException("email already taken"))
+                    : customerDao.updateCustomer(customer)
+                            .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(
+                                    new CustomerChangedEvent(customerId, previousEmail)))));
+        });
+    }
+
+    private Mono<Customer> findCustomer(Integer id){
+        return customerDao.selectCustomerById(id)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(
+                        "customer with id [%s] not found".formatted(id))));
+    }
+}
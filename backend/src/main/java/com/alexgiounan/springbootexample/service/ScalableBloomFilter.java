@@ -0,0 +1,150 @@
+package com.alexgiounan.springbootexample.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A Bloom filter that grows: once a slice holds its capacity a new one twice as
+// large is added, each with a tighter error rate, so the combined false positive
+// rate stays under the target however many values are added (Almeida et al. 2007).
+// Safe for concurrent use; nothing can be removed.
+final class ScalableBloomFilter {
+
+    private static final double TIGHTENING = 0.5;
+    private static final int GROWTH = 2;
+
+    private volatile Slice[] slices;
+
+    ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        // the slices' rates form a geometric series summing to the target
+        this.slices = new Slice[]{new Slice(initialCapacity, falsePositiveRate * (1 - TIGHTENING))};
+    }
+
+    void add(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        Slice[] current = slices;
+        for (Slice slice : current) {
+            if (slice.mightContain(h1, h2)) {
+                return;
+            }
+        }
+        Slice last = current[current.length - 1];
+        last.add(h1, h2);
+        if (last.count.incrementAndGet() == last.capacity) {
+            grow(last);
+        }
+    }
+
+    boolean mightContain(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (Slice slice : slices) {
+            if (slice.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // values added, counting each distinct value once give or take false positives
+    long count() {
+        long count = 0;
+        for (Slice slice : slices) {
+            count += slice.count.get();
+        }
+        return count;
+    }
+
+    int slices() {
+        return slices.length;
+    }
+
+    long bytes() {
+        long bytes = 0;
+        for (Slice slice : slices) {
+            bytes += slice.bits.length() * (long) Long.BYTES;
+        }
+        return bytes;
+    }
+
+    // from how full the slices are, rather than from their design rates
+    double expectedFalsePositiveRate() {
+        double none = 1;
+        for (Slice slice : slices) {
+            none *= 1 - Math.pow((double) slice.bitsSet.get() / slice.size, slice.hashes);
+        }
+        return 1 - none;
+    }
+
+    private synchronized void grow(Slice full) {
+        Slice[] current = slices;
+        if (current[current.length - 1] != full) {
+            return;
+        }
+        Slice[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = new Slice(full.capacity * GROWTH, full.falsePositiveRate * TIGHTENING);
+        slices = grown;
+    }
+
+    // FNV-1a over the chars, finished with murmur3's mixer for well spread bits
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Slice {
+
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final int hashes;
+        private final long size;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong bitsSet = new AtomicLong();
+
+        Slice(long capacity, double falsePositiveRate) {
+            this.capacity = Math.max(1, capacity);
+            this.falsePositiveRate = falsePositiveRate;
+            this.hashes = (int) Math.ceil(-Math.log(falsePositiveRate) / Math.log(2));
+            long optimal = (long) Math.ceil(this.capacity * hashes / Math.log(2));
+            this.bits = new AtomicLongArray(Math.toIntExact((optimal + 63) / 64));
+            this.size = bits.length() * 64L;
+        }
+
+        // double hashing: the i-th index is h1 + i * h2 (Kirsch and Mitzenmacher)
+        void add(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long index = Math.floorMod(h1 + i * h2, size);
+                long mask = 1L << index;
+                long before = bits.getAndAccumulate((int) (index >>> 6), mask, (word, bit) -> word | bit);
+                if ((before & mask) == 0) {
+                    bitsSet.incrementAndGet();
+                }
+            }
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long index = Math.floorMod(h1 + i * h2, size);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
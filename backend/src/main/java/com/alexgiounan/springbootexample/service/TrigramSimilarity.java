@@ -0,0 +1,54 @@
+package com.alexgiounan.springbootexample.service;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// pg_trgm's similarity, for the stores without Postgres: every word of a string,
+// lower-cased and padded with two spaces in front and one behind, split into
+// three character runs. Similarity is the shared trigrams over all trigrams of
+// both strings; words are runs of letters and digits. Postgres decides what a
+// letter is by the database's locale, Java by Unicode, so the two can differ on
+// accented names.
+final class TrigramSimilarity {
+
+    // pg_trgm.similarity_threshold's default, which name % query applies
+    static final float THRESHOLD = 0.3f;
+
+    private TrigramSimilarity() {
+    }
+
+    static Set<String> trigrams(String value) {
+        Set<String> trigrams = new HashSet<>();
+        String lower = value.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String padded = "  " + lower.substring(start, i) + " ";
+                for (int j = 0; j + 3 <= padded.length(); j++) {
+                    trigrams.add(padded.substring(j, j + 3));
+                }
+                start = -1;
+            }
+        }
+        return trigrams;
+    }
+
+    static float similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int shared = 0;
+        for (String trigram : smaller) {
+            if (larger.contains(trigram)) {
+                shared++;
+            }
+        }
+        return (float) shared / (a.size() + b.size() - shared);
+    }
+}
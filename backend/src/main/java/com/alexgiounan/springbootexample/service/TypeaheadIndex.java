@@ -0,0 +1,168 @@
+package com.alexgiounan.springbootexample.service;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+// Customer names and emails in sorted primitive arrays, for prefix lookups: every
+// value lives in one char[], so a customer costs its characters and five ints
+// instead of two Strings and a map entry. Immutable; CustomerTypeahead keeps the
+// changes made since it was built beside it and builds the next one.
+final class TypeaheadIndex {
+
+    enum Field { NAME, EMAIL }
+
+    record Entry(int id, String name, String email) {
+    }
+
+    // customers in id order; the name of position p is text[offsets[2p], offsets[2p + 1]),
+    // its email text[offsets[2p + 1], offsets[2p + 2])
+    private final int[] ids;
+    private final char[] text;
+    private final int[] offsets;
+    // positions in the case folded order of the names and of the emails, ties by id
+    private final int[] byName;
+    private final int[] byEmail;
+
+    private TypeaheadIndex(int[] ids, char[] text, int[] offsets) {
+        this.ids = ids;
+        this.text = text;
+        this.offsets = offsets;
+        this.byName = sorted(Field.NAME);
+        this.byEmail = sorted(Field.EMAIL);
+    }
+
+    static TypeaheadIndex of(Collection<Entry> entries) {
+        List<Entry> sorted = entries.stream()
+                .sorted(Comparator.comparingInt(Entry::id))
+                .toList();
+        int[] ids = new int[sorted.size()];
+        int[] offsets = new int[2 * sorted.size() + 1];
+        int length = 0;
+        for (Entry entry : sorted) {
+            length += entry.name().length() + entry.email().length();
+        }
+        char[] text = new char[length];
+        int end = 0;
+        for (int p = 0; p < sorted.size(); p++) {
+            Entry entry = sorted.get(p);
+            ids[p] = entry.id();
+            entry.name().getChars(0, entry.name().length(), text, end);
+            end += entry.name().length();
+            offsets[2 * p + 1] = end;
+            entry.email().getChars(0, entry.email().length(), text, end);
+            end += entry.email().length();
+            offsets[2 * p + 2] = end;
+        }
+        return new TypeaheadIndex(ids, text, offsets);
+    }
+
+    // the order the index sorts by, and the one suggestions are ranked in
+    static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    // the arrays themselves, headers included
+    long bytes() {
+        return 5 * 16L + 2L * text.length + 4L * (ids.length + offsets.length + byName.length + byEmail.length);
+    }
+
+    Entry entry(int position) {
+        return new Entry(ids[position], value(position, Field.NAME), value(position, Field.EMAIL));
+    }
+
+    // hands the positions whose field starts with the folded prefix to visitor, in
+    // index order, until it returns false
+    void prefixed(Field field, String prefix, IntPredicate visitor) {
+        int[] order = field == Field.NAME ? byName : byEmail;
+        String folded = fold(prefix);
+        // the first value not below the prefix; those starting with it follow it
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(order[middle], field, folded) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < order.length && startsWith(order[i], field, folded); i++) {
+            if (!visitor.test(order[i])) {
+                return;
+            }
+        }
+    }
+
+    String value(int position, Field field) {
+        int start = offsets[2 * position + field.ordinal()];
+        return new String(text, start, offsets[2 * position + field.ordinal() + 1] - start);
+    }
+
+    int id(int position) {
+        return ids[position];
+    }
+
+    private int[] sorted(Field field) {
+        return IntStream.range(0, ids.length)
+                .boxed()
+                .sorted((a, b) -> {
+                    int byValue = compare(a, field, b);
+                    return byValue != 0 ? byValue : Integer.compare(ids[a], ids[b]);
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private int compare(int position, Field field, int other) {
+        int start = offsets[2 * position + field.ordinal()];
+        int end = offsets[2 * position + field.ordinal() + 1];
+        int otherStart = offsets[2 * other + field.ordinal()];
+        int otherEnd = offsets[2 * other + field.ordinal() + 1];
+        int length = Math.min(end - start, otherEnd - otherStart);
+        for (int i = 0; i < length; i++) {
+            int difference = Character.toLowerCase(text[start + i]) - Character.toLowerCase(text[otherStart + i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (end - start) - (otherEnd - otherStart);
+    }
+
+    private int compare(int position, Field field, String folded) {
+        int start = offsets[2 * position + field.ordinal()];
+        int end = offsets[2 * position + field.ordinal() + 1];
+        int length = Math.min(end - start, folded.length());
+        for (int i = 0; i < length; i++) {
+            int difference = Character.toLowerCase(text[start + i]) - folded.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (end - start) - folded.length();
+    }
+
+    private boolean startsWith(int position, Field field, String folded) {
+        int start = offsets[2 * position + field.ordinal()];
+        int end = offsets[2 * position + field.ordinal() + 1];
+        if (end - start < folded.length()) {
+            return false;
+        }
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.toLowerCase(text[start + i]) != folded.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,454 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.Gender;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Append-only log of customer mutations in wal-<generation>.log files, plus
+// snapshot-<generation>.bin holding the full state as of the start of that
+// generation. A record is [length][crc32c][type][payload]; the log is mapped
+// in fixed regions and a record never spans two of them. Puts, deletes and
+// snapshots carry the highest id handed out, so ids of deleted customers are
+// not handed out again; records written before that end without it.
+// Appends must be serialised by the caller; flush may run on any thread.
+final class WriteAheadLog implements AutoCloseable {
+
+    enum FsyncPolicy {
+        // force before each write returns
+        PER_WRITE,
+        // writers wait for a force, and writers arriving meanwhile share the next one
+        GROUPED,
+        // force on a timer; a crash loses at most one interval
+        INTERVAL
+    }
+
+    interface Replay {
+        void put(Customer customer);
+
+        void delete(int customerId);
+
+        void lastId(int lastId);
+    }
+
+    private static final Pattern FILE_NAME = Pattern.compile("(wal|snapshot)-(\\d{12})\\.(log|bin)");
+    private static final int HEADER = Integer.BYTES * 2;
+    private static final int PADDING = -1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte LAST_ID = 3;
+    // written as length -1, told apart from "" by identity
+    private static final byte[] NULL = new byte[0];
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final int regionSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private long generation;
+    private FileChannel channel;
+    private volatile MappedByteBuffer region;
+    private long regionStart;
+
+    // records appended and records known to be on disk, across generations
+    private volatile long appended;
+    private volatile long durable;
+    private long replayedRecords;
+
+    private WriteAheadLog(Path directory, FsyncPolicy fsyncPolicy, int regionSize) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.regionSize = regionSize;
+        this.lockChannel = FileChannel.open(directory.resolve("lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by this JVM
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IllegalStateException("write-ahead log %s is in use".formatted(directory));
+        }
+        this.lock = acquired;
+    }
+
+    // replays the latest snapshot and every log after it, then starts a new generation;
+    // a torn or corrupt record ends the replay of its file
+    static WriteAheadLog open(Path directory, FsyncPolicy fsyncPolicy, int regionSize, Replay replay)
+            throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory, fsyncPolicy, regionSize);
+        try {
+            long snapshot = latest(directory, "snapshot");
+            if (snapshot > 0) {
+                log.readSnapshot(snapshot, replay);
+            }
+            long last = snapshot;
+            for (long generation : generations(directory, "wal")) {
+                if (generation >= snapshot) {
+                    log.replayLog(generation, replay);
+                }
+                last = Math.max(last, generation);
+            }
+            log.startGeneration(last + 1);
+            return log;
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    static byte[] put(Customer customer, int lastId) {
+        byte[] name = utf8(customer.getName());
+        byte[] email = utf8(customer.getEmail());
+        byte[] password = utf8(customer.getPassword());
+        byte[] gender = utf8(customer.getGender() == null ? null : customer.getGender().name());
+        ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES * 7
+                + name.length + email.length + password.length + gender.length);
+        record.put(PUT);
+        record.putInt(customer.getId());
+        putString(record, name);
+        putString(record, email);
+        putString(record, password);
+        record.putInt(customer.getAge() == null ? -1 : customer.getAge());
+        putString(record, gender);
+        record.putInt(lastId);
+        return record.array();
+    }
+
+    static byte[] delete(int customerId, int lastId) {
+        return ByteBuffer.allocate(1 + Integer.BYTES * 2)
+                .put(DELETE)
+                .putInt(customerId)
+                .putInt(lastId)
+                .array();
+    }
+
+    private static byte[] lastId(int lastId) {
+        return ByteBuffer.allocate(1 + Integer.BYTES)
+                .put(LAST_ID)
+                .putInt(lastId)
+                .array();
+    }
+
+    // returns the record's sequence number, to be passed to awaitDurable
+    long append(byte[] record) {
+        try {
+            MappedByteBuffer current = region;
+            if (current.remaining() < HEADER + record.length) {
+                if (HEADER + record.length > regionSize) {
+                    throw new IllegalArgumentException("record of %s bytes does not fit a log region"
+                            .formatted(record.length));
+                }
+                if (current.remaining() >= Integer.BYTES) {
+                    current.putInt(PADDING);
+                }
+                current.force();
+                regionStart += regionSize;
+                current = map(regionStart);
+                region = current;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(record);
+            current.putInt(record.length);
+            current.putInt((int) crc.getValue());
+            current.put(record);
+            long sequence = ++appended;
+            if (fsyncPolicy == FsyncPolicy.PER_WRITE) {
+                flush();
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void awaitDurable(long sequence) {
+        if (fsyncPolicy == FsyncPolicy.GROUPED && durable < sequence) {
+            flush();
+        }
+    }
+
+    void flush() {
+        flushLock.lock();
+        try {
+            long target = appended;
+            if (durable >= target) {
+                return;
+            }
+            // earlier regions were forced when the log moved past them
+            region.force();
+            durable = target;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // log records (not snapshot records) replayed by open
+    long replayedRecords() {
+        return replayedRecords;
+    }
+
+    // bytes written to the current generation
+    long size() {
+        return regionStart + region.position();
+    }
+
+    // ends the current generation; the caller captures the state to snapshot
+    // under the same lock it appends with, and passes it to writeSnapshot
+    long roll() {
+        try {
+            region.force();
+            startGeneration(generation + 1);
+            return generation;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // once the snapshot is durable, everything before its generation is deleted
+    void writeSnapshot(long snapshotGeneration, Collection<Customer> customers, int lastId) throws IOException {
+        Path target = directory.resolve(fileName("snapshot", snapshotGeneration));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(file), 1 << 16))) {
+            out.writeInt(customers.size() + 1);
+            // first, so it survives a snapshot with no customers left
+            writeRecord(out, lastId(lastId));
+            for (Customer customer : customers) {
+                writeRecord(out, put(customer, lastId));
+            }
+            out.flush();
+            file.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        for (String prefix : List.of("wal", "snapshot")) {
+            for (long generation : generations(directory, prefix)) {
+                if (generation < snapshotGeneration) {
+                    Files.deleteIfExists(directory.resolve(fileName(prefix, generation)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (region != null) {
+                flush();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    private void startGeneration(long next) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        generation = next;
+        channel = FileChannel.open(directory.resolve(fileName("wal", generation)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        forceDirectory();
+        regionStart = 0;
+        region = map(0);
+    }
+
+    private MappedByteBuffer map(long position) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+    }
+
+    private void replayLog(long generation, Replay replay) throws IOException {
+        try (FileChannel file = FileChannel.open(directory.resolve(fileName("wal", generation)),
+                StandardOpenOption.READ)) {
+            long size = file.size();
+            for (long start = 0; start < size; start += regionSize) {
+                MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(regionSize, size - start));
+                while (buffer.remaining() >= HEADER) {
+                    int length = buffer.getInt();
+                    if (length == PADDING) {
+                        break;
+                    }
+                    if (length <= 0 || length > buffer.remaining() - Integer.BYTES) {
+                        return;
+                    }
+                    int crc = buffer.getInt();
+                    ByteBuffer record = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    if (!matches(record, crc)) {
+                        return;
+                    }
+                    apply(record, replay);
+                    replayedRecords++;
+                }
+            }
+        }
+    }
+
+    private void readSnapshot(long generation, Replay replay) throws IOException {
+        Path path = directory.resolve(fileName("snapshot", generation));
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            int count = in.readInt();
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length <= 0 || length > regionSize) {
+                    throw new IllegalStateException("snapshot %s is corrupt at record %s".formatted(path, i));
+                }
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                in.readFully(bytes, 0, length);
+                ByteBuffer record = ByteBuffer.wrap(bytes, 0, length);
+                if (!matches(record, crc)) {
+                    throw new IllegalStateException("snapshot %s is corrupt at record %s".formatted(path, i));
+                }
+                apply(record, replay);
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException("snapshot %s is truncated".formatted(path), e);
+        }
+    }
+
+    private void forceDirectory() throws IOException {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    private static void apply(ByteBuffer record, Replay replay) {
+        byte type = record.get();
+        switch (type) {
+            case PUT -> {
+                int id = record.getInt();
+                String name = getString(record);
+                String email = getString(record);
+                String password = getString(record);
+                int age = record.getInt();
+                String gender = getString(record);
+                replay.put(new Customer(id, name, email, password,
+                        age < 0 ? null : age,
+                        gender == null ? null : Gender.valueOf(gender)));
+                replayLastId(record, replay);
+            }
+            case DELETE -> {
+                replay.delete(record.getInt());
+                replayLastId(record, replay);
+            }
+            case LAST_ID -> replay.lastId(record.getInt());
+            default -> throw new IllegalStateException("unknown log record type " + type);
+        }
+    }
+
+    private static void replayLastId(ByteBuffer record, Replay replay) {
+        if (record.remaining() >= Integer.BYTES) {
+            replay.lastId(record.getInt());
+        }
+    }
+
+    // leaves the buffer's position unchanged
+    private static boolean matches(ByteBuffer record, int crc) {
+        CRC32C actual = new CRC32C();
+        actual.update(record.duplicate());
+        return (int) actual.getValue() == crc;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? NULL : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer record, byte[] value) {
+        record.putInt(value == NULL ? -1 : value.length);
+        record.put(value);
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (record.hasArray()) {
+            value = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            record.get(record.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static String fileName(String prefix, long generation) {
+        return "%s-%012d.%s".formatted(prefix, generation, prefix.equals("wal") ? "log" : "bin");
+    }
+
+    private static long latest(Path directory, String prefix) throws IOException {
+        List<Long> generations = generations(directory, prefix);
+        return generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+    }
+
+    private static List<Long> generations(Path directory, String prefix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).equals(prefix)) {
+                    generations.add(Long.parseLong(matcher.group(2)));
+                }
+            });
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
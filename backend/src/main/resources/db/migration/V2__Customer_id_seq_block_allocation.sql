@@ -0,0 +1,3 @@
+-- let JPA reserve ids in blocks of 50 (pooled-lo) so bulk inserts can be batched;
+-- every nextval() still hands out its own block, so plain INSERTs stay collision free
+ALTER SEQUENCE customer_id_seq INCREMENT BY 50;
@@ -0,0 +1,30 @@
+-- customer_email_unique was only declared on the JPA entity, so every email lookup
+-- was a sequential scan; enforce uniqueness on the normalized address in the
+-- database and give the lower(email) lookups an index to use.
+-- Emails used to be compared case-sensitively, so addresses differing only in
+-- case may exist: which of them is the customer's is not for a migration to
+-- decide, the migration stops and names them instead
+DO $$
+DECLARE
+    duplicates text;
+BEGIN
+    SELECT string_agg(format('%s (%s customers)', email, customers), ', ')
+    INTO duplicates
+    FROM (SELECT lower(email) AS email, count(*) AS customers
+          FROM customer
+          GROUP BY lower(email)
+          HAVING count(*) > 1
+          ORDER BY lower(email)
+          LIMIT 20) AS taken;
+    IF duplicates IS NOT NULL THEN
+        RAISE EXCEPTION 'customer emails differ only by case, merge or rename them before migrating: %', duplicates
+            USING HINT = 'SELECT id, email FROM customer WHERE lower(email) IN '
+                || '(SELECT lower(email) FROM customer GROUP BY 1 HAVING count(*) > 1) ORDER BY lower(email), id';
+    END IF;
+END
+$$;
+
+-- built without blocking writes, outside a transaction (see the .conf); an
+-- interrupted build leaves an invalid index behind, dropped on the next attempt
+DROP INDEX CONCURRENTLY IF EXISTS customer_email_lower_unique;
+CREATE UNIQUE INDEX CONCURRENTLY customer_email_lower_unique ON customer (lower(email));
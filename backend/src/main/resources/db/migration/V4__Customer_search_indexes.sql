@@ -0,0 +1,16 @@
+-- composite indexes for the customer search: an equality on gender and a range
+-- and order on age, with id last as the tie breaker of every sort. The other
+-- profile columns ride along (never the password) so a search can be answered
+-- from the index alone once the visibility map is current. Built concurrently,
+-- as in V3
+DROP INDEX CONCURRENTLY IF EXISTS customer_search_gender_age;
+CREATE INDEX CONCURRENTLY customer_search_gender_age ON customer (gender, age, id) INCLUDE (name, email);
+DROP INDEX CONCURRENTLY IF EXISTS customer_search_age;
+CREATE INDEX CONCURRENTLY customer_search_age ON customer (age, id) INCLUDE (name, email, gender);
+
+-- prefix filters: lower(column) LIKE 'prefix%' can only use a btree with the
+-- pattern operator class, unless the database collation is C
+DROP INDEX CONCURRENTLY IF EXISTS customer_search_name_prefix;
+CREATE INDEX CONCURRENTLY customer_search_name_prefix ON customer (lower(name) text_pattern_ops);
+DROP INDEX CONCURRENTLY IF EXISTS customer_search_email_prefix;
+CREATE INDEX CONCURRENTLY customer_search_email_prefix ON customer (lower(email) text_pattern_ops);
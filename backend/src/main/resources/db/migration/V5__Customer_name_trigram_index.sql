@@ -0,0 +1,12 @@
+-- fuzzy name search filters with name % query and ranks by name <-> query; a
+-- trigram GIN index finds the names sharing enough trigrams with the query, so
+-- only those rows are read and ranked instead of every row. GIN rather than
+-- GiST: a quarter of the size over the same names and faster to search, the
+-- nearest-first ordering GiST could serve is paid for in index reads that cost
+-- more than sorting the matches. pg_trgm is a trusted extension: the database
+-- owner may create it
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- concurrently, as in V3
+DROP INDEX CONCURRENTLY IF EXISTS customer_name_trgm;
+CREATE INDEX CONCURRENTLY customer_name_trgm ON customer USING gin (name gin_trgm_ops);
@@ -12,6 +12,7 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import javax.sql.DataSource;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 @Testcontainers
@@ -23,7 +24,7 @@ public abstract class AbstractTestcontainers {
                 postgreSQLContainer.getJdbcUrl(),
                 postgreSQLContainer.getUsername(),
                 postgreSQLContainer.getPassword()
-        ).load();
+        ).configuration(Map.of("flyway.postgresql.transactional.lock", "false")).load();
         flyway.migrate();
     }
 
@@ -0,0 +1,146 @@
+package com.alexgiounan.springbootexample.auth;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthenticationServiceTest {
+
+    private AuthenticationService underTest;
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    @Mock
+    private UserDetailsPasswordService userDetailsPasswordService;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    private final JWTUtil jwtUtil = new JWTUtil(100);
+
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    private ExecutorService taskExecutor;
+
+    private final Customer customer = new Customer(
+            7, "Alex", "alex@gmail.com", "hash", 19, Gender.MALE);
+
+    @BeforeEach
+    void setUp() {
+        passwordHashingExecutor = new PasswordHashingExecutor(2, 16);
+        taskExecutor = Executors.newSingleThreadExecutor();
+        underTest = new AuthenticationService(
+                userDetailsService, userDetailsPasswordService, passwordEncoder,
+                passwordHashingExecutor, taskExecutor, new CustomerDTOMapper(), jwtUtil);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingExecutor.destroy();
+        taskExecutor.shutdown();
+    }
+
+    @Test
+    void loginRunsOnlyThePasswordCheckOnTheLane() {
+        // Given
+        AtomicReference<String> lookupThread = new AtomicReference<>();
+        AtomicReference<String> matchThread = new AtomicReference<>();
+        when(userDetailsService.loadUserByUsername("alex@gmail.com")).thenAnswer(invocation -> {
+            lookupThread.set(Thread.currentThread().getName());
+            return customer;
+        });
+        when(passwordEncoder.matches("password", "hash")).thenAnswer(invocation -> {
+            matchThread.set(Thread.currentThread().getName());
+            return true;
+        });
+        when(passwordEncoder.upgradeEncoding("hash")).thenReturn(false);
+
+        // When
+        AuthenticationResponse actual = underTest.loginAsync(
+                new AuthenticationRequest("alex@gmail.com", "password")).join();
+
+        // Then
+        assertThat(lookupThread.get()).doesNotStartWith("password-hashing-");
+        assertThat(matchThread.get()).startsWith("password-hashing-");
+        assertThat(actual.customerDTO().id()).isEqualTo(7);
+        assertThat(jwtUtil.verify(actual.token()).get("customerId", Integer.class)).isEqualTo(7);
+        verify(userDetailsPasswordService, never()).updatePassword(any(), any());
+    }
+
+    @Test
+    void loginReplacesAnOutdatedHashOffTheLane() {
+        // Given
+        AtomicReference<String> updateThread = new AtomicReference<>();
+        when(userDetailsService.loadUserByUsername("alex@gmail.com")).thenReturn(customer);
+        when(passwordEncoder.matches("password", "hash")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("hash")).thenReturn(true);
+        when(passwordEncoder.encode("password")).thenReturn("stronger-hash");
+        when(userDetailsPasswordService.updatePassword(customer, "stronger-hash")).thenAnswer(invocation -> {
+            updateThread.set(Thread.currentThread().getName());
+            return customer;
+        });
+
+        // When
+        underTest.loginAsync(new AuthenticationRequest("alex@gmail.com", "password")).join();
+
+        // Then
+        assertThat(updateThread.get()).doesNotStartWith("password-hashing-");
+    }
+
+    @Test
+    void loginRejectsAWrongPassword() {
+        // Given
+        when(userDetailsService.loadUserByUsername("alex@gmail.com")).thenReturn(customer);
+        when(passwordEncoder.matches("wrong", "hash")).thenReturn(false);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.loginAsync(
+                new AuthenticationRequest("alex@gmail.com", "wrong")).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(BadCredentialsException.class);
+        verify(userDetailsPasswordService, never()).updatePassword(any(), any());
+    }
+
+    @Test
+    void loginChecksUnknownUsersAgainstAThrowawayHash() {
+        // Given
+        when(userDetailsService.loadUserByUsername("nobody@gmail.com"))
+                .thenThrow(new UsernameNotFoundException("nobody@gmail.com"));
+        when(passwordEncoder.encode(anyString())).thenReturn("throwaway-hash");
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.loginAsync(
+                new AuthenticationRequest("nobody@gmail.com", "password")).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(BadCredentialsException.class);
+        verify(passwordEncoder).matches("password", "throwaway-hash");
+    }
+}
@@ -0,0 +1,90 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerBatchGetBenchmark
+// Batches of 100 random ids read the way enriching services did it, a query per
+// id, and with the single = ANY(?) query the multi-get endpoint sends.
+class CustomerBatchGetBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 100_000;
+    private static final int BATCH = 100;
+    private static final int ROUNDS = 50;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'batch.' || g || '@example.com', 'password', 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'batch.%'");
+    }
+
+    @Test
+    void batchLatencyWithAQueryPerIdAndWithOneQuery() {
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM customer WHERE email LIKE 'batch.%'", Integer.class);
+        Random random = new Random(42);
+        List<List<Integer>> batches = IntStream.range(0, ROUNDS)
+                .mapToObj(round -> random.ints(0, ids.size())
+                        .distinct()
+                        .limit(BATCH)
+                        .mapToObj(ids::get)
+                        .toList())
+                .toList();
+
+        Consumer<List<Integer>> perId = batch -> batch.forEach(id ->
+                assertThat(dao.selectCustomerProfileById(id)).isPresent());
+        Consumer<List<Integer>> oneQuery = batch ->
+                assertThat(dao.selectCustomerProfilesByIds(batch)).hasSize(batch.size());
+
+        // warm up the connection and the plan cache
+        run(batches, perId);
+        run(batches, oneQuery);
+
+        double perIdMicros = run(batches, perId);
+        double oneQueryMicros = run(batches, oneQuery);
+
+        System.out.printf("""
+                        %d batches of %d ids among %,d customers
+                          a query per id: %,.0f us/batch
+                          one query:      %,.0f us/batch
+                        %n""",
+                ROUNDS, BATCH, ROWS, perIdMicros, oneQueryMicros);
+
+        assertThat(oneQueryMicros).isLessThan(perIdMicros);
+    }
+
+    // mean microseconds per batch of distinct ids
+    private static double run(List<List<Integer>> batches, Consumer<List<Integer>> read) {
+        long start = System.nanoTime();
+        batches.forEach(read);
+        return (System.nanoTime() - start) / 1_000.0 / batches.size();
+    }
+}
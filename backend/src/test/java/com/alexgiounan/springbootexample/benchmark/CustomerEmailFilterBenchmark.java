@@ -0,0 +1,97 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import com.alexgiounan.springbootexample.service.ExistingEmailFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerEmailFilterBenchmark
+// Registration checks for addresses nobody has yet, against a million customers,
+// with and without the filter in front of the query.
+class CustomerEmailFilterBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 1_000_000;
+    private static final int CHECKS = 20_000;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'filter.' || g || '@example.com', 'password', 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+        jdbcTemplate.execute("ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'filter.%'");
+    }
+
+    @Test
+    void availabilityChecksWithAndWithoutTheFilter() throws InterruptedException {
+        ExistingEmailFilter filter = new ExistingEmailFilter(
+                jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                100_000, 0.01, 0.2, meterRegistry);
+        try {
+            long start = System.nanoTime();
+            filter.onApplicationReady();
+            while (meterRegistry.get("customer.email.filter.ready").gauge().value() == 0) {
+                Thread.sleep(10);
+            }
+            double buildMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+            // warm up the connection and the plan cache
+            checks(email -> dao.existsCustomerWithEmail(email), 1_000);
+            double directMicros = checks(email -> dao.existsCustomerWithEmail(email), CHECKS);
+            double filteredMicros = checks(email -> filter.exists(email, dao::existsCustomerWithEmail), CHECKS);
+            double falsePositives = meterRegistry.counter("customer.email.filter.false.positives").count();
+
+            System.out.printf("""
+                            %,d availability checks for new addresses over %,d customers
+                              filter built in %,.0f ms, %,.0f addresses, expected false positive rate %.4f
+                              without filter: %,.1f us/check
+                              with filter:    %,.1f us/check, %.0f checks reached the database
+                            %n""",
+                    CHECKS, ROWS, buildMillis,
+                    meterRegistry.get("customer.email.filter.entries").gauge().value(),
+                    meterRegistry.get("customer.email.filter.false.positive.rate").gauge().value(),
+                    directMicros, filteredMicros, falsePositives);
+
+            assertThat(falsePositives / CHECKS).isLessThan(0.02);
+            assertThat(filteredMicros).isLessThan(directMicros);
+        } finally {
+            filter.destroy();
+        }
+    }
+
+    private static double checks(Predicate<String> exists, int count) {
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            assertThat(exists.test("new." + random.nextLong() + "@example.com")).isFalse();
+        }
+        return (System.nanoTime() - start) / 1_000.0 / count;
+    }
+}
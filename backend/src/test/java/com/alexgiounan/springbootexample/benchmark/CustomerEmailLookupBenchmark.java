@@ -0,0 +1,87 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerEmailLookupBenchmark
+class CustomerEmailLookupBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 1_000_000;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService underTest =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    private final Random random = new Random(42);
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'Benchmark.' || g || '@Example.com', 'password', 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+        jdbcTemplate.execute("ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'Benchmark.%'");
+    }
+
+    @Test
+    void emailLookupLatencyWithAndWithoutIndex() {
+        // warm up the connection pool and the plan cache
+        lookups(20);
+
+        jdbcTemplate.execute("DROP INDEX customer_email_lower_unique");
+        jdbcTemplate.execute("ANALYZE customer");
+        String seqScanPlan = plan();
+        double seqScanMicros = lookups(50);
+
+        jdbcTemplate.execute("CREATE UNIQUE INDEX customer_email_lower_unique ON customer (lower(email))");
+        jdbcTemplate.execute("ANALYZE customer");
+        String indexPlan = plan();
+        double indexMicros = lookups(5_000);
+
+        System.out.printf("""
+                        email lookup over %,d rows
+                          without index: %,.1f us/lookup  (%s)
+                          with index:    %,.1f us/lookup  (%s)
+                        %n""",
+                ROWS, seqScanMicros, seqScanPlan, indexMicros, indexPlan);
+
+        assertThat(indexPlan).contains("customer_email_lower_unique");
+        assertThat(indexMicros).isLessThan(seqScanMicros);
+    }
+
+    private double lookups(int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            String email = "benchmark." + (random.nextInt(ROWS) + 1) + "@example.com";
+            assertThat(underTest.selectUserByEmail(email)).isPresent();
+        }
+        return (System.nanoTime() - start) / 1_000.0 / count;
+    }
+
+    private String plan() {
+        return jdbcTemplate.queryForList(
+                        "EXPLAIN SELECT id FROM customer WHERE lower(email) = lower(?)",
+                        String.class,
+                        "benchmark.1@example.com")
+                .get(0);
+    }
+}
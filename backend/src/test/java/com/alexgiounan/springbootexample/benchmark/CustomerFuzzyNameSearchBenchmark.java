@@ -0,0 +1,179 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerFuzzyNameSearchBenchmark
+// Fuzzy name searches over five million customers, each for an existing name with
+// two letters swapped, as a support agent would mistype it: the first page and
+// the page after it through the trigram index, and a few first pages with the
+// index switched off, the sequential scan a LIKE '%x%' search would read.
+// Prints the plan and the latency percentiles.
+class CustomerFuzzyNameSearchBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 5_000_000;
+    private static final int SEARCHES = 200;
+    private static final int SCANS = 5;
+    private static final int PAGE_SIZE = 21;
+
+    private static final String[] FIRST_NAMES = {
+            "Alexandros", "Maria", "Giorgos", "Eleni", "Nikos", "Katerina", "Dimitris", "Sofia",
+            "Kostas", "Anna", "Yannis", "Despina", "Panagiotis", "Vasiliki", "Christos", "Ioanna",
+            "Michalis", "Georgia", "Stavros", "Angeliki", "John", "Emma", "Oliver", "Charlotte",
+            "William", "Amelia", "James", "Olivia", "Benjamin", "Isabella", "Lucas", "Mia"};
+    private static final String[] STEMS = {
+            "Papa", "Kon", "Nik", "Stav", "Geor", "Mar", "Dim", "Vas", "Leon", "Ath",
+            "Chris", "Mich", "Ant", "Pan", "Ioan", "Spyr", "Thom", "Kyri", "Ange", "Evan"};
+    private static final String[] MIDDLES = {"", "a", "o", "i", "ou", "el", "an", "ar", "op", "ak"};
+    private static final String[] ENDINGS = {"poulos", "idis", "akis", "opoulou", "as", "ou", "iadis", "atos"};
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+    private final TransactionTemplate transaction =
+            new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+    @BeforeAll
+    static void seed() {
+        // built after the load, as V5 builds it on a table that already has its rows
+        jdbcTemplate.execute("DROP INDEX customer_name_trgm");
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT f[1 + g % cardinality(f)] || ' '
+                           || s[1 + (g / 7) % cardinality(s)]
+                           || m[1 + (g / 13) % cardinality(m)]
+                           || e[1 + (g / 31) % cardinality(e)],
+                       'fuzzy.' || g || '@example.com', 'password', 18 + g % 80,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g,
+                     (SELECT ?::text[] AS f, ?::text[] AS s, ?::text[] AS m, ?::text[] AS e) names
+                """, ps -> {
+            ps.setInt(1, ROWS);
+            ps.setArray(2, ps.getConnection().createArrayOf("text", FIRST_NAMES));
+            ps.setArray(3, ps.getConnection().createArrayOf("text", STEMS));
+            ps.setArray(4, ps.getConnection().createArrayOf("text", MIDDLES));
+            ps.setArray(5, ps.getConnection().createArrayOf("text", ENDINGS));
+        });
+        jdbcTemplate.execute("CREATE INDEX customer_name_trgm ON customer USING gin (name gin_trgm_ops)");
+        jdbcTemplate.execute("VACUUM ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'fuzzy.%'");
+    }
+
+    @Test
+    void misspelledNameSearchLatency() {
+        Random random = new Random(42);
+        List<String> queries = new ArrayList<>(SEARCHES);
+        for (int i = 0; i < SEARCHES; i++) {
+            queries.add(misspell(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + STEMS[random.nextInt(STEMS.length)]
+                    + MIDDLES[random.nextInt(MIDDLES.length)]
+                    + ENDINGS[random.nextInt(ENDINGS.length)], random));
+        }
+
+        // warm up the buffer cache and the plan cache
+        queries.stream().limit(20).forEach(this::search);
+
+        long[] first = new long[SEARCHES];
+        long[] next = new long[SEARCHES];
+        int found = 0;
+        for (int i = 0; i < SEARCHES; i++) {
+            long start = System.nanoTime();
+            List<CustomerNameMatch> page = search(queries.get(i));
+            first[i] = System.nanoTime() - start;
+            if (page.size() == PAGE_SIZE) {
+                found++;
+                start = System.nanoTime();
+                dao.searchCustomerProfilesByName(queries.get(i), page.get(PAGE_SIZE - 2).cursor(), PAGE_SIZE);
+                next[i] = System.nanoTime() - start;
+            }
+        }
+
+        long[] scans = new long[SCANS];
+        for (int i = 0; i < SCANS; i++) {
+            String query = queries.get(i);
+            scans[i] = transaction.execute(status -> {
+                jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+                jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+                long start = System.nanoTime();
+                search(query);
+                return System.nanoTime() - start;
+            });
+        }
+
+        String plan = jdbcTemplate.queryForList("""
+                        EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF)
+                        SELECT id, name, email, age, gender, name <-> ? AS distance
+                        FROM customer
+                        WHERE name % ?
+                        ORDER BY name <-> ?, id
+                        LIMIT ?
+                        """, String.class, queries.get(0), queries.get(0), queries.get(0), PAGE_SIZE)
+                .stream()
+                .map(String::trim)
+                .collect(Collectors.joining("\n    "));
+
+        System.out.printf("""
+                        %,d customers, %,d misspelled name searches, %d per page, %d with a full first page
+                          first page: p50 %.2f ms, p99 %.2f ms, max %.2f ms
+                          next page:  p50 %.2f ms, p99 %.2f ms, max %.2f ms
+                          first page without the index, %d searches: p50 %.2f ms, max %.2f ms
+                          plan:
+                            %s
+                        %n""",
+                ROWS, SEARCHES, PAGE_SIZE - 1, found,
+                percentile(first, 50), percentile(first, 99), percentile(first, 100),
+                percentile(next, 50), percentile(next, 99), percentile(next, 100),
+                SCANS, percentile(scans, 50), percentile(scans, 100),
+                plan);
+
+        assertThat(found).isGreaterThan(SEARCHES / 2);
+        assertThat(percentile(first, 50)).isLessThan(percentile(scans, 50));
+        assertThat(percentile(next, 50)).isLessThan(percentile(scans, 50));
+    }
+
+    private List<CustomerNameMatch> search(String name) {
+        return dao.searchCustomerProfilesByName(name, null, PAGE_SIZE);
+    }
+
+    // two neighbouring letters swapped, never the first
+    private static String misspell(String name, Random random) {
+        char[] chars = name.toCharArray();
+        int i;
+        do {
+            i = 1 + random.nextInt(chars.length - 2);
+        } while (chars[i] == ' ' || chars[i + 1] == ' ');
+        char swapped = chars[i];
+        chars[i] = chars[i + 1];
+        chars[i + 1] = swapped;
+        return new String(chars);
+    }
+
+    private static double percentile(long[] nanos, int percentile) {
+        long[] measured = Arrays.stream(nanos).filter(n -> n > 0).sorted().toArray();
+        int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * measured.length) - 1);
+        return measured[index] / 1_000_000.0;
+    }
+}
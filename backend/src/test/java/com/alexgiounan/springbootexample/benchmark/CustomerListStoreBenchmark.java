@@ -0,0 +1,93 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.service.CustomerListDataAccessService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerListStoreBenchmark
+// Compares lookups in the indexed store against the ArrayList scans it replaced.
+class CustomerListStoreBenchmark {
+
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+    private static final int LOOKUPS = 20_000;
+
+    // the lookups of the previous CustomerListDataAccessService
+    static class ArrayListStore {
+        private final List<Customer> customers = new ArrayList<>();
+
+        void insertCustomer(Customer customer) {
+            customers.add(customer);
+        }
+
+        Optional<Customer> selectCustomerById(Integer id) {
+            return customers.stream()
+                    .filter(c -> c.getId().equals(id))
+                    .findFirst();
+        }
+
+        Optional<Customer> selectUserByEmail(String email) {
+            return customers.stream()
+                    .filter(c -> c.getUsername().equalsIgnoreCase(email))
+                    .findFirst();
+        }
+    }
+
+    @Test
+    void indexedStoreVersusArrayListScan() {
+        StringBuilder report = new StringBuilder();
+        for (int size : SIZES) {
+            ArrayListStore before = new ArrayListStore();
+            CustomerListDataAccessService after = new CustomerListDataAccessService();
+            for (int i = 1; i <= size; i++) {
+                int id = i + 2;
+                before.insertCustomer(customer(id));
+                after.insertCustomer(customer(id));
+            }
+
+            // scans get fewer iterations at the larger sizes so a run stays short
+            int scanLookups = Math.max(100, LOOKUPS * 1_000 / size);
+            double beforeById = nanosPerOp(scanLookups, size, id -> before.selectCustomerById(id));
+            double afterById = nanosPerOp(LOOKUPS, size, id -> after.selectCustomerById(id));
+            double beforeByEmail = nanosPerOp(scanLookups, size, id -> before.selectUserByEmail(email(id)));
+            double afterByEmail = nanosPerOp(LOOKUPS, size, id -> after.selectUserByEmail(email(id)));
+
+            report.append("  %,8d customers  by id %,12.0f -> %,6.0f ns   by email %,12.0f -> %,6.0f ns%n"
+                    .formatted(size, beforeById, afterById, beforeByEmail, afterByEmail));
+
+            assertThat(afterById).isLessThan(beforeById);
+            assertThat(afterByEmail).isLessThan(beforeByEmail);
+        }
+        System.out.printf("ArrayList scan -> indexed store, per lookup%n%s%n", report);
+    }
+
+    private static double nanosPerOp(int count, int size, IntFunction<Optional<Customer>> lookup) {
+        Random random = new Random(42);
+        // warm up
+        for (int i = 0; i < count; i++) {
+            assertThat(lookup.apply(random.nextInt(size) + 3)).isPresent();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            assertThat(lookup.apply(random.nextInt(size) + 3)).isPresent();
+        }
+        return (System.nanoTime() - start) / (double) count;
+    }
+
+    private static Customer customer(int id) {
+        return new Customer(id, "Customer " + id, email(id), "password", 30, Gender.MALE);
+    }
+
+    private static String email(int id) {
+        return "Customer." + id + "@Example.com";
+    }
+}
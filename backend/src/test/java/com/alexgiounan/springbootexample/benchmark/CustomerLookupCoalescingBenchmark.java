@@ -0,0 +1,127 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.TestConfig;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.repository.JpaCacheConfig;
+import com.alexgiounan.springbootexample.service.CoalescingCustomerDao;
+import com.alexgiounan.springbootexample.service.CustomerJPADataAccessService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerLookupCoalescingBenchmark
+// Bursts of concurrent logins for a few accounts right after the caches were
+// flushed, as after a deploy or a missed invalidation: every thread of a burst
+// asks for one of the accounts at the same moment.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TestConfig.class, JpaCacheConfig.class, SimpleMeterRegistry.class,
+        CustomerJPADataAccessService.class, CoalescingCustomerDao.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerLookupCoalescingBenchmark extends AbstractTestcontainers {
+
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS = 64;
+    private static final int BURSTS = 200;
+
+    private static final CustomersInvalidatedEvent FLUSH = new CustomersInvalidatedEvent("benchmark");
+
+    @Autowired
+    private CustomerJPADataAccessService jpa;
+
+    @Autowired
+    private CoalescingCustomerDao coalescing;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeAll
+    static void seed() {
+        getJdbcTemplate().update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'burst.' || g || '@example.com', 'password', 30, 'MALE'
+                FROM generate_series(1, ?) g
+                """, ACCOUNTS);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        getJdbcTemplate().update("DELETE FROM customer WHERE email LIKE 'burst.%'");
+    }
+
+    @Test
+    void statementsPerBurstWithAndWithoutCoalescing() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            // warm up the connection pool
+            bursts(executor, jpa, 20);
+
+            statistics.clear();
+            long start = System.nanoTime();
+            bursts(executor, jpa, BURSTS);
+            double directMillis = (System.nanoTime() - start) / 1_000_000.0 / BURSTS;
+            long directStatements = statistics.getPrepareStatementCount();
+
+            statistics.clear();
+            start = System.nanoTime();
+            bursts(executor, coalescing, BURSTS);
+            double coalescedMillis = (System.nanoTime() - start) / 1_000_000.0 / BURSTS;
+            long coalescedStatements = statistics.getPrepareStatementCount();
+
+            System.out.printf("""
+                            %,d bursts of %d concurrent lookups over %d accounts, caches flushed before each
+                              direct:     %.1f statements/burst, %.2f ms/burst
+                              coalescing: %.1f statements/burst, %.2f ms/burst
+                            %n""",
+                    BURSTS, THREADS, ACCOUNTS,
+                    (double) directStatements / BURSTS, directMillis,
+                    (double) coalescedStatements / BURSTS, coalescedMillis);
+
+            assertThat(coalescedStatements).isLessThan(directStatements / 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void bursts(ExecutorService executor, CustomerDao dao, int bursts) throws Exception {
+        for (int burst = 0; burst < bursts; burst++) {
+            jpa.onCustomersInvalidated(FLUSH);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> lookups = new ArrayList<>(THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                String email = "burst." + (i % ACCOUNTS + 1) + "@example.com";
+                lookups.add(executor.submit(() -> {
+                    start.await();
+                    return dao.selectUserByEmail(email).orElseThrow();
+                }));
+            }
+            start.countDown();
+            for (Future<?> lookup : lookups) {
+                lookup.get();
+            }
+        }
+    }
+}
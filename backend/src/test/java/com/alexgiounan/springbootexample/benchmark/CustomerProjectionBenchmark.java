@@ -0,0 +1,82 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerProjectionBenchmark
+// The full customer list read as entities, password hashes included, and as
+// profiles without them. Hashes are real bcrypt lengths.
+class CustomerProjectionBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 100_000;
+    private static final int ROUNDS = 10;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'projection.' || g || '@example.com',
+                       '$2a$10$' || substr(md5(g::text) || md5((g + 1)::text), 1, 53), 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'projection.%'");
+    }
+
+    @Test
+    void listReadWithAndWithoutPasswordHashes() {
+        // warm up the connection and the plan cache
+        read(dao::selectAllCustomers);
+        read(dao::selectAllCustomerProfiles);
+
+        long[] entities = read(dao::selectAllCustomers);
+        long[] profiles = read(dao::selectAllCustomerProfiles);
+
+        System.out.printf("""
+                        full list of %,d customers, mean of %d reads
+                          entities: %,d ms, %,d MiB allocated
+                          profiles: %,d ms, %,d MiB allocated
+                        %n""",
+                ROWS, ROUNDS,
+                entities[0], entities[1] / (1024 * 1024),
+                profiles[0], profiles[1] / (1024 * 1024));
+
+        assertThat(profiles[1]).isLessThan(entities[1]);
+    }
+
+    // mean milliseconds and bytes allocated by this thread per read
+    private static long[] read(Supplier<List<?>> list) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertThat(list.get()).hasSizeGreaterThanOrEqualTo(ROWS);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000 / ROUNDS;
+        long bytes = (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / ROUNDS;
+        return new long[]{millis, bytes};
+    }
+}
@@ -0,0 +1,177 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerSearchBenchmark
+// Searches over a few million customers with the V4 search indexes, and again in a
+// transaction that drops them and rolls back. Prints the plan each search gets
+// and its mean time; the gender and age searches should be index only scans.
+class CustomerSearchBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 2_000_000;
+    private static final int ROUNDS = 20;
+
+    private static final List<String> SEARCH_INDEXES = List.of(
+            "customer_search_gender_age", "customer_search_age",
+            "customer_search_name_prefix", "customer_search_email_prefix");
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    private final Map<String, CustomerSearch> searches = new LinkedHashMap<>();
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT substr(md5(g::text), 1, 10), 'search.' || g || '@example.com', 'password', 18 + g % 80,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+        // index only scans need the visibility map, the planner needs statistics
+        jdbcTemplate.execute("VACUUM ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'search.%'");
+    }
+
+    @Test
+    void searchesWithAndWithoutTheSearchIndexes() {
+        searches.put("gender and age range, by age",
+                new CustomerSearch(30, 39, Gender.FEMALE, null, null, CustomerSearch.Sort.AGE, false, 0, 21));
+        searches.put("age range, by age descending",
+                new CustomerSearch(65, 70, null, null, null, CustomerSearch.Sort.AGE, true, 0, 21));
+        searches.put("gender, by age, page 50",
+                new CustomerSearch(null, null, Gender.MALE, null, null, CustomerSearch.Sort.AGE, false, 1_000, 21));
+        searches.put("name prefix, by id",
+                new CustomerSearch(null, null, null, "ab1", null, CustomerSearch.Sort.ID, false, 0, 21));
+
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+
+        // warm up the buffer cache and the plan cache
+        searches.values().forEach(this::time);
+        Map<String, Result> indexed = run();
+        // ACCESS EXCLUSIVE until the rollback brings the indexes back
+        Map<String, Result> unindexed = transactionTemplate.execute(status -> {
+            SEARCH_INDEXES.forEach(index -> jdbcTemplate.execute("DROP INDEX " + index));
+            Map<String, Result> results = run();
+            status.setRollbackOnly();
+            return results;
+        });
+
+        StringBuilder report = new StringBuilder("%,d customers, mean of %d searches%n".formatted(ROWS, ROUNDS));
+        indexed.forEach((name, result) -> report.append("""
+                  %s
+                    search indexes: %,.2f ms, %s
+                    none:           %,.2f ms, %s
+                """.formatted(name, result.millis(), result.plan(),
+                unindexed.get(name).millis(), unindexed.get(name).plan())));
+        System.out.println(report);
+
+        assertThat(indexed.get("gender and age range, by age").plan()).contains("Index Only Scan");
+        assertThat(indexed.get("age range, by age descending").plan()).contains("Index Only Scan");
+        indexed.forEach((name, result) ->
+                assertThat(result.millis()).as(name).isLessThan(unindexed.get(name).millis()));
+    }
+
+    private Map<String, Result> run() {
+        Map<String, Result> results = new LinkedHashMap<>();
+        searches.forEach((name, search) -> results.put(name, new Result(time(search), plan(search))));
+        return results;
+    }
+
+    private double time(CustomerSearch search) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertThat(dao.searchCustomerProfiles(search)).isNotEmpty();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ROUNDS;
+    }
+
+    // the scan nodes of the plan, as the DAO's statement for this search gets it
+    private String plan(CustomerSearch search) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF) " + sql(search),
+                String.class, args(search));
+        return plan.stream()
+                .map(String::trim)
+                .map(line -> line.startsWith("->") ? line.substring(2).trim() : line)
+                .filter(line -> line.contains("Scan") || line.startsWith("Heap Fetches"))
+                .collect(Collectors.joining("; "));
+    }
+
+    // the statement CustomerJDBCDataAccessService builds for the searches above
+    private static String sql(CustomerSearch search) {
+        String direction = search.descending() ? "DESC" : "ASC";
+        return """
+                SELECT id, name, email, age, gender
+                FROM customer
+                WHERE %s
+                ORDER BY %s %s, id %s
+                LIMIT ? OFFSET ?
+                """.formatted(conditions(search), search.sort().column(), direction, direction);
+    }
+
+    private static String conditions(CustomerSearch search) {
+        List<String> conditions = new ArrayList<>();
+        if (search.gender() != null) {
+            conditions.add("gender = ?");
+        }
+        if (search.minAge() != null) {
+            conditions.add("age >= ?");
+        }
+        if (search.maxAge() != null) {
+            conditions.add("age <= ?");
+        }
+        if (search.namePrefix() != null) {
+            conditions.add("lower(name) LIKE ?");
+        }
+        return conditions.isEmpty() ? "true" : String.join(" AND ", conditions);
+    }
+
+    private static Object[] args(CustomerSearch search) {
+        List<Object> args = new ArrayList<>();
+        if (search.gender() != null) {
+            args.add(search.gender().name());
+        }
+        if (search.minAge() != null) {
+            args.add(search.minAge());
+        }
+        if (search.maxAge() != null) {
+            args.add(search.maxAge());
+        }
+        if (search.namePrefix() != null) {
+            args.add(CustomerSearch.likePrefix(search.namePrefix()));
+        }
+        args.add(search.limit());
+        args.add(search.offset());
+        return args.toArray();
+    }
+
+    private record Result(double millis, String plan) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.TestConfig;
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.repository.JpaCacheConfig;
+import com.alexgiounan.springbootexample.service.CustomerJPADataAccessService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerSecondLevelCacheBenchmark
+// Replays a read heavy mix where most requests go to a small set of hot
+// accounts, once with the second level cache and once with every region
+// emptied before each request, and counts the statements sent to Postgres.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TestConfig.class, JpaCacheConfig.class, SimpleMeterRegistry.class, CustomerJPADataAccessService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerSecondLevelCacheBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 10_000;
+    private static final int HOT = 200;
+    private static final int REQUESTS = 20_000;
+
+    private static final CustomersInvalidatedEvent EMPTY = new CustomersInvalidatedEvent("benchmark");
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    @Autowired
+    private CustomerJPADataAccessService dao;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'cache.' || g || '@example.com', 'password', 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+        jdbcTemplate.execute("ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'cache.%'");
+    }
+
+    @Test
+    void roundTripsWithAndWithoutTheCache() {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+        List<Customer> customers = jdbcTemplate.query(
+                "SELECT * FROM customer WHERE email LIKE 'cache.%' ORDER BY id", new CustomerRowMapper());
+
+        // warm up the connection pool and the statement caches
+        replay(dao, customers, 2_000, true);
+
+        dao.onCustomersInvalidated(EMPTY);
+        statistics.clear();
+        long start = System.nanoTime();
+        replay(dao, customers, REQUESTS, false);
+        double uncachedMicros = (System.nanoTime() - start) / 1_000.0 / REQUESTS;
+        long uncachedStatements = statistics.getPrepareStatementCount();
+
+        dao.onCustomersInvalidated(EMPTY);
+        statistics.clear();
+        double emailHitsBefore = emailLookups("hit");
+        double emailMissesBefore = emailLookups("miss");
+        start = System.nanoTime();
+        replay(dao, customers, REQUESTS, true);
+        double cachedMicros = (System.nanoTime() - start) / 1_000.0 / REQUESTS;
+        long cachedStatements = statistics.getPrepareStatementCount();
+        double entityHitRatio = (double) statistics.getSecondLevelCacheHitCount()
+                / (statistics.getSecondLevelCacheHitCount() + statistics.getSecondLevelCacheMissCount());
+        double emailHitRatio = (emailLookups("hit") - emailHitsBefore)
+                / (emailLookups("hit") - emailHitsBefore + emailLookups("miss") - emailMissesBefore);
+
+        System.out.printf("""
+                        %,d requests over %,d customers, 80%% of them to %,d hot accounts
+                          without cache: %,d statements (%.2f per request), %,.1f us/request
+                          with cache:    %,d statements (%.2f per request), %,.1f us/request
+                                         entity hit ratio %.2f, by-email hit ratio %.2f
+                        %n""",
+                REQUESTS, ROWS, HOT,
+                uncachedStatements, (double) uncachedStatements / REQUESTS, uncachedMicros,
+                cachedStatements, (double) cachedStatements / REQUESTS, cachedMicros,
+                entityHitRatio, emailHitRatio);
+
+        assertThat(cachedStatements).isLessThan(uncachedStatements / 2);
+    }
+
+    private double emailLookups(String result) {
+        return meterRegistry.counter("customer.email.lookups", "result", result).count();
+    }
+
+    // 60% by id, 25% by email, 10% exists, 4% profile updates, 1% password changes
+    private static void replay(CustomerJPADataAccessService dao, List<Customer> customers,
+                               int requests, boolean cached) {
+        Random random = new Random(42);
+        for (int i = 0; i < requests; i++) {
+            if (!cached) {
+                dao.onCustomersInvalidated(EMPTY);
+            }
+            Customer target = customers.get(random.nextInt(100) < 80 ? random.nextInt(HOT) : random.nextInt(ROWS));
+            int id = target.getId();
+            int operation = random.nextInt(100);
+            if (operation < 60) {
+                dao.selectCustomerById(id);
+            } else if (operation < 85) {
+                dao.selectUserByEmail(target.getEmail());
+            } else if (operation < 95) {
+                dao.existsPersonWithId(id);
+            } else if (operation < 99) {
+                dao.updateCustomer(id, new CustomerUpdateRequest(null, null, 20 + random.nextInt(60)));
+            } else {
+                dao.updateCustomerPassword(id, "password-" + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerSparseFieldsBenchmark
+// The full customer list read and serialised whole, and with ?fields=id,name as
+// a client rendering a picker asks for it.
+class CustomerSparseFieldsBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 100_000;
+    private static final int ROUNDS = 10;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+    private final CustomerDTOMapper customerDTOMapper = new CustomerDTOMapper();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Customer ' || g, 'sparse.' || g || '@example.com', 'password', 20 + g % 60,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'sparse.%'");
+    }
+
+    @Test
+    void listReadWithEveryFieldAndWithTwo() throws JsonProcessingException {
+        CustomerFields picker = CustomerFields.parse("id,name");
+
+        // warm up the connection and the plan cache
+        read(CustomerFields.ALL);
+        read(picker);
+
+        long[] full = read(CustomerFields.ALL);
+        long[] sparse = read(picker);
+
+        System.out.printf("""
+                        full list of %,d customers, mean of %d reads
+                          every field: %,d ms, %,d KiB of JSON
+                          id,name:     %,d ms, %,d KiB of JSON
+                        %n""",
+                ROWS, ROUNDS,
+                full[0], full[1] / 1024,
+                sparse[0], sparse[1] / 1024);
+
+        assertThat(sparse[1]).isLessThan(full[1]);
+        assertThat(sparse[0]).isLessThan(full[0]);
+    }
+
+    // mean milliseconds per read and serialisation, and the bytes written
+    private long[] read(CustomerFields fields) throws JsonProcessingException {
+        long start = System.nanoTime();
+        int bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes = objectMapper.writeValueAsBytes(dao.selectAllCustomerProfiles(fields.projection())
+                    .stream()
+                    .map(customerDTOMapper::apply)
+                    .map(fields::apply)
+                    .toList()).length;
+        }
+        return new long[]{(System.nanoTime() - start) / 1_000_000 / ROUNDS, bytes};
+    }
+}
@@ -0,0 +1,139 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import com.alexgiounan.springbootexample.service.CustomerTypeahead;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerTypeaheadBenchmark
+// Prefix suggestions over a million customers, as typed one keystroke at a time:
+// from the typeahead index, and from the name and email prefix queries of the
+// search the service falls back to. Prints the latency percentiles and the
+// index's size.
+class CustomerTypeaheadBenchmark extends AbstractTestcontainers {
+
+    private static final int ROWS = 1_000_000;
+    private static final int WORDS = 2_000;
+    private static final int LIMIT = 10;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT initcap(md5(g::text)) || ' ' || initcap(substr(md5((g * 7)::text), 1, 10)),
+                       'typeahead.' || substr(md5((g * 13)::text), 1, 12) || '.' || g || '@example.com',
+                       'password', 18 + g % 80,
+                       CASE WHEN g % 2 = 0 THEN 'MALE' ELSE 'FEMALE' END
+                FROM generate_series(1, ?) g
+                """, ROWS);
+        jdbcTemplate.execute("VACUUM ANALYZE customer");
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'typeahead.%'");
+    }
+
+    @Test
+    void suggestionLatencyFromTheIndexAndFromTheDatabase() throws InterruptedException {
+        CustomerTypeahead typeahead = new CustomerTypeahead(
+                jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()), 1_000, meterRegistry);
+        try {
+            long start = System.nanoTime();
+            typeahead.onApplicationReady();
+            while (meterRegistry.get("customer.typeahead.ready").gauge().value() == 0) {
+                Thread.sleep(10);
+            }
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // every prefix of a name typed out, one keystroke at a time
+            Random random = new Random(42);
+            List<String> prefixes = new ArrayList<>();
+            List<String> names = jdbcTemplate.queryForList(
+                    "SELECT name FROM customer WHERE email LIKE 'typeahead.%' ORDER BY id LIMIT ?", String.class, WORDS);
+            for (int i = 0; i < WORDS; i++) {
+                String name = names.get(random.nextInt(names.size()));
+                for (int length = 1; length <= 8; length++) {
+                    prefixes.add(name.substring(0, length));
+                }
+            }
+
+            Function<String, List<CustomerSuggestion>> fromIndex = prefix ->
+                    typeahead.suggest(prefix, LIMIT, () -> {
+                        throw new IllegalStateException("built");
+                    });
+            Function<String, List<CustomerSuggestion>> fromDatabase = prefix -> CustomerTypeahead.top(prefix,
+                    Stream.of(
+                                    new CustomerSearch(null, null, null, prefix, null, CustomerSearch.Sort.NAME, false, 0, LIMIT),
+                                    new CustomerSearch(null, null, null, null, prefix, CustomerSearch.Sort.EMAIL, false, 0, LIMIT))
+                            .flatMap(search -> dao.searchCustomerProfiles(search).stream())
+                            .map(profile -> new CustomerSuggestion(profile.id(), profile.name(), profile.email()))
+                            .toList(),
+                    LIMIT);
+
+            // warm up the JIT, the buffer cache and the plan cache
+            prefixes.stream().limit(1_000).forEach(fromIndex::apply);
+            prefixes.stream().limit(200).forEach(fromDatabase::apply);
+
+            long[] index = measure(prefixes, fromIndex);
+            long[] database = measure(prefixes.subList(0, prefixes.size() / 10), fromDatabase);
+
+            System.out.printf("""
+                            %,d customers, index built in %,d ms, %,d KiB (%.0f bytes/customer)
+                              index:    %,d suggestions, p50 %.1f us, p99 %.1f us
+                              database: %,d suggestions, p50 %.1f us, p99 %.1f us
+                            %n""",
+                    ROWS, buildMillis,
+                    (long) meterRegistry.get("customer.typeahead.index.size").gauge().value() / 1024,
+                    meterRegistry.get("customer.typeahead.index.size").gauge().value()
+                            / meterRegistry.get("customer.typeahead.entries").gauge().value(),
+                    index.length, percentile(index, 50), percentile(index, 99),
+                    database.length, percentile(database, 50), percentile(database, 99));
+
+            assertThat(percentile(index, 99)).isLessThan(percentile(database, 50));
+        } finally {
+            typeahead.destroy();
+        }
+    }
+
+    private static long[] measure(List<String> prefixes, Function<String, List<CustomerSuggestion>> suggest) {
+        long[] nanos = new long[prefixes.size()];
+        for (int i = 0; i < prefixes.size(); i++) {
+            long start = System.nanoTime();
+            assertThat(suggest.apply(prefixes.get(i))).isNotEmpty();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static double percentile(long[] nanos, int percentile) {
+        long[] sorted = Arrays.stream(nanos).sorted().toArray();
+        int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[index] / 1_000.0;
+    }
+}
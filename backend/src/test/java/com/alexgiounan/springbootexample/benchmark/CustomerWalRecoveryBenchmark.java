@@ -0,0 +1,72 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.service.CustomerWALDataAccessService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerWalRecoveryBenchmark
+// Restart time of the wal store, first from an uncompacted log, then from the
+// snapshot that restart leaves behind.
+class CustomerWalRecoveryBenchmark {
+
+    private static final int CUSTOMERS = 1_000_000;
+    private static final int BATCH = 1_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoveryFromLogAndFromSnapshot() throws IOException {
+        CustomerWALDataAccessService store = open();
+        long start = System.nanoTime();
+        for (int i = 0; i < CUSTOMERS; i += BATCH) {
+            List<Customer> batch = new ArrayList<>(BATCH);
+            for (int j = i; j < i + BATCH; j++) {
+                batch.add(new Customer("Customer " + j, "customer." + j + "@example.com",
+                        "$2a$10$abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz12", 20 + j % 60, Gender.MALE));
+            }
+            store.insertCustomers(batch);
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        store.destroy();
+        store = null;
+
+        start = System.nanoTime();
+        store = open();
+        double fromLogSeconds = (System.nanoTime() - start) / 1e9;
+        assertThat(store.selectAllCustomers()).hasSize(CUSTOMERS);
+        store.destroy();
+        store = null;
+
+        start = System.nanoTime();
+        store = open();
+        double fromSnapshotSeconds = (System.nanoTime() - start) / 1e9;
+        assertThat(store.selectAllCustomers()).hasSize(CUSTOMERS);
+        store.destroy();
+
+        System.out.printf("""
+                        %,d customers, grouped fsync, batches of %,d
+                          write:                  %.1f s
+                          restart from log:       %.1f s  (includes writing the snapshot)
+                          restart from snapshot:  %.1f s
+                        %n""",
+                CUSTOMERS, BATCH, writeSeconds, fromLogSeconds, fromSnapshotSeconds);
+    }
+
+    private CustomerWALDataAccessService open() {
+        return new CustomerWALDataAccessService(
+                directory, "grouped", Duration.ofSeconds(1), DataSize.ofGigabytes(1));
+    }
+}
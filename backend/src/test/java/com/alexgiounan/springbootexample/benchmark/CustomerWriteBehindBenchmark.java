@@ -0,0 +1,140 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import com.alexgiounan.springbootexample.service.CustomerWriteBehindQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerWriteBehindBenchmark
+// Editors autosaving their profile: each sends a burst of name and age edits,
+// once written one transaction per edit and once through the write-behind
+// queue, which keeps the last edit of each customer and writes them in batches.
+class CustomerWriteBehindBenchmark extends AbstractTestcontainers {
+
+    private static final int EDITORS = 32;
+    private static final int EDITS_PER_EDITOR = 50;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao = new CustomerJDBCDataAccessService(
+            jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+    private final DataSourceTransactionManager transactionManager =
+            new DataSourceTransactionManager(jdbcTemplate.getDataSource());
+
+    @BeforeAll
+    static void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                SELECT 'Editor ' || g, 'autosave.' || g || '@example.com', 'password', 30, 'MALE'
+                FROM generate_series(1, ?) g
+                """, EDITORS);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'autosave.%'");
+    }
+
+    @Test
+    void autosaveBurstsWrittenNowAndWrittenBehind() throws Exception {
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM customer WHERE email LIKE 'autosave.%' ORDER BY id", Integer.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        BiConsumer<Integer, CustomerUpdateRequest> now = (id, edit) ->
+                transactionTemplate.executeWithoutResult(status -> dao.updateCustomer(id, edit));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CustomerWriteBehindQueue warmUp = queue(new SimpleMeterRegistry());
+        CustomerWriteBehindQueue queue = queue(meterRegistry);
+        ExecutorService executor = Executors.newFixedThreadPool(EDITORS);
+        try {
+            // warm up the connections and the plan cache
+            run(executor, ids, "warm", now);
+            run(executor, ids, "warm", warmUp::enqueue);
+            warmUp.destroy();
+
+            double nowMicros = run(executor, ids, "now", now);
+            long nowTransactions = (long) EDITORS * EDITS_PER_EDITOR;
+
+            long start = System.nanoTime();
+            double behindMicros = run(executor, ids, "behind", queue::enqueue);
+            // everything queued is written before the numbers count
+            queue.destroy();
+            double drainMillis = (System.nanoTime() - start) / 1_000_000.0;
+            long behindTransactions = meterRegistry.get("customer.write.behind.flush").timer().count();
+            double behindUpdates = meterRegistry.counter(
+                    "customer.write.behind.writes", "result", "success").count();
+
+            System.out.printf("""
+                            %d editors, each autosaving %d edits
+                              written now:    %,d updates in %,d transactions, %,.0f us/edit
+                              written behind: %,.0f updates in %,d transactions, %,.0f us/edit, all written after %,.0f ms
+                            %n""",
+                    EDITORS, EDITS_PER_EDITOR,
+                    nowTransactions, nowTransactions, nowMicros,
+                    behindUpdates, behindTransactions, behindMicros, drainMillis);
+
+            assertThat(jdbcTemplate.queryForList(
+                    "SELECT name FROM customer WHERE email LIKE 'autosave.%'", String.class))
+                    .allMatch(name -> name.equals("behind " + (EDITS_PER_EDITOR - 1)));
+            assertThat(behindTransactions).isLessThan(nowTransactions / 10);
+            assertThat(behindMicros).isLessThan(nowMicros);
+        } finally {
+            warmUp.destroy();
+            queue.destroy();
+            executor.shutdownNow();
+        }
+    }
+
+    private CustomerWriteBehindQueue queue(SimpleMeterRegistry meterRegistry) {
+        return new CustomerWriteBehindQueue(
+                dao, transactionManager, event -> {},
+                true, Duration.ofMillis(200), 10_000, 200, Duration.ofSeconds(1), 10,
+                meterRegistry);
+    }
+
+    // mean wall time per edit as the editor sees it
+    private double run(ExecutorService executor, List<Integer> ids, String round,
+                       BiConsumer<Integer, CustomerUpdateRequest> save) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> editors = new ArrayList<>(EDITORS);
+        for (Integer id : ids) {
+            editors.add(executor.submit(() -> {
+                start.await();
+                long nanos = 0;
+                for (int i = 0; i < EDITS_PER_EDITOR; i++) {
+                    long begin = System.nanoTime();
+                    save.accept(id, new CustomerUpdateRequest(round + " " + i, null, 20 + i));
+                    nanos += System.nanoTime() - begin;
+                }
+                return nanos;
+            }));
+        }
+        start.countDown();
+        long nanos = 0;
+        for (Future<Long> editor : editors) {
+            nanos += editor.get();
+        }
+        return nanos / 1_000.0 / (EDITORS * EDITS_PER_EDITOR);
+    }
+}
@@ -0,0 +1,152 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerProfileRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerRowMapper;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=CustomerWritePathBenchmark
+// Concurrent writers each registering, editing and deleting customers, once with
+// the statement sequences the service used to send and once with the single
+// statements the DAO sends now. Every statement holds a pooled connection for
+// a round trip, so the difference grows with the number of writers.
+class CustomerWritePathBenchmark extends AbstractTestcontainers {
+
+    private static final int THREADS = 32;
+    private static final int CUSTOMERS_PER_THREAD = 100;
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private final CustomerJDBCDataAccessService dao =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper(), new CustomerProfileRowMapper());
+
+    private final AtomicLong statements = new AtomicLong();
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email LIKE 'write.%'");
+    }
+
+    @Test
+    void writeLatencyWithSequencesAndWithSingleStatements() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            // warm up the connections and the plan cache
+            run(executor, "warm-sequence", this::sequences);
+            run(executor, "warm-single", this::singleStatements);
+
+            statements.set(0);
+            double sequenceMicros = run(executor, "sequence", this::sequences);
+            double sequenceStatements = (double) statements.getAndSet(0) / (THREADS * CUSTOMERS_PER_THREAD);
+            double singleMicros = run(executor, "single", this::singleStatements);
+            double singleStatements = (double) statements.getAndSet(0) / (THREADS * CUSTOMERS_PER_THREAD);
+
+            System.out.printf("""
+                            %d writers, each registering, editing and deleting %d customers
+                              statement sequences: %.1f statements/customer, %,.0f us/customer
+                              single statements:   %.1f statements/customer, %,.0f us/customer
+                            %n""",
+                    THREADS, CUSTOMERS_PER_THREAD,
+                    sequenceStatements, sequenceMicros,
+                    singleStatements, singleMicros);
+
+            assertThat(singleMicros).isLessThan(sequenceMicros);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // as the service and the DAO did it before: a check before every write,
+    // and an UPDATE per changed field
+    private void sequences(String email) {
+        if (count("SELECT count(id) FROM customer WHERE email = ?", email) > 0) {
+            throw new IllegalStateException("email already taken");
+        }
+        // the id is returned for the benchmark's sake, the round trip is the same
+        statements.incrementAndGet();
+        Integer id = jdbcTemplate.queryForObject("""
+                INSERT INTO customer(name, email,password, age,gender)
+                values(?, ?, ?, ?, ?)
+                RETURNING id
+                """, Integer.class, "Writer", email, "password", 30, Gender.MALE.name());
+
+        Customer customer = jdbcTemplate.query("""
+                SELECT id, name, email,password, age, gender
+                FROM customer
+                WHERE id = ?
+                """, new CustomerRowMapper(), id).get(0);
+        statements.incrementAndGet();
+        String moved = "moved." + customer.getEmail();
+        if (count("SELECT count(id) FROM customer WHERE email = ?", moved) > 0) {
+            throw new IllegalStateException("email already taken");
+        }
+        statements.addAndGet(3);
+        jdbcTemplate.update("UPDATE customer SET name = ? WHERE id = ?", "Edited", id);
+        jdbcTemplate.update("UPDATE customer SET email = ? WHERE id = ?", moved, id);
+        jdbcTemplate.update("UPDATE customer SET age = ? WHERE id = ?", 31, id);
+
+        if (count("SELECT count(id) FROM customer WHERE id = ?", id) == 0) {
+            throw new IllegalStateException("customer not found");
+        }
+        statements.incrementAndGet();
+        jdbcTemplate.update("DELETE FROM customer WHERE id = ?", id);
+    }
+
+    private void singleStatements(String email) {
+        Customer customer = new Customer("Writer", email, "password", 30, Gender.MALE);
+        dao.insertCustomer(customer);
+        dao.updateCustomer(customer.getId(), new CustomerUpdateRequest("Edited", "moved." + email, 31))
+                .orElseThrow();
+        dao.deleteCustomerById(customer.getId()).orElseThrow();
+        statements.addAndGet(3);
+    }
+
+    private int count(String sql, Object argument) {
+        statements.incrementAndGet();
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, argument);
+        return count == null ? 0 : count;
+    }
+
+    // mean wall time per customer, the whole register-edit-delete cycle
+    private double run(ExecutorService executor, String round, Consumer<String> cycle) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> writers = new ArrayList<>(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                start.await();
+                long nanos = 0;
+                for (int i = 0; i < CUSTOMERS_PER_THREAD; i++) {
+                    long begin = System.nanoTime();
+                    cycle.accept("write." + round + "." + thread + "." + i + "@example.com");
+                    nanos += System.nanoTime() - begin;
+                }
+                return nanos;
+            }));
+        }
+        start.countDown();
+        long nanos = 0;
+        for (Future<Long> writer : writers) {
+            nanos += writer.get();
+        }
+        return nanos / 1_000.0 / (THREADS * CUSTOMERS_PER_THREAD);
+    }
+}
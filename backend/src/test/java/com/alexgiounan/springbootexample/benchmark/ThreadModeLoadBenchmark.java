@@ -0,0 +1,164 @@
+package com.alexgiounan.springbootexample.benchmark;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.SpringBootExampleApplication;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not part of the regular build (no *Test suffix), run it explicitly:
+// mvn test -Dtest=ThreadModeLoadBenchmark
+// Starts the application twice, once per thread mode, and drives the same
+// authenticated read load against both.
+class ThreadModeLoadBenchmark extends AbstractTestcontainers {
+
+    private static final int CLIENTS = 1_000;
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration MEASURE = Duration.ofSeconds(20);
+    private static final String EMAIL = "load.benchmark@example.com";
+
+    private static final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+    private static int customerId;
+
+    record Result(String mode, int requests, int errors, double perSecond,
+                  double p50Millis, double p99Millis, int pinnedEvents) {
+    }
+
+    @BeforeAll
+    static void seed() {
+        customerId = jdbcTemplate.queryForObject("""
+                INSERT INTO customer(name, email, password, age, gender)
+                VALUES ('Load Benchmark', ?, 'password', 30, 'MALE')
+                RETURNING id
+                """, Integer.class, EMAIL);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        jdbcTemplate.update("DELETE FROM customer WHERE email = ?", EMAIL);
+    }
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("""
+                        GET /api/v1/customers/{id}, %,d concurrent clients, %ss
+                          %-8s %,9d req  %,6d err  %,9.0f req/s  p50 %,7.1f ms  p99 %,7.1f ms  pinned %d
+                          %-8s %,9d req  %,6d err  %,9.0f req/s  p50 %,7.1f ms  p99 %,7.1f ms  pinned %d
+                        %n""",
+                CLIENTS, MEASURE.toSeconds(),
+                platform.mode(), platform.requests(), platform.errors(), platform.perSecond(),
+                platform.p50Millis(), platform.p99Millis(), platform.pinnedEvents(),
+                virtual.mode(), virtual.requests(), virtual.errors(), virtual.perSecond(),
+                virtual.p50Millis(), virtual.p99Millis(), virtual.pinnedEvents());
+
+        assertThat(platform.requests()).isPositive();
+        assertThat(virtual.requests()).isPositive();
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        AtomicInteger pinned = new AtomicInteger();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootExampleApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=" + postgreSQLContainer.getJdbcUrl(),
+                        "--spring.datasource.username=" + postgreSQLContainer.getUsername(),
+                        "--spring.datasource.password=" + postgreSQLContainer.getPassword(),
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.org.springframework.security=INFO");
+             RecordingStream recording = new RecordingStream()) {
+
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> {
+                if (pinned.getAndIncrement() < 3) {
+                    System.out.println("pinned: " + event.getStackTrace().getFrames().stream()
+                            .limit(8).map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName())
+                            .toList());
+                }
+            });
+            recording.startAsync();
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String token = context.getBean(JWTUtil.class).issueToken(EMAIL, "ROLE_USER");
+            HttpRequest request = HttpRequest.newBuilder(
+                            URI.create("http://localhost:%s/api/v1/customers/%s".formatted(port, customerId)))
+                    .header("Authorization", "Bearer " + token)
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+
+            load(request, WARM_UP);
+            pinned.set(0);
+            long[] latencies = load(request, MEASURE);
+
+            int errors = (int) Arrays.stream(latencies).filter(latency -> latency < 0).count();
+            long[] ok = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+            return new Result(
+                    virtualThreads ? "virtual" : "platform",
+                    ok.length,
+                    errors,
+                    ok.length / (double) MEASURE.toSeconds(),
+                    percentile(ok, 0.50),
+                    percentile(ok, 0.99),
+                    pinned.get());
+        }
+    }
+
+    // each client loops until the deadline; a failed request is recorded as -1
+    private static long[] load(HttpRequest request, Duration duration) {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<List<Long>> perClient = new ArrayList<>();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                List<Long> latencies = new ArrayList<>();
+                perClient.add(latencies);
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            latencies.add(response.statusCode() == 200 ? System.nanoTime() - start : -1L);
+                        } catch (Exception e) {
+                            latencies.add(-1L);
+                        }
+                    }
+                });
+            }
+        }
+        return perClient.stream().flatMap(List::stream).mapToLong(Long::longValue).toArray();
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        return sortedNanos[(int) Math.min(sortedNanos.length - 1, sortedNanos.length * percentile)] / 1_000_000.0;
+    }
+}
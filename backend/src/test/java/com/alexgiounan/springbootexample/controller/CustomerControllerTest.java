@@ -0,0 +1,75 @@
+package com.alexgiounan.springbootexample.controller;
+
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.service.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerControllerTest {
+
+    private static final CustomerDTO ALEX = new CustomerDTO(
+            1, "Alex", "alex@gmail.com", Gender.MALE, 19, List.of("ROLE_USER"), "alex@gmail.com");
+
+    @Mock
+    private CustomerService customerService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void streamedArrayIsClosedWhenEveryRowWasWritten() throws Exception {
+        // Given
+        stream(consumer -> consumer.accept(ALEX));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        underTest().streamCustomers("application/json", response);
+
+        // Then
+        assertThat(objectMapper.readValue(response.getContentAsByteArray(), CustomerDTO[].class))
+                .containsExactly(ALEX);
+    }
+
+    @Test
+    void streamedArrayCutShortByAFailureIsLeftUnterminated() throws Exception {
+        // Given
+        stream(consumer -> {
+            consumer.accept(ALEX);
+            throw new QueryTimeoutException("cursor lost");
+        });
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        assertThatThrownBy(() -> underTest().streamCustomers("application/json", response))
+                .isInstanceOf(QueryTimeoutException.class);
+
+        // Then
+        assertThat(response.getContentAsString()).doesNotEndWith("]");
+    }
+
+    private CustomerController underTest() {
+        return new CustomerController(customerService, null, objectMapper, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stream(Consumer<Consumer<CustomerDTO>> rows) {
+        doAnswer(invocation -> {
+            rows.accept(invocation.getArgument(0, Consumer.class));
+            return null;
+        }).when(customerService).streamAllCustomers(any());
+    }
+}
@@ -0,0 +1,214 @@
+package com.alexgiounan.springbootexample.controller;
+
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerResponseCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private CustomerResponseCache underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerResponseCache(objectMapper, meterRegistry, 1024 * 1024);
+    }
+
+    @Test
+    void secondReadIsServedFromTheCache() throws IOException {
+        // When
+        MockHttpServletResponse first = getCustomer(1, "Alex");
+        MockHttpServletResponse second = getCustomer(1, "changed without an event");
+
+        // Then
+        assertThat(loads).hasValue(1);
+        assertThat(second.getContentAsString()).isEqualTo(first.getContentAsString());
+        assertThat(objectMapper.readValue(second.getContentAsByteArray(), CustomerDTO.class))
+                .isEqualTo(customer(1, "Alex"));
+        assertThat(second.getContentType()).isEqualTo("application/json");
+        assertThat(second.getContentLength()).isEqualTo(first.getContentAsByteArray().length);
+        assertThat(meterRegistry.counter("customer.response.cache", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void changeDropsTheCustomerAndThePagesHoldingIt() throws IOException {
+        // Given
+        getCustomer(1, "Alex");
+        getCustomer(2, "Mike");
+        getPage(0, 1, page(1, 1));             // holds 1
+        getPage(1, 1, page(null, 2));          // holds 2
+        getAll(List.of(customer(1, "Alex"), customer(2, "Mike")));
+        loads.set(0);
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+
+        // Then
+        getCustomer(1, "Alex");
+        getCustomer(2, "Mike");
+        getPage(0, 1, page(1, 1));
+        getPage(1, 1, page(null, 2));
+        getAll(List.of(customer(1, "Alex"), customer(2, "Mike")));
+        // customer 1, the first page and the full list were reloaded
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void addedCustomerDropsOnlyTheOpenEndedLists() throws IOException {
+        // Given
+        getCustomer(1, "Alex");
+        getPage(0, 1, page(1, 1));             // full page, another follows
+        getPage(1, 1, page(null, 2));          // last page
+        getAll(List.of(customer(1, "Alex"), customer(2, "Mike")));
+        loads.set(0);
+
+        // When
+        underTest.onCustomerAdded(new CustomerAddedEvent("new@gmail.com"));
+
+        // Then
+        getCustomer(1, "Alex");
+        getPage(0, 1, page(1, 1));
+        getPage(1, 1, page(null, 2));
+        getAll(List.of(customer(1, "Alex"), customer(2, "Mike")));
+        // the last page and the full list were reloaded
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void sparseReadIsAnEntryOfItsOwnDroppedWithTheCustomer() throws IOException {
+        // Given
+        CustomerFields names = CustomerFields.parse("name");
+        getCustomer(1, "Alex");
+        MockHttpServletResponse sparse = getCustomer(1, names, "Alex");
+        getCustomer(1, names, "Alex");
+        assertThat(loads).hasValue(2);
+        assertThat(sparse.getContentAsString()).isEqualTo("{\"id\":1,\"name\":\"Alex\"}");
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+
+        // Then
+        assertThat(underTest.size()).isZero();
+        getCustomer(1, names, "Alex");
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void writeDuringALoadKeepsTheLoadOutOfTheCache() throws IOException {
+        // When
+        underTest.writeCustomer(1, CustomerFields.ALL, new MockHttpServletResponse(), () -> {
+            loads.incrementAndGet();
+            underTest.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+            return customer(1, "stale");
+        });
+
+        // Then
+        assertThat(getCustomer(1, "fresh").getContentAsString()).contains("fresh");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void sizeStaysWithinTheBound() throws IOException {
+        // Given
+        underTest = new CustomerResponseCache(objectMapper, meterRegistry, 8 * 1024);
+
+        // When
+        for (int id = 1; id <= 500; id++) {
+            getCustomer(id, "Customer " + id);
+        }
+
+        // Then
+        assertThat(underTest.size()).isBetween(1L, 8 * 1024L);
+        assertThat(meterRegistry.counter("customer.response.cache.evictions").count()).isPositive();
+    }
+
+    @Test
+    void releasedEntriesAreNoLongerCounted() throws IOException {
+        // Given
+        getCustomer(1, "Alex");
+        getAll(List.of(customer(1, "Alex")));
+        assertThat(underTest.size()).isPositive();
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+
+        // Then
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void invalidationDropsEverything() throws IOException {
+        // Given
+        getCustomer(1, "Alex");
+        getPage(0, 1, page(1, 1));
+        getAll(List.of(customer(1, "Alex")));
+        loads.set(0);
+
+        // When
+        underTest.onCustomersInvalidated(new CustomersInvalidatedEvent("gap"));
+
+        // Then
+        assertThat(underTest.size()).isZero();
+        getCustomer(1, "Alex");
+        getPage(0, 1, page(1, 1));
+        getAll(List.of(customer(1, "Alex")));
+        assertThat(loads).hasValue(3);
+    }
+
+    private MockHttpServletResponse getCustomer(int id, String name) throws IOException {
+        return getCustomer(id, CustomerFields.ALL, name);
+    }
+
+    private MockHttpServletResponse getCustomer(int id, CustomerFields fields, String name) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        underTest.writeCustomer(id, fields, response, () -> {
+            loads.incrementAndGet();
+            return fields.apply(customer(id, name));
+        });
+        return response;
+    }
+
+    private void getPage(int after, int limit, CustomerPage page) throws IOException {
+        underTest.writePage(after, limit, CustomerFields.ALL, new MockHttpServletResponse(), () -> {
+            loads.incrementAndGet();
+            return page;
+        });
+    }
+
+    private void getAll(List<CustomerDTO> customers) throws IOException {
+        underTest.writeAll(CustomerFields.ALL, new MockHttpServletResponse(), () -> {
+            loads.incrementAndGet();
+            return customers;
+        });
+    }
+
+    private static CustomerPage page(Integer nextCursor, int... ids) {
+        List<CustomerDTO> customers = Arrays.stream(ids)
+                .mapToObj(id -> customer(id, "Customer " + id))
+                .toList();
+        return new CustomerPage(customers, nextCursor);
+    }
+
+    private static CustomerDTO customer(int id, String name) {
+        String email = "customer" + id + "@gmail.com";
+        return new CustomerDTO(id, name, email, Gender.MALE, 30, List.of("ROLE_USER"), email);
+    }
+}
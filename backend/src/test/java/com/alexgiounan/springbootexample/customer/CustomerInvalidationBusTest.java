@@ -0,0 +1,151 @@
+package com.alexgiounan.springbootexample.customer;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerInvalidationBusTest extends AbstractTestcontainers {
+
+    private static final Duration HEARTBEAT = Duration.ofMillis(200);
+
+    private final List<Object> eventsOnA = new CopyOnWriteArrayList<>();
+    private final List<Object> eventsOnB = new CopyOnWriteArrayList<>();
+    private CustomerInvalidationBus a;
+    private CustomerInvalidationBus b;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        a = bus(eventsOnA);
+        b = bus(eventsOnB);
+        awaitFlushes(eventsOnA, "connected", 1);
+        awaitFlushes(eventsOnB, "connected", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        a.destroy();
+        b.destroy();
+    }
+
+    @Test
+    void changesReachTheOtherInstance() throws InterruptedException {
+        // When
+        a.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+        a.onCustomerChanged(new CustomerChangedEvent(2, null));
+        a.onCustomerAdded(new CustomerAddedEvent("new@gmail.com"));
+
+        // Then
+        await(eventsOnB, events -> events.contains(new CustomerAddedEvent("new@gmail.com")));
+        assertThat(eventsOnB).containsSubsequence(
+                new CustomerChangedEvent(1, "alex@gmail.com"),
+                new CustomerChangedEvent(2, null),
+                new CustomerAddedEvent("new@gmail.com"));
+        // a sees neither its own changes nor a flush
+        assertThat(eventsOnA).containsExactly(new CustomersInvalidatedEvent("connected"));
+    }
+
+    @Test
+    void republishedChangesAreNotSentBack() throws InterruptedException {
+        // When
+        a.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+        await(eventsOnB, events -> events.contains(new CustomerChangedEvent(1, "alex@gmail.com")));
+        Thread.sleep(3 * HEARTBEAT.toMillis());
+
+        // Then
+        assertThat(eventsOnA).containsExactly(new CustomersInvalidatedEvent("connected"));
+        assertThat(eventsOnB).filteredOn(CustomerChangedEvent.class::isInstance).hasSize(1);
+    }
+
+    @Test
+    void missedMessageFlushesEverything() throws InterruptedException {
+        // Given
+        notify("M peer 1\nC 1 alex@gmail.com");
+        await(eventsOnB, events -> events.contains(new CustomerChangedEvent(1, "alex@gmail.com")));
+
+        // When
+        notify("M peer 3\nC 2 mike@gmail.com");
+
+        // Then
+        awaitFlushes(eventsOnB, "gap", 1);
+        assertThat(eventsOnB).doesNotContain(new CustomerChangedEvent(2, "mike@gmail.com"));
+    }
+
+    @Test
+    void heartbeatRevealsAMessageThatWasNeverDelivered() throws InterruptedException {
+        // Given
+        notify("M peer 1\nC 1 alex@gmail.com");
+        notify("H peer 1");
+        Thread.sleep(2 * HEARTBEAT.toMillis());
+        assertThat(eventsOnB).doesNotContain(new CustomersInvalidatedEvent("gap"));
+
+        // When
+        notify("H peer 2");
+
+        // Then
+        awaitFlushes(eventsOnB, "gap", 1);
+    }
+
+    @Test
+    void reconnectsAndFlushesAfterLosingTheConnection() throws InterruptedException {
+        // When
+        Integer terminated = getJdbcTemplate().queryForObject("""
+                SELECT count(pg_terminate_backend(pid))::int FROM pg_stat_activity
+                WHERE application_name = ?
+                """, Integer.class, "customer-invalidation-listener-" + b.nodeId().substring(0, 8));
+        assertThat(terminated).isEqualTo(1);
+
+        // Then
+        awaitFlushes(eventsOnB, "connected", 2);
+        a.onCustomerChanged(new CustomerChangedEvent(1, "alex@gmail.com"));
+        await(eventsOnB, events -> events.contains(new CustomerChangedEvent(1, "alex@gmail.com")));
+    }
+
+    // the bus listens to what it publishes, as it does in the application context
+    private CustomerInvalidationBus bus(List<Object> events) {
+        AtomicReference<CustomerInvalidationBus> bus = new AtomicReference<>();
+        bus.set(new CustomerInvalidationBus(
+                postgreSQLContainer.getJdbcUrl(),
+                postgreSQLContainer.getUsername(),
+                postgreSQLContainer.getPassword(),
+                HEARTBEAT,
+                event -> {
+                    events.add(event);
+                    if (event instanceof CustomerChangedEvent changed) {
+                        bus.get().onCustomerChanged(changed);
+                    } else if (event instanceof CustomerAddedEvent added) {
+                        bus.get().onCustomerAdded(added);
+                    }
+                },
+                new SimpleMeterRegistry()));
+        return bus.get();
+    }
+
+    private static void notify(String payload) {
+        getJdbcTemplate().queryForObject("SELECT pg_notify(?, ?)::text", String.class,
+                CustomerInvalidationBus.CHANNEL, payload);
+    }
+
+    private static void awaitFlushes(List<Object> events, String reason, int count) throws InterruptedException {
+        await(events, e -> e.stream()
+                .filter(new CustomersInvalidatedEvent(reason)::equals)
+                .count() >= count);
+    }
+
+    private static void await(List<Object> events, Predicate<List<Object>> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.test(events) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.test(events)).as("events %s", events).isTrue();
+    }
+}
@@ -1,15 +1,23 @@
 package com.alexgiounan.springbootexample.customer;
 
 import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
 import com.alexgiounan.springbootexample.service.CustomerJDBCDataAccessService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
 
@@ -22,7 +30,8 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
     void setUp() {
         underTest = new CustomerJDBCDataAccessService(
                 getJdbcTemplate(),
-                customerRowMapper
+                customerRowMapper,
+                new CustomerProfileRowMapper()
         );
 
 
@@ -47,6 +56,66 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         assertThat(actual).isNotEmpty();
     }
 
+    @Test
+    void selectCustomersAfter() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            underTest.insertCustomer(new Customer(
+                    FAKER.name().fullName(),
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    "password", 20,
+                    Gender.MALE));
+        }
+        List<Integer> ids = underTest.selectAllCustomers()
+                .stream()
+                .map(Customer::getId)
+                .sorted()
+                .toList();
+        Integer afterId = ids.get(ids.size() - 3);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfter(afterId, 1);
+
+        // Then
+        assertThat(actual)
+                .extracting(Customer::getId)
+                .containsExactly(ids.get(ids.size() - 2));
+    }
+
+    @Test
+    void selectCustomersAfterReturnsEmptyPastLastId() {
+        // Given
+        underTest.insertCustomer(customer);
+        Integer lastId = underTest.selectAllCustomers()
+                .stream()
+                .map(Customer::getId)
+                .max(Integer::compareTo)
+                .orElseThrow();
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfter(lastId, 10);
+
+        // Then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void streamAllCustomers() {
+        // Given
+        underTest.insertCustomer(customer);
+
+        // When
+        List<Customer> actual;
+        try (Stream<Customer> customers = underTest.streamAllCustomers()) {
+            actual = customers.toList();
+        }
+
+        // Then
+        assertThat(actual)
+                .extracting(Customer::getEmail)
+                .contains(customer.getEmail());
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -112,6 +181,80 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         assertThat(actual).isTrue();
     }
 
+    @Test
+    void insertCustomersLeavesOutOnlyTakenEmails() {
+        // Given
+        underTest.insertCustomer(customer);
+        Customer fresh = new Customer(FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), "password", 20, Gender.MALE);
+        Customer taken = new Customer(FAKER.name().fullName(),
+                customer.getEmail().toUpperCase(), "password", 30, Gender.FEMALE);
+
+        // When
+        Set<String> actual = underTest.insertCustomers(List.of(fresh, taken));
+
+        // Then
+        assertThat(actual).containsExactly(customer.getEmail().toLowerCase());
+        assertThat(fresh.getId()).isNotNull();
+        assertThat(underTest.selectCustomerById(fresh.getId())).isPresent();
+        assertThat(taken.getId()).isNull();
+    }
+
+    @Test
+    void insertCustomersAndSelectExistingEmails() {
+        // Given
+        String first = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String second = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String absent = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        underTest.insertCustomers(List.of(
+                new Customer(FAKER.name().fullName(), first, "password", 20, Gender.MALE),
+                new Customer(FAKER.name().fullName(), second, "password", 30, Gender.FEMALE)));
+
+        // When
+        Set<String> actual = underTest.selectExistingEmails(List.of(first.toUpperCase(), second, absent));
+
+        // Then
+        assertThat(actual).containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    void existsCustomerWithEmailIgnoresCase() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                "password", 20,
+                Gender.MALE);
+
+        underTest.insertCustomer(customer);
+        // When
+
+        boolean actual = underTest.existsCustomerWithEmail(email.toUpperCase());
+        // Then
+        assertThat(actual).isTrue();
+    }
+
+    @Test
+    void selectUserByEmailIgnoresCase() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                "password", 20,
+                Gender.MALE);
+
+        underTest.insertCustomer(customer);
+        // When
+
+        Optional<Customer> actual = underTest.selectUserByEmail(email.toUpperCase());
+        // Then
+        assertThat(actual).isPresent().hasValueSatisfying(c ->
+                assertThat(c.getEmail()).isEqualTo(email));
+    }
+
     @Test
     void existsPersonWithEmailReturnsFalseWhenDoesNotExists() {
         // Given
@@ -195,11 +338,7 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
 
 
         // When
-        Customer update = new Customer();
-        update.setId(id);
-        update.setName(newName);
-
-        underTest.updateCustomer(update);
+        underTest.updateCustomer(id, new CustomerUpdateRequest(newName, null, null));
 
         // Then
         Optional<Customer> actual = underTest.selectCustomerById(id);
@@ -235,11 +374,7 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
 
 
         // When
-        Customer update = new Customer();
-        update.setId(id);
-        update.setAge(newAge);
-
-        underTest.updateCustomer(update);
+        underTest.updateCustomer(id, new CustomerUpdateRequest(null, null, newAge));
 
         // Then
         Optional<Customer> actual = underTest.selectCustomerById(id);
@@ -276,11 +411,7 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
 
 
         // When
-        Customer update = new Customer();
-        update.setId(id);
-        update.setEmail(newEmail);
-
-        underTest.updateCustomer(update);
+        underTest.updateCustomer(id, new CustomerUpdateRequest(null, newEmail, null));
 
         // Then
         Optional<Customer> actual = underTest.selectCustomerById(id);
@@ -292,6 +423,37 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
             assertThat(c.getAge()).isEqualTo(customer.getAge());
         });
     }
+    @Test
+    void updateCustomerPassword() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                "password", 20,
+                Gender.MALE);
+
+        underTest.insertCustomer(customer);
+
+        int id = underTest.selectAllCustomers()
+                .stream()
+                .filter(c -> c.getEmail().equals(email))
+                .map(Customer::getId)
+                .findFirst()
+                .orElseThrow();
+
+        // When
+        underTest.updateCustomerPassword(id, "new-hash");
+
+        // Then
+        Optional<Customer> actual = underTest.selectCustomerById(id);
+
+        assertThat(actual).isPresent().hasValueSatisfying(c -> {
+            assertThat(c.getPassword()).isEqualTo("new-hash");
+            assertThat(c.getName()).isEqualTo(customer.getName());
+        });
+    }
+
     @Test
     void willUpdateAllPropertiesCustomer() {
         // Given
@@ -312,14 +474,8 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
                 .orElseThrow();
 
         // When update with new name, age and email
-        Customer update = new Customer();
-        update.setId(id);
-        update.setName("foo");
         String newEmail = UUID.randomUUID().toString();
-        update.setEmail(newEmail);
-        update.setAge(22);
-
-        underTest.updateCustomer(update);
+        underTest.updateCustomer(id, new CustomerUpdateRequest("foo", newEmail, 22));
 
         // Then
         Optional<Customer> actual = underTest.selectCustomerById(id);
@@ -332,4 +488,242 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
             assertThat(updated.getAge()).isEqualTo(22);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateCustomerReportsThePreviousEmail() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(FAKER.name().fullName(), email, "password", 20, Gender.MALE);
+        underTest.insertCustomer(customer);
+        String newEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                customer.getId(), new CustomerUpdateRequest(null, newEmail, null));
+
+        // Then
+        assertThat(actual).contains(new CustomerUpdate(email, true));
+    }
+
+    @Test
+    void updateCustomerWithSameValuesChangesNothing() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer("Alex", email, "password", 20, Gender.MALE);
+        underTest.insertCustomer(customer);
+
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                customer.getId(), new CustomerUpdateRequest("Alex", email, 20));
+
+        // Then
+        assertThat(actual).contains(new CustomerUpdate(email, false));
+    }
+
+    @Test
+    void updateCustomerWillReturnEmptyWhenIdNotExists() {
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                -1, new CustomerUpdateRequest("foo", null, null));
+
+        // Then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void updateCustomerWillThrowWhenEmailTaken() {
+        // Given
+        String taken = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer("Alex", taken, "password", 20, Gender.MALE));
+        Customer customer = new Customer("Alex", UUID.randomUUID().toString(), "password", 20, Gender.MALE);
+        underTest.insertCustomer(customer);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                customer.getId(), new CustomerUpdateRequest(null, taken.toUpperCase(), null)))
+                .isInstanceOf(DuplicateResourceException.class);
+    }
+
+    @Test
+    void insertCustomerWillThrowWhenEmailTaken() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer("Alex", email, "password", 20, Gender.MALE));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.insertCustomer(
+                new Customer("Alex", email.toUpperCase(), "password", 20, Gender.MALE)))
+                .isInstanceOf(DuplicateResourceException.class);
+    }
+
+    @Test
+    void deleteCustomerByIdReturnsTheDeletedCustomer() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer("Alex", email, "password", 20, Gender.MALE);
+        underTest.insertCustomer(customer);
+
+        // When
+        Optional<Customer> deleted = underTest.deleteCustomerById(customer.getId());
+        Optional<Customer> again = underTest.deleteCustomerById(customer.getId());
+
+        // Then
+        assertThat(deleted).hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo(email));
+        assertThat(again).isEmpty();
+    }
+
+    @Test
+    void selectCustomerProfileById() {
+        // Given
+        underTest.insertCustomer(customer);
+
+        // When
+        Optional<CustomerProfile> actual = underTest.selectCustomerProfileById(customer.getId());
+
+        // Then
+        assertThat(actual).contains(CustomerProfile.of(customer));
+    }
+
+    @Test
+    void sparseProfileReadsHaveNullsForTheColumnsLeftOut() {
+        // Given
+        underTest.insertCustomer(customer);
+        CustomerProjection projection = new CustomerProjection(false, true, false, true);
+        CustomerProfile expected = new CustomerProfile(
+                customer.getId(), null, customer.getEmail(), null, customer.getGender());
+
+        // When
+        Optional<CustomerProfile> byId = underTest.selectCustomerProfileById(customer.getId(), projection);
+        List<CustomerProfile> after = underTest.selectCustomerProfilesAfter(customer.getId() - 1, 1, projection);
+        List<CustomerProfile> all = underTest.selectAllCustomerProfiles(projection);
+        List<CustomerProfile> found = underTest.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, null, customer.getEmail(), CustomerSearch.Sort.NAME, false, 0, 10), projection);
+
+        // Then
+        assertThat(byId).contains(expected);
+        assertThat(after).containsExactly(expected);
+        assertThat(all).contains(expected);
+        assertThat(found).containsExactly(expected);
+    }
+
+    @Test
+    void selectCustomerProfilesByIdsLeavesMissingIdsOut() {
+        // Given
+        underTest.insertCustomer(customer);
+        Customer other = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 30,
+                Gender.FEMALE);
+        underTest.insertCustomer(other);
+
+        // When
+        List<CustomerProfile> actual = underTest.selectCustomerProfilesByIds(
+                List.of(other.getId(), -1, customer.getId()));
+
+        // Then
+        assertThat(actual).containsExactlyInAnyOrder(CustomerProfile.of(customer), CustomerProfile.of(other));
+    }
+
+    @Test
+    void selectCustomerProfilesAfterPagesLikeTheFullRows() {
+        // Given
+        underTest.insertCustomer(customer);
+        int after = customer.getId() - 1;
+
+        // When
+        List<CustomerProfile> actual = underTest.selectCustomerProfilesAfter(after, 10);
+
+        // Then
+        assertThat(actual).isEqualTo(underTest.selectCustomersAfter(after, 10)
+                .stream()
+                .map(CustomerProfile::of)
+                .toList());
+    }
+
+    @Test
+    void streamAllCustomerProfiles() {
+        // Given
+        underTest.insertCustomer(customer);
+
+        // When
+        List<CustomerProfile> actual;
+        try (Stream<CustomerProfile> profiles = underTest.streamAllCustomerProfiles()) {
+            actual = profiles.toList();
+        }
+
+        // Then
+        assertThat(actual).contains(CustomerProfile.of(customer));
+        assertThat(actual).hasSameSizeAs(underTest.selectAllCustomerProfiles());
+    }
+
+    @Test
+    void searchCustomerProfilesFiltersSortsAndPages() {
+        // Given
+        String prefix = "search-" + UUID.randomUUID();
+        insert("Zoe", prefix + "-1@example.com", 21, Gender.FEMALE);
+        Customer older = insert("Anna", prefix + "-2@example.com", 35, Gender.FEMALE);
+        Customer oldest = insert("Maria", prefix + "-3@example.com", 50, Gender.FEMALE);
+        insert("Nikos", prefix + "-4@example.com", 35, Gender.MALE);
+
+        // When
+        List<CustomerProfile> byAge = underTest.searchCustomerProfiles(new CustomerSearch(
+                30, null, Gender.FEMALE, null, prefix.toUpperCase(), CustomerSearch.Sort.AGE, true, 0, 10));
+        List<CustomerProfile> secondByName = underTest.searchCustomerProfiles(new CustomerSearch(
+                null, null, Gender.FEMALE, null, prefix, CustomerSearch.Sort.NAME, false, 1, 1));
+
+        // Then
+        assertThat(byAge).containsExactly(CustomerProfile.of(oldest), CustomerProfile.of(older));
+        assertThat(secondByName).containsExactly(CustomerProfile.of(oldest));
+    }
+
+    @Test
+    void searchCustomerProfilesTakesWildcardsInAPrefixLiterally() {
+        // Given
+        String prefix = "search-" + UUID.randomUUID();
+        Customer underscored = insert("Alex", prefix + "_1@example.com", 21, Gender.MALE);
+        insert("Alex", prefix + "x1@example.com", 21, Gender.MALE);
+
+        // When
+        List<CustomerProfile> actual = underTest.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, null, prefix + "_", CustomerSearch.Sort.ID, false, 0, 10));
+        List<CustomerProfile> none = underTest.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, null, prefix + "%", CustomerSearch.Sort.ID, false, 0, 10));
+
+        // Then
+        assertThat(actual).containsExactly(CustomerProfile.of(underscored));
+        assertThat(none).isEmpty();
+    }
+
+    @Test
+    void searchCustomerProfilesByNameFindsMisspellingsNearestFirst() {
+        // Given
+        String surname = "Qx" + UUID.randomUUID().toString().substring(0, 8);
+        Customer exact = insert("Alexandros " + surname, "fuzzy-" + UUID.randomUUID() + "@example.com", 30, Gender.MALE);
+        Customer near = insert("Alexandra " + surname, "fuzzy-" + UUID.randomUUID() + "@example.com", 30, Gender.FEMALE);
+        Customer far = insert("Alex " + surname, "fuzzy-" + UUID.randomUUID() + "@example.com", 30, Gender.MALE);
+
+        // When
+        List<CustomerNameMatch> firstPage = underTest.searchCustomerProfilesByName(
+                "Alexsandros " + surname, null, 2);
+        List<CustomerNameMatch> secondPage = underTest.searchCustomerProfilesByName(
+                "Alexsandros " + surname, firstPage.get(1).cursor(), 2);
+
+        // Then
+        assertThat(firstPage)
+                .extracting(CustomerNameMatch::profile)
+                .containsExactly(CustomerProfile.of(exact), CustomerProfile.of(near));
+        assertThat(firstPage.get(0).distance()).isLessThan(firstPage.get(1).distance());
+        assertThat(secondPage)
+                .extracting(CustomerNameMatch::profile)
+                .startsWith(CustomerProfile.of(far));
+    }
+
+    private Customer insert(String name, String email, int age, Gender gender) {
+        Customer customer = new Customer(name, email, "password", age, gender);
+        underTest.insertCustomer(customer);
+        return customer;
+    }
+}
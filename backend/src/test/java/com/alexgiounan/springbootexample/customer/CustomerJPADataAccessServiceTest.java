@@ -1,14 +1,42 @@
 package com.alexgiounan.springbootexample.customer;
 
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.repository.BoundedRegionFactory;
 import com.alexgiounan.springbootexample.repository.CustomerRepository;
 import com.alexgiounan.springbootexample.service.CustomerJPADataAccessService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.hibernate.Cache;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class CustomerJPADataAccessServiceTest {
 
@@ -17,11 +45,22 @@ class CustomerJPADataAccessServiceTest {
     private AutoCloseable autoCloseable;
     @Mock
     private CustomerRepository customerRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+    @Mock
+    private jakarta.persistence.Cache cache;
+    @Mock
+    private Cache secondLevelCache;
 
     @BeforeEach
     void setUp() {
         autoCloseable = MockitoAnnotations.openMocks(this);
-        underTest = new CustomerJPADataAccessService(customerRepository);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        underTest = new CustomerJPADataAccessService(customerRepository, entityManager,
+                new BoundedRegionFactory(10, Duration.ofMinutes(10), meterRegistry, Clock.systemUTC()),
+                meterRegistry);
     }
 
     @AfterEach
@@ -29,6 +68,17 @@ class CustomerJPADataAccessServiceTest {
         autoCloseable.close();
     }
 
+    private Query nativeQuery(List<Object[]> rows) {
+        Query query = mock(Query.class);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyInt(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(rows);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.getCache()).thenReturn(cache);
+        when(cache.unwrap(Cache.class)).thenReturn(secondLevelCache);
+        return query;
+    }
+
     @Test
     void selectAllCustomers() {
         // When
@@ -39,6 +89,32 @@ class CustomerJPADataAccessServiceTest {
                 .findAll();
     }
 
+    @Test
+    void selectCustomersAfter() {
+        // Given
+        int afterId = 10;
+        int limit = 5;
+        // When
+        underTest.selectCustomersAfter(afterId, limit);
+        // Then
+        verify(customerRepository)
+                .findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(limit));
+    }
+
+    @Test
+    void streamAllCustomers() {
+        // Given
+        Customer customer = new Customer(1, "Alex", "alex@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.streamAllBy()).thenReturn(Stream.of(customer));
+
+        // When
+        List<Customer> actual = underTest.streamAllCustomers().toList();
+
+        // Then
+        assertThat(actual).containsExactly(customer);
+        verify(entityManager).detach(customer);
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -57,7 +133,59 @@ class CustomerJPADataAccessServiceTest {
         underTest.insertCustomer(customer);
 
         // Then
-        verify(customerRepository).save(customer);
+        verify(customerRepository).saveAndFlush(customer);
+    }
+
+    @Test
+    void insertCustomerTranslatesUniqueViolation() {
+        // Given
+        Customer customer = new Customer("Alex", "alex@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.saveAndFlush(customer)).thenThrow(new DataIntegrityViolationException(
+                "duplicate", new SQLException("duplicate key value", "23505")));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class);
+    }
+
+    @Test
+    void insertCustomers() {
+        // Given
+        List<Customer> customers = List.of(
+                new Customer("Alex", "alex@gmail.com", "password", 2, Gender.MALE));
+        // When
+        underTest.insertCustomers(customers);
+
+        // Then
+        verify(customerRepository).saveAll(customers);
+    }
+
+    @Test
+    void selectExistingEmails() {
+        // Given
+        Set<String> emails = Set.of("Alex@Gmail.com");
+        // When
+        underTest.selectExistingEmails(emails);
+        // Then
+        verify(customerRepository).findExistingEmails(List.of("alex@gmail.com"));
+    }
+
+    @Test
+    void selectAllCustomerProfiles() {
+        // When
+        underTest.selectAllCustomerProfiles();
+
+        // Then
+        verify(customerRepository).findAllProfiles();
+    }
+
+    @Test
+    void selectCustomerProfilesAfter() {
+        // When
+        underTest.selectCustomerProfilesAfter(5, 20);
+
+        // Then
+        verify(customerRepository).findProfilesAfter(5, PageRequest.ofSize(20));
     }
 
     @Test
@@ -74,10 +202,15 @@ class CustomerJPADataAccessServiceTest {
     void deleteCustomerById() {
         // Given
         int id = 1;
+        Query query = nativeQuery(List.<Object[]>of(
+                new Object[]{id, "Alex", "alex@gmail.com", "password", 2, "MALE"}));
         // When
-        underTest.deleteCustomerById(id);
+        Optional<Customer> actual = underTest.deleteCustomerById(id);
         // Then
-        verify(customerRepository).deleteById(id);
+        verify(query).setParameter(1, id);
+        verify(customerRepository, never()).findById(id);
+        verify(secondLevelCache).evictEntityData(Customer.class, id);
+        assertThat(actual).contains(new Customer(id, "Alex", "alex@gmail.com", "password", 2, Gender.MALE));
     }
 
     @Test
@@ -87,16 +220,99 @@ class CustomerJPADataAccessServiceTest {
         // When
         underTest.existsPersonWithId(id);
         // Then
-        verify(customerRepository).existsCustomerById(id);
+        verify(customerRepository).findById(id);
     }
 
     @Test
     void updateCustomer() {
+        // Given
+        Query query = nativeQuery(List.<Object[]>of(new Object[]{"alex@gmail.com", true}));
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                1, new CustomerUpdateRequest(null, "alexandros@gmail.com", 3));
+        // Then
+        verify(query).setParameter(1, 1);
+        verify(query).setParameter(2, "alexandros@gmail.com");
+        verify(query).setParameter(3, 3);
+        verify(customerRepository, never()).findById(1);
+        verify(secondLevelCache).evictEntityData(Customer.class, 1);
+        assertThat(actual).contains(new CustomerUpdate("alex@gmail.com", true));
+    }
+
+    @Test
+    void updateCustomerWithoutChangesKeepsTheCachedCustomer() {
+        // Given
+        nativeQuery(List.<Object[]>of(new Object[]{"alex@gmail.com", false}));
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                1, new CustomerUpdateRequest("Alex", null, 2));
+        // Then
+        verify(secondLevelCache, never()).evictEntityData(Customer.class, 1);
+        assertThat(actual).contains(new CustomerUpdate("alex@gmail.com", false));
+    }
+
+    @Test
+    void updateCustomerOfAMissingCustomer() {
+        // Given
+        nativeQuery(List.of());
+        // When
+        Optional<CustomerUpdate> actual = underTest.updateCustomer(
+                1, new CustomerUpdateRequest("Alexandros", null, null));
+        // Then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void updateCustomerTranslatesUniqueViolation() {
+        // Given
+        Query query = nativeQuery(List.of());
+        when(query.getResultList()).thenThrow(new ConstraintViolationException(
+                "duplicate", new SQLException("duplicate key value", "23505"), "customer_email_lower_unique"));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                1, new CustomerUpdateRequest(null, "mike@gmail.com", null)))
+                .isInstanceOf(DuplicateResourceException.class);
+    }
+
+    @Test
+    void updateCustomerPassword() {
+        // Given
+        Customer customer = new Customer(1, "Alex", "alex@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        // When
+        underTest.updateCustomerPassword(1, "new-hash");
+        // Then
+        assertThat(customer.getPassword()).isEqualTo("new-hash");
+    }
+
+    @Test
+    void selectUserByEmailRemembersTheId() {
+        // Given
+        Customer customer = new Customer(1, "Alex", "alex@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.findCustomerByEmail("alex@gmail.com")).thenReturn(Optional.of(customer));
+        when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        // When
+        underTest.selectUserByEmail("alex@gmail.com");
+        Optional<Customer> second = underTest.selectUserByEmail("Alex@gmail.com");
+        // Then
+        assertThat(second).contains(customer);
+        verify(customerRepository, times(1)).findCustomerByEmail("alex@gmail.com");
+    }
+
+    @Test
+    void selectUserByEmailQueriesAgainOnceTheAddressChanged() {
         // Given
         Customer customer = new Customer(1, "Alex", "alex@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.findCustomerByEmail("alex@gmail.com")).thenReturn(Optional.of(customer));
+        underTest.selectUserByEmail("alex@gmail.com");
+        Customer changed = new Customer(1, "Alex", "alexandros@gmail.com", "password", 2, Gender.MALE);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(changed));
+        when(customerRepository.findCustomerByEmail("alex@gmail.com")).thenReturn(Optional.empty());
         // When
-        underTest.updateCustomer(customer);
+        Optional<Customer> actual = underTest.selectUserByEmail("alex@gmail.com");
         // Then
-        verify(customerRepository).save(customer);
+        assertThat(actual).isEmpty();
+        verify(customerRepository, times(2)).findCustomerByEmail("alex@gmail.com");
     }
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package com.alexgiounan.springbootexample.customer;
+
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.service.CustomerListDataAccessService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CustomerListDataAccessServiceTest {
+
+    private CustomerListDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerListDataAccessService();
+    }
+
+    @Test
+    void insertCustomerAssignsNextId() {
+        // Given
+        Customer customer = new Customer("Jamila", "jamila@gmail.com", "password", 30, Gender.FEMALE);
+
+        // When
+        underTest.insertCustomer(customer);
+
+        // Then
+        assertThat(customer.getId()).isEqualTo(3);
+        assertThat(underTest.selectCustomerById(3))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("jamila@gmail.com"));
+    }
+
+    @Test
+    void insertCustomerRejectsTakenEmailIgnoringCase() {
+        Customer customer = new Customer("Alex", "ALEX@gmail.com", "password", 30, Gender.MALE);
+
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class);
+        assertThat(underTest.selectAllCustomers()).hasSize(2);
+    }
+
+    @Test
+    void insertCustomersLeavesOutOnlyTakenEmails() {
+        // Given
+        underTest.insertCustomer(new Customer("Alex", "alex@example.com", "password", 30, Gender.MALE));
+        Customer fresh = new Customer("Zoe", "zoe@example.com", "password", 21, Gender.FEMALE);
+
+        // When
+        Set<String> actual = underTest.insertCustomers(List.of(
+                fresh, new Customer("Alexa", "ALEX@example.com", "password", 31, Gender.FEMALE)));
+
+        // Then
+        assertThat(actual).containsExactly("alex@example.com");
+        assertThat(underTest.selectCustomerById(fresh.getId())).isPresent();
+    }
+
+    @Test
+    void updateCustomerReplacesTheRowAndMovesTheEmailIndex() {
+        // Given
+        CustomerUpdateRequest update = new CustomerUpdateRequest("Alexandros", "alexandros@gmail.com", null);
+
+        // When
+        underTest.updateCustomer(1, update);
+
+        // Then
+        assertThat(underTest.selectAllCustomers())
+                .extracting(Customer::getName)
+                .containsExactly("Alexandros", "Mike");
+        assertThat(underTest.existsCustomerWithEmail("alex@gmail.com")).isFalse();
+        assertThat(underTest.selectUserByEmail("Alexandros@gmail.com"))
+                .hasValueSatisfying(c -> assertThat(c.getId()).isEqualTo(1));
+    }
+
+    @Test
+    void updateCustomerRejectsEmailOfAnotherCustomer() {
+        CustomerUpdateRequest update = new CustomerUpdateRequest(null, "mike@gmail.com", null);
+
+        assertThatThrownBy(() -> underTest.updateCustomer(1, update))
+                .isInstanceOf(DuplicateResourceException.class);
+        assertThat(underTest.selectCustomerById(1))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("alex@gmail.com"));
+    }
+
+    @Test
+    void returnedCustomersAreCopies() {
+        underTest.selectCustomerById(1).orElseThrow().setName("changed");
+
+        assertThat(underTest.selectCustomerById(1))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Alex"));
+    }
+
+    @Test
+    void deleteCustomerByIdReleasesTheEmail() {
+        // When
+        underTest.deleteCustomerById(1);
+
+        // Then
+        assertThat(underTest.existsPersonWithId(1)).isFalse();
+        assertThat(underTest.existsCustomerWithEmail("alex@gmail.com")).isFalse();
+        assertThat(underTest.selectCustomersAfter(0, 10))
+                .extracting(Customer::getId)
+                .containsExactly(2);
+    }
+
+    @Test
+    void selectCustomerProfilesByIdsLeavesMissingIdsOut() {
+        assertThat(underTest.selectCustomerProfilesByIds(List.of(2, 7, 1)))
+                .extracting(CustomerProfile::id)
+                .containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    void updateCustomerPassword() {
+        underTest.updateCustomerPassword(2, "new-hash");
+
+        assertThat(underTest.selectUserByEmail("mike@gmail.com"))
+                .hasValueSatisfying(c -> assertThat(c.getPassword()).isEqualTo("new-hash"));
+    }
+
+    @Test
+    void selectCustomersAfterPagesInIdOrder() {
+        for (int i = 0; i < 5; i++) {
+            underTest.insertCustomer(new Customer("c" + i, "c" + i + "@gmail.com", "password", 20, Gender.MALE));
+        }
+
+        assertThat(underTest.selectCustomersAfter(2, 3))
+                .extracting(Customer::getId)
+                .containsExactly(3, 4, 5);
+    }
+
+    @Test
+    void searchCustomerProfilesFollowsUpdatesAndDeletes() {
+        // Given
+        underTest.insertCustomer(new Customer("Anna", "anna@example.com", "password", 40, Gender.FEMALE));
+        underTest.insertCustomer(new Customer("Maria", "maria@example.com", "password", 60, Gender.FEMALE));
+        CustomerSearch inTheForties = new CustomerSearch(
+                40, 49, null, null, null, CustomerSearch.Sort.AGE, false, 0, 10);
+
+        // When
+        underTest.updateCustomer(1, new CustomerUpdateRequest(null, null, 45));
+        underTest.updateCustomer(3, new CustomerUpdateRequest(null, null, 61));
+        underTest.deleteCustomerById(4);
+
+        // Then
+        assertThat(underTest.searchCustomerProfiles(inTheForties))
+                .extracting(CustomerProfile::id)
+                .containsExactly(1);
+        assertThat(underTest.searchCustomerProfiles(new CustomerSearch(
+                null, 100, Gender.MALE, null, null, CustomerSearch.Sort.NAME, true, 0, 10)))
+                .extracting(CustomerProfile::name)
+                .containsExactly("Mike", "Alex");
+    }
+
+    @Test
+    void searchCustomerProfilesByEmailPrefixIgnoresCase() {
+        // Given
+        underTest.insertCustomer(new Customer("Alexa", "alexa@example.com", "password", 30, Gender.FEMALE));
+
+        // When
+        List<CustomerProfile> actual = underTest.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, "ALEX", "Alex", CustomerSearch.Sort.ID, false, 1, 10));
+
+        // Then
+        assertThat(actual).extracting(CustomerProfile::email).containsExactly("alexa@example.com");
+    }
+
+    @Test
+    void sparseSearchFiltersAndSortsOnColumnsItLeavesOut() {
+        // Given
+        underTest.insertCustomer(new Customer("Zara", "zara@example.com", "password", 30, Gender.FEMALE));
+        underTest.insertCustomer(new Customer("Zarek", "zarek@example.com", "password", 20, Gender.MALE));
+
+        // When
+        List<CustomerProfile> actual = underTest.searchCustomerProfiles(new CustomerSearch(
+                        null, null, null, "zar", null, CustomerSearch.Sort.AGE, false, 0, 10),
+                new CustomerProjection(false, true, false, false));
+
+        // Then
+        assertThat(actual)
+                .extracting(CustomerProfile::name, CustomerProfile::email, CustomerProfile::age)
+                .containsExactly(
+                        tuple(null, "zarek@example.com", null),
+                        tuple(null, "zara@example.com", null));
+    }
+
+    @Test
+    void searchCustomerProfilesByNameRanksBySimilarityWithoutPostgres() {
+        // Given
+        underTest.insertCustomer(new Customer("Alexandra", "alexandra@example.com", "password", 30, Gender.FEMALE));
+
+        // When
+        List<CustomerNameMatch> firstPage = underTest.searchCustomerProfilesByName("Alexandr", null, 1);
+        List<CustomerNameMatch> secondPage = underTest.searchCustomerProfilesByName(
+                "Alexandr", firstPage.get(0).cursor(), 10);
+
+        // Then
+        assertThat(firstPage).extracting(match -> match.profile().name()).containsExactly("Alexandra");
+        assertThat(secondPage).extracting(match -> match.profile().name()).containsExactly("Alex");
+        assertThat(underTest.searchCustomerProfilesByName("Zoe", null, 10)).isEmpty();
+    }
+
+    @Test
+    void concurrentWritersKeepIdsAndIndexesConsistent() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads + 1)) {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        Customer customer = new Customer(
+                                "t" + thread + "-" + i,
+                                "t" + thread + "-" + i + "@gmail.com",
+                                "password", 20, Gender.MALE);
+                        underTest.insertCustomer(customer);
+
+                        // every customer is renamed, every fourth moves address, every tenth is deleted
+                        CustomerUpdateRequest update = new CustomerUpdateRequest(
+                                null,
+                                i % 4 == 0 ? "moved-" + customer.getEmail() : null,
+                                random.nextInt(18, 99));
+                        underTest.updateCustomer(customer.getId(), update);
+                        if (i % 10 == 0) {
+                            underTest.deleteCustomerById(customer.getId());
+                            deleted.add(customer.getId());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            // a reader running alongside must never see a torn page
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    List<Customer> page = underTest.selectCustomersAfter(0, 500);
+                    assertThat(page).isSortedAccordingTo((a, b) -> a.getId().compareTo(b.getId()));
+                    assertThat(page).doesNotContainNull();
+                }
+                return null;
+            }));
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        List<Customer> all = underTest.selectAllCustomers();
+        int expected = 2 + threads * perThread - deleted.size();
+        assertThat(all).hasSize(expected);
+        assertThat(all).extracting(Customer::getId).doesNotHaveDuplicates();
+        assertThat(all).extracting(Customer::getEmail).doesNotHaveDuplicates();
+        for (Customer customer : all) {
+            assertThat(underTest.selectUserByEmail(customer.getEmail()))
+                    .hasValueSatisfying(c -> assertThat(c.getId()).isEqualTo(customer.getId()));
+            if (customer.getEmail().startsWith("moved-")) {
+                assertThat(underTest.existsCustomerWithEmail(customer.getEmail().substring("moved-".length())))
+                        .isFalse();
+            }
+        }
+        for (Integer id : deleted) {
+            assertThat(underTest.existsPersonWithId(id)).isFalse();
+        }
+    }
+}
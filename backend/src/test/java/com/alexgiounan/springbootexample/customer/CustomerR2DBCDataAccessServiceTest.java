@@ -0,0 +1,192 @@
+package com.alexgiounan.springbootexample.customer;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.service.CustomerR2DBCDataAccessService;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerR2DBCDataAccessServiceTest extends AbstractTestcontainers {
+
+    private CustomerR2DBCDataAccessService underTest;
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions
+                .parse("r2dbc:" + postgreSQLContainer.getJdbcUrl().substring("jdbc:".length()))
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, postgreSQLContainer.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, postgreSQLContainer.getPassword())
+                .build();
+        underTest = new CustomerR2DBCDataAccessService(
+                DatabaseClient.create(ConnectionFactories.get(options))
+        );
+
+        customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 20,
+                Gender.MALE);
+    }
+
+    @Test
+    void selectAllCustomers() {
+        // Given
+        underTest.insertCustomer(customer).block();
+
+        // When
+        List<Customer> actual = underTest.selectAllCustomers().collectList().block();
+
+        // Then
+        assertThat(actual)
+                .extracting(Customer::getEmail)
+                .contains(customer.getEmail());
+    }
+
+    @Test
+    void selectCustomersAfter() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            underTest.insertCustomer(new Customer(
+                    FAKER.name().fullName(),
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    "password", 20,
+                    Gender.MALE)).block();
+        }
+        List<Integer> ids = underTest.selectAllCustomers()
+                .map(Customer::getId)
+                .sort()
+                .collectList()
+                .block();
+        Integer afterId = ids.get(ids.size() - 3);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfter(afterId, 1).collectList().block();
+
+        // Then
+        assertThat(actual)
+                .extracting(Customer::getId)
+                .containsExactly(ids.get(ids.size() - 2));
+    }
+
+    @Test
+    void insertCustomerEmitsTheNewId() {
+        // When
+        Integer actual = underTest.insertCustomer(customer).block();
+
+        // Then
+        assertThat(actual).isEqualTo(idOf(customer.getEmail()));
+    }
+
+    @Test
+    void selectCustomerById() {
+        // Given
+        underTest.insertCustomer(customer).block();
+        Integer id = idOf(customer.getEmail());
+
+        // When
+        Customer actual = underTest.selectCustomerById(id).block();
+
+        // Then
+        assertThat(actual).isNotNull();
+        assertThat(actual.getId()).isEqualTo(id);
+        assertThat(actual.getName()).isEqualTo(customer.getName());
+        assertThat(actual.getEmail()).isEqualTo(customer.getEmail());
+        assertThat(actual.getAge()).isEqualTo(customer.getAge());
+        assertThat(actual.getGender()).isEqualTo(customer.getGender());
+    }
+
+    @Test
+    void willReturnEmptyWhenSelectCustomerById() {
+        assertThat(underTest.selectCustomerById(-1).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void existsCustomerWithEmailIgnoresCase() {
+        // Given
+        underTest.insertCustomer(customer).block();
+
+        // When
+        Boolean actual = underTest.existsCustomerWithEmail(customer.getEmail().toUpperCase()).block();
+
+        // Then
+        assertThat(actual).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("missing-" + UUID.randomUUID()).block()).isFalse();
+    }
+
+    @Test
+    void selectUserByEmailIgnoresCase() {
+        // Given
+        underTest.insertCustomer(customer).block();
+
+        // When
+        Customer actual = underTest.selectUserByEmail(customer.getEmail().toUpperCase()).block();
+
+        // Then
+        assertThat(actual).isNotNull();
+        assertThat(actual.getEmail()).isEqualTo(customer.getEmail());
+        assertThat(actual.getPassword()).isEqualTo("password");
+    }
+
+    @Test
+    void deleteCustomerById() {
+        // Given
+        underTest.insertCustomer(customer).block();
+        Integer id = idOf(customer.getEmail());
+
+        // When
+        underTest.deleteCustomerById(id).block();
+
+        // Then
+        assertThat(underTest.selectCustomerById(id).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void updateCustomer() {
+        // Given
+        underTest.insertCustomer(customer).block();
+        Integer id = idOf(customer.getEmail());
+        String newEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        // When
+        underTest.updateCustomer(new Customer(id, "new name", newEmail, null, 55, null)).block();
+
+        // Then
+        Customer actual = underTest.selectCustomerById(id).block();
+        assertThat(actual).isNotNull();
+        assertThat(actual.getName()).isEqualTo("new name");
+        assertThat(actual.getEmail()).isEqualTo(newEmail);
+        assertThat(actual.getAge()).isEqualTo(55);
+        assertThat(actual.getPassword()).isEqualTo("password");
+    }
+
+    @Test
+    void updateCustomerPassword() {
+        // Given
+        underTest.insertCustomer(customer).block();
+        Integer id = idOf(customer.getEmail());
+
+        // When
+        underTest.updateCustomerPassword(id, "new-hash").block();
+
+        // Then
+        Customer actual = underTest.selectCustomerById(id).block();
+        assertThat(actual).isNotNull();
+        assertThat(actual.getPassword()).isEqualTo("new-hash");
+    }
+
+    private Integer idOf(String email) {
+        return underTest.selectUserByEmail(email)
+                .map(Customer::getId)
+                .block();
+    }
+}
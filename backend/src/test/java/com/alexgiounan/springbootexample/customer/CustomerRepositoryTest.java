@@ -56,6 +56,55 @@ class CustomerRepositoryTest extends AbstractTestcontainers {
         assertThat(actual).isTrue();
     }
 
+    @Test
+    void existsCustomerByEmailIgnoresCase() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                "password",
+                20,
+                Gender.MALE);
+
+
+        underTest.save(customer);
+
+        // When
+
+        var actual = underTest.existsCustomerByEmail(email.toUpperCase());
+
+        // Then
+
+        assertThat(actual).isTrue();
+    }
+
+    @Test
+    void findCustomerByEmailIgnoresCase() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                "password",
+                20,
+                Gender.MALE);
+
+
+        underTest.save(customer);
+
+        // When
+
+        var actual = underTest.findCustomerByEmail(email.toUpperCase());
+
+        // Then
+
+        assertThat(actual).isPresent().hasValueSatisfying(c ->
+                assertThat(c.getEmail()).isEqualTo(email));
+    }
+
     @Test
     void existsCustomerByEmailFailsWhenEmailNotPresent() {
         // Given
@@ -0,0 +1,376 @@
+package com.alexgiounan.springbootexample.customer;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.TestConfig;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
+import com.alexgiounan.springbootexample.repository.JpaCacheConfig;
+import com.alexgiounan.springbootexample.service.CustomerJPADataAccessService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TestConfig.class, JpaCacheConfig.class, SimpleMeterRegistry.class, CustomerJPADataAccessService.class})
+// every call commits on its own, as it does behind the service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerSecondLevelCacheTest extends AbstractTestcontainers {
+
+    @Autowired
+    private CustomerJPADataAccessService underTest;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    private Statistics statistics;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 20,
+                Gender.MALE);
+        underTest.insertCustomer(customer);
+
+        underTest.onCustomersInvalidated(new CustomersInvalidatedEvent("test"));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void repeatedReadsByIdSkipTheDatabase() {
+        // When
+        underTest.selectCustomerById(customer.getId());
+        long afterFirst = statistics.getPrepareStatementCount();
+        underTest.selectCustomerById(customer.getId());
+        boolean exists = underTest.existsPersonWithId(customer.getId());
+
+        // Then
+        assertThat(exists).isTrue();
+        assertThat(afterFirst).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void repeatedReadsByEmailSkipTheDatabase() {
+        // Given
+        double hits = meterRegistry.counter("customer.email.lookups", "result", "hit").count();
+
+        // When
+        underTest.selectUserByEmail(customer.getEmail());
+        underTest.selectUserByEmail(customer.getEmail().toUpperCase());
+        underTest.selectUserByEmail(customer.getEmail());
+
+        // Then
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(meterRegistry.counter("customer.email.lookups", "result", "hit").count()).isEqualTo(hits + 2);
+    }
+
+    @Test
+    void updateIsVisibleToTheNextRead() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        underTest.selectUserByEmail(customer.getEmail());
+        String email = "updated-" + customer.getEmail();
+
+        // When
+        underTest.updateCustomer(customer.getId(), new CustomerUpdateRequest("Updated", email, null));
+
+        // Then
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Updated"));
+        assertThat(underTest.selectUserByEmail(customer.getEmail())).isEmpty();
+        assertThat(underTest.selectUserByEmail(email)).isPresent();
+    }
+
+    @Test
+    void passwordUpdateIsVisibleToTheNextRead() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        underTest.selectUserByEmail(customer.getEmail());
+
+        // When
+        underTest.updateCustomerPassword(customer.getId(), "new-hash");
+
+        // Then
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .hasValueSatisfying(c -> assertThat(c.getPassword()).isEqualTo("new-hash"));
+        assertThat(underTest.selectUserByEmail(customer.getEmail()))
+                .hasValueSatisfying(c -> assertThat(c.getPassword()).isEqualTo("new-hash"));
+    }
+
+    @Test
+    void deleteIsVisibleToTheNextRead() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        underTest.selectUserByEmail(customer.getEmail());
+
+        // When
+        underTest.deleteCustomerById(customer.getId());
+
+        // Then
+        assertThat(underTest.selectCustomerById(customer.getId())).isEmpty();
+        assertThat(underTest.existsPersonWithId(customer.getId())).isFalse();
+        assertThat(underTest.selectUserByEmail(customer.getEmail())).isEmpty();
+    }
+
+    @Test
+    void updateAndDeleteAreOneStatementEach() {
+        // When
+        Optional<CustomerUpdate> updated = underTest.updateCustomer(
+                customer.getId(), new CustomerUpdateRequest("Updated", null, 21));
+        long afterUpdate = statistics.getPrepareStatementCount();
+        Optional<Customer> deleted = underTest.deleteCustomerById(customer.getId());
+
+        // Then
+        assertThat(updated).contains(new CustomerUpdate(customer.getEmail(), true));
+        assertThat(afterUpdate).isEqualTo(1);
+        assertThat(deleted).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("Updated");
+            assertThat(c.getAge()).isEqualTo(21);
+            assertThat(c.getPassword()).isEqualTo("password");
+        });
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void updateToATakenEmailIsRejected() {
+        // Given
+        Customer other = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 20,
+                Gender.FEMALE);
+        underTest.insertCustomer(other);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                customer.getId(), new CustomerUpdateRequest(null, other.getEmail().toUpperCase(), null)))
+                .isInstanceOf(DuplicateResourceException.class);
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo(customer.getEmail()));
+    }
+
+    @Test
+    void changeOnAnotherInstanceEvictsTheCustomer() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        underTest.selectUserByEmail(customer.getEmail());
+        // written without Hibernate, as another instance would
+        getJdbcTemplate().update("UPDATE customer SET name = 'Elsewhere' WHERE id = ?", customer.getId());
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(customer.getId(), customer.getEmail()));
+
+        // Then
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Elsewhere"));
+        assertThat(underTest.selectUserByEmail(customer.getEmail()))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Elsewhere"));
+    }
+
+    @Test
+    void customerAddedOnAnotherInstanceIsFoundByEmail() {
+        // Given
+        String email = "added-" + customer.getEmail();
+        assertThat(underTest.selectUserByEmail(email)).isEmpty();
+
+        // When
+        getJdbcTemplate().update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                VALUES ('Elsewhere', ?, 'password', 30, 'MALE')
+                """, email);
+
+        // Then
+        assertThat(underTest.selectUserByEmail(email)).isPresent();
+    }
+
+    @Test
+    void passwordUpdateKeepsOtherCustomersCached() {
+        // Given
+        Customer other = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 30,
+                Gender.FEMALE);
+        underTest.insertCustomer(other);
+        underTest.selectCustomerById(other.getId());
+        underTest.selectUserByEmail(other.getEmail());
+
+        // When
+        underTest.updateCustomerPassword(customer.getId(), "new-hash");
+        statistics.clear();
+
+        // Then
+        underTest.selectCustomerById(other.getId());
+        underTest.selectUserByEmail(other.getEmail());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void profileOfACachedCustomerSkipsTheDatabase() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        statistics.clear();
+
+        // When
+        Optional<CustomerProfile> actual = underTest.selectCustomerProfileById(customer.getId());
+
+        // Then
+        assertThat(actual).contains(CustomerProfile.of(customer));
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void profileOfAnUncachedCustomerIsProjectedAndNotCached() {
+        // When
+        Optional<CustomerProfile> actual = underTest.selectCustomerProfileById(customer.getId());
+
+        // Then
+        assertThat(actual).contains(CustomerProfile.of(customer));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(entityManagerFactory.getCache().contains(Customer.class, customer.getId())).isFalse();
+    }
+
+    @Test
+    void profilesByIdsReadCachedCustomersFromTheCacheAndTheRestInOneQuery() {
+        // Given
+        Customer uncached = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 30,
+                Gender.FEMALE);
+        underTest.insertCustomer(uncached);
+        Customer another = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                "password", 40,
+                Gender.MALE);
+        underTest.insertCustomer(another);
+        entityManagerFactory.getCache().evict(Customer.class, uncached.getId());
+        entityManagerFactory.getCache().evict(Customer.class, another.getId());
+        underTest.selectCustomerById(customer.getId());
+        statistics.clear();
+
+        // When
+        List<CustomerProfile> actual = underTest.selectCustomerProfilesByIds(
+                List.of(customer.getId(), uncached.getId(), another.getId(), -1));
+
+        // Then
+        assertThat(actual).containsExactlyInAnyOrder(
+                CustomerProfile.of(customer), CustomerProfile.of(uncached), CustomerProfile.of(another));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void sparseReadsSelectOnlyTheProjectedColumns() {
+        // Given
+        CustomerProjection names = new CustomerProjection(true, false, false, false);
+        CustomerProfile expected = new CustomerProfile(customer.getId(), customer.getName(), null, null, null);
+        CustomerSearch search = new CustomerSearch(
+                null, null, null, null, customer.getEmail(), CustomerSearch.Sort.ID, false, 0, 10);
+
+        // When
+        Optional<CustomerProfile> byId = underTest.selectCustomerProfileById(customer.getId(), names);
+        List<CustomerProfile> after = underTest.selectCustomerProfilesAfter(customer.getId() - 1, 1, names);
+        List<CustomerProfile> found = underTest.searchCustomerProfiles(search, names);
+
+        // Then
+        assertThat(byId).contains(expected);
+        assertThat(after).containsExactly(expected);
+        assertThat(found).containsExactly(expected);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void sparseReadOfACachedCustomerSkipsTheDatabase() {
+        // Given
+        underTest.selectCustomerById(customer.getId());
+        statistics.clear();
+
+        // When
+        Optional<CustomerProfile> actual = underTest.selectCustomerProfileById(
+                customer.getId(), new CustomerProjection(false, true, true, false));
+
+        // Then
+        assertThat(actual).contains(new CustomerProfile(customer.getId(), null, customer.getEmail(), 20, null));
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void insertCustomersGoesAgainWithoutAnEmailTakenMeanwhile() {
+        // Given
+        Customer fresh = new Customer(FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(), "password", 20, Gender.MALE);
+        Customer taken = new Customer(FAKER.name().fullName(),
+                customer.getEmail().toUpperCase(), "password", 30, Gender.FEMALE);
+
+        // When
+        Set<String> actual = underTest.insertCustomers(List.of(fresh, taken));
+
+        // Then
+        assertThat(actual).containsExactly(customer.getEmail().toLowerCase());
+        assertThat(underTest.existsCustomerWithEmail(fresh.getEmail())).isTrue();
+        assertThat(underTest.selectCustomerById(fresh.getId())).isPresent();
+    }
+
+    @Test
+    void searchIsProjectedAndNotCached() {
+        // Given
+        CustomerSearch search = new CustomerSearch(
+                20, 20, Gender.MALE, null, customer.getEmail().toUpperCase(), CustomerSearch.Sort.AGE, true, 0, 10);
+
+        // When
+        List<CustomerProfile> actual = underTest.searchCustomerProfiles(search);
+
+        // Then
+        assertThat(actual).containsExactly(CustomerProfile.of(customer));
+        assertThat(statistics.getSecondLevelCachePutCount()).isZero();
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void nameSearchIsProjectedAndNotCached() {
+        // When
+        List<CustomerNameMatch> actual = underTest.searchCustomerProfilesByName(customer.getName(), null, 100);
+
+        // Then
+        assertThat(actual)
+                .first()
+                .satisfies(match -> assertThat(match.distance()).isZero());
+        assertThat(actual).extracting(CustomerNameMatch::profile).contains(CustomerProfile.of(customer));
+        assertThat(statistics.getSecondLevelCachePutCount()).isZero();
+    }
+}
@@ -1,24 +1,58 @@
 package com.alexgiounan.springbootexample.customer;
 
 import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerNameMatch;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerSearch;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.dto.CustomerBatch;
 import com.alexgiounan.springbootexample.dto.CustomerDTO;
 import com.alexgiounan.springbootexample.dto.CustomerDTOMapper;
+import com.alexgiounan.springbootexample.dto.CustomerFields;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchDTO;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchPage;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult.Status;
+import com.alexgiounan.springbootexample.dto.CustomerSearchPage;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
 import com.alexgiounan.springbootexample.exception.DuplicateResourceException;
 import com.alexgiounan.springbootexample.exception.RequestValidationException;
 import com.alexgiounan.springbootexample.exception.ResourceNotFoundException;
+import com.alexgiounan.springbootexample.security.PasswordHashingExecutor;
 import com.alexgiounan.springbootexample.service.CustomerService;
+import com.alexgiounan.springbootexample.service.CustomerWriteBehindQueue;
+import com.alexgiounan.springbootexample.service.CustomerTypeahead;
+import com.alexgiounan.springbootexample.service.ExistingEmailFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,20 +66,296 @@ class CustomerServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private final CustomerDTOMapper customerDTOMapper = new CustomerDTOMapper();
 
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    private ExecutorService taskExecutor;
+
+    // never built, so every email check reaches the dao
+    private ExistingEmailFilter existingEmails;
+
+    // never built either, so suggestions come from the dao
+    private CustomerTypeahead typeahead;
+
+    // off unless a test turns it on
+    @Mock
+    private CustomerWriteBehindQueue writeBehind;
+
     @BeforeEach
     void setUp() {
-        underTest = new CustomerService(customerDao, passwordEncoder, customerDTOMapper);
+        passwordHashingExecutor = new PasswordHashingExecutor(2, 16);
+        taskExecutor = Executors.newSingleThreadExecutor();
+        existingEmails = new ExistingEmailFilter(null, null, 1_000, 0.01, 0.2, new SimpleMeterRegistry());
+        typeahead = new CustomerTypeahead(null, null, 1_000, new SimpleMeterRegistry());
+        underTest = new CustomerService(
+                customerDao, passwordEncoder, customerDTOMapper, passwordHashingExecutor, taskExecutor, eventPublisher,
+                existingEmails, writeBehind, typeahead, 4);
+        lenient().when(writeBehind.overlay(any())).thenAnswer(returnsFirstArg());
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingExecutor.destroy();
+        taskExecutor.shutdown();
+        existingEmails.destroy();
+        typeahead.destroy();
     }
 
 
     @Test
     void getAllCustomers() {
         // When
-        underTest.getAllCustomers();
+        underTest.getAllCustomers(CustomerFields.ALL);
+        // Then
+        verify(customerDao).selectAllCustomerProfiles(CustomerProjection.ALL);
+        verify(customerDao, never()).selectAllCustomers();
+    }
+
+    @Test
+    void streamAllCustomersMapsAndClosesStream() {
+        // Given
+        Customer customer = new Customer(1, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        AtomicBoolean closed = new AtomicBoolean();
+
+        when(customerDao.streamAllCustomerProfiles())
+                .thenReturn(Stream.of(CustomerProfile.of(customer)).onClose(() -> closed.set(true)));
+
+        List<CustomerDTO> actual = new ArrayList<>();
+
+        // When
+        underTest.streamAllCustomers(actual::add);
+
+        // Then
+        assertThat(actual).containsExactly(customerDTOMapper.apply(customer));
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void canGetCustomersPageWithNextCursor() {
+        // Given
+        Customer first = new Customer(1, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        Customer second = new Customer(2, "Mike", "mike@gmail.com", "password", 24, Gender.MALE);
+        Customer third = new Customer(3, "Anna", "anna@gmail.com", "password", 31, Gender.FEMALE);
+
+        when(customerDao.selectCustomerProfilesAfter(0, 3, CustomerProjection.ALL)).thenReturn(List.of(
+                CustomerProfile.of(first), CustomerProfile.of(second), CustomerProfile.of(third)));
+
+        // When
+        CustomerPage actual = underTest.getCustomersPage(null, 2, CustomerFields.ALL);
+
+        // Then
+        assertThat(actual.customers()).containsExactly(
+                customerDTOMapper.apply(first),
+                customerDTOMapper.apply(second));
+        assertThat(actual.nextCursor()).isEqualTo(2);
+    }
+
+    @Test
+    void getCustomersPageHasNoNextCursorOnLastPage() {
+        // Given
+        Customer last = new Customer(7, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+
+        when(customerDao.selectCustomerProfilesAfter(5, 3, CustomerProjection.ALL)).thenReturn(List.of(CustomerProfile.of(last)));
+
+        // When
+        CustomerPage actual = underTest.getCustomersPage(5, 2, CustomerFields.ALL);
+
+        // Then
+        assertThat(actual.customers()).containsExactly(customerDTOMapper.apply(last));
+        assertThat(actual.nextCursor()).isNull();
+    }
+
+    @Test
+    void getCustomersPageCapsLimit() {
+        // When
+        underTest.getCustomersPage(null, 10_000, CustomerFields.ALL);
+
+        // Then
+        verify(customerDao).selectCustomerProfilesAfter(0, 101, CustomerProjection.ALL);
+    }
+
+    @Test
+    void willThrowWhenGetCustomersPageLimitIsNotPositive() {
+        // When
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, 0, CustomerFields.ALL))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("limit must be greater than 0");
+
+        // Then
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void canSearchCustomersWithNextOffset() {
+        // Given
+        Customer first = new Customer(4, "Anna", "anna@gmail.com", "password", 31, Gender.FEMALE);
+        Customer second = new Customer(9, "Maria", "maria@gmail.com", "password", 33, Gender.FEMALE);
+        CustomerSearch search = new CustomerSearch(
+                30, 40, Gender.FEMALE, "an", null, CustomerSearch.Sort.AGE, true, 10, 2);
+        when(customerDao.searchCustomerProfiles(search, CustomerProjection.ALL)).thenReturn(List.of(
+                CustomerProfile.of(first), CustomerProfile.of(second)));
+
+        // When
+        CustomerSearchPage actual = underTest.searchCustomers(new CustomerSearchRequest(
+                30, 40, "female", "an", " ", "Age", "DESC", 10, 1), CustomerFields.ALL);
+
+        // Then
+        assertThat(actual.customers()).containsExactly(customerDTOMapper.apply(first));
+        assertThat(actual.nextOffset()).isEqualTo(11);
+    }
+
+    @Test
+    void searchCustomersDefaultsToTheFirstPageById() {
+        // Given
+        CustomerSearch search = new CustomerSearch(
+                null, null, null, null, null, CustomerSearch.Sort.ID, false, 0, 21);
+        when(customerDao.searchCustomerProfiles(search, CustomerProjection.ALL)).thenReturn(List.of());
+
+        // When
+        CustomerSearchPage actual = underTest.searchCustomers(new CustomerSearchRequest(
+                null, null, null, null, null, null, null, null, null), CustomerFields.ALL);
+
+        // Then
+        assertThat(actual.customers()).isEmpty();
+        assertThat(actual.nextOffset()).isNull();
+    }
+
+    @Test
+    void willThrowWhenSearchRequestIsInvalid() {
+        assertThatThrownBy(() -> underTest.searchCustomers(new CustomerSearchRequest(
+                50, 40, null, null, null, null, null, null, null), CustomerFields.ALL))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("minAge must not be greater than maxAge");
+        assertThatThrownBy(() -> underTest.searchCustomers(new CustomerSearchRequest(
+                null, null, null, null, null, "password", null, null, null), CustomerFields.ALL))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("unknown sort [password]");
+        assertThatThrownBy(() -> underTest.searchCustomers(new CustomerSearchRequest(
+                null, null, null, null, null, null, "up", null, null), CustomerFields.ALL))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("direction must be asc or desc");
+        assertThatThrownBy(() -> underTest.searchCustomers(new CustomerSearchRequest(
+                null, null, null, null, null, null, null, 10_001, null), CustomerFields.ALL))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("offset must be between 0 and 10000");
+
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void canSearchCustomersByNameWithNextCursor() {
+        // Given
+        Customer first = new Customer(4, "Alexandros", "alexandros@gmail.com", "password", 31, Gender.MALE);
+        Customer second = new Customer(9, "Alexandra", "alexandra@gmail.com", "password", 33, Gender.FEMALE);
+        when(customerDao.searchCustomerProfilesByName("Alexandors", new CustomerNameMatch.Cursor(0.25f, 2), 2))
+                .thenReturn(List.of(
+                        new CustomerNameMatch(CustomerProfile.of(first), 0.5f),
+                        new CustomerNameMatch(CustomerProfile.of(second), 0.6f)));
+
+        // When
+        CustomerNameMatchPage actual = underTest.searchCustomersByName(" Alexandors ", "0.25:2", 1);
+
         // Then
-        verify(customerDao).selectAllCustomers();
+        assertThat(actual.matches()).containsExactly(
+                new CustomerNameMatchDTO(customerDTOMapper.apply(first), 0.5f));
+        assertThat(actual.nextCursor()).isEqualTo("0.5:4");
+    }
+
+    @Test
+    void searchCustomersByNameHasNoNextCursorOnLastPage() {
+        // Given
+        when(customerDao.searchCustomerProfilesByName("Alex", null, 21)).thenReturn(List.of());
+
+        // When
+        CustomerNameMatchPage actual = underTest.searchCustomersByName("Alex", null, null);
+
+        // Then
+        assertThat(actual.matches()).isEmpty();
+        assertThat(actual.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowWhenNameSearchIsInvalid() {
+        assertThatThrownBy(() -> underTest.searchCustomersByName(" ", null, null))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("name must have between 1 and 100 characters");
+        assertThatThrownBy(() -> underTest.searchCustomersByName("Alex", "garbage", null))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("invalid cursor [garbage]");
+        assertThatThrownBy(() -> underTest.searchCustomersByName("Alex", null, 0))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("limit must be greater than 0");
+
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void suggestionsComeFromPrefixSearchesUntilTheIndexIsBuilt() {
+        // Given
+        Customer byName = new Customer(4, "Alex", "someone@gmail.com", "password", 31, Gender.MALE);
+        Customer byBoth = new Customer(9, "Alexandra", "al@gmail.com", "password", 33, Gender.FEMALE);
+        when(customerDao.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, "al", null, CustomerSearch.Sort.NAME, false, 0, 20)))
+                .thenReturn(List.of(CustomerProfile.of(byName), CustomerProfile.of(byBoth)));
+        when(customerDao.searchCustomerProfiles(new CustomerSearch(
+                null, null, null, null, "al", CustomerSearch.Sort.EMAIL, false, 0, 20)))
+                .thenReturn(List.of(CustomerProfile.of(byBoth)));
+
+        // When
+        List<CustomerSuggestion> actual = underTest.suggestCustomers(" al", 50);
+
+        // Then
+        assertThat(actual).containsExactly(
+                new CustomerSuggestion(9, "Alexandra", "al@gmail.com"),
+                new CustomerSuggestion(4, "Alex", "someone@gmail.com"));
+    }
+
+    @Test
+    void willThrowWhenSuggestionPrefixIsInvalid() {
+        assertThatThrownBy(() -> underTest.suggestCustomers(" ", null))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("prefix must have between 1 and 100 characters");
+        assertThatThrownBy(() -> underTest.suggestCustomers("al", 0))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("limit must be greater than 0");
+
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void canGetCustomersByIdsInRequestOrderWithMissingIdsApart() {
+        // Given
+        Customer first = new Customer(4, "Alex", "alex@gmail.com", "password", 31, Gender.MALE);
+        Customer second = new Customer(9, "Anna", "anna@gmail.com", "password", 33, Gender.FEMALE);
+        when(customerDao.selectCustomerProfilesByIds(Set.of(9, 5, 4)))
+                .thenReturn(List.of(CustomerProfile.of(first), CustomerProfile.of(second)));
+
+        // When
+        CustomerBatch actual = underTest.getCustomers(List.of(9, 5, 4, 9));
+
+        // Then
+        assertThat(actual.customers()).containsExactly(
+                customerDTOMapper.apply(second), customerDTOMapper.apply(first));
+        assertThat(actual.missing()).containsExactly(5);
+    }
+
+    @Test
+    void willThrowWhenBatchOfIdsIsEmptyOrTooLarge() {
+        assertThatThrownBy(() -> underTest.getCustomers(List.of()))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("ids must have between 1 and 4 entries");
+        assertThatThrownBy(() -> underTest.getCustomers(List.of(1, 2, 3, 4, 5)))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("ids must have between 1 and 4 entries");
+        assertThatThrownBy(() -> underTest.getCustomers(Arrays.asList(1, null)))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("ids must not have empty entries");
+
+        verifyNoInteractions(customerDao);
     }
 
     @Test
@@ -54,14 +364,16 @@ class CustomerServiceTest {
         int id = 10;
         Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
 
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        when(customerDao.selectCustomerProfileById(id, CustomerProjection.ALL)).thenReturn(Optional.of(CustomerProfile.of(customer)));
 
+        // the same DTO as from the full customer
         CustomerDTO expected = customerDTOMapper.apply(customer);
         // When
 
-        CustomerDTO actual = underTest.getCustomer(10);
+        CustomerDTO actual = underTest.getCustomer(10, CustomerFields.ALL);
         // Then
         assertThat(actual).isEqualTo(expected);
+        verify(customerDao, never()).selectCustomerById(any());
     }
 
     @Test
@@ -69,15 +381,55 @@ class CustomerServiceTest {
         // Given
         int id = 10;
 
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.empty());
+        when(customerDao.selectCustomerProfileById(id, CustomerProjection.ALL)).thenReturn(Optional.empty());
         // When
 
         // Then
-        assertThatThrownBy(() -> underTest.getCustomer(id))
+        assertThatThrownBy(() -> underTest.getCustomer(id, CustomerFields.ALL))
                 .isInstanceOf(ResourceNotFoundException.class)
                 .hasMessage("customer with id [%s] not found".formatted(id));
     }
 
+    @Test
+    void canGetCustomerWithSparseFields() {
+        // Given
+        int id = 10;
+        when(customerDao.selectCustomerProfileById(id, new CustomerProjection(true, true, false, false)))
+                .thenReturn(Optional.of(new CustomerProfile(id, "Alex", "alex@gmail.com", null, null)));
+
+        // When
+        CustomerDTO actual = underTest.getCustomer(id, CustomerFields.parse("name, USERNAME"));
+
+        // Then
+        assertThat(actual).isEqualTo(new CustomerDTO(id, "Alex", null, null, null, null, "alex@gmail.com"));
+    }
+
+    @Test
+    void sparseCustomersPageStillHasANextCursor() {
+        // Given
+        when(customerDao.selectCustomerProfilesAfter(0, 2, new CustomerProjection(false, false, false, false)))
+                .thenReturn(List.of(
+                        new CustomerProfile(1, null, null, null, null),
+                        new CustomerProfile(2, null, null, null, null)));
+
+        // When
+        CustomerPage actual = underTest.getCustomersPage(null, 1, CustomerFields.parse("id"));
+
+        // Then
+        assertThat(actual.customers()).containsExactly(new CustomerDTO(1, null, null, null, null, null, null));
+        assertThat(actual.nextCursor()).isEqualTo(1);
+    }
+
+    @Test
+    void willThrowWhenFieldsAreUnknownOrEmpty() {
+        assertThatThrownBy(() -> CustomerFields.parse("name,password"))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("unknown field [password]");
+        assertThatThrownBy(() -> CustomerFields.parse("name,,email"))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("fields must not have empty entries");
+    }
+
     @Test
     void addCustomer() {
         // Given
@@ -93,7 +445,7 @@ class CustomerServiceTest {
 
         when(passwordEncoder.encode(request.password())).thenReturn(passwordHash);
         // When
-        underTest.addCustomer(request);
+        underTest.addCustomer(request).join();
 
         // Then
         ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(
@@ -108,9 +460,49 @@ class CustomerServiceTest {
         assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
         assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
         assertThat(capturedCustomer.getPassword()).isEqualTo(passwordHash);
+        verify(eventPublisher).publishEvent(new CustomerAddedEvent(email));
 
     }
 
+    @Test
+    void addCustomerCompletesWithTheInsertedId() {
+        // Given
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password",19,Gender.MALE
+        );
+        when(passwordEncoder.encode(request.password())).thenReturn("123456789abcd");
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Customer.class).setId(42);
+            return null;
+        }).when(customerDao).insertCustomer(any());
+
+        // When
+        Integer actual = underTest.addCustomer(request).join();
+
+        // Then
+        assertThat(actual).isEqualTo(42);
+    }
+
+    @Test
+    void addCustomerInsertsOffThePasswordLane() {
+        // Given
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password",19,Gender.MALE
+        );
+        when(passwordEncoder.encode(request.password())).thenReturn("123456789abcd");
+        AtomicReference<String> insertingThread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            insertingThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(customerDao).insertCustomer(any());
+
+        // When
+        underTest.addCustomer(request).join();
+
+        // Then
+        assertThat(insertingThread.get()).doesNotStartWith("password-hashing-");
+    }
+
     @Test
     void willThrowWhenEmailExistsWhileAddingACustomer() {
         // Given
@@ -133,156 +525,236 @@ class CustomerServiceTest {
     }
 
     @Test
-    void deleteCustomerById() {
+    void willFailWhenEmailIsTakenWhileHashing() {
         // Given
-        int id = 10;
+        String email = "alex@gmail.com";
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Alex", email, "password",19,Gender.MALE
+        );
+        when(passwordEncoder.encode(request.password())).thenReturn("123456789abcd");
+        doThrow(new DuplicateResourceException("email already taken"))
+                .when(customerDao).insertCustomer(any());
 
-        when(customerDao.existsPersonWithId(id)).thenReturn(true);
         // When
-        underTest.deleteCustomerById(id);
+        assertThatThrownBy(() -> underTest.addCustomer(request).join())
+                .hasCauseInstanceOf(DuplicateResourceException.class);
 
         // Then
-        verify(customerDao).deleteCustomerById(id);
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
-    void willThrowDeleteCustomerByIdNotExists() {
+    void addCustomersReportsResultPerItem() {
         // Given
-        int id = 10;
+        CustomerRegistrationRequest alex = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        CustomerRegistrationRequest taken = new CustomerRegistrationRequest(
+                "Mike", "mike@gmail.com", "password", 24, Gender.MALE);
+        CustomerRegistrationRequest repeated = new CustomerRegistrationRequest(
+                "Alexandros", "alex@gmail.com", "password", 26, Gender.MALE);
+        CustomerRegistrationRequest invalid = new CustomerRegistrationRequest(
+                "Anna", "anna@gmail.com", null, 31, Gender.FEMALE);
+        CustomerRegistrationRequest maria = new CustomerRegistrationRequest(
+                "Maria", "maria@gmail.com", "secret", 40, Gender.FEMALE);
+
+        when(customerDao.selectExistingEmails(Set.of("alex@gmail.com", "mike@gmail.com", "maria@gmail.com")))
+                .thenReturn(Set.of("mike@gmail.com"));
+        when(passwordEncoder.encode("password")).thenReturn("password-hash");
+        when(passwordEncoder.encode("secret")).thenReturn("secret-hash");
 
-        when(customerDao.existsPersonWithId(id)).thenReturn(false);
         // When
-        assertThatThrownBy(() -> underTest.deleteCustomerById(id))
-                .isInstanceOf(ResourceNotFoundException.class)
-                .hasMessage("customer with id [%s] not found".formatted(id));
+        List<CustomerRegistrationResult> actual =
+                underTest.addCustomers(List.of(alex, taken, repeated, invalid, maria));
 
         // Then
-        verify(customerDao, never()).deleteCustomerById(id);
+        assertThat(actual)
+                .extracting(CustomerRegistrationResult::index, CustomerRegistrationResult::status)
+                .containsExactly(
+                        tuple(0, Status.CREATED),
+                        tuple(1, Status.DUPLICATE),
+                        tuple(2, Status.DUPLICATE),
+                        tuple(3, Status.INVALID),
+                        tuple(4, Status.CREATED));
+
+        ArgumentCaptor<List<Customer>> customersCaptor = ArgumentCaptor.forClass(List.class);
+        verify(customerDao).insertCustomers(customersCaptor.capture());
+        assertThat(customersCaptor.getValue())
+                .extracting(Customer::getEmail, Customer::getPassword)
+                .containsExactly(
+                        tuple("alex@gmail.com", "password-hash"),
+                        tuple("maria@gmail.com", "secret-hash"));
     }
 
     @Test
-    void canUpdateAllCustomersProperties() {
+    void addCustomersHashesAtMostTwoSlicesAtOnce() {
         // Given
-        int id = 10;
-        Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
-
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        String newEmail = "alexandros@gmail.com";
-        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                "Alexandros", newEmail, 26);
-        when(customerDao.existsCustomerWithEmail(newEmail)).thenReturn(false);
+        passwordHashingExecutor.destroy();
+        passwordHashingExecutor = new PasswordHashingExecutor(4, 16);
+        underTest = new CustomerService(
+                customerDao, passwordEncoder, customerDTOMapper, passwordHashingExecutor, taskExecutor, eventPublisher,
+                existingEmails, writeBehind, typeahead, 4);
+
+        List<CustomerRegistrationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            requests.add(new CustomerRegistrationRequest(
+                    "Customer " + i, "customer" + i + "@gmail.com", "password" + i, 20, Gender.FEMALE));
+        }
+        when(customerDao.selectExistingEmails(any())).thenReturn(Set.of());
+        when(customerDao.insertCustomers(any())).thenReturn(Set.of());
+        AtomicInteger hashing = new AtomicInteger();
+        AtomicInteger mostHashing = new AtomicInteger();
+        when(passwordEncoder.encode(any())).thenAnswer(invocation -> {
+            mostHashing.accumulateAndGet(hashing.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            hashing.decrementAndGet();
+            return invocation.getArgument(0) + "-hash";
+        });
 
         // When
-        underTest.updateCustomer(id, updateRequest);
+        underTest.addCustomers(requests);
 
         // Then
-        ArgumentCaptor<Customer> customerArgumentCaptor =
-                ArgumentCaptor.forClass(Customer.class);
+        assertThat(mostHashing.get()).isLessThanOrEqualTo(2);
+        ArgumentCaptor<List<Customer>> customersCaptor = ArgumentCaptor.forClass(List.class);
+        verify(customerDao).insertCustomers(customersCaptor.capture());
+        assertThat(customersCaptor.getValue())
+                .extracting(Customer::getPassword)
+                .containsExactlyElementsOf(requests.stream().map(r -> r.password() + "-hash").toList());
+    }
 
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
-        assertThat(capturedCustomer.getName()).isEqualTo(updateRequest.name());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(updateRequest.email());
-        assertThat(capturedCustomer.getAge()).isEqualTo(updateRequest.age());
+    @Test
+    void addCustomersMarksItemsFailedWhenInsertFails() {
+        // Given
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+
+        when(customerDao.selectExistingEmails(Set.of("alex@gmail.com"))).thenReturn(Set.of());
+        doThrow(new DataIntegrityViolationException("boom")).when(customerDao).insertCustomers(any());
 
+        // When
+        List<CustomerRegistrationResult> actual = underTest.addCustomers(List.of(request));
+
+        // Then
+        assertThat(actual)
+                .extracting(CustomerRegistrationResult::status)
+                .containsExactly(Status.FAILED);
     }
 
     @Test
-    void canUpdateOnlyCustomerName() {
+    void addCustomersReportsEmailsTakenDuringTheInsertAsDuplicates() {
         // Given
-        int id = 10;
-        Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        CustomerRegistrationRequest alex = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        CustomerRegistrationRequest mike = new CustomerRegistrationRequest(
+                "Mike", "Mike@gmail.com", "password", 24, Gender.MALE);
 
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        String newEmail = "alexandros@gmail.com";
-        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                "Alexandros", null, null);
+        when(customerDao.selectExistingEmails(Set.of("alex@gmail.com", "mike@gmail.com"))).thenReturn(Set.of());
+        when(passwordEncoder.encode("password")).thenReturn("password-hash");
+        when(customerDao.insertCustomers(any())).thenReturn(Set.of("mike@gmail.com"));
 
         // When
-        underTest.updateCustomer(id, updateRequest);
+        List<CustomerRegistrationResult> actual = underTest.addCustomers(List.of(alex, mike));
 
         // Then
-        ArgumentCaptor<Customer> customerArgumentCaptor =
-                ArgumentCaptor.forClass(Customer.class);
+        assertThat(actual)
+                .extracting(CustomerRegistrationResult::status)
+                .containsExactly(Status.CREATED, Status.DUPLICATE);
+        verify(eventPublisher).publishEvent(new CustomerAddedEvent("alex@gmail.com"));
+        verify(eventPublisher, never()).publishEvent(new CustomerAddedEvent("Mike@gmail.com"));
+    }
 
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
+    @Test
+    void addCustomersSkipsInsertWhenNothingToStore() {
+        // Given
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
 
-        assertThat(capturedCustomer.getName()).isEqualTo(updateRequest.name());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        when(customerDao.selectExistingEmails(Set.of("alex@gmail.com"))).thenReturn(Set.of("alex@gmail.com"));
+
+        // When
+        List<CustomerRegistrationResult> actual = underTest.addCustomers(List.of(request));
 
+        // Then
+        assertThat(actual)
+                .extracting(CustomerRegistrationResult::status)
+                .containsExactly(Status.DUPLICATE);
+        verify(customerDao, never()).insertCustomers(any());
+        verifyNoInteractions(passwordEncoder);
     }
 
     @Test
-    void canUpdateOnlyCustomerEmail() {
+    void deleteCustomerById() {
         // Given
         int id = 10;
         Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
 
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        String newEmail = "alexandros@gmail.com";
-        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                null, newEmail, null);
-
-        when(customerDao.existsCustomerWithEmail(newEmail)).thenReturn(false);
-
+        when(customerDao.deleteCustomerById(id)).thenReturn(Optional.of(customer));
         // When
-        underTest.updateCustomer(id, updateRequest);
+        underTest.deleteCustomerById(id);
 
         // Then
-        ArgumentCaptor<Customer> customerArgumentCaptor =
-                ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao, never()).selectCustomerById(any());
+        verify(eventPublisher).publishEvent(new CustomerChangedEvent(id, "alex@gmail.com"));
+    }
 
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
+    @Test
+    void willThrowDeleteCustomerByIdNotExists() {
+        // Given
+        int id = 10;
 
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(newEmail);
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        when(customerDao.deleteCustomerById(id)).thenReturn(Optional.empty());
+        // When
+        assertThatThrownBy(() -> underTest.deleteCustomerById(id))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [%s] not found".formatted(id));
 
+        // Then
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
-    void canUpdateOnlyCustomerAge() {
+    void canUpdateCustomer() {
         // Given
         int id = 10;
-        Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
-
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        String newEmail = "alexandros@gmail.com";
         CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                null, null, 22);
-
+                "Alexandros", "alexandros@gmail.com", 26);
+        when(customerDao.updateCustomer(id, updateRequest))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
 
         // When
         underTest.updateCustomer(id, updateRequest);
 
         // Then
-        ArgumentCaptor<Customer> customerArgumentCaptor =
-                ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao).updateCustomer(id, updateRequest);
+        verifyNoMoreInteractions(customerDao);
+        verify(eventPublisher).publishEvent(new CustomerChangedEvent(id, "alex@gmail.com"));
+    }
 
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
+    @Test
+    void willThrowWhenUpdatingCustomerThatDoesNotExist() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest("Alexandros", null, null);
+        when(customerDao.updateCustomer(id, updateRequest)).thenReturn(Optional.empty());
 
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getAge()).isEqualTo(updateRequest.age());
+        // When
+        assertThatThrownBy(() -> underTest.updateCustomer(id, updateRequest))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [%s] not found".formatted(id));
 
+        // Then
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
     void willThrowWhenTryingToUpdateCustomerEmailWhenAlreadyTaken() {
         // Given
         int id = 10;
-        Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
-
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        String newEmail = "alexandros@gmail.com";
         CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                null, newEmail, null);
+                null, "alexandros@gmail.com", null);
 
-        when(customerDao.existsCustomerWithEmail(newEmail)).thenReturn(true);
+        when(customerDao.updateCustomer(id, updateRequest))
+                .thenThrow(new DuplicateResourceException("email already taken"));
 
         // When
         assertThatThrownBy(() -> underTest.updateCustomer(id, updateRequest))
@@ -290,31 +762,115 @@ class CustomerServiceTest {
                 .hasMessage("email already taken");
 
         // Then
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void willThrowWhenCustomerUpdateHasNoChanges() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
+                "Alex", "alex@gmail.com", 19);
 
-        verify(customerDao, never()).updateCustomer(any());
+        when(customerDao.updateCustomer(id, updateRequest))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", false)));
 
+        // When
+        assertThatThrownBy(() -> underTest.updateCustomer(id, updateRequest))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("no data changes found");
+
+        // Then
+        verifyNoInteractions(eventPublisher);
     }
 
+
     @Test
-    void willThrowWhenCustomerUpdateHasNoChanges() {
+    void queuesUpdateKeepingTheEmailWhenWriteBehindIsOn() {
         // Given
         int id = 10;
-        Customer customer = new Customer(id, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest("Alexandros", "alex@gmail.com", 20);
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(customerDao.selectCustomerProfileById(id)).thenReturn(Optional.of(
+                new CustomerProfile(id, "Alex", "alex@gmail.com", 19, Gender.MALE)));
+        when(writeBehind.enqueue(id, updateRequest)).thenReturn(true);
 
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        // When
+        underTest.updateCustomer(id, updateRequest);
 
-        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(
-                customer.getName(), customer.getEmail(), customer.getAge());
+        // Then
+        verify(customerDao, never()).updateCustomer(any(), any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void queuedEditsCountWhenLookingForChanges() {
+        // Given
+        int id = 10;
+        CustomerProfile stored = new CustomerProfile(id, "Alex", "alex@gmail.com", 19, Gender.MALE);
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(customerDao.selectCustomerProfileById(id)).thenReturn(Optional.of(stored));
+        when(writeBehind.overlay(stored)).thenReturn(
+                new CustomerProfile(id, "Alexandros", "alex@gmail.com", 19, Gender.MALE));
 
         // When
-        assertThatThrownBy(() -> underTest.updateCustomer(id, updateRequest))
+        assertThatThrownBy(() -> underTest.updateCustomer(id, new CustomerUpdateRequest("Alexandros", null, null)))
                 .isInstanceOf(RequestValidationException.class)
                 .hasMessage("no data changes found");
 
         // Then
+        verify(writeBehind, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void emailChangeIsWrittenNowAfterQueuedEdits() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest updateRequest = new CustomerUpdateRequest(null, "alexandros@gmail.com", null);
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(customerDao.selectCustomerProfileById(id)).thenReturn(Optional.of(
+                new CustomerProfile(id, "Alex", "alex@gmail.com", 19, Gender.MALE)));
+        when(customerDao.updateCustomer(id, updateRequest))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
+
+        // When
+        underTest.updateCustomer(id, updateRequest);
+
+        // Then
+        InOrder inOrder = inOrder(writeBehind, customerDao);
+        inOrder.verify(writeBehind).flush(id);
+        inOrder.verify(customerDao).updateCustomer(id, updateRequest);
+        verify(writeBehind, never()).enqueue(any(), any());
+        verify(eventPublisher).publishEvent(new CustomerChangedEvent(id, "alex@gmail.com"));
+    }
 
-        verify(customerDao, never()).updateCustomer(any());
+    @Test
+    void willThrowWhenQueueingUpdateForCustomerThatDoesNotExist() {
+        // Given
+        int id = 10;
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(customerDao.selectCustomerProfileById(id)).thenReturn(Optional.empty());
 
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, new CustomerUpdateRequest("Alexandros", null, null)))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id [%s] not found".formatted(id));
     }
 
-}
\ No newline at end of file
+    @Test
+    void readsShowQueuedEdits() {
+        // Given
+        int id = 10;
+        CustomerProfile stored = new CustomerProfile(id, "Alex", "alex@gmail.com", 19, Gender.MALE);
+        when(customerDao.selectCustomerProfileById(id, CustomerProjection.ALL)).thenReturn(Optional.of(stored));
+        when(writeBehind.overlay(stored)).thenReturn(
+                new CustomerProfile(id, "Alexandros", "alex@gmail.com", 19, Gender.MALE));
+
+        // When
+        CustomerDTO actual = underTest.getCustomer(id, CustomerFields.ALL);
+
+        // Then
+        assertThat(actual.name()).isEqualTo("Alexandros");
+    }
+}
@@ -0,0 +1,53 @@
+package com.alexgiounan.springbootexample.customer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerUpdateRequestTest {
+
+    private final Customer customer = new Customer(10, "Alex", "alex@gmail.com", "password", 19, Gender.MALE);
+
+    @Test
+    void appliesAllGivenFields() {
+        // When
+        boolean changed = new CustomerUpdateRequest("Alexandros", "alexandros@gmail.com", 26).applyTo(customer);
+
+        // Then
+        assertThat(changed).isTrue();
+        assertThat(customer.getName()).isEqualTo("Alexandros");
+        assertThat(customer.getEmail()).isEqualTo("alexandros@gmail.com");
+        assertThat(customer.getAge()).isEqualTo(26);
+    }
+
+    @Test
+    void leavesFieldsThatAreNotGiven() {
+        // When
+        boolean changed = new CustomerUpdateRequest(null, null, 22).applyTo(customer);
+
+        // Then
+        assertThat(changed).isTrue();
+        assertThat(customer.getName()).isEqualTo("Alex");
+        assertThat(customer.getEmail()).isEqualTo("alex@gmail.com");
+        assertThat(customer.getAge()).isEqualTo(22);
+    }
+
+    @Test
+    void changeOfCaseIsAChange() {
+        // When
+        boolean changed = new CustomerUpdateRequest(null, "Alex@Gmail.com", null).applyTo(customer);
+
+        // Then
+        assertThat(changed).isTrue();
+        assertThat(customer.getEmail()).isEqualTo("Alex@Gmail.com");
+    }
+
+    @Test
+    void reportsNoChangeWhenEveryFieldMatches() {
+        // When
+        boolean changed = new CustomerUpdateRequest("Alex", "alex@gmail.com", 19).applyTo(customer);
+
+        // Then
+        assertThat(changed).isFalse();
+    }
+}
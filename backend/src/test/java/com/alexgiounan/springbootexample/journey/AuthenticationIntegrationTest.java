@@ -115,4 +115,19 @@ public class AuthenticationIntegrationTest {
         assertThat(customerDTO.roles()).isEqualTo(List.of("ROLE_USER"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void metricsNeedAuthenticationButHealthDoesNot() {
+        webTestClient.get()
+                .uri("/actuator/metrics")
+                .exchange()
+                .expectStatus()
+                .isUnauthorized();
+
+        webTestClient.get()
+                .uri("/actuator/health")
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+}
@@ -3,7 +3,15 @@ package com.alexgiounan.springbootexample.journey;
 import com.alexgiounan.springbootexample.customer.Customer;
 import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
 import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dto.CustomerBatch;
 import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchDTO;
+import com.alexgiounan.springbootexample.dto.CustomerNameMatchPage;
+import com.alexgiounan.springbootexample.dto.CustomerPage;
+import com.alexgiounan.springbootexample.dto.CustomerRegistrationResult;
+import com.alexgiounan.springbootexample.dto.CustomerSearchPage;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
 import com.github.javafaker.Faker;
 import com.github.javafaker.Name;
 import org.junit.jupiter.api.Test;
@@ -29,6 +37,9 @@ public class CustomerIntegrationTest {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private JWTUtil jwtUtil;
+
     private static final Random random = new Random();
     private static final String CUSTOMER_PATH = "/api/v1/customers";
 
@@ -95,6 +106,34 @@ public class CustomerIntegrationTest {
         );
 
         assertThat(allCustomers).contains(expectedCustomer);
+        // the registration token names the customer like a login token does
+        assertThat(jwtUtil.verify(jwtToken).get("customerId", Integer.class)).isEqualTo(id);
+
+        // stream all customers as ndjson
+        List<CustomerDTO> streamedCustomers = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(CustomerDTO.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(streamedCustomers).contains(expectedCustomer);
+
+        // stream all customers as a json array
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "/stream")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(CustomerDTO.class)
+                .contains(expectedCustomer);
 
         // get customer by id
         webTestClient.get()
@@ -107,6 +146,237 @@ public class CustomerIntegrationTest {
                 .expectBody(new ParameterizedTypeReference<CustomerDTO>() {
                 })
                 .isEqualTo(expectedCustomer);
+
+        // get only some fields of the customer
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "/{id}?fields={fields}", id, "name")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(String.class)
+                .isEqualTo("{\"id\":%d,\"name\":\"%s\"}".formatted(id, name));
+
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "/search?email={email}&fields={fields}", email, "email,age")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerSearchPage.class)
+                .isEqualTo(new CustomerSearchPage(
+                        List.of(new CustomerDTO(id, null, email, null, age, null, null)), null));
+
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "?fields={fields}", "name,password")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        // get customers by ids, one of them unknown
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "?ids={ids}", "-1," + id)
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerBatch.class)
+                .isEqualTo(new CustomerBatch(List.of(expectedCustomer), List.of(-1)));
+
+        // search by email prefix and age
+        CustomerSearchPage found = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/search?email={email}&minAge={minAge}&maxAge={maxAge}&gender={gender}",
+                        email.toUpperCase(), age, age, gender.name().toLowerCase())
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerSearchPage.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(found.customers()).containsExactly(expectedCustomer);
+        assertThat(found.nextOffset()).isNull();
+
+        // fuzzy search by the name with two letters swapped
+        String misspelled = name.length() > 3
+                ? name.substring(0, 1) + name.charAt(2) + name.charAt(1) + name.substring(3)
+                : name;
+        CustomerNameMatchPage matches = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/search/name?q={name}&limit={limit}", misspelled, 100)
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerNameMatchPage.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(matches.matches())
+                .extracting(CustomerNameMatchDTO::customer)
+                .contains(expectedCustomer);
+
+        // typeahead suggestions for the start of the email
+        List<CustomerSuggestion> suggestions = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/typeahead?q={prefix}", email.substring(0, email.indexOf('@')))
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(CustomerSuggestion.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(suggestions).containsExactly(new CustomerSuggestion(id, name, email));
+    }
+
+    @Test
+    void canPageThroughCustomers() {
+        // create two customers so that at least two pages exist
+        Faker faker = new Faker();
+        Name fakerName = faker.name();
+        String name = fakerName.fullName();
+        String email = fakerName.lastName() + "-" + UUID.randomUUID() + "@gmail.com";
+        int age = random.nextInt(1, 100);
+
+        Gender gender = age % 2 == 0 ? Gender.MALE : Gender.FEMALE;
+
+        webTestClient.post()
+                .uri(CUSTOMER_PATH)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new CustomerRegistrationRequest(
+                        name, email, "password", age, gender
+                )), CustomerRegistrationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        String jwtToken = webTestClient.post()
+                .uri(CUSTOMER_PATH)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new CustomerRegistrationRequest(
+                        name, email + ".uk", "password", age, gender
+                )), CustomerRegistrationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Void.class)
+                .getResponseHeaders()
+                .get(AUTHORIZATION)
+                .get(0);
+
+        // get first page
+        CustomerPage firstPage = webTestClient.get()
+                .uri(CUSTOMER_PATH + "?limit={limit}", 1)
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerPage.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(firstPage.customers()).hasSize(1);
+        assertThat(firstPage.nextCursor()).isEqualTo(firstPage.customers().get(0).id());
+
+        // follow the cursor
+        CustomerPage secondPage = webTestClient.get()
+                .uri(CUSTOMER_PATH + "?after={after}&limit={limit}", firstPage.nextCursor(), 1)
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerPage.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(secondPage.customers()).hasSize(1);
+        assertThat(secondPage.customers().get(0).id()).isGreaterThan(firstPage.nextCursor());
+    }
+
+    @Test
+    void canRegisterCustomersInBatch() {
+        // create a customer to authenticate with
+        Faker faker = new Faker();
+        Name fakerName = faker.name();
+        String name = fakerName.fullName();
+        String email = fakerName.lastName() + "-" + UUID.randomUUID() + "@gmail.com";
+        int age = random.nextInt(1, 100);
+
+        Gender gender = age % 2 == 0 ? Gender.MALE : Gender.FEMALE;
+
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                name, email, "password", age, gender
+        );
+
+        String jwtToken = webTestClient.post()
+                .uri(CUSTOMER_PATH)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(request), CustomerRegistrationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Void.class)
+                .getResponseHeaders()
+                .get(AUTHORIZATION)
+                .get(0);
+
+        // send a batch with two new customers and one already registered
+        List<CustomerRegistrationRequest> batch = List.of(
+                new CustomerRegistrationRequest(name, "1-" + email, "password", age, gender),
+                new CustomerRegistrationRequest(name, email, "password", age, gender),
+                new CustomerRegistrationRequest(name, "2-" + email, "password", age, gender)
+        );
+
+        List<CustomerRegistrationResult> results = webTestClient.post()
+                .uri(CUSTOMER_PATH + "/batch")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .bodyValue(batch)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(CustomerRegistrationResult.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(results)
+                .extracting(CustomerRegistrationResult::status)
+                .containsExactly(
+                        CustomerRegistrationResult.Status.CREATED,
+                        CustomerRegistrationResult.Status.DUPLICATE,
+                        CustomerRegistrationResult.Status.CREATED);
+
+        // get all customers
+        List<CustomerDTO> allCustomers = webTestClient.get()
+                .uri(CUSTOMER_PATH)
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(new ParameterizedTypeReference<CustomerDTO>() {
+                })
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(allCustomers)
+                .extracting(CustomerDTO::email)
+                .contains("1-" + email, "2-" + email);
     }
 
     @Test
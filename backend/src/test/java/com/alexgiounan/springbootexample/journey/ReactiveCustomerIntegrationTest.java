@@ -0,0 +1,161 @@
+package com.alexgiounan.springbootexample.journey;
+
+import com.alexgiounan.springbootexample.auth.AuthenticationRequest;
+import com.alexgiounan.springbootexample.customer.CustomerRegistrationRequest;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dto.CustomerDTO;
+import com.alexgiounan.springbootexample.jwt.JWTUtil;
+import com.github.javafaker.Faker;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactiveCustomerIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private JWTUtil jwtUtil;
+
+    private static final String CUSTOMER_PATH = "/api/v1/customers";
+    private static final String AUTH_PATH = "/api/v1/auth";
+
+    @Test
+    void canRegisterLoginUpdateAndDeleteCustomer() {
+        // register
+        String name = new Faker().name().fullName();
+        String email = "reactive-" + UUID.randomUUID() + "@gmail.com";
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                name, email, "password", 30, Gender.FEMALE
+        );
+
+        String registrationToken = webTestClient.post()
+                .uri(CUSTOMER_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(request), CustomerRegistrationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Void.class)
+                .getResponseHeaders()
+                .getFirst(AUTHORIZATION);
+
+        // login
+        String jwtToken = webTestClient.post()
+                .uri(AUTH_PATH + "/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new AuthenticationRequest(email, "password")), AuthenticationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Void.class)
+                .getResponseHeaders()
+                .getFirst(AUTHORIZATION);
+
+        // wrong password
+        webTestClient.post()
+                .uri(AUTH_PATH + "/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new AuthenticationRequest(email, "wrong")), AuthenticationRequest.class)
+                .exchange()
+                .expectStatus()
+                .isUnauthorized();
+
+        // no token
+        webTestClient.get()
+                .uri(CUSTOMER_PATH)
+                .exchange()
+                .expectStatus()
+                .isUnauthorized();
+
+        // stream all customers as ndjson
+        List<CustomerDTO> streamedCustomers = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(CustomerDTO.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        int id = streamedCustomers.stream()
+                .filter(customer -> customer.email().equals(email))
+                .map(CustomerDTO::id)
+                .findFirst()
+                .orElseThrow();
+        assertThat(jwtUtil.verify(registrationToken).get("customerId", Integer.class)).isEqualTo(id);
+
+        // update
+        webTestClient.put()
+                .uri(CUSTOMER_PATH + "/{id}", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .body(Mono.just(new CustomerUpdateRequest("updated", null, 31)), CustomerUpdateRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        CustomerDTO updated = webTestClient.get()
+                .uri(CUSTOMER_PATH + "/{id}", id)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CustomerDTO.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(updated).isEqualTo(new CustomerDTO(
+                id, "updated", email, Gender.FEMALE, 31, List.of("ROLE_USER"), email
+        ));
+
+        // delete
+        webTestClient.delete()
+                .uri(CUSTOMER_PATH + "/{id}", id)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // a token for a deleted account is no longer accepted
+        webTestClient.get()
+                .uri(CUSTOMER_PATH + "/{id}", id)
+                .header(AUTHORIZATION, String.format("Bearer %s", jwtToken))
+                .exchange()
+                .expectStatus()
+                .isUnauthorized();
+    }
+
+    @Test
+    void metricsNeedAuthenticationButHealthDoesNot() {
+        webTestClient.get()
+                .uri("/actuator/metrics")
+                .exchange()
+                .expectStatus()
+                .isUnauthorized();
+
+        webTestClient.get()
+                .uri("/actuator/health")
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+}
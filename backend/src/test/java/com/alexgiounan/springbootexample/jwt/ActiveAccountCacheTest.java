@@ -0,0 +1,94 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ActiveAccountCacheTest {
+
+    @Mock
+    private CustomerDao customerDao;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void looksUpAccountOncePerRevalidationWindow() {
+        // Given
+        ActiveAccountCache underTest = new ActiveAccountCache(customerDao, Duration.ofMillis(100), 10, clock);
+        when(customerDao.existsCustomerWithEmail("alex@gmail.com")).thenReturn(true);
+
+        // When
+        boolean first = underTest.isActive("alex@gmail.com");
+        clock.millis = 99;
+        boolean second = underTest.isActive("alex@gmail.com");
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        verify(customerDao, times(1)).existsCustomerWithEmail("alex@gmail.com");
+
+        clock.millis = 100;
+        underTest.isActive("alex@gmail.com");
+        verify(customerDao, times(2)).existsCustomerWithEmail("alex@gmail.com");
+    }
+
+    @Test
+    void rejectsDeletedAccountAsSoonAsItIsRevalidated() {
+        // Given
+        ActiveAccountCache underTest = new ActiveAccountCache(customerDao, Duration.ofMinutes(5), 10, clock);
+        when(customerDao.existsCustomerWithEmail("alex@gmail.com")).thenReturn(true, false);
+        underTest.isActive("alex@gmail.com");
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(1, "Alex@gmail.com"));
+
+        // Then
+        assertThat(underTest.isActive("alex@gmail.com")).isFalse();
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void forgetsEveryAccountWhenChangesMayHaveBeenMissed() {
+        // Given
+        ActiveAccountCache underTest = new ActiveAccountCache(customerDao, Duration.ofMinutes(5), 10, clock);
+        when(customerDao.existsCustomerWithEmail("alex@gmail.com")).thenReturn(true);
+        when(customerDao.existsCustomerWithEmail("mike@gmail.com")).thenReturn(true);
+        underTest.isActive("alex@gmail.com");
+        underTest.isActive("mike@gmail.com");
+
+        // When
+        underTest.onCustomersInvalidated(new CustomersInvalidatedEvent("gap"));
+
+        // Then
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void staysWithinMaxSize() {
+        // Given
+        ActiveAccountCache underTest = new ActiveAccountCache(customerDao, Duration.ofMinutes(5), 10, clock);
+        for (int i = 0; i < 100; i++) {
+            when(customerDao.existsCustomerWithEmail("user" + i + "@gmail.com")).thenReturn(true);
+        }
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            assertThat(underTest.isActive("user" + i + "@gmail.com")).isTrue();
+        }
+
+        // Then
+        assertThat(underTest.size()).isLessThanOrEqualTo(10);
+    }
+}
@@ -0,0 +1,80 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JWTAuthenticationFilterTest {
+
+    private final JWTUtil jwtUtil = new JWTUtil(100);
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    @Mock
+    private ActiveAccountCache activeAccounts;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void statelessModeAuthenticatesFromClaimsWithoutLoadingUser() throws Exception {
+        // Given
+        JWTAuthenticationFilter underTest =
+                new JWTAuthenticationFilter(jwtUtil, userDetailsService, activeAccounts, true);
+        String token = jwtUtil.issueToken("alex@gmail.com", 7, List.of("ROLE_USER"));
+        when(activeAccounts.isActive("alex@gmail.com")).thenReturn(true);
+
+        // When
+        underTest.doFilter(bearer(token), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertThat(authentication.getPrincipal())
+                .isEqualTo(new JWTPrincipal(7, "alex@gmail.com", List.of("ROLE_USER")));
+        assertThat(authentication.getAuthorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void statelessModeLeavesInactiveAccountUnauthenticated() throws Exception {
+        // Given
+        JWTAuthenticationFilter underTest =
+                new JWTAuthenticationFilter(jwtUtil, userDetailsService, activeAccounts, true);
+        String token = jwtUtil.issueToken("alex@gmail.com", 7, List.of("ROLE_USER"));
+        when(activeAccounts.isActive("alex@gmail.com")).thenReturn(false);
+
+        // When
+        underTest.doFilter(bearer(token), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verifyNoInteractions(userDetailsService);
+    }
+
+    private static MockHttpServletRequest bearer(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
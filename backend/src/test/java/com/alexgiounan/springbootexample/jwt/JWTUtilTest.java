@@ -0,0 +1,55 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JWTUtilTest {
+
+    private final JWTUtil underTest = new JWTUtil(100);
+
+    @Test
+    void verifyReturnsClaimsOfIssuedToken() {
+        // Given
+        String token = underTest.issueToken("alex@gmail.com", List.of("ROLE_USER"));
+
+        // When
+        Claims actual = underTest.verify(token);
+
+        // Then
+        assertThat(actual.getSubject()).isEqualTo("alex@gmail.com");
+        assertThat(actual.get("scopes")).isEqualTo(List.of("ROLE_USER"));
+        assertThat(underTest.isTokenValid(token, "alex@gmail.com")).isTrue();
+        assertThat(underTest.isTokenValid(token, "mike@gmail.com")).isFalse();
+    }
+
+    @Test
+    void verifyServesRepeatCallsFromCache() {
+        // Given
+        String token = underTest.issueToken("alex@gmail.com");
+
+        // When
+        Claims first = underTest.verify(token);
+        Claims second = underTest.verify(token);
+
+        // Then
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void verifyRejectsTamperedToken() {
+        // Given
+        String token = underTest.issueToken("alex@gmail.com");
+        String tampered = token.substring(0, token.length() - 2) + "xx";
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.verify(tampered))
+                .isInstanceOf(JwtException.class);
+    }
+}
@@ -0,0 +1,65 @@
+package com.alexgiounan.springbootexample.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void returnsCachedClaimsUntilTokenExpires() {
+        // Given
+        VerifiedTokenCache underTest = new VerifiedTokenCache(10, clock);
+        Claims claims = claimsExpiringAt(1_000);
+
+        // When
+        underTest.put("token", claims);
+
+        // Then
+        assertThat(underTest.get("token")).isSameAs(claims);
+        assertThat(underTest.get("other-token")).isNull();
+
+        clock.millis = 1_000;
+        assertThat(underTest.get("token")).isNull();
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void staysWithinMaxSize() {
+        // Given
+        VerifiedTokenCache underTest = new VerifiedTokenCache(10, clock);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            underTest.put("token-" + i, claimsExpiringAt(1_000));
+        }
+
+        // Then
+        assertThat(underTest.size()).isLessThanOrEqualTo(10);
+        assertThat(underTest.get("token-99")).isNotNull();
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        // Given
+        VerifiedTokenCache underTest = new VerifiedTokenCache(0, clock);
+
+        // When
+        underTest.put("token", claimsExpiringAt(1_000));
+
+        // Then
+        assertThat(underTest.get("token")).isNull();
+    }
+
+    private static Claims claimsExpiringAt(long millis) {
+        return Jwts.claims()
+                .setSubject("alex@gmail.com")
+                .setExpiration(new Date(millis));
+    }
+}
@@ -0,0 +1,119 @@
+package com.alexgiounan.springbootexample.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedRegionFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final BoundedRegionFactory regionFactory =
+            new BoundedRegionFactory(10, Duration.ofMinutes(10), meterRegistry, clock);
+
+    @Test
+    void entriesExpireAfterTheTimeToLive() {
+        // Given
+        BoundedRegionFactory.Storage underTest = regionFactory.new Storage("customer", 10, 1_000);
+        underTest.putIntoCache(1, "Alex", null);
+
+        // When
+        clock.millis = 999;
+        Object fresh = underTest.getFromCache(1, null);
+        clock.millis = 1_000;
+        Object expired = underTest.getFromCache(1, null);
+
+        // Then
+        assertThat(fresh).isEqualTo("Alex");
+        assertThat(expired).isNull();
+        assertThat(underTest.contains(1)).isFalse();
+        assertThat(meterRegistry.counter("hibernate.second.level.cache.evictions",
+                "region", "customer", "cause", "expired").count()).isEqualTo(1);
+    }
+
+    @Test
+    void locksOutliveTheTimeToLive() {
+        // Given
+        BoundedRegionFactory.Storage underTest = regionFactory.new Storage("customer", 10, 1_000);
+        SoftLock lock = new SoftLock() {
+        };
+        underTest.putIntoCache(1, lock, null);
+
+        // When
+        clock.millis = 5_000;
+
+        // Then
+        assertThat(underTest.getFromCache(1, null)).isSameAs(lock);
+    }
+
+    @Test
+    void sizeStaysWithinTheBound() {
+        // Given
+        BoundedRegionFactory.Storage underTest = regionFactory.new Storage("customer", 10, 1_000);
+
+        // When
+        for (int id = 1; id <= 100; id++) {
+            underTest.putIntoCache(id, "Customer " + id, null);
+        }
+
+        // Then
+        assertThat(underTest.size()).isLessThanOrEqualTo(10);
+        assertThat(underTest.getFromCache(100, null)).isEqualTo("Customer 100");
+        assertThat(meterRegistry.counter("hibernate.second.level.cache.evictions",
+                "region", "customer", "cause", "size").count()).isPositive();
+        assertThat(meterRegistry.get("hibernate.second.level.cache.size").tag("region", "customer").gauge().value())
+                .isEqualTo(underTest.size());
+    }
+
+    @Test
+    void expiredEntriesGoFirstWhenFull() {
+        // Given
+        BoundedRegionFactory.Storage underTest = regionFactory.new Storage("customer", 2, 1_000);
+        underTest.putIntoCache(1, "Alex", null);
+        clock.millis = 500;
+        underTest.putIntoCache(2, "Mike", null);
+
+        // When
+        clock.millis = 1_000;
+        underTest.putIntoCache(3, "Anna", null);
+
+        // Then
+        assertThat(underTest.getFromCache(2, null)).isEqualTo("Mike");
+        assertThat(underTest.getFromCache(3, null)).isEqualTo("Anna");
+        assertThat(meterRegistry.counter("hibernate.second.level.cache.evictions",
+                "region", "customer", "cause", "size").count()).isZero();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
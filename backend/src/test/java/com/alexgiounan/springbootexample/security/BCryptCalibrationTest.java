@@ -0,0 +1,39 @@
+package com.alexgiounan.springbootexample.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BCryptCalibrationTest {
+
+    @Test
+    void picksStrengthWhoseTimeFitsTheTarget() {
+        // probe at cost 8 took 16ms: cost 12 takes 256ms, cost 11 128ms
+        assertThat(BCryptCalibration.strengthFor(
+                Duration.ofMillis(250).toNanos(), Duration.ofMillis(16).toNanos(), 8, 4, 31))
+                .isEqualTo(11);
+        assertThat(BCryptCalibration.strengthFor(
+                Duration.ofMillis(256).toNanos(), Duration.ofMillis(16).toNanos(), 8, 4, 31))
+                .isEqualTo(12);
+    }
+
+    @Test
+    void staysWithinBounds() {
+        assertThat(BCryptCalibration.strengthFor(
+                Duration.ofMillis(250).toNanos(), Duration.ofMillis(200).toNanos(), 8, 10, 16))
+                .isEqualTo(10);
+        assertThat(BCryptCalibration.strengthFor(
+                Duration.ofSeconds(10).toNanos(), 1, 8, 10, 16))
+                .isEqualTo(16);
+    }
+
+    @Test
+    void readsCostOfStoredHash() {
+        assertThat(BCryptCalibration.costOf("$2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy"))
+                .isEqualTo(10);
+        assertThat(BCryptCalibration.costOf("password")).isEqualTo(-1);
+        assertThat(BCryptCalibration.costOf(null)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.alexgiounan.springbootexample.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MeteredPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MeteredPasswordEncoder underTest = new MeteredPasswordEncoder(5, meterRegistry);
+
+    @Test
+    void countsVerifiedHashesByCost() {
+        // Given
+        String oldHash = new BCryptPasswordEncoder(4).encode("password");
+        String currentHash = underTest.encode("password");
+
+        // When
+        underTest.matches("password", oldHash);
+        underTest.matches("password", currentHash);
+        underTest.matches("password", currentHash);
+        underTest.matches("wrong", currentHash);
+
+        // Then
+        assertThat(meterRegistry.get("security.password.verifications").tag("cost", "4").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("security.password.verifications").tag("cost", "5").counter().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("security.password.bcrypt.strength").gauge().value())
+                .isEqualTo(5);
+    }
+
+    @Test
+    void upgradesHashesBelowCurrentStrength() {
+        // Given
+        String oldHash = new BCryptPasswordEncoder(4).encode("password");
+        String currentHash = underTest.encode("password");
+
+        // When / Then
+        assertThat(underTest.upgradeEncoding(oldHash)).isTrue();
+        assertThat(underTest.upgradeEncoding(currentHash)).isFalse();
+        assertThat(meterRegistry.get("security.password.rehashes").counter().count())
+                .isEqualTo(1);
+    }
+}
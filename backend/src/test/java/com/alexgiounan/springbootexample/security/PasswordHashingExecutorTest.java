@@ -0,0 +1,56 @@
+package com.alexgiounan.springbootexample.security;
+
+import com.alexgiounan.springbootexample.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingExecutorTest {
+
+    private final PasswordHashingExecutor underTest = new PasswordHashingExecutor(1, 1);
+
+    @AfterEach
+    void tearDown() {
+        underTest.destroy();
+    }
+
+    @Test
+    void runsTaskOnHashingThread() {
+        // When
+        String threadName = underTest.submit(() -> Thread.currentThread().getName()).join();
+
+        // Then
+        assertThat(threadName).startsWith("password-hashing-");
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws InterruptedException {
+        // Given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = underTest.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+        CompletableFuture<String> queued = underTest.submit(() -> "queued");
+
+        // When / Then
+        assertThatThrownBy(() -> underTest.submit(() -> "rejected"))
+                .isInstanceOf(ServiceUnavailableException.class);
+
+        release.countDown();
+        assertThat(running.join()).isTrue();
+        assertThat(queued.join()).isEqualTo("queued");
+    }
+}
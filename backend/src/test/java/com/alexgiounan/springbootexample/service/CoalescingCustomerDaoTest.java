@@ -0,0 +1,266 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerProjection;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CoalescingCustomerDaoTest {
+
+    private static final int CALLERS = 8;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CoalescingCustomerDao underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CoalescingCustomerDao(customerDao, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLookupsOfOneEmailShareOneCall() throws Exception {
+        // Given
+        when(customerDao.selectUserByEmail("alex@gmail.com")).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(alex());
+        });
+
+        // When
+        List<Future<Optional<Customer>>> results = submit(CALLERS, () -> underTest.selectUserByEmail("alex@gmail.com"));
+        await(() -> lookups("by-email", "coalesced") == CALLERS - 1);
+        release.countDown();
+
+        // Then
+        List<Customer> customers = new ArrayList<>();
+        for (Future<Optional<Customer>> result : results) {
+            customers.add(result.get().orElseThrow());
+        }
+        verify(customerDao, times(1)).selectUserByEmail("alex@gmail.com");
+        assertThat(customers).allMatch(alex()::equals);
+        // each caller may change its customer without the others seeing it
+        assertThat(customers.stream().distinct().count()).isEqualTo(1);
+        assertThat(customers.stream().map(System::identityHashCode).distinct()).hasSize(CALLERS);
+        assertThat(lookups("by-email", "executed")).isEqualTo(1);
+        assertThat(underTest.inFlight()).isZero();
+    }
+
+    @Test
+    void concurrentProfileLookupsShareOneCallAndOneProfile() throws Exception {
+        // Given
+        CustomerProfile profile = CustomerProfile.of(alex());
+        when(customerDao.selectCustomerProfileById(1, CustomerProjection.ALL)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(profile);
+        });
+
+        // When
+        List<Future<Optional<CustomerProfile>>> results = submit(CALLERS, () -> underTest.selectCustomerProfileById(1));
+        await(() -> lookups("profile-by-id", "coalesced") == CALLERS - 1);
+        release.countDown();
+
+        // Then
+        for (Future<Optional<CustomerProfile>> result : results) {
+            assertThat(result.get()).containsSame(profile);
+        }
+        verify(customerDao, times(1)).selectCustomerProfileById(1, CustomerProjection.ALL);
+        assertThat(underTest.inFlight()).isZero();
+    }
+
+    @Test
+    void emailsDifferingInCaseShareOneCall() throws Exception {
+        // Given
+        when(customerDao.existsCustomerWithEmail("alex@gmail.com")).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+        Future<Boolean> first = executor.submit(() -> underTest.existsCustomerWithEmail("alex@gmail.com"));
+        await(() -> underTest.inFlight() == 1);
+
+        // When
+        Future<Boolean> second = executor.submit(() -> underTest.existsCustomerWithEmail("Alex@Gmail.com"));
+        await(() -> lookups("exists-by-email", "coalesced") == 1);
+        release.countDown();
+
+        // Then
+        assertThat(first.get()).isTrue();
+        assertThat(second.get()).isTrue();
+    }
+
+    @Test
+    void differentCustomersAreLookedUpSeparately() throws Exception {
+        // Given
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(alex()));
+        when(customerDao.selectCustomerById(2)).thenReturn(Optional.empty());
+
+        // When
+        Optional<Customer> one = underTest.selectCustomerById(1);
+        Optional<Customer> two = underTest.selectCustomerById(2);
+        underTest.selectCustomerById(1);
+
+        // Then
+        assertThat(one).contains(alex());
+        assertThat(two).isEmpty();
+        verify(customerDao, times(2)).selectCustomerById(1);
+        assertThat(lookups("by-id", "executed")).isEqualTo(3);
+        assertThat(lookups("by-id", "coalesced")).isZero();
+    }
+
+    @Test
+    void failureReachesEveryCaller() throws Exception {
+        // Given
+        when(customerDao.selectCustomerById(1)).thenAnswer(invocation -> {
+            release.await();
+            throw new DataAccessResourceFailureException("connection refused");
+        });
+
+        // When
+        List<Future<Optional<Customer>>> results = submit(CALLERS, () -> underTest.selectCustomerById(1));
+        await(() -> lookups("by-id", "coalesced") == CALLERS - 1);
+        release.countDown();
+
+        // Then
+        for (Future<Optional<Customer>> result : results) {
+            assertThatThrownBy(result::get)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(DataAccessResourceFailureException.class);
+        }
+        verify(customerDao, times(1)).selectCustomerById(1);
+        assertThat(underTest.inFlight()).isZero();
+    }
+
+    @Test
+    void lookupAfterAWriteDoesNotJoinOneStartedBefore() throws Exception {
+        // Given
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        Customer updated = alex();
+        updated.setName("Alexandros");
+        when(customerDao.selectCustomerById(1))
+                .thenAnswer(invocation -> {
+                    release.await();
+                    return Optional.of(alex());
+                })
+                .thenAnswer(invocation -> {
+                    releaseSecond.await();
+                    return Optional.of(updated);
+                });
+        Future<Optional<Customer>> before = executor.submit(() -> underTest.selectCustomerById(1));
+        await(() -> underTest.inFlight() == 1);
+
+        // When
+        when(customerDao.updateCustomer(eq(1), any()))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
+        underTest.updateCustomer(1, new CustomerUpdateRequest("Alexandros", null, null));
+        Future<Optional<Customer>> after = executor.submit(() -> underTest.selectCustomerById(1));
+        await(() -> lookups("by-id", "executed") == 2);
+        release.countDown();
+        releaseSecond.countDown();
+
+        // Then
+        assertThat(before.get()).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Alex"));
+        assertThat(after.get()).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Alexandros"));
+        assertThat(lookups("by-id", "coalesced")).isZero();
+    }
+
+    @Test
+    void changeOnAnotherInstanceDetachesLookupsInFlight() throws Exception {
+        // Given
+        when(customerDao.selectUserByEmail("alex@gmail.com")).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(alex());
+        });
+        executor.submit(() -> underTest.selectUserByEmail("alex@gmail.com"));
+        await(() -> underTest.inFlight() == 1);
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(1, "Alex@gmail.com"));
+
+        // Then
+        assertThat(underTest.inFlight()).isZero();
+    }
+
+    @Test
+    void lookupsInsideATransactionAreNotShared() {
+        // Given
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(alex()));
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            // When
+            underTest.selectCustomerById(1);
+
+            // Then
+            assertThat(underTest.inFlight()).isZero();
+            assertThat(lookups("by-id", "executed")).isEqualTo(1);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private <T> List<Future<T>> submit(int callers, Callable<T> call) {
+        List<Future<T>> futures = new ArrayList<>(callers);
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(call));
+        }
+        return futures;
+    }
+
+    private double lookups(String operation, String result) {
+        return meterRegistry.counter("customer.lookups", "operation", operation, "result", result).count();
+    }
+
+    private static Customer alex() {
+        return new Customer(1, "Alex", "alex@gmail.com", "password", 20, Gender.MALE);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,211 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import com.alexgiounan.springbootexample.dto.CustomerSuggestion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerTypeaheadTest extends AbstractTestcontainers {
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger databaseLookups = new AtomicInteger();
+    private final List<CustomerTypeahead> created = new ArrayList<>();
+    // names no other test uses, so suggestions only see this test's customers
+    private final String prefix = "Typeahead" + UUID.randomUUID().toString().substring(0, 8);
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(CustomerTypeahead::destroy);
+    }
+
+    @Test
+    void suggestionsComeFromTheDatabaseUntilTheIndexIsBuilt() {
+        // Given
+        CustomerTypeahead underTest = typeahead(10);
+
+        // When
+        List<CustomerSuggestion> suggestions = underTest.suggest(prefix, 5, this::fromDatabase);
+
+        // Then
+        assertThat(underTest.isReady()).isFalse();
+        assertThat(suggestions).isEmpty();
+        assertThat(databaseLookups).hasValue(1);
+        assertThat(lookups("database")).isEqualTo(1);
+    }
+
+    @Test
+    void suggestsNamesAndEmailsByPrefixOnceBuilt() {
+        // Given
+        CustomerTypeahead underTest = typeahead(10);
+        int bob = insert(prefix + " Bob", "bob." + UUID.randomUUID() + "@example.com");
+        int ann = insert("Ann", prefix.toLowerCase() + ".ann@example.com");
+        int zed = insert(prefix + " Zed", prefix + ".zed@example.com");
+        underTest.rebuild();
+
+        // When
+        List<CustomerSuggestion> suggestions = underTest.suggest(prefix.toUpperCase(), 5, this::fromDatabase);
+        List<CustomerSuggestion> first = underTest.suggest(prefix, 2, this::fromDatabase);
+
+        // Then
+        assertThat(suggestions)
+                .extracting(CustomerSuggestion::id)
+                .containsExactly(bob, zed, ann);
+        assertThat(first)
+                .extracting(CustomerSuggestion::id)
+                .containsExactly(bob, zed);
+        assertThat(databaseLookups).hasValue(0);
+        assertThat(meterRegistry.get("customer.typeahead.index.size").gauge().value()).isGreaterThan(0);
+    }
+
+    @Test
+    void addedChangedAndDeletedCustomersAreKnownWithoutARebuild() throws InterruptedException {
+        // Given
+        CustomerTypeahead underTest = typeahead(10);
+        int renamed = insert(prefix + " Old", unique());
+        int deleted = insert(prefix + " Gone", unique());
+        underTest.rebuild();
+        String email = unique();
+        int added = insert(prefix + " New", email);
+        jdbcTemplate.update("UPDATE customer SET name = ? WHERE id = ?", prefix + " Another", renamed);
+        jdbcTemplate.update("DELETE FROM customer WHERE id = ?", deleted);
+
+        // When
+        underTest.onCustomerAdded(new CustomerAddedEvent(email));
+        underTest.onCustomerChanged(new CustomerChangedEvent(renamed, null));
+        underTest.onCustomerChanged(new CustomerChangedEvent(deleted, null));
+
+        // Then
+        // read back on the index's thread
+        await(() -> meterRegistry.get("customer.typeahead.changes").gauge().value() == 3);
+        assertThat(underTest.suggest(prefix, 5, this::fromDatabase))
+                .extracting(CustomerSuggestion::name)
+                .containsExactly(prefix + " Another", prefix + " New");
+        assertThat(databaseLookups).hasValue(0);
+    }
+
+    @Test
+    void changesAreFoldedIntoANewIndex() throws InterruptedException {
+        // Given
+        CustomerTypeahead underTest = typeahead(2);
+        underTest.rebuild();
+        String first = unique();
+        String second = unique();
+        insert(prefix + " One", first);
+        insert(prefix + " Two", second);
+
+        // When
+        underTest.onCustomerAdded(new CustomerAddedEvent(first));
+        underTest.onCustomerAdded(new CustomerAddedEvent(second));
+
+        // Then
+        await(() -> meterRegistry.get("customer.typeahead.changes").gauge().value() == 0
+                && underTest.suggest(prefix, 5, this::fromDatabase).size() == 2);
+        assertThat(underTest.suggest(prefix, 5, this::fromDatabase))
+                .extracting(CustomerSuggestion::name)
+                .containsExactly(prefix + " One", prefix + " Two");
+    }
+
+    @Test
+    void missedChangesFallBackToTheDatabaseUntilRebuilt() throws InterruptedException {
+        // Given
+        CustomerTypeahead underTest = typeahead(10);
+        underTest.rebuild();
+        // added on another instance, its message lost
+        int id = insert(prefix, unique());
+
+        // When
+        underTest.onCustomersInvalidated(new CustomersInvalidatedEvent("gap"));
+
+        // Then
+        assertThat(underTest.suggest(prefix, 5, this::fromDatabase))
+                .extracting(CustomerSuggestion::id)
+                .containsExactly(id);
+        await(() -> rebuilds() == 2 && underTest.isReady());
+        assertThat(underTest.suggest(prefix, 5, this::fromDatabase))
+                .extracting(CustomerSuggestion::id)
+                .containsExactly(id);
+        assertThat(databaseLookups).hasValue(1);
+    }
+
+    @Test
+    void topRanksByTheMatchingValueAndSuggestsEachCustomerOnce() {
+        // Given
+        List<CustomerSuggestion> candidates = List.of(
+                new CustomerSuggestion(3, "Zoe", "al.zoe@example.com"),
+                new CustomerSuggestion(1, "Alice", "alice@example.com"),
+                new CustomerSuggestion(2, "Bob", "bob@example.com"),
+                new CustomerSuggestion(1, "Alice", "alice@example.com"));
+
+        // When
+        List<CustomerSuggestion> top = CustomerTypeahead.top("AL", candidates, 5);
+
+        // Then
+        assertThat(top).extracting(CustomerSuggestion::id).containsExactly(3, 1);
+    }
+
+    private CustomerTypeahead typeahead(int compactAfter) {
+        CustomerTypeahead typeahead = new CustomerTypeahead(
+                jdbcTemplate,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                compactAfter,
+                meterRegistry);
+        created.add(typeahead);
+        return typeahead;
+    }
+
+    private List<CustomerSuggestion> fromDatabase() {
+        databaseLookups.incrementAndGet();
+        return jdbcTemplate.query("""
+                        SELECT id, name, email FROM customer
+                        WHERE lower(name) LIKE lower(?) || '%'
+                        ORDER BY lower(name), id
+                        """,
+                (rs, rowNum) -> new CustomerSuggestion(rs.getInt("id"), rs.getString("name"), rs.getString("email")),
+                prefix);
+    }
+
+    private int insert(String name, String email) {
+        Integer id = jdbcTemplate.queryForObject("""
+                INSERT INTO customer(name, email, password, age, gender)
+                VALUES (?, ?, 'password', 30, 'MALE')
+                RETURNING id
+                """, Integer.class, name, email);
+        return id;
+    }
+
+    private static String unique() {
+        return "typeahead." + UUID.randomUUID() + "@example.com";
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.counter("customer.typeahead.lookups", "result", result).count();
+    }
+
+    private double rebuilds() {
+        return meterRegistry.counter("customer.typeahead.rebuilds", "result", "success").count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
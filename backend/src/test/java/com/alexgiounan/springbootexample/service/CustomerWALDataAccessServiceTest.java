@@ -0,0 +1,282 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.Customer;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.service.WriteAheadLog.FsyncPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerWALDataAccessServiceTest {
+
+    private static final int REGION_SIZE = 4 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private final List<CustomerWALDataAccessService> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (CustomerWALDataAccessService store : opened) {
+            store.destroy();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(FsyncPolicy.class)
+    void restartRestoresInsertsUpdatesAndDeletes(FsyncPolicy fsyncPolicy) throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(fsyncPolicy, Long.MAX_VALUE);
+        Customer alex = customer("alex@gmail.com");
+        Customer mike = customer("mike@gmail.com");
+        underTest.insertCustomer(alex);
+        underTest.insertCustomer(mike);
+
+        underTest.updateCustomer(alex.getId(), new CustomerUpdateRequest("Alexandros", "alexandros@gmail.com", null));
+        underTest.updateCustomerPassword(alex.getId(), "new-hash");
+        underTest.deleteCustomerById(mike.getId());
+
+        // When
+        CustomerWALDataAccessService restarted = reopen(underTest, fsyncPolicy, Long.MAX_VALUE);
+
+        // Then
+        assertThat(restarted.selectAllCustomers()).hasSize(1);
+        assertThat(restarted.selectUserByEmail("alexandros@gmail.com")).hasValueSatisfying(c -> {
+            assertThat(c.getId()).isEqualTo(alex.getId());
+            assertThat(c.getName()).isEqualTo("Alexandros");
+            assertThat(c.getPassword()).isEqualTo("new-hash");
+        });
+        assertThat(restarted.existsCustomerWithEmail("mike@gmail.com")).isFalse();
+
+        // ids keep counting from where they were
+        Customer next = customer("next@gmail.com");
+        restarted.insertCustomer(next);
+        assertThat(next.getId()).isGreaterThan(mike.getId());
+    }
+
+    @Test
+    void logRollsAcrossRegions() throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        for (int i = 0; i < 500; i++) {
+            underTest.insertCustomer(customer("c" + i + "@gmail.com"));
+        }
+
+        // When
+        CustomerWALDataAccessService restarted = reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE);
+
+        // Then
+        assertThat(restarted.selectAllCustomers()).hasSize(500);
+    }
+
+    @Test
+    void snapshotCompactsOlderGenerations() throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            underTest.insertCustomer(customer("c" + i + "@gmail.com"));
+        }
+        for (int i = 1; i <= 50; i++) {
+            underTest.deleteCustomerById(i);
+        }
+
+        // When
+        underTest.snapshot();
+
+        // Then
+        assertThat(files("snapshot-")).hasSize(1);
+        assertThat(files("wal-")).hasSize(1);
+        CustomerWALDataAccessService restarted = reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        assertThat(restarted.selectAllCustomers())
+                .extracting(Customer::getId)
+                .first()
+                .isEqualTo(51);
+        assertThat(restarted.selectAllCustomers()).hasSize(50);
+    }
+
+    @Test
+    void idsOfDeletedCustomersAreNotHandedOutAgain() throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        Customer alex = customer("alex@gmail.com");
+        Customer mike = customer("mike@gmail.com");
+        underTest.insertCustomer(alex);
+        underTest.insertCustomer(mike);
+        underTest.deleteCustomerById(mike.getId());
+        underTest.deleteCustomerById(alex.getId());
+        // nothing left for the snapshot but the highest id
+        underTest.snapshot();
+
+        // When
+        CustomerWALDataAccessService restarted = reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        Customer next = customer("next@gmail.com");
+        restarted.insertCustomer(next);
+
+        // Then
+        assertThat(next.getId()).isGreaterThan(mike.getId());
+    }
+
+    @Test
+    void snapshotIsTakenOnceTheLogOutgrowsTheThreshold() throws Exception {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, 2 * 1024);
+        assertThat(files("snapshot-")).isEmpty();
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            underTest.insertCustomer(customer("c" + i + "@gmail.com"));
+        }
+
+        // Then
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (files("snapshot-").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(files("snapshot-")).isNotEmpty();
+        assertThat(reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE).selectAllCustomers()).hasSize(100);
+    }
+
+    @Test
+    void tornTailIsIgnored() throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.PER_WRITE, Long.MAX_VALUE);
+        underTest.insertCustomer(customer("kept@gmail.com"));
+        underTest.insertCustomer(customer("torn@gmail.com"));
+        underTest.destroy();
+        opened.remove(underTest);
+
+        // flip a byte inside the last record, as a partial page write would
+        Path log = directory.resolve(files("wal-").get(files("wal-").size() - 1));
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            long end = 0;
+            while (file.length() > end + 4) {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                end += 8 + length;
+            }
+            file.seek(end - 3);
+            int b = file.read();
+            file.seek(end - 3);
+            file.write(b ^ 0xFF);
+        }
+
+        // When
+        CustomerWALDataAccessService restarted = open(FsyncPolicy.PER_WRITE, Long.MAX_VALUE);
+
+        // Then
+        assertThat(restarted.existsCustomerWithEmail("kept@gmail.com")).isTrue();
+        assertThat(restarted.existsCustomerWithEmail("torn@gmail.com")).isFalse();
+    }
+
+    @Test
+    void writesTheLogRejectsAreUndoneInMemory() throws IOException {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        Customer alex = customer("alex@gmail.com");
+        underTest.insertCustomer(alex);
+        // too long for a record to fit a log region
+        String tooLong = "x".repeat(REGION_SIZE);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.insertCustomer(
+                new Customer(tooLong, "mike@gmail.com", "password", 30, Gender.MALE)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> underTest.updateCustomer(alex.getId(), new CustomerUpdateRequest(tooLong, null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> underTest.updateCustomerPassword(alex.getId(), tooLong))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(underTest.existsCustomerWithEmail("mike@gmail.com")).isFalse();
+        assertThat(underTest.selectCustomerById(alex.getId())).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("Customer");
+            assertThat(c.getPassword()).isEqualTo("password");
+        });
+        assertThat(reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE).selectAllCustomers()).hasSize(1);
+    }
+
+    @Test
+    void concurrentWritersAreAllRecovered() throws Exception {
+        // Given
+        CustomerWALDataAccessService underTest = open(FsyncPolicy.GROUPED, 64 * 1024);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        underTest.insertCustomer(customer("t" + thread + "-" + i + "@gmail.com"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        // Then
+        CustomerWALDataAccessService restarted = reopen(underTest, FsyncPolicy.GROUPED, Long.MAX_VALUE);
+        assertThat(restarted.selectAllCustomers()).hasSize(2_000);
+    }
+
+    @Test
+    void directoryCannotBeOpenedTwice() {
+        open(FsyncPolicy.GROUPED, Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> open(FsyncPolicy.GROUPED, Long.MAX_VALUE))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("in use");
+    }
+
+    private CustomerWALDataAccessService open(FsyncPolicy fsyncPolicy, long snapshotAfterBytes) {
+        CustomerWALDataAccessService store = new CustomerWALDataAccessService(
+                directory, fsyncPolicy, Duration.ofMillis(10), snapshotAfterBytes, REGION_SIZE);
+        opened.add(store);
+        return store;
+    }
+
+    private CustomerWALDataAccessService reopen(CustomerWALDataAccessService store,
+                                                FsyncPolicy fsyncPolicy,
+                                                long snapshotAfterBytes) throws IOException {
+        store.destroy();
+        opened.remove(store);
+        return open(fsyncPolicy, snapshotAfterBytes);
+    }
+
+    private List<String> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && !name.endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Customer customer(String email) {
+        return new Customer("Customer", email, "password", 30, Gender.MALE);
+    }
+}
@@ -0,0 +1,277 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerProfile;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateQueuedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerUpdateRequest;
+import com.alexgiounan.springbootexample.customer.Gender;
+import com.alexgiounan.springbootexample.dao.CustomerDao;
+import com.alexgiounan.springbootexample.dao.CustomerUpdate;
+import com.alexgiounan.springbootexample.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerWriteBehindQueueTest {
+
+    // long enough that the scheduler never writes during a test
+    private static final Duration WINDOW = Duration.ofHours(1);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<CustomerWriteBehindQueue> created = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(CustomerWriteBehindQueue::destroy);
+    }
+
+    @Test
+    void editsOfACustomerAreMergedIntoOneWrite() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        CustomerUpdateRequest write = new CustomerUpdateRequest("Alexandros", null, 21);
+        when(customerDao.updateCustomer(1, write))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
+
+        // When
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexa", null, null));
+        underTest.enqueue(1, new CustomerUpdateRequest(null, "alex@gmail.com", 21));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+        underTest.flush(true);
+
+        // Then
+        verify(customerDao, times(1)).updateCustomer(any(), any());
+        verify(customerDao).updateCustomer(1, write);
+        verify(transactionManager, times(1)).commit(any());
+        verify(eventPublisher, times(3)).publishEvent(new CustomerUpdateQueuedEvent(1));
+        verify(eventPublisher).publishEvent(new CustomerChangedEvent(1, "alex@gmail.com"));
+        assertThat(updates("queued")).isEqualTo(1);
+        assertThat(updates("merged")).isEqualTo(2);
+        assertThat(meterRegistry.get("customer.write.behind.lag").timer().count()).isEqualTo(1);
+        assertThat(underTest.depth()).isZero();
+    }
+
+    @Test
+    void editsWaitForTheirWindow() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+
+        // When
+        underTest.flush(false);
+
+        // Then
+        verifyNoInteractions(customerDao);
+        assertThat(meterRegistry.get("customer.write.behind.depth").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void pendingEditsAreOverlaidOnReads() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        CustomerProfile stored = new CustomerProfile(1, "Alex", "alex@gmail.com", 19, Gender.MALE);
+        CustomerProfile other = new CustomerProfile(2, "Mike", "mike@gmail.com", 24, Gender.MALE);
+
+        // When
+        underTest.enqueue(1, new CustomerUpdateRequest(null, null, 20));
+
+        // Then
+        assertThat(underTest.overlay(stored))
+                .isEqualTo(new CustomerProfile(1, "Alex", "alex@gmail.com", 20, Gender.MALE));
+        assertThat(underTest.overlay(other)).isSameAs(other);
+    }
+
+    @Test
+    void customersAreWrittenInBatches() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 2, Duration.ZERO);
+        for (int id = 1; id <= 5; id++) {
+            underTest.enqueue(id, new CustomerUpdateRequest("Name " + id, null, null));
+        }
+
+        // When
+        underTest.flush(true);
+
+        // Then
+        verify(customerDao, times(5)).updateCustomer(any(), any());
+        verify(transactionManager, times(3)).commit(any());
+        assertThat(meterRegistry.counter("customer.write.behind.writes", "result", "success").count())
+                .isEqualTo(5);
+    }
+
+    @Test
+    void failedWritesAreRetriedUnderLaterEdits() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        when(customerDao.updateCustomer(eq(1), any()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexa", null, 20));
+        underTest.flush(true);
+
+        // When
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+        underTest.flush(true);
+
+        // Then
+        verify(customerDao).updateCustomer(1, new CustomerUpdateRequest("Alexandros", null, 20));
+        verify(transactionManager).rollback(any());
+        assertThat(meterRegistry.counter("customer.write.behind.writes", "result", "failure").count())
+                .isEqualTo(1);
+        assertThat(underTest.depth()).isZero();
+    }
+
+    @Test
+    void aFailingEditDoesNotHoldBackTheRestOfItsBatch() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        when(customerDao.updateCustomer(eq(1), any()))
+                .thenReturn(Optional.of(new CustomerUpdate("alex@gmail.com", true)));
+        when(customerDao.updateCustomer(eq(2), any())).thenThrow(new DataAccessResourceFailureException("bad"));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexa", null, null));
+        underTest.enqueue(2, new CustomerUpdateRequest("Mikey", null, null));
+
+        // When
+        underTest.flush(true);
+
+        // Then
+        // in the batch, then again on its own
+        verify(customerDao, times(2)).updateCustomer(1, new CustomerUpdateRequest("Alexa", null, null));
+        verify(transactionManager, times(2)).rollback(any());
+        verify(transactionManager).commit(any());
+        verify(eventPublisher).publishEvent(new CustomerChangedEvent(1, "alex@gmail.com"));
+        assertThat(meterRegistry.counter("customer.write.behind.writes", "result", "success").count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.counter("customer.write.behind.writes", "result", "failure").count())
+                .isEqualTo(1);
+        assertThat(underTest.depth()).isEqualTo(1);
+        assertThat(underTest.overlay(new CustomerProfile(2, "Mike", "mike@gmail.com", 19, Gender.MALE)).name())
+                .isEqualTo("Mikey");
+    }
+
+    @Test
+    void editsAreDroppedOnceTheirWritesFailedMaxAttemptsTimes() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        when(customerDao.updateCustomer(eq(1), any())).thenThrow(new DataAccessResourceFailureException("down"));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexa", null, 20));
+
+        // When
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            underTest.flush(true);
+        }
+
+        // Then
+        verify(customerDao, times(MAX_ATTEMPTS)).updateCustomer(eq(1), any());
+        assertThat(underTest.depth()).isZero();
+        assertThat(meterRegistry.counter("customer.write.behind.writes", "result", "dropped").count())
+                .isEqualTo(1);
+        assertThat(underTest.overlay(new CustomerProfile(1, "Alex", "alex@gmail.com", 19, Gender.MALE)).name())
+                .isEqualTo("Alex");
+    }
+
+    @Test
+    void fullQueueWritesEarlyToMakeRoom() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 1, 10, Duration.ofSeconds(10));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+
+        // When
+        underTest.enqueue(2, new CustomerUpdateRequest("Mike", null, null));
+
+        // Then
+        verify(customerDao).updateCustomer(1, new CustomerUpdateRequest("Alexandros", null, null));
+        assertThat(underTest.depth()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueRejectsOnceMaxWaitIsOver() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 1, 10, Duration.ofMillis(50));
+        when(customerDao.updateCustomer(any(), any())).thenThrow(new DataAccessResourceFailureException("down"));
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.enqueue(2, new CustomerUpdateRequest("Mike", null, null)))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(updates("rejected")).isEqualTo(1);
+        // the customer already queued can still be edited
+        assertThat(underTest.enqueue(1, new CustomerUpdateRequest(null, null, 30))).isTrue();
+    }
+
+    @Test
+    void shutdownWritesEverythingQueued() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(true, 10, 10, Duration.ZERO);
+        underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+        underTest.enqueue(2, new CustomerUpdateRequest("Mike", null, null));
+
+        // When
+        underTest.destroy();
+
+        // Then
+        verify(customerDao, times(2)).updateCustomer(any(), any());
+        assertThat(underTest.isEnabled()).isFalse();
+        assertThat(underTest.enqueue(3, new CustomerUpdateRequest("Anna", null, null))).isFalse();
+    }
+
+    @Test
+    void disabledQueueTakesNothing() {
+        // Given
+        CustomerWriteBehindQueue underTest = queue(false, 10, 10, Duration.ZERO);
+
+        // When
+        boolean queued = underTest.enqueue(1, new CustomerUpdateRequest("Alexandros", null, null));
+
+        // Then
+        assertThat(queued).isFalse();
+        assertThat(underTest.isEnabled()).isFalse();
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    private CustomerWriteBehindQueue queue(boolean enabled, int capacity, int batchSize, Duration maxWait) {
+        CustomerWriteBehindQueue queue = new CustomerWriteBehindQueue(
+                customerDao, transactionManager, eventPublisher,
+                enabled, WINDOW, capacity, batchSize, maxWait, MAX_ATTEMPTS, meterRegistry);
+        created.add(queue);
+        return queue;
+    }
+
+    private double updates(String result) {
+        return meterRegistry.counter("customer.write.behind.updates", "result", result).count();
+    }
+}
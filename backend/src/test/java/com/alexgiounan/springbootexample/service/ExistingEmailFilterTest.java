@@ -0,0 +1,218 @@
+package com.alexgiounan.springbootexample.service;
+
+import com.alexgiounan.springbootexample.AbstractTestcontainers;
+import com.alexgiounan.springbootexample.customer.CustomerAddedEvent;
+import com.alexgiounan.springbootexample.customer.CustomerChangedEvent;
+import com.alexgiounan.springbootexample.customer.CustomersInvalidatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExistingEmailFilterTest extends AbstractTestcontainers {
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger databaseChecks = new AtomicInteger();
+    private final List<ExistingEmailFilter> created = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(ExistingEmailFilter::destroy);
+    }
+
+    @Test
+    void checksGoToTheDatabaseUntilTheFilterIsBuilt() {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        String email = insert();
+
+        // When
+        boolean exists = underTest.exists(email, this::existsInDatabase);
+        boolean absent = underTest.exists(unique(), this::existsInDatabase);
+
+        // Then
+        assertThat(underTest.isReady()).isFalse();
+        assertThat(exists).isTrue();
+        assertThat(absent).isFalse();
+        assertThat(databaseChecks).hasValue(2);
+        assertThat(checks("unavailable")).isEqualTo(2);
+    }
+
+    @Test
+    void newAddressesSkipTheDatabaseOnceBuilt() {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        String email = insert();
+        underTest.rebuild();
+
+        // When
+        boolean taken = underTest.exists(email.toUpperCase(), this::existsInDatabase);
+        boolean free = underTest.exists(unique(), this::existsInDatabase);
+
+        // Then
+        assertThat(underTest.isReady()).isTrue();
+        assertThat(taken).isTrue();
+        assertThat(free).isFalse();
+        assertThat(databaseChecks).hasValue(1);
+        assertThat(checks("absent")).isEqualTo(1);
+        assertThat(checks("maybe-present")).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email.filter.ready").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email.filter.false.positive.rate").gauge().value())
+                .isLessThan(0.01);
+    }
+
+    @Test
+    void addedCustomersAreKnownWithoutARebuild() {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        underTest.rebuild();
+        String email = insert();
+
+        // When
+        underTest.onCustomerAdded(new CustomerAddedEvent(email));
+
+        // Then
+        assertThat(underTest.exists(email, this::existsInDatabase)).isTrue();
+    }
+
+    @Test
+    void changedAddressIsKnownWithoutARebuild() throws InterruptedException {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        String previous = insert();
+        underTest.rebuild();
+        String email = unique();
+        Integer id = jdbcTemplate.queryForObject(
+                "UPDATE customer SET email = ? WHERE email = ? RETURNING id", Integer.class, email, previous);
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(id, previous));
+
+        // Then
+        // read back on the filter's thread
+        await(() -> underTest.exists(email, this::existsInDatabase));
+        // the previous address is still in the filter, the database tells
+        assertThat(underTest.exists(previous, this::existsInDatabase)).isFalse();
+        assertThat(meterRegistry.counter("customer.email.filter.false.positives").count()).isEqualTo(1);
+    }
+
+    @Test
+    void staleAddressesTriggerARebuild() throws InterruptedException {
+        // Given
+        ExistingEmailFilter underTest = filter(0);
+        String email = insert();
+        underTest.rebuild();
+        Integer id = jdbcTemplate.queryForObject(
+                "DELETE FROM customer WHERE email = ? RETURNING id", Integer.class, email);
+
+        // When
+        underTest.onCustomerChanged(new CustomerChangedEvent(id, email));
+
+        // Then
+        await(() -> rebuilds() == 2);
+        assertThat(underTest.exists(email, this::existsInDatabase)).isFalse();
+        assertThat(databaseChecks).hasValue(0);
+    }
+
+    @Test
+    void missedChangesFallBackToTheDatabaseUntilRebuilt() throws InterruptedException {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        underTest.rebuild();
+        // added on another instance, its message lost
+        String email = insert();
+
+        // When
+        underTest.onCustomersInvalidated(new CustomersInvalidatedEvent("gap"));
+
+        // Then
+        assertThat(underTest.exists(email, this::existsInDatabase)).isTrue();
+        await(() -> rebuilds() == 2 && underTest.isReady());
+        assertThat(underTest.exists(email, this::existsInDatabase)).isTrue();
+        assertThat(databaseChecks).hasValue(2);
+    }
+
+    @Test
+    void batchAsksTheDatabaseAboutUncertainAddressesOnly() {
+        // Given
+        ExistingEmailFilter underTest = filter(10);
+        String taken = insert();
+        underTest.rebuild();
+        String free = unique();
+        List<Collection<String>> asked = new ArrayList<>();
+
+        // When
+        Set<String> existing = underTest.existing(Set.of(taken.toLowerCase(), free), emails -> {
+            asked.add(emails);
+            return Set.of(taken.toLowerCase());
+        });
+        Set<String> none = underTest.existing(Set.of(free), emails -> {
+            asked.add(emails);
+            return Set.of();
+        });
+
+        // Then
+        assertThat(existing).containsExactly(taken.toLowerCase());
+        assertThat(none).isEmpty();
+        assertThat(asked).containsExactly(Set.of(taken.toLowerCase()));
+    }
+
+    private ExistingEmailFilter filter(double rebuildStaleRatio) {
+        ExistingEmailFilter filter = new ExistingEmailFilter(
+                jdbcTemplate,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                1_000, 0.000_001, rebuildStaleRatio,
+                meterRegistry);
+        created.add(filter);
+        return filter;
+    }
+
+    private boolean existsInDatabase(String email) {
+        databaseChecks.incrementAndGet();
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT count(*) > 0 FROM customer WHERE lower(email) = lower(?)", Boolean.class, email);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private String insert() {
+        String email = unique();
+        jdbcTemplate.update("""
+                INSERT INTO customer(name, email, password, age, gender)
+                VALUES ('Filter', ?, 'password', 30, 'MALE')
+                """, email);
+        return email;
+    }
+
+    private static String unique() {
+        return "Filter." + UUID.randomUUID() + "@example.com";
+    }
+
+    private double checks(String result) {
+        return meterRegistry.counter("customer.email.filter.checks", "result", result).count();
+    }
+
+    private double rebuilds() {
+        return meterRegistry.counter("customer.email.filter.rebuilds", "result", "success").count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,61 @@
+package com.alexgiounan.springbootexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScalableBloomFilterTest {
+
+    @Test
+    void neverDeniesAnAddedValueAsItGrows() {
+        // Given
+        ScalableBloomFilter underTest = new ScalableBloomFilter(100, 0.01);
+
+        // When
+        for (int i = 0; i < 10_000; i++) {
+            underTest.add("customer." + i + "@example.com");
+        }
+
+        // Then
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(underTest.mightContain("customer." + i + "@example.com")).isTrue();
+        }
+        assertThat(underTest.slices()).isGreaterThan(1);
+        assertThat(underTest.count()).isBetween(9_900L, 10_000L);
+    }
+
+    @Test
+    void staysUnderTheTargetFalsePositiveRateAsItGrows() {
+        // Given
+        ScalableBloomFilter underTest = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 50_000; i++) {
+            underTest.add("customer." + i + "@example.com");
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (underTest.mightContain("absent." + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        assertThat(falsePositives / 100_000.0).isLessThan(0.01);
+        assertThat(underTest.expectedFalsePositiveRate()).isLessThan(0.01);
+    }
+
+    @Test
+    void addingAValueTwiceCountsItOnce() {
+        // Given
+        ScalableBloomFilter underTest = new ScalableBloomFilter(100, 0.01);
+
+        // When
+        underTest.add("alex@gmail.com");
+        underTest.add("alex@gmail.com");
+
+        // Then
+        assertThat(underTest.count()).isEqualTo(1);
+        assertThat(underTest.mightContain("mike@gmail.com")).isFalse();
+    }
+}
@@ -0,0 +1,40 @@
+package com.alexgiounan.springbootexample.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramSimilarityTest {
+
+    @Test
+    void trigramsArePaddedPerWord() {
+        // When
+        var actual = TrigramSimilarity.trigrams("Cat, ox");
+
+        // Then
+        assertThat(actual).containsExactlyInAnyOrder(
+                "  c", " ca", "cat", "at ",
+                "  o", " ox", "ox ");
+    }
+
+    // expected values are what pg_trgm's similarity() returns for the same pair;
+    // the JDBC DAO test runs the % operator itself
+    @ParameterizedTest
+    @CsvSource({
+            "word,       two words,  0.36363637",
+            "Alexandros, Alexandors, 0.46666667",
+            "Jonh Smith, John Smith, 0.5714286",
+            "Maria-Jose, maria jose, 1",
+            "Li,         Lee,        0.16666667",
+            "abc,        xyz,        0"
+    })
+    void similarityMatchesPgTrgm(String a, String b, float expected) {
+        // When
+        float actual = TrigramSimilarity.similarity(TrigramSimilarity.trigrams(a), TrigramSimilarity.trigrams(b));
+
+        // Then
+        assertThat(actual).isEqualTo(expected);
+    }
+}
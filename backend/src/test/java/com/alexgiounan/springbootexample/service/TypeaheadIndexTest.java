@@ -0,0 +1,69 @@
+package com.alexgiounan.springbootexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypeaheadIndexTest {
+
+    private final TypeaheadIndex underTest = TypeaheadIndex.of(List.of(
+            new TypeaheadIndex.Entry(4, "alex", "zed@example.com"),
+            new TypeaheadIndex.Entry(1, "Alexandra", "alexandra@example.com"),
+            new TypeaheadIndex.Entry(3, "Bob", "bob@example.com"),
+            new TypeaheadIndex.Entry(2, "ALEX", "al@example.com")));
+
+    @Test
+    void findsPrefixesIgnoringCaseInFoldedOrderThenById() {
+        // When
+        List<Integer> names = ids(TypeaheadIndex.Field.NAME, "aLe", Integer.MAX_VALUE);
+        List<Integer> emails = ids(TypeaheadIndex.Field.EMAIL, "AL", Integer.MAX_VALUE);
+
+        // Then
+        assertThat(names).containsExactly(2, 4, 1);
+        assertThat(emails).containsExactly(2, 1);
+    }
+
+    @Test
+    void stopsWhenTheVisitorHasEnough() {
+        // When
+        List<Integer> names = ids(TypeaheadIndex.Field.NAME, "a", 2);
+
+        // Then
+        assertThat(names).containsExactly(2, 4);
+    }
+
+    @Test
+    void findsNothingPastEveryValue() {
+        // When
+        List<Integer> none = ids(TypeaheadIndex.Field.NAME, "zz", Integer.MAX_VALUE);
+        List<Integer> longer = ids(TypeaheadIndex.Field.NAME, "alexandras", Integer.MAX_VALUE);
+
+        // Then
+        assertThat(none).isEmpty();
+        assertThat(longer).isEmpty();
+    }
+
+    @Test
+    void keepsValuesAsStored() {
+        // When
+        List<TypeaheadIndex.Entry> entries = new ArrayList<>();
+        underTest.prefixed(TypeaheadIndex.Field.EMAIL, "alexandra@", position -> entries.add(underTest.entry(position)));
+
+        // Then
+        assertThat(entries).containsExactly(new TypeaheadIndex.Entry(1, "Alexandra", "alexandra@example.com"));
+        assertThat(underTest.size()).isEqualTo(4);
+        assertThat(underTest.bytes()).isLessThan(1_000);
+    }
+
+    private List<Integer> ids(TypeaheadIndex.Field field, String prefix, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        underTest.prefixed(field, prefix, position -> {
+            ids.add(underTest.id(position));
+            return ids.size() < limit;
+        });
+        return ids;
+    }
+}